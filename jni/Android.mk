@@ -4,6 +4,7 @@ include $(CLEAR_VARS)
 
 LOCAL_MODULE    := spokestack-android
 LOCAL_SRC_FILES := \
+	aec.cpp \
 	agc.cpp \
 	ans.cpp \
 	vad.cpp \
@@ -11,17 +12,21 @@ LOCAL_SRC_FILES := \
 	filter_audio/other/complex_fft.c \
 	filter_audio/other/copy_set_operations.c \
 	filter_audio/other/cross_correlation.c \
+	filter_audio/other/delay_estimator.c \
+	filter_audio/other/delay_estimator_wrapper.c \
 	filter_audio/other/division_operations.c \
 	filter_audio/other/dot_product_with_scale.c \
 	filter_audio/other/downsample_fast.c \
 	filter_audio/other/energy.c \
 	filter_audio/other/get_scaling_square.c \
 	filter_audio/other/min_max_operations.c \
+	filter_audio/other/randomization_functions.c \
 	filter_audio/other/real_fft.c \
 	filter_audio/other/resample_by_2.c \
 	filter_audio/other/resample_by_2_internal.c \
 	filter_audio/other/resample_fractional.c \
 	filter_audio/other/resample_48khz.c \
+	filter_audio/other/ring_buffer.c \
 	filter_audio/other/spl_init.c \
 	filter_audio/other/spl_sqrt.c \
 	filter_audio/other/spl_sqrt_floor.c \
@@ -35,7 +40,18 @@ LOCAL_SRC_FILES := \
 	filter_audio/agc/digital_agc.c \
 	filter_audio/ns/nsx_core.c \
 	filter_audio/ns/nsx_core_c.c \
-	filter_audio/ns/noise_suppression_x.c
+	filter_audio/ns/noise_suppression_x.c \
+	filter_audio/aec/aec_core.c \
+	filter_audio/aec/aec_rdft.c \
+	filter_audio/aec/aec_resampler.c \
+	filter_audio/aec/echo_cancellation.c
+
+# the aec's vectorized routines are only built for intel targets
+ifneq ($(filter x86 x86_64,$(TARGET_ARCH_ABI)),)
+LOCAL_SRC_FILES += \
+	filter_audio/aec/aec_core_sse2.c \
+	filter_audio/aec/aec_rdft_sse2.c
+endif
 
 include $(BUILD_SHARED_LIBRARY)
 
@@ -4,6 +4,11 @@ CFLAGS = -shared -Wall -O3 -fpic \
          -I$(JAVA_HOME)/include/$(shell uname | tr A-Z a-z)
 OUTDIR = ../target
 
+# the aec's vectorized routines are only built for intel hosts
+AEC_SSE2 = $(if $(filter x86_64 i386 i686,$(shell uname -m)), \
+           filter_audio/aec/aec_core_sse2.c \
+           filter_audio/aec/aec_rdft_sse2.c)
+
 all: $(OUTDIR)/libspokestack-android.jnilib
 
 clean:
@@ -13,6 +18,7 @@ clean:
 rebuild: clean all
 
 $(OUTDIR)/libspokestack-android.so: \
+	aec.cpp \
 	agc.cpp \
 	vad.cpp \
 	ans.cpp \
@@ -20,17 +26,21 @@ $(OUTDIR)/libspokestack-android.so: \
 	filter_audio/other/complex_fft.c \
 	filter_audio/other/copy_set_operations.c \
 	filter_audio/other/cross_correlation.c \
+	filter_audio/other/delay_estimator.c \
+	filter_audio/other/delay_estimator_wrapper.c \
 	filter_audio/other/division_operations.c \
 	filter_audio/other/dot_product_with_scale.c \
 	filter_audio/other/downsample_fast.c \
 	filter_audio/other/energy.c \
 	filter_audio/other/get_scaling_square.c \
 	filter_audio/other/min_max_operations.c \
+	filter_audio/other/randomization_functions.c \
 	filter_audio/other/real_fft.c \
 	filter_audio/other/resample_by_2.c \
 	filter_audio/other/resample_by_2_internal.c \
 	filter_audio/other/resample_fractional.c \
 	filter_audio/other/resample_48khz.c \
+	filter_audio/other/ring_buffer.c \
 	filter_audio/other/spl_init.c \
 	filter_audio/other/spl_sqrt.c \
 	filter_audio/other/spl_sqrt_floor.c \
@@ -44,7 +54,12 @@ $(OUTDIR)/libspokestack-android.so: \
 	filter_audio/agc/digital_agc.c \
 	filter_audio/ns/nsx_core.c \
 	filter_audio/ns/nsx_core_c.c \
-	filter_audio/ns/noise_suppression_x.c
+	filter_audio/ns/noise_suppression_x.c \
+	filter_audio/aec/aec_core.c \
+	filter_audio/aec/aec_rdft.c \
+	filter_audio/aec/aec_resampler.c \
+	filter_audio/aec/echo_cancellation.c \
+	$(AEC_SSE2)
 
 %.so:
 	$(CC) $(CFLAGS) -o $@ $^
@@ -0,0 +1,139 @@
+/****************************************************************************
+ *
+ * MODULE:  aec.cpp
+ * PURPOSE: webrtc acoustic echo cancellation (aec) jni wrapper
+ *
+ ***************************************************************************/
+/*-------------------[       Pre Include Defines       ]-------------------*/
+/*-------------------[      Library Include Files      ]-------------------*/
+#include <jni.h>
+/*-------------------[      Project Include Files      ]-------------------*/
+#include "filter_audio/aec/include/echo_cancellation.h"
+/*-------------------[      Macros/Constants/Types     ]-------------------*/
+// the aec processes 10ms blocks at up to 16kHz
+#define MAX_BLOCK_SAMPLES 160
+/*-------------------[        Global Variables         ]-------------------*/
+/*-------------------[        Global Prototypes        ]-------------------*/
+/*-------------------[        Module Variables         ]-------------------*/
+/*-------------------[        Module Prototypes        ]-------------------*/
+/*-------------------[         Implementation          ]-------------------*/
+/*-----------< FUNCTION: AcousticEchoCanceller_create >----------------------
+// Purpose:    creates and configures a new webrtc echo canceller component
+// Parameters: env        - java environment
+//             self       - java this reference
+//             sampleRate - sample rate, in Hz (8000 or 16000)
+//             mode       - suppression mode (0..2) in order of
+//                          aggressiveness
+// Returns:    pointer to the opaque canceller instance if successful
+//             null otherwise
+---------------------------------------------------------------------------*/
+extern "C" JNIEXPORT
+jlong JNICALL Java_io_spokestack_spokestack_webrtc_AcousticEchoCanceller_create(
+      JNIEnv* env,
+      jobject self,
+      jint    sampleRate,
+      jint    mode) {
+   // create and initialize the canceller instance
+   void* aec = NULL;
+   int result = WebRtcAec_Create(&aec);
+   if (result == 0) {
+      result = WebRtcAec_Init(aec, sampleRate, sampleRate);
+      // configure the aec instance
+      if (result == 0) {
+         AecConfig config;
+         config.nlpMode = (int16_t)mode;
+         config.skewMode = kAecFalse;
+         config.metricsMode = kAecFalse;
+         config.delay_logging = kAecFalse;
+         result = WebRtcAec_set_config(aec, config);
+      }
+      // if something went wrong, cleanup
+      if (result != 0) {
+         WebRtcAec_Free(aec);
+         aec = NULL;
+      }
+   }
+   return (jlong)aec;
+}
+/*-----------< FUNCTION: AcousticEchoCanceller_destroy >---------------------
+// Purpose:    releases aec resources
+// Parameters: env  - java environment
+//             self - java this reference
+//             aec  - aec handle returned by create()
+// Returns:    none
+---------------------------------------------------------------------------*/
+extern "C" JNIEXPORT
+void JNICALL Java_io_spokestack_spokestack_webrtc_AcousticEchoCanceller_destroy(
+      JNIEnv* env,
+      jobject self,
+      jlong   aec) {
+   WebRtcAec_Free((void*)aec);
+}
+/*-----------< FUNCTION: AcousticEchoCanceller_process >---------------------
+// Purpose:    processes a 10ms block of audio, removing the echo of the
+//             far-end (playback) signal from the near-end (microphone)
+//             signal
+// Parameters: env     - java environment
+//             self    - java this reference
+//             aec     - canceller handle returned by create()
+//             farend  - far-end sample buffer (16-bit samples)
+//             nearend - near-end sample buffer (16-bit samples)
+//             offset  - offset, in bytes, to start reading/writing the
+//                       near-end buffer
+//             length  - block length, in samples (80 or 160)
+//             delay   - delay, in ms, between the far-end block and its
+//                       echo in the near-end signal
+// Returns:    0 if successful
+//             -1 on error
+---------------------------------------------------------------------------*/
+extern "C" JNIEXPORT
+jint JNICALL Java_io_spokestack_spokestack_webrtc_AcousticEchoCanceller_process(
+      JNIEnv* env,
+      jobject self,
+      jlong   aec,
+      jobject farend,
+      jobject nearend,
+      jint    offset,
+      jint    length,
+      jint    delay) {
+   if (length > MAX_BLOCK_SAMPLES)
+      return -1;
+   int16_t* far = (int16_t*)env->GetDirectBufferAddress(farend);
+   int16_t* near = (int16_t*)env->GetDirectBufferAddress(nearend);
+   if (far == NULL || near == NULL)
+      return -1;
+   near += offset / sizeof(int16_t);
+   // the canceller works on floating point samples in the 16-bit range
+   float farBlock[MAX_BLOCK_SAMPLES];
+   float nearBlock[MAX_BLOCK_SAMPLES];
+   float outBlock[MAX_BLOCK_SAMPLES];
+   for (int i = 0; i < length; i++) {
+      farBlock[i] = far[i];
+      nearBlock[i] = near[i];
+   }
+   // buffer the far-end block, then cancel its echo from the near-end
+   // block, writing the result back in place
+   int result = WebRtcAec_BufferFarend((void*)aec, farBlock, (int16_t)length);
+   if (result == 0)
+      result = WebRtcAec_Process(
+         (void*)aec,
+         nearBlock,
+         NULL,
+         outBlock,
+         NULL,
+         (int16_t)length,
+         (int16_t)delay,
+         0);
+   if (result == 0) {
+      for (int i = 0; i < length; i++) {
+         float sample = outBlock[i];
+         if (sample > 32767.0f)
+            near[i] = 32767;
+         else if (sample < -32768.0f)
+            near[i] = -32768;
+         else
+            near[i] = (int16_t)sample;
+      }
+   }
+   return result;
+}
@@ -3,10 +3,11 @@ package io.spokestack.spokestack;
 import android.content.Context;
 import androidx.annotation.Nullable;
 import io.spokestack.spokestack.util.EventTracer;
+import io.spokestack.spokestack.util.SampleRing;
 
 import java.util.Deque;
 import java.util.List;
-import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.nio.ByteBuffer;
 
 /**
@@ -49,13 +50,20 @@ public final class SpeechContext {
         }
     }
 
-    private final List<OnSpeechEventListener> listeners = new ArrayList<>();
+    // listeners can be attached and detached from other threads while the
+    // pipeline thread is dispatching events
+    private final List<OnSpeechEventListener> listeners =
+          new CopyOnWriteArrayList<>();
     private final EventTracer tracer;
     private Context appContext;
     private Deque<ByteBuffer> buffer;
     private boolean speech;
     private boolean active;
     private boolean managed;
+    private volatile boolean playing;
+    private volatile double playbackLevel;
+    private volatile SampleRing playbackReference;
+    private volatile int playbackLatency;
     private String transcript = "";
     private double confidence;
     private Throwable error;
@@ -167,6 +175,97 @@ public final class SpeechContext {
         this.managed = value;
     }
 
+    /**
+     * @return whether text-to-speech audio is playing while the pipeline
+     * listens
+     */
+    public boolean isPlaying() {
+        return this.playing;
+    }
+
+    /**
+     * signals whether text-to-speech audio is playing. this is set by a
+     * speech output during barge-in, so that pipeline components can avoid
+     * mistaking the output's audio, picked up by the microphone, for the
+     * user's speech. it may be called from any thread.
+     *
+     * @param value {@code true} if audio is playing.
+     * @return this
+     */
+    public SpeechContext setPlaying(boolean value) {
+        this.playing = value;
+        if (!value) {
+            this.playbackLevel = 0;
+        }
+        return this;
+    }
+
+    /**
+     * @return the linear Root Mean Squared (RMS) level of the text-to-speech
+     * audio being played, in the range [0, 1]
+     */
+    public double getPlaybackLevel() {
+        return this.playbackLevel;
+    }
+
+    /**
+     * updates the level of the text-to-speech audio being played. it may be
+     * called from any thread.
+     *
+     * @param value the linear RMS level, in the range [0, 1]
+     * @return this
+     */
+    public SpeechContext setPlaybackLevel(double value) {
+        this.playbackLevel = value;
+        return this;
+    }
+
+    /**
+     * @return the ring through which a speech output passes the audio it
+     * plays to an echo canceller, or null if there is none
+     */
+    @Nullable
+    public SampleRing getPlaybackReference() {
+        return this.playbackReference;
+    }
+
+    /**
+     * attaches the ring through which a speech output passes the audio it
+     * plays, as mono samples at the ring's sample rate, to an echo canceller
+     * in the pipeline. the canceller owns the ring and reads from it; the
+     * output only writes to it.
+     *
+     * @param value the reference ring, or null to detach it
+     * @return this
+     */
+    public SpeechContext setPlaybackReference(@Nullable SampleRing value) {
+        this.playbackReference = value;
+        return this;
+    }
+
+    /**
+     * @return the time, in ms, between a speech output writing audio to the
+     * playback reference and that audio leaving the speaker
+     */
+    public int getPlaybackLatency() {
+        return this.playbackLatency;
+    }
+
+    /**
+     * updates the playback latency. a speech output writes audio to the
+     * playback reference as it hands it to the audio device, whose buffer
+     * holds it for a while before it is played; an echo canceller delays the
+     * reference by this much to line it up with the echo. it may be called
+     * from any thread.
+     *
+     * @param value the latency, in ms
+     * @return this
+     */
+    public SpeechContext setPlaybackLatency(int value) {
+        this.playbackLatency = value;
+        return this;
+    }
+
     /** @return the current speech transcript. */
     public String getTranscript() {
         return this.transcript;
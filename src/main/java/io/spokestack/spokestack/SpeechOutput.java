@@ -66,4 +66,17 @@ public abstract class SpeechOutput extends TTSComponent
      * @param androidContext The Android context.
      */
     public abstract void setAndroidContext(Context androidContext);
+
+    /**
+     * Sets the context of a speech pipeline that keeps listening while audio
+     * plays, allowing the user to interrupt it. Outputs that support this
+     * barge-in mode publish their playback state and level to the context,
+     * which pipeline components use to tell the user's speech from the
+     * output's own audio. The default implementation does nothing.
+     *
+     * @param speechContext The speech context, or {@code null} to stop
+     *                      publishing playback state.
+     */
+    public void setSpeechContext(SpeechContext speechContext) {
+    }
 }
@@ -3,6 +3,7 @@ package io.spokestack.spokestack.asr;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import io.spokestack.spokestack.util.Crypto;
+import io.spokestack.spokestack.util.HttpClients;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -50,7 +51,7 @@ public class SpokestackCloudClient {
         body.put("language", builder.lang);
         body.put("limit", N_BEST);
         String bodyJson = gson.toJson(body);
-        String signature = Crypto.signBody(bodyJson, builder.apiSecret);
+        String signature = Crypto.signer(builder.apiSecret).sign(bodyJson);
 
         body.clear();
         body.put("keyId", builder.apiId);
@@ -268,12 +269,13 @@ public class SpokestackCloudClient {
         }
 
         /**
-         * get a new HTTP client. used for testing.
+         * get the HTTP client used for the websocket. this is the client
+         * shared by all Spokestack components; overridden for testing.
          *
-         * @return a new HTTP client
+         * @return the HTTP client
          */
         public OkHttpClient getHttpClient() {
-            return new OkHttpClient.Builder().build();
+            return HttpClients.shared();
         }
     }
 
@@ -2,6 +2,10 @@ package io.spokestack.spokestack.nlu;
 
 import io.spokestack.spokestack.util.AsyncResult;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * A simple interface for components that provide intent classification and slot
  * recognition, either on-device or via a network request.
@@ -22,4 +26,52 @@ public interface NLUService {
      * @see AsyncResult#registerCallback(io.spokestack.spokestack.util.Callback)
      */
     AsyncResult<NLUResult> classify(String utterance, NLUContext context);
+
+    /**
+     * Classifies a batch of user utterances. Services that can classify
+     * multiple utterances more efficiently than one at a time should override
+     * this method; the default implementation classifies each utterance
+     * separately via {@link #classify(String, NLUContext)} and completes when
+     * all of those classifications have completed. Callbacks registered on the
+     * individual results are left in place.
+     *
+     * @param utterances The user utterances to be classified.
+     * @param context    The current NLU context, containing request metadata
+     *                   and the ability to fire trace events.
+     * @return An {@link AsyncResult} representing the results of the
+     * classification task, in the same order as {@code utterances}.
+     */
+    default AsyncResult<List<NLUResult>> classifyBatch(
+          List<String> utterances, NLUContext context) {
+        List<AsyncResult<NLUResult>> pending = new ArrayList<>();
+        AsyncResult<List<NLUResult>> batchResult = new AsyncResult<>(
+              () -> {
+                  List<NLUResult> results = new ArrayList<>();
+                  for (AsyncResult<NLUResult> result : pending) {
+                      results.add(result.get());
+                  }
+                  return results;
+              });
+        if (utterances.isEmpty()) {
+            batchResult.run();
+            return batchResult;
+        }
+
+        // the batch completes on the thread that finishes the last result.
+        // completion listeners leave any callbacks attached to the results
+        // by the service untouched
+        AtomicInteger remaining = new AtomicInteger(utterances.size());
+        Runnable countDown = () -> {
+            if (remaining.decrementAndGet() == 0) {
+                batchResult.run();
+            }
+        };
+        for (String utterance : utterances) {
+            pending.add(classify(utterance, context));
+        }
+        for (AsyncResult<NLUResult> result : pending) {
+            result.addCompletionListener(countDown);
+        }
+        return batchResult;
+    }
 }
@@ -0,0 +1,295 @@
+package io.spokestack.spokestack.nlu;
+
+import androidx.annotation.NonNull;
+import io.spokestack.spokestack.OnSpeechEventListener;
+import io.spokestack.spokestack.SpeechConfig;
+import io.spokestack.spokestack.SpeechContext;
+import io.spokestack.spokestack.util.AsyncResult;
+import io.spokestack.spokestack.util.Callback;
+import io.spokestack.spokestack.util.EventTracer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An NLU wrapper that classifies partial transcripts speculatively while the
+ * user is still speaking.
+ *
+ * <p>
+ * Speech recognizers typically emit a stream of partial transcripts before
+ * the final one, and in most turns the final transcript is identical to the
+ * last partial. This component classifies each partial transcript once it has
+ * been stable for a short debounce interval, cancelling any classification of
+ * an earlier partial that has been superseded. When the final transcript is
+ * classified via {@link #classify(String, NLUContext)}, a speculative result
+ * for the same text is returned instead of starting a new classification,
+ * hiding the NLU's latency behind the user's speech.
+ * </p>
+ *
+ * <p>
+ * The component can be used directly, by calling {@link #partial(String)} for
+ * each partial transcript, or added to a speech pipeline as an event listener.
+ * As a listener, it classifies partial transcripts from
+ * {@code PARTIAL_RECOGNIZE} events and final transcripts from
+ * {@code RECOGNIZE} events, delivering the final results to the callback
+ * supplied to its builder. Any speculation is abandoned when a new activation
+ * begins, the activation times out, or a speech error occurs.
+ * </p>
+ *
+ * <p>
+ * This component supports the following configuration properties:
+ * </p>
+ * <ul>
+ *   <li>
+ *      <b>nlu-partial-debounce</b> (integer): the length of time, in
+ *      milliseconds, that a partial transcript must remain unchanged before
+ *      it is classified. Defaults to 100.
+ *   </li>
+ * </ul>
+ */
+public final class StreamingNLU
+      implements NLUService, OnSpeechEventListener, AutoCloseable {
+    private static final int DEFAULT_DEBOUNCE = 100;
+
+    private final NLUService nlu;
+    private final NLUContext context;
+    private final Callback<NLUResult> callback;
+    private final int debounce;
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    private String speculativeText;
+    private ScheduledFuture<?> pending;
+    private AsyncResult<NLUResult> speculativeResult;
+    private int hits;
+    private int misses;
+
+    private StreamingNLU(Builder builder) {
+        this.nlu = builder.service;
+        this.context = builder.context;
+        this.callback = builder.callback;
+        this.debounce = builder.config.getInteger(
+              "nlu-partial-debounce", DEFAULT_DEBOUNCE);
+        this.scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "nlu-streaming");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * @return The number of final transcripts whose speculative result was
+     * reused.
+     */
+    public synchronized int getHits() {
+        return this.hits;
+    }
+
+    /**
+     * @return The number of final transcripts that required a new
+     * classification.
+     */
+    public synchronized int getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * Submit a partial transcript for speculative classification. The
+     * transcript is classified after the debounce interval unless another
+     * partial transcript or a final classification request arrives first.
+     *
+     * @param transcript The partial transcript.
+     */
+    public synchronized void partial(String transcript) {
+        if (transcript == null || transcript.isEmpty()
+              || transcript.equals(this.speculativeText)) {
+            return;
+        }
+        cancelSpeculation();
+        this.speculativeText = transcript;
+        this.pending = this.scheduler.schedule(
+              () -> speculate(transcript),
+              this.debounce, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void speculate(String transcript) {
+        // a newer partial may have arrived while this task was waiting for
+        // the lock
+        if (transcript.equals(this.speculativeText)
+              && this.speculativeResult == null) {
+            this.pending = null;
+            this.context.traceDebug("Speculative classification: %s",
+                  transcript);
+            this.speculativeResult = this.nlu.classify(transcript,
+                  this.context);
+        }
+    }
+
+    /**
+     * Abandon any speculative classification in progress.
+     */
+    public synchronized void cancelSpeculation() {
+        if (this.pending != null) {
+            this.pending.cancel(false);
+            this.pending = null;
+        }
+        if (this.speculativeResult != null) {
+            this.speculativeResult.cancel(false);
+            this.speculativeResult = null;
+        }
+        this.speculativeText = null;
+    }
+
+    @Override
+    public synchronized AsyncResult<NLUResult> classify(
+          String utterance, NLUContext nluContext) {
+        AsyncResult<NLUResult> result = null;
+        if (utterance.equals(this.speculativeText)
+              && this.speculativeResult != null
+              && !this.speculativeResult.isCancelled()) {
+            result = this.speculativeResult;
+            this.speculativeResult = null;
+        }
+        cancelSpeculation();
+
+        if (result != null) {
+            this.hits++;
+            if (nluContext.canTrace(EventTracer.Level.PERF)) {
+                nluContext.tracePerf("Speculative NLU hit (%d/%d)",
+                      this.hits, this.hits + this.misses);
+            }
+            return result;
+        }
+        this.misses++;
+        return this.nlu.classify(utterance, nluContext);
+    }
+
+    @Override
+    public void onEvent(@NonNull SpeechContext.Event event,
+                        @NonNull SpeechContext speechContext) {
+        switch (event) {
+            case PARTIAL_RECOGNIZE:
+                partial(speechContext.getTranscript());
+                break;
+            case RECOGNIZE:
+                AsyncResult<NLUResult> result =
+                      classify(speechContext.getTranscript(), this.context);
+                if (this.callback != null) {
+                    result.registerCallback(this.callback);
+                }
+                break;
+            case ACTIVATE:
+            case TIMEOUT:
+            case ERROR:
+                cancelSpeculation();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Abandon any speculative classification and stop the debounce timer.
+     */
+    @Override
+    public void close() {
+        cancelSpeculation();
+        this.scheduler.shutdownNow();
+    }
+
+    /**
+     * Fluent builder interface for initializing a streaming NLU component.
+     */
+    public static class Builder {
+        private SpeechConfig config = new SpeechConfig();
+        private List<TraceListener> traceListeners = new ArrayList<>();
+        private NLUService service;
+        private NLUContext context;
+        private Callback<NLUResult> callback;
+
+        /**
+         * Creates a new builder instance.
+         */
+        public Builder() {
+            config.put("trace-level", EventTracer.Level.ERROR.value());
+        }
+
+        /**
+         * Attaches a configuration object, overwriting any existing
+         * configuration.
+         *
+         * @param value configuration to attach
+         * @return this
+         */
+        public Builder setConfig(SpeechConfig value) {
+            this.config = value;
+            return this;
+        }
+
+        /**
+         * Sets a configuration value.
+         *
+         * @param key   configuration property name
+         * @param value property value
+         * @return this
+         */
+        public Builder setProperty(String key, Object value) {
+            config.put(key, value);
+            return this;
+        }
+
+        /**
+         * Sets the NLU service used to classify transcripts.
+         *
+         * @param value the NLU service
+         * @return this
+         */
+        public Builder setService(NLUService value) {
+            this.service = value;
+            return this;
+        }
+
+        /**
+         * Sets the callback that receives the classification of each final
+         * transcript when this component is used as a speech event listener.
+         *
+         * @param value the result callback
+         * @return this
+         */
+        public Builder setCallback(Callback<NLUResult> value) {
+            this.callback = value;
+            return this;
+        }
+
+        /**
+         * Adds a trace listener to receive events from the NLU system.
+         *
+         * @param listener the listener to register
+         * @return this
+         */
+        public Builder addTraceListener(TraceListener listener) {
+            this.traceListeners.add(listener);
+            return this;
+        }
+
+        /**
+         * Create a new streaming NLU instance.
+         *
+         * @return An initialized {@code StreamingNLU} instance
+         * @throws IllegalArgumentException if no NLU service has been set
+         */
+        public StreamingNLU build() {
+            if (this.service == null) {
+                throw new IllegalArgumentException("no NLU service");
+            }
+            this.context = new NLUContext(this.config);
+            for (TraceListener listener : this.traceListeners) {
+                this.context.addTraceListener(listener);
+            }
+            return new StreamingNLU(this);
+        }
+    }
+}
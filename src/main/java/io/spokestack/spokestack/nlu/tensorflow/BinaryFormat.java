@@ -0,0 +1,115 @@
+package io.spokestack.spokestack.nlu.tensorflow;
+
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Shared constants and helpers for the precompiled binary forms of NLU
+ * resources produced by {@link NLUResourceCompiler}.
+ *
+ * <p>
+ * Each binary resource begins with a four-byte magic number identifying its
+ * type followed by a four-byte format version. All values are big-endian.
+ * Resources are memory-mapped rather than read, so that their contents can be
+ * used in place.
+ * </p>
+ */
+final class BinaryFormat {
+    /** Magic number for a compiled wordpiece vocabulary ("SPKV"). */
+    static final int VOCAB_MAGIC = 0x53504B56;
+
+    /** Magic number for compiled model metadata ("SPKM"). */
+    static final int METADATA_MAGIC = 0x53504B4D;
+
+    /** The current format version. */
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 8;
+    private static final int NULL_LENGTH = -1;
+
+    private BinaryFormat() {
+    }
+
+    /**
+     * Map a resource file if it is a compiled binary resource of the
+     * specified type.
+     *
+     * @param path  The path to the resource file.
+     * @param magic The magic number identifying the expected resource type.
+     * @return A read-only buffer positioned just after the resource's header,
+     * or {@code null} if the file is not a binary resource of the specified
+     * type.
+     * @throws IOException if the file cannot be read, or if it is a binary
+     *                     resource with an unsupported version.
+     */
+    static ByteBuffer map(String path, int magic) throws IOException {
+        try (FileInputStream inputStream = new FileInputStream(path);
+             FileChannel channel = inputStream.getChannel()) {
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                  channel.size());
+            if (buffer.getInt() != magic) {
+                return null;
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported resource version: "
+                      + version);
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * Write a resource header.
+     *
+     * @param out   The output stream.
+     * @param magic The magic number identifying the resource type.
+     * @throws IOException if the header cannot be written.
+     */
+    static void writeHeader(DataOutputStream out, int magic)
+          throws IOException {
+        out.writeInt(magic);
+        out.writeInt(VERSION);
+    }
+
+    /**
+     * Read a length-prefixed UTF-8 string.
+     *
+     * @param buffer The buffer to read from.
+     * @return The string, which may be {@code null}.
+     */
+    static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write a length-prefixed UTF-8 string.
+     *
+     * @param out   The output stream.
+     * @param value The string to write, which may be {@code null}.
+     * @throws IOException if the string cannot be written.
+     */
+    static void writeString(DataOutputStream out, String value)
+          throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
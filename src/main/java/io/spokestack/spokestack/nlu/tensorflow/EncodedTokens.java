@@ -1,6 +1,6 @@
 package io.spokestack.spokestack.nlu.tensorflow;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Pattern;
@@ -8,13 +8,26 @@ import java.util.regex.Pattern;
 /**
  * A simple data class that represents both the text of tokens produced from a
  * full string and identifiers associated with those tokens.
+ *
+ * <p>
+ * Token identifiers and their mapping to the original string's
+ * whitespace-separated words are stored in primitive arrays. The original
+ * words are stored as offsets into the original string rather than as
+ * separate strings.
+ * </p>
  */
 final class EncodedTokens {
 
-    private final Pattern punctRegex = Pattern.compile("^\\p{P}+|\\p{P}+$");
-    private final List<String> originalTokens;
-    private final List<Integer> ids;
-    private List<Integer> originalIndices;
+    private static final Pattern PUNCT_REGEX =
+          Pattern.compile("^\\p{P}+|\\p{P}+$");
+
+    private final String text;
+    private final int[] wordStarts;
+    private final int[] wordEnds;
+    private final int numWords;
+    private int[] ids;
+    private int numIds;
+    private int[] originalIndices;
 
     /**
      * Create a new instance.
@@ -22,15 +35,128 @@ final class EncodedTokens {
      * @param spaceSeparated The original string split on whitespace.
      */
     EncodedTokens(String[] spaceSeparated) {
-        this.ids = new ArrayList<>();
-        this.originalTokens = Arrays.asList(spaceSeparated);
+        StringBuilder joined = new StringBuilder();
+        this.numWords = spaceSeparated.length;
+        this.wordStarts = new int[this.numWords];
+        this.wordEnds = new int[this.numWords];
+        for (int i = 0; i < this.numWords; i++) {
+            if (i > 0) {
+                joined.append(' ');
+            }
+            this.wordStarts[i] = joined.length();
+            joined.append(spaceSeparated[i]);
+            this.wordEnds[i] = joined.length();
+        }
+        this.text = joined.toString();
+        this.ids = new int[0];
+    }
+
+    /**
+     * Create a new, fully populated instance. The supplied arrays are used
+     * directly rather than copied.
+     *
+     * @param original       The original string.
+     * @param starts         The start offset of each word in the original
+     *                       string.
+     * @param ends           The end offset (exclusive) of each word in the
+     *                       original string.
+     * @param wordCount      The number of words.
+     * @param tokenIds       The token identifiers.
+     * @param tokenToWord    The index of the word that produced each token.
+     * @param tokenCount     The number of tokens.
+     */
+    EncodedTokens(String original,
+                  int[] starts,
+                  int[] ends,
+                  int wordCount,
+                  int[] tokenIds,
+                  int[] tokenToWord,
+                  int tokenCount) {
+        this.text = original;
+        this.wordStarts = starts;
+        this.wordEnds = ends;
+        this.numWords = wordCount;
+        this.ids = tokenIds;
+        this.originalIndices = tokenToWord;
+        this.numIds = tokenCount;
     }
 
     /**
-     * @return The identifiers associated with the tokens.
+     * @return The identifiers associated with the tokens. The returned list
+     * is a read-only view of the identifiers.
      */
     public List<Integer> getIds() {
-        return ids;
+        return new AbstractList<Integer>() {
+            @Override
+            public Integer get(int index) {
+                return getId(index);
+            }
+
+            @Override
+            public int size() {
+                return numIds;
+            }
+        };
+    }
+
+    /**
+     * @return The number of tokens.
+     */
+    int size() {
+        return this.numIds;
+    }
+
+    /**
+     * @param index The index of a token.
+     * @return The identifier of the token at {@code index}.
+     * @throws IndexOutOfBoundsException if {@code index} is not a valid token
+     *                                   index.
+     */
+    int getId(int index) {
+        if (index < 0 || index >= this.numIds) {
+            throw new IndexOutOfBoundsException("token " + index);
+        }
+        return this.ids[index];
+    }
+
+    /**
+     * @return The original string.
+     */
+    String getText() {
+        return this.text;
+    }
+
+    /**
+     * @return The number of whitespace-separated words in the original string.
+     */
+    int getNumWords() {
+        return this.numWords;
+    }
+
+    /**
+     * @param word The index of a word.
+     * @return The offset of the start of the word in the original string.
+     */
+    int getWordStart(int word) {
+        return this.wordStarts[word];
+    }
+
+    /**
+     * @param word The index of a word.
+     * @return The offset of the end (exclusive) of the word in the original
+     * string.
+     */
+    int getWordEnd(int word) {
+        return this.wordEnds[word];
+    }
+
+    /**
+     * @param index The index of a token.
+     * @return The index of the word that produced the token at {@code
+     * index}.
+     */
+    int getOriginalIndex(int index) {
+        return this.originalIndices[index];
     }
 
     /**
@@ -42,12 +168,15 @@ final class EncodedTokens {
      *                               length of the token ID list.
      */
     public void setOriginalIndices(List<Integer> indices) {
-        if (indices.size() != ids.size()) {
+        if (indices.size() != this.numIds) {
             throw new IllegalStateException(
                   "original indices and the token ID list must be the "
                         + "same length!");
         }
-        this.originalIndices = indices;
+        this.originalIndices = new int[indices.size()];
+        for (int i = 0; i < indices.size(); i++) {
+            this.originalIndices[i] = indices.get(i);
+        }
     }
 
     /**
@@ -56,7 +185,10 @@ final class EncodedTokens {
      * @param tokenIds The token identifiers.
      */
     public void addTokenIds(List<Integer> tokenIds) {
-        this.ids.addAll(tokenIds);
+        this.ids = Arrays.copyOf(this.ids, this.numIds + tokenIds.size());
+        for (int tokenId : tokenIds) {
+            this.ids[this.numIds++] = tokenId;
+        }
     }
 
     /**
@@ -93,23 +225,28 @@ final class EncodedTokens {
      *                                   length of the token id array.
      */
     public String decodeRange(int start, int stop, boolean trimPunct) {
-        if (stop < start || start < 0 || stop > this.ids.size()) {
+        if (stop < start || start < 0 || stop > this.numIds) {
             String message = String.format(
                   "Invalid token range: (%s, %s] for %s total tokens",
-                  start, stop, ids.size());
+                  start, stop, this.numIds);
             throw new IndexOutOfBoundsException(message);
         }
 
-        int firstToken = this.originalIndices.get(start);
-        int lastToken = this.originalIndices.get(stop - 1);
-        // add one to compensate for the half-open interval of subList
-        int toIndex = Math.min(lastToken + 1, this.originalTokens.size());
-        String joined = String.join(" ",
-              this.originalTokens.subList(firstToken, toIndex));
+        int firstToken = this.originalIndices[start];
+        int lastToken = this.originalIndices[stop - 1];
+        // add one to compensate for the half-open interval
+        int toIndex = Math.min(lastToken + 1, this.numWords);
+        StringBuilder joined = new StringBuilder();
+        for (int i = firstToken; i < toIndex; i++) {
+            if (i > firstToken) {
+                joined.append(' ');
+            }
+            joined.append(this.text, this.wordStarts[i], this.wordEnds[i]);
+        }
         if (trimPunct) {
-            return punctRegex.matcher(joined).replaceAll("");
+            return PUNCT_REGEX.matcher(joined).replaceAll("");
         } else {
-            return joined;
+            return joined.toString();
         }
     }
 }
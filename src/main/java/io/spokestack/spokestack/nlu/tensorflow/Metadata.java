@@ -3,8 +3,13 @@ package io.spokestack.spokestack.nlu.tensorflow;
 import com.google.gson.Gson;
 import com.google.gson.annotations.SerializedName;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
 
+import java.io.DataOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -12,8 +17,17 @@ import java.util.Map;
  * A schema class used for metadata parsed from a JSON file that accompanies a
  * TensorFlow Lite NLU model. The metadata contains the information necessary to
  * translate the model's raw outputs into actionable intent and slot data.
+ *
+ * <p>
+ * Metadata may also be stored in the compiled binary form produced by
+ * {@link NLUResourceCompiler}, which can be read without reflection.
+ * </p>
  */
 final class Metadata {
+    private static final Gson GSON = new Gson();
+    private static final Type FACETS_TYPE =
+          new TypeToken<Map<String, Object>>() { }.getType();
+
     private final Intent[] intents;
     private final String[] tags;
 
@@ -22,6 +36,130 @@ final class Metadata {
         this.tags = tagArr;
     }
 
+    /**
+     * Load metadata from a file, which may be either JSON or compiled binary
+     * metadata. The facets of all slots are parsed as part of loading.
+     *
+     * @param path The path to the metadata file.
+     * @return The loaded metadata.
+     * @throws IOException if the file cannot be read.
+     */
+    static Metadata load(String path) throws IOException {
+        ByteBuffer compiled =
+              BinaryFormat.map(path, BinaryFormat.METADATA_MAGIC);
+        Metadata metadata;
+        if (compiled != null) {
+            metadata = read(compiled);
+        } else {
+            try (FileReader fileReader = new FileReader(path);
+                 JsonReader reader = new JsonReader(fileReader)) {
+                metadata = GSON.fromJson(reader, Metadata.class);
+            }
+        }
+        metadata.parseFacets();
+        return metadata;
+    }
+
+    private void parseFacets() {
+        for (Intent intent : this.intents) {
+            parseFacets(intent.slots);
+            parseFacets(intent.implicitSlots);
+        }
+    }
+
+    private static void parseFacets(Slot[] slots) {
+        if (slots != null) {
+            for (Slot slot : slots) {
+                slot.getFacets();
+            }
+        }
+    }
+
+    /**
+     * Read compiled metadata.
+     *
+     * @param buffer A buffer positioned just after the compiled metadata's
+     *               header.
+     * @return The metadata.
+     */
+    static Metadata read(ByteBuffer buffer) {
+        Intent[] intents = new Intent[buffer.getInt()];
+        for (int i = 0; i < intents.length; i++) {
+            String name = BinaryFormat.readString(buffer);
+            Slot[] slots = readSlots(buffer);
+            Slot[] implicitSlots = readSlots(buffer);
+            intents[i] = new Intent(name, slots, implicitSlots);
+        }
+        String[] tags = new String[buffer.getInt()];
+        for (int i = 0; i < tags.length; i++) {
+            tags[i] = BinaryFormat.readString(buffer);
+        }
+        return new Metadata(intents, tags);
+    }
+
+    private static Slot[] readSlots(ByteBuffer buffer) {
+        int numSlots = buffer.getInt();
+        if (numSlots < 0) {
+            return null;
+        }
+        Slot[] slots = new Slot[numSlots];
+        for (int i = 0; i < numSlots; i++) {
+            String name = BinaryFormat.readString(buffer);
+            String captureName = BinaryFormat.readString(buffer);
+            String type = BinaryFormat.readString(buffer);
+            String facets = BinaryFormat.readString(buffer);
+            // implicit slot values can be any JSON value, so they're stored
+            // as JSON
+            String value = BinaryFormat.readString(buffer);
+            Object parsedValue = null;
+            if (value != null) {
+                parsedValue = GSON.fromJson(value, Object.class);
+            }
+            slots[i] = new Slot(name, captureName, type, facets, parsedValue);
+        }
+        return slots;
+    }
+
+    /**
+     * Write this metadata in compiled form, including the header.
+     *
+     * @param out The output stream.
+     * @throws IOException if the metadata cannot be written.
+     */
+    void write(DataOutputStream out) throws IOException {
+        BinaryFormat.writeHeader(out, BinaryFormat.METADATA_MAGIC);
+        out.writeInt(this.intents.length);
+        for (Intent intent : this.intents) {
+            BinaryFormat.writeString(out, intent.name);
+            writeSlots(out, intent.slots);
+            writeSlots(out, intent.implicitSlots);
+        }
+        out.writeInt(this.tags.length);
+        for (String tag : this.tags) {
+            BinaryFormat.writeString(out, tag);
+        }
+    }
+
+    private void writeSlots(DataOutputStream out, Slot[] slots)
+          throws IOException {
+        if (slots == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(slots.length);
+        for (Slot slot : slots) {
+            BinaryFormat.writeString(out, slot.name);
+            BinaryFormat.writeString(out, slot.captureName);
+            BinaryFormat.writeString(out, slot.type);
+            BinaryFormat.writeString(out, slot.facets);
+            String value = null;
+            if (slot.value != null) {
+                value = GSON.toJson(slot.value);
+            }
+            BinaryFormat.writeString(out, value);
+        }
+    }
+
     /**
      * @return the metadata for all intents associated with this model.
      */
@@ -125,11 +263,8 @@ final class Metadata {
 
         public Map<String, Object> getFacets() {
             if (parsedFacets == null) {
-                Gson gson = new Gson();
                 if (facets != null) {
-                    Type jsonType =
-                          new TypeToken<Map<String, Object>>() { }.getType();
-                    parsedFacets = gson.fromJson(facets, jsonType);
+                    parsedFacets = GSON.fromJson(facets, FACETS_TYPE);
                 } else {
                     parsedFacets = new HashMap<>();
                 }
@@ -0,0 +1,107 @@
+package io.spokestack.spokestack.nlu.tensorflow;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Compiles the text resources that accompany a TensorFlow Lite NLU model into
+ * binary forms that load faster.
+ *
+ * <p>
+ * A compiled wordpiece vocabulary is a prebuilt lookup structure that is
+ * memory-mapped and used in place, so no per-entry objects are created when
+ * it is loaded. Compiled metadata is read directly instead of via reflection.
+ * Compiled resources are used in place of their text equivalents by
+ * specifying their paths in the usual {@code wordpiece-vocab-path} and
+ * {@code nlu-metadata-path} configuration properties; the format of each file
+ * is detected when it is loaded.
+ * </p>
+ *
+ * <p>
+ * Resources can be compiled at build time from the command line:
+ * </p>
+ *
+ * <pre>
+ * java -cp spokestack-android.jar:gson.jar \
+ *     io.spokestack.spokestack.nlu.tensorflow.NLUResourceCompiler \
+ *     vocab vocab.txt vocab.bin
+ * java -cp spokestack-android.jar:gson.jar \
+ *     io.spokestack.spokestack.nlu.tensorflow.NLUResourceCompiler \
+ *     metadata nlu.json nlu.bin
+ * </pre>
+ */
+public final class NLUResourceCompiler {
+    private static final String SUFFIX_MARKER = "##";
+
+    private NLUResourceCompiler() {
+    }
+
+    /**
+     * Compile a text wordpiece vocabulary.
+     *
+     * @param vocabPath  The path to the text vocabulary.
+     * @param outputPath The path to which the compiled vocabulary should be
+     *                   written.
+     * @throws IOException if either file cannot be accessed.
+     */
+    public static void compileVocabulary(String vocabPath, String outputPath)
+          throws IOException {
+        WordpieceTrie trie = WordpieceTrie.load(vocabPath, SUFFIX_MARKER);
+        try (DataOutputStream out = open(outputPath)) {
+            trie.write(out);
+        }
+    }
+
+    /**
+     * Compile JSON model metadata.
+     *
+     * @param metadataPath The path to the JSON metadata.
+     * @param outputPath   The path to which the compiled metadata should be
+     *                     written.
+     * @throws IOException if either file cannot be accessed.
+     */
+    public static void compileMetadata(String metadataPath, String outputPath)
+          throws IOException {
+        Metadata metadata = Metadata.load(metadataPath);
+        try (DataOutputStream out = open(outputPath)) {
+            metadata.write(out);
+        }
+    }
+
+    private static DataOutputStream open(String path) throws IOException {
+        return new DataOutputStream(
+              new BufferedOutputStream(new FileOutputStream(path)));
+    }
+
+    /**
+     * Command-line entry point.
+     *
+     * @param args the resource type ({@code vocab} or {@code metadata}), the
+     *             input path, and the output path
+     * @throws IOException if either file cannot be accessed.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            usage();
+            return;
+        }
+        switch (args[0]) {
+            case "vocab":
+                compileVocabulary(args[1], args[2]);
+                break;
+            case "metadata":
+                compileMetadata(args[1], args[2]);
+                break;
+            default:
+                usage();
+                break;
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: NLUResourceCompiler "
+              + "(vocab|metadata) <input> <output>");
+    }
+}
@@ -0,0 +1,199 @@
+package io.spokestack.spokestack.nlu.tensorflow;
+
+import android.os.SystemClock;
+import io.spokestack.spokestack.nlu.NLUResult;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A bounded, least-recently-used cache of successful classification results,
+ * keyed by normalized utterance text.
+ *
+ * <p>
+ * Utterances are normalized by trimming, collapsing internal whitespace, and
+ * lower-casing, since the model's text encoder is insensitive to those
+ * differences. A cached result is returned with the caller's original
+ * utterance, but its slots' raw values reflect the text that was originally
+ * classified.
+ * </p>
+ *
+ * <p>
+ * Each entry records the version of the model that produced it, so results
+ * from a replaced model are never returned even if they are stored after the
+ * cache has been cleared.
+ * </p>
+ */
+final class NLUResultCache {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final int maxEntries;
+    private final long ttl;
+    private final LinkedHashMap<String, CacheEntry> entries;
+    private int hits;
+    private int misses;
+
+    /**
+     * Create a new cache.
+     *
+     * @param capacity The maximum number of results to keep. A capacity of 0
+     *                 disables the cache.
+     * @param ttlMs    The length of time, in milliseconds, for which a result
+     *                 remains valid. A value of 0 disables expiration.
+     */
+    NLUResultCache(int capacity, long ttlMs) {
+        this.maxEntries = capacity;
+        this.ttl = ttlMs;
+        // access order makes iteration order least- to most-recently used
+        this.entries =
+              new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+                  @Override
+                  protected boolean removeEldestEntry(
+                        Map.Entry<String, CacheEntry> eldest) {
+                      return size() > maxEntries;
+                  }
+              };
+    }
+
+    /**
+     * @return {@code true} if the cache stores results; {@code false} if it
+     * has been disabled.
+     */
+    boolean isEnabled() {
+        return this.maxEntries > 0;
+    }
+
+    /**
+     * Retrieve a cached result.
+     *
+     * @param utterance    The utterance to look up.
+     * @param modelVersion The version of the current model.
+     * @return A result for {@code utterance}, or {@code null} if none is
+     * cached for the current model.
+     */
+    synchronized NLUResult get(String utterance, int modelVersion) {
+        String key = normalize(utterance);
+        CacheEntry entry = this.entries.get(key);
+        if (entry != null && !isValid(entry, modelVersion)) {
+            this.entries.remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            this.misses++;
+            return null;
+        }
+        this.hits++;
+        return copy(entry.result, utterance);
+    }
+
+    /**
+     * Store a result. Results that contain errors are not cached.
+     *
+     * @param result       The result to store.
+     * @param modelVersion The version of the model that produced the result.
+     */
+    synchronized void put(NLUResult result, int modelVersion) {
+        if (!isEnabled() || result.getError() != null) {
+            return;
+        }
+        this.entries.put(normalize(result.getUtterance()),
+              new CacheEntry(copy(result, result.getUtterance()),
+                    modelVersion,
+                    SystemClock.elapsedRealtime()));
+    }
+
+    /**
+     * Remove all cached results.
+     */
+    synchronized void clear() {
+        this.entries.clear();
+    }
+
+    /**
+     * @return The number of lookups that found a valid result.
+     */
+    synchronized int getHits() {
+        return this.hits;
+    }
+
+    /**
+     * @return The number of lookups that did not find a valid result.
+     */
+    synchronized int getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * @return The number of results currently cached.
+     */
+    synchronized int size() {
+        return this.entries.size();
+    }
+
+    private boolean isValid(CacheEntry entry, int modelVersion) {
+        if (entry.modelVersion != modelVersion) {
+            return false;
+        }
+        return this.ttl <= 0
+              || SystemClock.elapsedRealtime() - entry.created < this.ttl;
+    }
+
+    // results' maps are mutable, so neither the listener that received a
+    // result nor one that receives a cached copy may share the cache's maps,
+    // including those nested in the context, like its "intents" scores
+    private static NLUResult copy(NLUResult result, String utterance) {
+        return new NLUResult.Builder(utterance)
+              .withIntent(result.getIntent())
+              .withConfidence(result.getConfidence())
+              .withSlots(copy(result.getSlots()))
+              .withContext(deepCopy(result.getContext()))
+              .build();
+    }
+
+    private static <V> Map<String, V> copy(Map<String, V> map) {
+        return map == null ? null : new HashMap<>(map);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T deepCopy(T value) {
+        if (value instanceof Map) {
+            // nested maps keep their order; intent scores are ranked
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(entry.getKey(), deepCopy(entry.getValue()));
+            }
+            return (T) copy;
+        }
+        if (value instanceof List) {
+            List<Object> copy = new ArrayList<>();
+            for (Object item : (List<?>) value) {
+                copy.add(deepCopy(item));
+            }
+            return (T) copy;
+        }
+        return value;
+    }
+
+    private String normalize(String utterance) {
+        return WHITESPACE.matcher(utterance.trim())
+              .replaceAll(" ")
+              .toLowerCase(Locale.ROOT);
+    }
+
+    private static final class CacheEntry {
+        private final NLUResult result;
+        private final int modelVersion;
+        private final long created;
+
+        CacheEntry(NLUResult nluResult, int version, long createdAt) {
+            this.result = nluResult;
+            this.modelVersion = version;
+            this.created = createdAt;
+        }
+    }
+}
@@ -0,0 +1,566 @@
+package io.spokestack.spokestack.nlu.tensorflow;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import io.spokestack.spokestack.SpeechConfig;
+import io.spokestack.spokestack.nlu.NLUContext;
+import io.spokestack.spokestack.nlu.NLUResult;
+import io.spokestack.spokestack.nlu.NLUService;
+import io.spokestack.spokestack.nlu.Slot;
+import io.spokestack.spokestack.nlu.TraceListener;
+import io.spokestack.spokestack.nlu.tensorflow.parsers.DigitsParser;
+import io.spokestack.spokestack.nlu.tensorflow.parsers.IdentityParser;
+import io.spokestack.spokestack.nlu.tensorflow.parsers.IntegerParser;
+import io.spokestack.spokestack.nlu.tensorflow.parsers.SelsetParser;
+import io.spokestack.spokestack.util.AsyncResult;
+import io.spokestack.spokestack.util.EventTracer;
+
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * An NLU service that classifies utterances by matching them against a
+ * fixed set of patterns, passing any utterance that matches none of them to
+ * another NLU service, usually a {@link TensorflowNLU}.
+ *
+ * <p>
+ * Many utterances are short, exact commands ("stop", "next track") that do
+ * not need a neural model to classify. Matching these against patterns takes
+ * microseconds, and the results are returned without queueing, leaving the
+ * model's interpreters free for the utterances that need them.
+ * </p>
+ *
+ * <p>
+ * Patterns are read from a JSON file of the following form:
+ * </p>
+ * <pre>
+ * {
+ *   "rules": [
+ *     {"intent": "command.stop", "patterns": ["stop", "stop playing"]},
+ *     {"intent": "command.volume", "patterns": ["set volume to {level}"]}
+ *   ]
+ * }
+ * </pre>
+ *
+ * <p>
+ * Each pattern is a sequence of words and slot placeholders. Words are matched
+ * without regard to case or to punctuation at the beginning or end of a word.
+ * A placeholder names a slot of the rule's intent in the model's metadata and
+ * matches one or more words that the slot's {@link SlotParser} accepts, so
+ * {@code "set volume to {level}"} does not match "set volume to loud" if
+ * {@code level} is an integer slot. Results report the slots of a matched
+ * intent exactly as the model would, including implicit slots, with a
+ * confidence of 1.
+ * </p>
+ *
+ * <p>
+ * Patterns are compiled into a trie of words, so the time taken to match an
+ * utterance depends on the utterance rather than on the number of patterns.
+ * The patterns and metadata are loaded in the background; utterances
+ * classified before they are ready are passed to the fallback service.
+ * </p>
+ *
+ * <p>
+ * This component supports the following configuration properties:
+ * </p>
+ * <ul>
+ *   <li>
+ *      <b>nlu-rules-path</b> (string, required): file system path to the
+ *      JSON file containing the patterns.
+ *   </li>
+ *   <li>
+ *      <b>nlu-metadata-path</b> (string, required): file system path to the
+ *      NLU model's metadata, used to look up the slots of each intent. The
+ *      metadata may be either JSON or compiled by
+ *      {@link NLUResourceCompiler}.
+ *   </li>
+ * </ul>
+ */
+public final class RuleNLU implements NLUService {
+    private static final Gson GSON = new Gson();
+
+    private final NLUService fallback;
+    private final NLUContext context;
+    private final AsyncResult<Void> loaded;
+    private final Map<String, String> slotParserClasses;
+
+    private volatile Rules rules;
+    private int hits;
+    private int misses;
+
+    private RuleNLU(Builder builder) {
+        this.fallback = builder.fallback;
+        this.context = builder.context;
+        this.slotParserClasses = builder.slotParserClasses;
+        String rulesPath = builder.config.getString("nlu-rules-path");
+        String metadataPath = builder.config.getString("nlu-metadata-path");
+        this.loaded = new AsyncResult<>(() -> {
+            load(rulesPath, metadataPath);
+            return null;
+        });
+        builder.loadExecutor.execute(this.loaded);
+    }
+
+    private void load(String rulesPath, String metadataPath)
+          throws Exception {
+        try {
+            Metadata metadata = Metadata.load(metadataPath);
+            RuleFile ruleFile;
+            try (FileReader fileReader = new FileReader(rulesPath);
+                 JsonReader reader = new JsonReader(fileReader)) {
+                ruleFile = GSON.fromJson(reader, RuleFile.class);
+            }
+            Map<String, SlotParser> parsers = new HashMap<>();
+            for (Map.Entry<String, String> entry
+                  : this.slotParserClasses.entrySet()) {
+                parsers.put(entry.getKey(),
+                      SlotParserRegistry.get(entry.getValue()));
+            }
+            this.rules = compile(ruleFile, metadata, parsers);
+        } catch (Exception e) {
+            this.context.traceError("Error loading NLU rules: %s",
+                  e.getLocalizedMessage());
+            throw e;
+        }
+    }
+
+    private Rules compile(RuleFile ruleFile,
+                          Metadata metadata,
+                          Map<String, SlotParser> parsers) {
+        Map<String, Metadata.Intent> intents = new HashMap<>();
+        for (Metadata.Intent intent : metadata.getIntents()) {
+            intents.put(intent.getName(), intent);
+        }
+        Node root = new Node();
+        for (Rule rule : ruleFile.rules) {
+            Metadata.Intent intent = intents.get(rule.intent);
+            if (intent == null) {
+                this.context.traceError("Unknown intent in NLU rules: %s",
+                      rule.intent);
+                continue;
+            }
+            for (String pattern : rule.patterns) {
+                addPattern(root, intent, pattern, parsers);
+            }
+        }
+        TFNLUOutput outputParser = new TFNLUOutput(metadata);
+        outputParser.registerSlotParsers(parsers);
+        return new Rules(root, parsers, outputParser);
+    }
+
+    private void addPattern(Node root,
+                            Metadata.Intent intent,
+                            String pattern,
+                            Map<String, SlotParser> parsers) {
+        // build the pattern's path off to the side so that an invalid
+        // pattern leaves the trie untouched
+        List<String> words = new ArrayList<>();
+        List<Metadata.Slot> slots = new ArrayList<>();
+        for (String word : split(pattern)) {
+            String key = null;
+            Metadata.Slot slot = null;
+            if (word.startsWith("{") && word.endsWith("}")) {
+                String name = word.substring(1, word.length() - 1);
+                slot = findSlot(intent, name);
+                if (slot == null || !parsers.containsKey(slot.getType())) {
+                    this.context.traceError(
+                          "Invalid slot in NLU rule \"%s\": %s",
+                          pattern, name);
+                    return;
+                }
+            } else {
+                key = normalize(word).toLowerCase(Locale.ROOT);
+                if (key.isEmpty()) {
+                    continue;
+                }
+            }
+            words.add(key);
+            slots.add(slot);
+        }
+
+        Node node = root;
+        for (int i = 0; i < words.size(); i++) {
+            node = (slots.get(i) == null)
+                  ? node.wordChild(words.get(i))
+                  : node.slotChild(slots.get(i));
+        }
+        // the first rule for a pattern takes precedence
+        if (node.intent == null) {
+            node.intent = intent;
+        }
+    }
+
+    private static Metadata.Slot findSlot(Metadata.Intent intent,
+                                          String name) {
+        Metadata.Slot[] slots = intent.getSlots();
+        if (slots != null) {
+            for (Metadata.Slot slot : slots) {
+                if (slot.getName().equals(name)) {
+                    return slot;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return A handle that completes when the patterns have been loaded, or
+     * with the error that prevented them from loading.
+     */
+    public AsyncResult<Void> getReadiness() {
+        return this.loaded;
+    }
+
+    /**
+     * @return The number of utterances classified by a pattern.
+     */
+    public synchronized int getHits() {
+        return this.hits;
+    }
+
+    /**
+     * @return The number of utterances passed to the fallback service.
+     */
+    public synchronized int getMisses() {
+        return this.misses;
+    }
+
+    @Override
+    public AsyncResult<NLUResult> classify(String utterance,
+                                           NLUContext nluContext) {
+        Rules current = this.rules;
+        NLUResult matched = null;
+        if (current != null) {
+            long start = System.nanoTime();
+            matched = match(current, utterance);
+            if (nluContext.canTrace(EventTracer.Level.PERF)) {
+                nluContext.tracePerf("Rule matching: %dus",
+                      (System.nanoTime() - start) / 1000);
+            }
+        }
+        synchronized (this) {
+            if (matched != null) {
+                this.hits++;
+            } else {
+                this.misses++;
+            }
+        }
+        if (matched == null) {
+            return this.fallback.classify(utterance, nluContext);
+        }
+        nluContext.traceDebug("Rule match: %s", matched.getIntent());
+        NLUResult result = matched;
+        AsyncResult<NLUResult> asyncResult = new AsyncResult<>(() -> result);
+        asyncResult.run();
+        return asyncResult;
+    }
+
+    private NLUResult match(Rules current, String utterance) {
+        List<String> words = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        for (String word : split(utterance)) {
+            String normalized = normalize(word);
+            if (!normalized.isEmpty()) {
+                words.add(normalized);
+                keys.add(normalized.toLowerCase(Locale.ROOT));
+            }
+        }
+        if (words.isEmpty()) {
+            return null;
+        }
+        Map<String, String> captures = new HashMap<>();
+        Metadata.Intent intent =
+              match(current, current.root, words, keys, 0, captures);
+        if (intent == null) {
+            return null;
+        }
+        Map<String, Slot> slots =
+              current.outputParser.parseSlots(intent, captures);
+        return new NLUResult.Builder(utterance)
+              .withIntent(intent.getName())
+              .withConfidence(1.0f)
+              .withSlots(slots)
+              .build();
+    }
+
+    private Metadata.Intent match(Rules current,
+                                  Node node,
+                                  List<String> words,
+                                  List<String> keys,
+                                  int position,
+                                  Map<String, String> captures) {
+        if (position == words.size()) {
+            return node.intent;
+        }
+        // a literal word is preferred to a slot value
+        Node next = node.words.get(keys.get(position));
+        if (next != null) {
+            Metadata.Intent intent =
+                  match(current, next, words, keys, position + 1, captures);
+            if (intent != null) {
+                return intent;
+            }
+        }
+        for (SlotEdge edge : node.slots) {
+            StringBuilder value = new StringBuilder();
+            for (int end = position; end < words.size(); end++) {
+                if (end > position) {
+                    value.append(' ');
+                }
+                value.append(words.get(end));
+                String raw = value.toString();
+                if (!accepts(current, edge.slot, raw)) {
+                    continue;
+                }
+                captures.put(edge.slot.getName(), raw);
+                Metadata.Intent intent =
+                      match(current, edge.next, words, keys, end + 1,
+                            captures);
+                if (intent != null) {
+                    return intent;
+                }
+                captures.remove(edge.slot.getName());
+            }
+        }
+        return null;
+    }
+
+    private boolean accepts(Rules current, Metadata.Slot slot, String raw) {
+        SlotParser parser = current.parsers.get(slot.getType());
+        try {
+            return parser.parse(slot.getFacets(), raw) != null;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static List<String> split(String text) {
+        List<String> words = new ArrayList<>();
+        int pos = 0;
+        int length = text.length();
+        while (pos < length) {
+            if (Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+                continue;
+            }
+            int start = pos;
+            while (pos < length && !Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+            words.add(text.substring(start, pos));
+        }
+        return words;
+    }
+
+    private static String normalize(String word) {
+        int start = 0;
+        int end = word.length();
+        while (start < end && isPunctuation(word.charAt(start))) {
+            start++;
+        }
+        while (end > start && isPunctuation(word.charAt(end - 1))) {
+            end--;
+        }
+        return word.substring(start, end);
+    }
+
+    private static boolean isPunctuation(char ch) {
+        int type = Character.getType(ch);
+        return (type >= Character.DASH_PUNCTUATION
+              && type <= Character.OTHER_PUNCTUATION)
+              || type == Character.INITIAL_QUOTE_PUNCTUATION
+              || type == Character.FINAL_QUOTE_PUNCTUATION;
+    }
+
+    /**
+     * The compiled patterns along with the parsers needed to check and parse
+     * their slot values. Never modified after it is compiled.
+     */
+    private static final class Rules {
+        private final Node root;
+        private final Map<String, SlotParser> parsers;
+        private final TFNLUOutput outputParser;
+
+        Rules(Node trieRoot,
+              Map<String, SlotParser> slotParsers,
+              TFNLUOutput parser) {
+            this.root = trieRoot;
+            this.parsers = slotParsers;
+            this.outputParser = parser;
+        }
+    }
+
+    /**
+     * A node in the pattern trie. Edges are either literal words or slots;
+     * a node at the end of a pattern records the pattern's intent.
+     */
+    private static final class Node {
+        private final Map<String, Node> words = new HashMap<>();
+        private final List<SlotEdge> slots = new ArrayList<>();
+        private Metadata.Intent intent;
+
+        Node wordChild(String word) {
+            Node child = this.words.get(word);
+            if (child == null) {
+                child = new Node();
+                this.words.put(word, child);
+            }
+            return child;
+        }
+
+        Node slotChild(Metadata.Slot slot) {
+            for (SlotEdge edge : this.slots) {
+                if (edge.slot == slot) {
+                    return edge.next;
+                }
+            }
+            SlotEdge edge = new SlotEdge(slot);
+            this.slots.add(edge);
+            return edge.next;
+        }
+    }
+
+    private static final class SlotEdge {
+        private final Metadata.Slot slot;
+        private final Node next = new Node();
+
+        SlotEdge(Metadata.Slot slotMeta) {
+            this.slot = slotMeta;
+        }
+    }
+
+    private static final class RuleFile {
+        private Rule[] rules;
+    }
+
+    private static final class Rule {
+        private String intent;
+        private String[] patterns;
+    }
+
+    /**
+     * Fluent builder interface for initializing a rule-based NLU component.
+     */
+    public static class Builder {
+        private SpeechConfig config = new SpeechConfig();
+        private List<TraceListener> traceListeners = new ArrayList<>();
+        private Map<String, String> slotParserClasses = new HashMap<>();
+        private NLUService fallback;
+        private NLUContext context;
+        private Executor loadExecutor;
+
+        /**
+         * Creates a new builder instance.
+         */
+        public Builder() {
+            config.put("trace-level", EventTracer.Level.ERROR.value());
+            registerSlotParser("digits", DigitsParser.class.getName());
+            registerSlotParser("integer", IntegerParser.class.getName());
+            registerSlotParser("selset", SelsetParser.class.getName());
+            registerSlotParser("entity", IdentityParser.class.getName());
+        }
+
+        /**
+         * Attaches a configuration object, overwriting any existing
+         * configuration.
+         *
+         * @param value configuration to attach
+         * @return this
+         */
+        public Builder setConfig(SpeechConfig value) {
+            this.config = value;
+            return this;
+        }
+
+        /**
+         * Sets a configuration value.
+         *
+         * @param key   configuration property name
+         * @param value property value
+         * @return this
+         */
+        public Builder setProperty(String key, Object value) {
+            config.put(key, value);
+            return this;
+        }
+
+        /**
+         * Sets the NLU service used to classify utterances that match no
+         * pattern.
+         *
+         * @param value the fallback NLU service
+         * @return this
+         */
+        public Builder setFallback(NLUService value) {
+            this.fallback = value;
+            return this;
+        }
+
+        /**
+         * Set the executor used to load the patterns and metadata. By
+         * default, they are loaded on a new thread.
+         *
+         * @param executor The executor to use for loading.
+         * @return this
+         */
+        public Builder setLoadExecutor(Executor executor) {
+            this.loadExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Register a custom parser for a slot of a specified type. A single
+         * instance of each parser class is shared by all NLU instances, so
+         * parsers must not keep state between calls.
+         *
+         * @param slotType    The type of slot that should be parsed by {@code
+         *                    parserClass}.
+         * @param parserClass The name of the class responsible for parsing
+         *                    slots of {@code slotType}.
+         * @return this
+         */
+        public Builder registerSlotParser(String slotType,
+                                          String parserClass) {
+            this.slotParserClasses.put(slotType, parserClass);
+            return this;
+        }
+
+        /**
+         * Adds a trace listener to receive events from the NLU system.
+         *
+         * @param listener the listener to register
+         * @return this
+         */
+        public Builder addTraceListener(TraceListener listener) {
+            this.traceListeners.add(listener);
+            return this;
+        }
+
+        /**
+         * Create a new rule-based NLU instance, loading its patterns in the
+         * background. Any errors encountered during loading will be reported
+         * to registered {@link TraceListener}s.
+         *
+         * @return An initialized {@code RuleNLU} instance
+         * @throws IllegalArgumentException if no fallback service has been set
+         */
+        public RuleNLU build() {
+            if (this.fallback == null) {
+                throw new IllegalArgumentException("no fallback NLU service");
+            }
+            this.context = new NLUContext(this.config);
+            for (TraceListener listener : this.traceListeners) {
+                this.context.addTraceListener(listener);
+            }
+            if (this.loadExecutor == null) {
+                this.loadExecutor = r -> new Thread(r).start();
+            }
+            return new RuleNLU(this);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package io.spokestack.spokestack.nlu.tensorflow;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A process-wide registry of slot parser instances, keyed by class name.
+ *
+ * <p>
+ * Slot parsers hold no per-request state, so a single instance of each parser
+ * class is created on first use and shared by every NLU instance and every
+ * model load thereafter, along with any lookup tables it builds.
+ * </p>
+ */
+final class SlotParserRegistry {
+    private static final ConcurrentMap<String, SlotParser> PARSERS =
+          new ConcurrentHashMap<>();
+
+    private SlotParserRegistry() {
+    }
+
+    /**
+     * Get the shared instance of a slot parser class, creating it if
+     * necessary.
+     *
+     * @param className The fully qualified name of the parser class, which
+     *                  must have a public no-argument constructor.
+     * @return The shared parser instance.
+     * @throws ReflectiveOperationException if the parser cannot be created.
+     */
+    static SlotParser get(String className)
+          throws ReflectiveOperationException {
+        SlotParser parser = PARSERS.get(className);
+        if (parser == null) {
+            SlotParser created = (SlotParser) Class.forName(className)
+                  .getConstructor()
+                  .newInstance();
+            parser = PARSERS.putIfAbsent(className, created);
+            if (parser == null) {
+                parser = created;
+            }
+        }
+        return parser;
+    }
+}
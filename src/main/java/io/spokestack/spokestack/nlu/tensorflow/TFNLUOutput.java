@@ -3,25 +3,81 @@ package io.spokestack.spokestack.nlu.tensorflow;
 import androidx.annotation.NonNull;
 import io.spokestack.spokestack.nlu.NLUContext;
 import io.spokestack.spokestack.nlu.Slot;
+import io.spokestack.spokestack.util.EventTracer;
 import io.spokestack.spokestack.util.Tuple;
 
 import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * An internal class to contain the business logic for turning raw model outputs
  * into usable intents/slots.
+ *
+ * <p>
+ * Model outputs are read in place through a {@link FloatBuffer} view of the
+ * output tensor. Tags are handled as integer identifiers, using a table
+ * mapping each tag to the slot it belongs to that is built once from the
+ * model's metadata, so the only strings created while decoding are the
+ * values of the slots that are actually present.
+ * </p>
+ *
+ * <p>
+ * By default, each token's tag is chosen independently. Constrained decoding
+ * instead chooses the most probable sequence of tags that is valid under the
+ * BIO scheme (an inside tag may only follow a tag for the same slot) using
+ * the Viterbi algorithm, which avoids fragmented or orphaned slot values.
+ * Constrained decoding treats the tag outputs as probabilities, and its
+ * working arrays are reused across calls on each thread.
+ * </p>
  */
 final class TFNLUOutput {
+    private static final int FLOAT_BYTES = 4;
+    private static final int OUTSIDE = -1;
+    private static final float MIN_PROBABILITY = 1e-30f;
 
     private final Metadata metadata;
+    private final String[] slotNames;
+    private final int[] tagSlots;
+    private final boolean[] insideTags;
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
     private Map<String, SlotParser> slotParsers;
+    private boolean constrained;
 
     TFNLUOutput(Metadata nluMetadata) {
         this.metadata = nluMetadata;
         this.slotParsers = new HashMap<>();
+
+        // tags are "o" or a "b_" or "i_" prefix followed by a slot name
+        String[] tags = nluMetadata.getTags();
+        this.tagSlots = new int[tags.length];
+        this.insideTags = new boolean[tags.length];
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < tags.length; i++) {
+            String tag = tags[i];
+            if (tag.equals("o")) {
+                this.tagSlots[i] = OUTSIDE;
+            } else {
+                String slotName = tag.substring(2);
+                int slot = names.indexOf(slotName);
+                if (slot < 0) {
+                    slot = names.size();
+                    names.add(slotName);
+                }
+                this.tagSlots[i] = slot;
+                this.insideTags[i] = tag.startsWith("i_");
+            }
+        }
+        this.slotNames = names.toArray(new String[0]);
     }
 
     /**
@@ -32,6 +88,16 @@ final class TFNLUOutput {
         this.slotParsers = parsers;
     }
 
+    /**
+     * Set whether slot tags should be decoded as the most probable valid tag
+     * sequence instead of independently for each token.
+     *
+     * @param useConstraints {@code true} to use constrained decoding.
+     */
+    public void setConstrainedDecoding(boolean useConstraints) {
+        this.constrained = useConstraints;
+    }
+
     /**
      * Extract the intent from the model's output tensor.
      *
@@ -42,8 +108,53 @@ final class TFNLUOutput {
      */
     public Tuple<Metadata.Intent, Float> getIntent(ByteBuffer output) {
         Metadata.Intent[] intents = this.metadata.getIntents();
-        Tuple<Integer, Float> prediction = bufferArgMax(output, intents.length);
-        return new Tuple<>(intents[prediction.first()], prediction.second());
+        FloatBuffer posteriors = output.asFloatBuffer();
+        int best = argMax(posteriors, 0, intents.length);
+        float confidence = posteriors.get(best);
+        skip(output, intents.length);
+        return new Tuple<>(intents[best], confidence);
+    }
+
+    /**
+     * Extract the most likely intents from the model's output tensor in a
+     * single pass.
+     *
+     * @param output The output tensor containing the intent prediction.
+     * @param k      The maximum number of intents to return.
+     * @return Tuples consisting of an intent and the model's posterior
+     * probability for it, ordered from most to least likely.
+     */
+    public List<Tuple<Metadata.Intent, Float>> getTopIntents(ByteBuffer output,
+                                                             int k) {
+        Metadata.Intent[] intents = this.metadata.getIntents();
+        FloatBuffer posteriors = output.asFloatBuffer();
+        int size = Math.min(k, intents.length);
+        int[] topIds = new int[size];
+        float[] topScores = new float[size];
+        int found = 0;
+        for (int i = 0; i < intents.length; i++) {
+            float score = posteriors.get(i);
+            // insertion into the sorted candidates; earlier intents win ties
+            int pos = found;
+            while (pos > 0 && topScores[pos - 1] < score) {
+                pos--;
+            }
+            if (pos < size) {
+                int moved = Math.min(found, size - 1) - pos;
+                System.arraycopy(topIds, pos, topIds, pos + 1, moved);
+                System.arraycopy(topScores, pos, topScores, pos + 1, moved);
+                topIds[pos] = i;
+                topScores[pos] = score;
+                found = Math.min(found + 1, size);
+            }
+        }
+        skip(output, intents.length);
+
+        List<Tuple<Metadata.Intent, Float>> top = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            top.add(new Tuple<>(intents[topIds[i]], topScores[i]));
+        }
+        return top;
     }
 
     /**
@@ -60,81 +171,143 @@ final class TFNLUOutput {
           NLUContext context,
           EncodedTokens encoded,
           ByteBuffer output) {
-        int numTokens = encoded.getIds().size();
-        String[] tagLabels = getLabels(output, numTokens);
-        context.traceDebug("Tag labels: %s", Arrays.toString(tagLabels));
-        Map<Integer, Integer> slotLocations = new HashMap<>();
-        Tuple<String, Integer> curSlot = null;
-        for (int i = 0; i < tagLabels.length; i++) {
-            String label = tagLabels[i];
-            if (label.equals("o")) {
-                if (curSlot != null) {
-                    slotLocations.put(curSlot.second(), i);
-                    curSlot = null;
-                }
-            } else {
-                String slotName = label.substring(2);
-                if (curSlot == null) {
-                    curSlot = new Tuple<>(slotName, i);
-                    slotLocations.put(curSlot.second(), i + 1);
-                } else {
-                    if (slotName.equals(curSlot.first())) {
-                        // if we're already processing a slot with the same
-                        // name, extend its end index
-                        slotLocations.put(curSlot.second(), i + 1);
-                    } else {
-                        curSlot = new Tuple<>(slotName, i);
-                    }
-                }
-            }
+        int numTokens = encoded.size();
+        int[] tagIds = getTagIds(output, numTokens);
+        if (context.canTrace(EventTracer.Level.DEBUG)) {
+            context.traceDebug("Tag labels: %s",
+                  Arrays.toString(getLabels(tagIds, numTokens)));
         }
 
+        // consecutive tokens tagged with the same slot form a single value;
+        // separate values for the same slot are joined in order
         Map<String, String> slots = new HashMap<>();
-        for (Map.Entry<Integer, Integer> slotRange : slotLocations.entrySet()) {
-            String value = encoded.decodeRange(slotRange.getKey(),
-                  slotRange.getValue(), true);
-            String slotName = tagLabels[slotRange.getKey()].substring(2);
-            String curValue = slots.get(slotName);
-            if (curValue != null) {
-                curValue += " " + value;
-                slots.put(slotName, curValue);
-            } else {
-                slots.put(slotName, value);
+        int start = 0;
+        int current = OUTSIDE;
+        for (int i = 0; i <= numTokens; i++) {
+            int slot = (i < numTokens) ? this.tagSlots[tagIds[i]] : OUTSIDE;
+            if (slot == current) {
+                continue;
             }
+            if (current != OUTSIDE) {
+                String name = this.slotNames[current];
+                String value = encoded.decodeRange(start, i, true);
+                String curValue = slots.get(name);
+                if (curValue != null) {
+                    value = curValue + " " + value;
+                }
+                slots.put(name, value);
+            }
+            current = slot;
+            start = i;
         }
         return slots;
     }
 
     String[] getLabels(ByteBuffer output, int numTokens) {
-        int numTags = this.metadata.getTags().length;
+        return getLabels(getTagIds(output, numTokens), numTokens);
+    }
+
+    private String[] getLabels(int[] tagIds, int numTokens) {
+        String[] tags = this.metadata.getTags();
         String[] labels = new String[numTokens];
-        for (int i = 0; i < labels.length; i++) {
-            Tuple<Integer, Float> labelled = bufferArgMax(output, numTags);
-            labels[i] = this.metadata.getTags()[labelled.first()];
+        for (int i = 0; i < numTokens; i++) {
+            labels[i] = tags[tagIds[i]];
         }
         return labels;
     }
 
-    private Tuple<Integer, Float> bufferArgMax(ByteBuffer buffer, int n) {
-        float[] posteriors = new float[n];
-        for (int i = 0; i < n; i++) {
-            posteriors[i] = buffer.getFloat();
+    /**
+     * Decode the tag for each token. The returned array belongs to the
+     * calling thread's scratch space and is overwritten by the next call.
+     */
+    private int[] getTagIds(ByteBuffer output, int numTokens) {
+        int numTags = this.tagSlots.length;
+        FloatBuffer posteriors = output.asFloatBuffer();
+        Scratch buffers = this.scratch.get();
+        buffers.ensureCapacity(numTokens, numTags);
+        int[] tagIds = buffers.tagIds;
+        if (this.constrained && numTokens > 0) {
+            viterbi(posteriors, numTokens, numTags, buffers);
+        } else {
+            for (int i = 0; i < numTokens; i++) {
+                tagIds[i] = argMax(posteriors, i * numTags, numTags);
+            }
         }
-        return argMax(posteriors);
+        skip(output, numTokens * numTags);
+        return tagIds;
     }
 
-    private Tuple<Integer, Float> argMax(float[] values) {
-        int maxIndex = 0;
-        float maxValue = values[0];
+    private void viterbi(FloatBuffer posteriors, int numTokens, int numTags,
+                         Scratch buffers) {
+        float[] scores = buffers.scores;
+        float[] next = buffers.nextScores;
+        int[] backPointers = buffers.backPointers;
+
+        for (int tag = 0; tag < numTags; tag++) {
+            scores[tag] = this.insideTags[tag]
+                  ? Float.NEGATIVE_INFINITY
+                  : logProb(posteriors.get(tag));
+        }
+        for (int token = 1; token < numTokens; token++) {
+            int offset = token * numTags;
+            for (int tag = 0; tag < numTags; tag++) {
+                int bestPrev = 0;
+                float best = Float.NEGATIVE_INFINITY;
+                for (int prev = 0; prev < numTags; prev++) {
+                    if (scores[prev] > best && canFollow(prev, tag)) {
+                        best = scores[prev];
+                        bestPrev = prev;
+                    }
+                }
+                next[tag] = best + logProb(posteriors.get(offset + tag));
+                backPointers[offset + tag] = bestPrev;
+            }
+            float[] swap = scores;
+            scores = next;
+            next = swap;
+        }
+
+        int[] tagIds = buffers.tagIds;
+        int tag = 0;
+        for (int i = 1; i < numTags; i++) {
+            if (scores[i] > scores[tag]) {
+                tag = i;
+            }
+        }
+        for (int token = numTokens - 1; token >= 0; token--) {
+            tagIds[token] = tag;
+            tag = backPointers[token * numTags + tag];
+        }
+    }
 
-        for (int i = 1; i < values.length; i++) {
-            float curVal = values[i];
+    private boolean canFollow(int prev, int tag) {
+        return !this.insideTags[tag]
+              || (this.tagSlots[prev] == this.tagSlots[tag]
+              && this.tagSlots[prev] != OUTSIDE);
+    }
+
+    private float logProb(float probability) {
+        // keep impossible tags comparable rather than letting every path
+        // through them collapse to negative infinity
+        return (float) Math.log(Math.max(probability, MIN_PROBABILITY));
+    }
+
+    private int argMax(FloatBuffer values, int offset, int n) {
+        int maxIndex = 0;
+        float maxValue = values.get(offset);
+        for (int i = 1; i < n; i++) {
+            float curVal = values.get(offset + i);
             if (curVal > maxValue) {
                 maxIndex = i;
                 maxValue = curVal;
             }
         }
-        return new Tuple<>(maxIndex, maxValue);
+        return maxIndex;
+    }
+
+    private void skip(ByteBuffer buffer, int numFloats) {
+        // leave the buffer where relative reads would have
+        buffer.position(buffer.position() + numFloats * FLOAT_BYTES);
     }
 
     /**
@@ -193,4 +366,27 @@ final class TFNLUOutput {
                   + slotName, e);
         }
     }
+
+    /**
+     * Per-thread working arrays for tag decoding, grown as needed.
+     */
+    private static final class Scratch {
+        private int[] tagIds = new int[0];
+        private int[] backPointers = new int[0];
+        private float[] scores = new float[0];
+        private float[] nextScores = new float[0];
+
+        void ensureCapacity(int numTokens, int numTags) {
+            if (this.tagIds.length < numTokens) {
+                this.tagIds = new int[numTokens];
+            }
+            if (this.backPointers.length < numTokens * numTags) {
+                this.backPointers = new int[numTokens * numTags];
+            }
+            if (this.scores.length < numTags) {
+                this.scores = new float[numTags];
+                this.nextScores = new float[numTags];
+            }
+        }
+    }
 }
@@ -1,8 +1,6 @@
 package io.spokestack.spokestack.nlu.tensorflow;
 
 import android.os.SystemClock;
-import com.google.gson.Gson;
-import com.google.gson.stream.JsonReader;
 import io.spokestack.spokestack.SpeechConfig;
 import io.spokestack.spokestack.nlu.NLUContext;
 import io.spokestack.spokestack.nlu.NLUResult;
@@ -18,15 +16,30 @@ import io.spokestack.spokestack.util.AsyncResult;
 import io.spokestack.spokestack.util.EventTracer;
 import io.spokestack.spokestack.util.Tuple;
 
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * On-device natural language understanding powered by DistilBERT and TensorFlow
@@ -40,6 +53,44 @@ import java.util.concurrent.ThreadFactory;
  * </p>
  *
  * <p>
+ * By default, a single interpreter handles all classification requests in the
+ * order they are received. Apps that classify text from multiple sources
+ * concurrently can configure a pool of interpreters, each with its own
+ * classification thread, so that requests are processed in parallel. The
+ * interpreters in a pool share a single memory-mapped copy of the model.
+ * </p>
+ *
+ * <p>
+ * The model, its metadata, and the wordpiece vocabulary are loaded
+ * concurrently in the background, so building an instance never blocks the
+ * calling thread. {@link #getReadiness()} returns a handle that completes
+ * when loading has finished. Requests made before then are queued until the
+ * model is ready, failing if it does not become ready within
+ * {@code nlu-ready-timeout} milliseconds; a timeout of 0 makes them fail
+ * immediately instead.
+ * </p>
+ *
+ * <p>
+ * A new model can be loaded while the current one is in use by calling
+ * {@link #reload(String, String, String)}. The new model is loaded and warmed
+ * up in the background and then replaces the current one atomically; requests
+ * that have already started finish on the model they started with, and the
+ * old model's interpreters are closed once the last of them is done.
+ * </p>
+ *
+ * <p>
+ * Requests are scheduled by {@link Priority}. Interactive requests (the
+ * default for {@link #classify(String, NLUContext)}) are always taken from the
+ * queue before background requests (the default for
+ * {@link #classifyBatch(List, NLUContext)}); requests of equal priority are
+ * processed in the order they are received. Background batches are queued
+ * one {@code nlu-batch-size} chunk at a time, so an interactive request waits
+ * for at most one chunk per interpreter. A request that has been superseded
+ * before it starts can be cancelled via {@link AsyncResult#cancel(boolean)},
+ * which removes it from the queue immediately.
+ * </p>
+ *
+ * <p>
  * This component supports the following configuration properties:
  * </p>
  * <ul>
@@ -49,33 +100,110 @@ import java.util.concurrent.ThreadFactory;
  *   </li>
  *   <li>
  *      <b>nlu-metadata-path</b> (string, required): file system path to the
- *      model's metadata, used to decode intent and slot names and types.
+ *      model's metadata, used to decode intent and slot names and types. The
+ *      metadata may be either JSON or compiled by
+ *      {@link NLUResourceCompiler}.
  *   </li>
  *   <li>
  *      <b>wordpiece-vocab-path</b> (string, required): file system path to the
- *      wordpiece vocabulary file used by the wordpiece token encoder.
+ *      wordpiece vocabulary file used by the wordpiece token encoder. The
+ *      vocabulary may be either text or compiled by
+ *      {@link NLUResourceCompiler}.
+ *   </li>
+ *   <li>
+ *      <b>nlu-input-buckets</b> (string): comma-separated list of input
+ *      lengths, in tokens, to which utterances should be padded instead of
+ *      the model's maximum input length. Each utterance is padded to the
+ *      smallest bucket that fits it, and the model's input tensor is resized
+ *      to match. This can substantially reduce inference time for short
+ *      utterances, but it requires a model that accepts variable-length
+ *      input. Each bucket keeps its own interpreter state, so that switching
+ *      between buckets doesn't reallocate the model's tensors, at the cost
+ *      of the memory those tensors occupy. If this property is not set, all
+ *      utterances are padded to the model's maximum input length.
+ *   </li>
+ *   <li>
+ *      <b>nlu-pool-size</b> (integer): the number of interpreters (and
+ *      classification threads) used to process requests concurrently.
+ *      Defaults to 1.
+ *   </li>
+ *   <li>
+ *      <b>nlu-queue-capacity</b> (integer): the maximum number of
+ *      classification requests that may be waiting for an interpreter. Once
+ *      this limit is reached, new requests fail immediately with a
+ *      {@link RejectedExecutionException} attached to their result instead of
+ *      waiting. Defaults to unlimited.
+ *   </li>
+ *   <li>
+ *      <b>nlu-batch-size</b> (integer): the maximum number of utterances
+ *      classified by a single model invocation in
+ *      {@link #classifyBatch(List, NLUContext)}. Larger batches are split.
+ *      Batch classification resizes the model's batch dimension, so it
+ *      requires a model that accepts variable-size batches. Defaults to 32.
+ *   </li>
+ *   <li>
+ *      <b>nlu-cache-size</b> (integer): the maximum number of successful
+ *      results of {@link #classify(String, NLUContext)} to cache, keyed by
+ *      utterance text with case and extra whitespace removed. Cached results
+ *      are returned immediately, without queueing, and are discarded when
+ *      the model is loaded. Defaults to 0, which disables the cache.
+ *   </li>
+ *   <li>
+ *      <b>nlu-cache-ttl</b> (integer): the length of time, in milliseconds,
+ *      for which a cached result remains valid. Defaults to 0, meaning cached
+ *      results are kept until they are evicted to make room for new ones.
+ *   </li>
+ *   <li>
+ *      <b>nlu-intent-candidates</b> (integer): the number of most likely
+ *      intents to report for each utterance. If greater than 1, a result's
+ *      context contains an {@code "intents"} entry: a map from each candidate
+ *      intent name to the model's confidence in it, in decreasing order of
+ *      confidence. Defaults to 1, which adds nothing to the context.
+ *   </li>
+ *   <li>
+ *      <b>nlu-slot-decoding</b> (string): how slot tags are chosen from the
+ *      model's output. {@code greedy} (the default) takes the most likely tag
+ *      for each token independently; {@code constrained} takes the most
+ *      likely sequence of tags in which every inside tag continues a slot of
+ *      the same name, which avoids fragmented slot values.
+ *   </li>
+ *   <li>
+ *      <b>nlu-ready-timeout</b> (integer): the maximum time, in milliseconds,
+ *      that a request made before the model has finished loading waits for
+ *      it before failing. A value of 0 causes such requests to fail
+ *      immediately. Defaults to 10000.
  *   </li>
  * </ul>
  */
 public final class TensorflowNLU implements NLUService {
-    private final ExecutorService executor =
-          Executors.newSingleThreadExecutor();
-    private final TextEncoder textEncoder;
+    private static final int FLOAT_BYTES = 4;
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong taskSequence = new AtomicLong();
+    private final int poolSize;
+    private final int queueCapacity;
+    private final NLUResultCache resultCache;
+    private final TensorflowModel.Loader modelLoader;
+    private final Executor loadExecutor;
+    private final Map<String, String> slotParserClasses;
 
-    private TensorflowModel nluModel = null;
-    private TFNLUOutput outputParser = null;
     private NLUContext context;
-    private int maxTokens;
-    private int sepTokenId;
-    private int padTokenId;
+    private Map<String, SlotParser> slotParsers;
+    private int[] inputBuckets;
+    private int batchSize;
+    private int intentCandidates;
+    private boolean constrainedSlots;
 
-    private Thread loadThread;
-    private volatile boolean ready = false;
+    private final AsyncResult<Void> loaded;
+    private final int readyTimeout;
+    private volatile TextEncoder textEncoder;
+    private volatile LoadedModel current;
+    private int modelVersion;
 
     /**
      * Create a new NLU instance, automatically loading the TensorFlow model
-     * metadata in the background. Any errors encountered during loading will be
-     * reported to registered {@link TraceListener}s.
+     * and its metadata in the background. Any errors encountered during
+     * loading will be reported to registered {@link TraceListener}s.
      *
      * @param builder builder with configuration parameters
      */
@@ -84,61 +212,248 @@ public final class TensorflowNLU implements NLUService {
         String metadataPath = builder.config.getString("nlu-metadata-path");
         this.context = builder.context;
         this.textEncoder = builder.textEncoder;
-        this.loadThread = builder.threadFactory.newThread(
-              () -> {
-                  loadModel(builder.modelLoader, metadataPath, modelPath);
-                  initParsers(builder.slotParserClasses);
-              });
-        this.loadThread.start();
-        this.padTokenId = this.textEncoder.encodeSingle("[PAD]");
-        this.sepTokenId = this.textEncoder.encodeSingle("[SEP]");
+        this.inputBuckets = parseBuckets(
+              builder.config.getString("nlu-input-buckets", ""));
+        this.batchSize = builder.config.getInteger("nlu-batch-size", 32);
+        this.intentCandidates =
+              builder.config.getInteger("nlu-intent-candidates", 1);
+        this.constrainedSlots = "constrained".equals(
+              builder.config.getString("nlu-slot-decoding", "greedy"));
+        this.readyTimeout =
+              builder.config.getInteger("nlu-ready-timeout", 10000);
+        this.poolSize = builder.config.getInteger("nlu-pool-size", 1);
+        this.queueCapacity = builder.config.getInteger(
+              "nlu-queue-capacity", Integer.MAX_VALUE);
+        this.resultCache = new NLUResultCache(
+              builder.config.getInteger("nlu-cache-size", 0),
+              builder.config.getInteger("nlu-cache-ttl", 0));
+        this.modelLoader = builder.modelLoader;
+        this.loadExecutor = builder.loadExecutor;
+        this.slotParserClasses = builder.slotParserClasses;
+        // the priority queue is unbounded; capacity is enforced by submit()
+        this.executor = new ThreadPoolExecutor(
+              this.poolSize, this.poolSize,
+              0L, TimeUnit.MILLISECONDS,
+              new PriorityBlockingQueue<>());
+        this.loaded = load(modelPath, metadataPath, this.textEncoder);
     }
 
-    private void initParsers(Map<String, String> parserClasses) {
-        Map<String, SlotParser> slotParsers = new HashMap<>();
-        for (String slotType : parserClasses.keySet()) {
-            try {
-                SlotParser parser = (SlotParser) Class
-                      .forName(parserClasses.get(slotType))
-                      .getConstructor()
-                      .newInstance();
-                slotParsers.put(slotType, parser);
-                this.outputParser.registerSlotParsers(slotParsers);
-            } catch (Exception e) {
-                this.context.traceError("Error loading slot parsers: %s",
-                      e.getLocalizedMessage());
+    private int[] parseBuckets(String bucketSpec) {
+        String[] specs = bucketSpec.trim().split("\\s*,\\s*");
+        int[] buckets = new int[specs.length];
+        int numBuckets = 0;
+        for (String spec : specs) {
+            if (!spec.isEmpty()) {
+                buckets[numBuckets++] = Integer.parseInt(spec);
             }
         }
+        buckets = Arrays.copyOf(buckets, numBuckets);
+        Arrays.sort(buckets);
+        return buckets;
     }
 
-    private void loadModel(TensorflowModel.Loader loader,
-                           String metadataPath,
-                           String modelPath) {
-        try (FileReader fileReader = new FileReader(metadataPath);
-             JsonReader reader = new JsonReader(fileReader)) {
-            Gson gson = new Gson();
-            Metadata metadata = gson.fromJson(reader, Metadata.class);
-
-            this.nluModel = loader
-                  .setPath(modelPath)
-                  .load();
-            this.maxTokens = this.nluModel.inputs(0).capacity()
-                  / this.nluModel.getInputSize();
-            this.outputParser = new TFNLUOutput(metadata);
-            warmup();
-            this.ready = true;
-        } catch (IOException e) {
+    private synchronized Map<String, SlotParser> getSlotParsers() {
+        if (this.slotParsers == null) {
+            this.slotParsers = new HashMap<>();
+            for (String slotType : this.slotParserClasses.keySet()) {
+                try {
+                    SlotParser parser = SlotParserRegistry.get(
+                          this.slotParserClasses.get(slotType));
+                    this.slotParsers.put(slotType, parser);
+                } catch (Exception e) {
+                    this.context.traceError("Error loading slot parsers: %s",
+                          e.getLocalizedMessage());
+                }
+            }
+        }
+        return this.slotParsers;
+    }
+
+    /**
+     * Load a new model in the background, replacing the current model once
+     * the new one is ready to use. Requests that have already started finish
+     * on the model they started with, and requests made while the new model
+     * is loading continue to use the current one. If loading fails, the
+     * current model remains in use.
+     *
+     * <p>
+     * If several reloads are in progress at once, the model that finishes
+     * loading last is the one that remains in use.
+     * </p>
+     *
+     * @param modelPath    The path to the new TensorFlow Lite model.
+     * @param metadataPath The path to the new model's metadata.
+     * @param vocabPath    The path to the new model's wordpiece vocabulary,
+     *                     or {@code null} if the current vocabulary should be
+     *                     kept.
+     * @return A handle that completes when the new model is in use, or with
+     * the error that prevented it from being loaded.
+     */
+    public AsyncResult<Void> reload(String modelPath,
+                                    String metadataPath,
+                                    String vocabPath) {
+        TextEncoder encoder = this.textEncoder;
+        if (vocabPath != null) {
+            SpeechConfig vocabConfig = new SpeechConfig()
+                  .put("wordpiece-vocab-path", vocabPath);
+            encoder = new WordpieceTextEncoder(vocabConfig, this.context,
+                  this.loadExecutor);
+        }
+        return load(modelPath, metadataPath, encoder);
+    }
+
+    private AsyncResult<Void> load(String modelPath,
+                                   String metadataPath,
+                                   TextEncoder encoder) {
+        // the metadata loads alongside the model, and the vocabulary is
+        // loaded by the text encoder; the model's loader waits for both.
+        // the metadata is queued first so that a serial executor can't
+        // deadlock.
+        AsyncResult<Metadata> metadata =
+              new AsyncResult<>(() -> Metadata.load(metadataPath));
+        AsyncResult<Void> result = new AsyncResult<>(() -> {
+            publish(loadModel(modelPath, metadata, encoder));
+            return null;
+        });
+        this.loadExecutor.execute(metadata);
+        this.loadExecutor.execute(result);
+        return result;
+    }
+
+    private LoadedModel loadModel(String modelPath,
+                                  Future<Metadata> metadataResult,
+                                  TextEncoder encoder) throws Exception {
+        List<TensorflowModel> interpreters = new ArrayList<>();
+        try {
+            int maxTokens = 0;
+            // the loader is shared by all loads
+            synchronized (this.modelLoader) {
+                // interpreters in a pool share a single mapping of the model
+                // file
+                ByteBuffer modelBuffer = null;
+                if (this.poolSize > 1) {
+                    modelBuffer = mapModel(modelPath);
+                }
+                for (int i = 0; i < this.poolSize; i++) {
+                    this.modelLoader.setPath(modelPath);
+                    // keep the tensors of each bucket and the full input
+                    // length allocated, plus those of the latest batch
+                    this.modelLoader.setMaxShapes(
+                          this.inputBuckets.length + 2);
+                    if (modelBuffer != null) {
+                        this.modelLoader.setModelBuffer(modelBuffer);
+                    }
+                    TensorflowModel model = this.modelLoader.load();
+                    interpreters.add(model);
+                    maxTokens = model.inputs(0).capacity()
+                          / model.getInputSize();
+                    warmup(model, maxTokens);
+                }
+            }
+            Metadata metadata = metadataResult.get();
+            if (encoder instanceof WordpieceTextEncoder) {
+                ((WordpieceTextEncoder) encoder).getReadiness().get();
+            }
+            TFNLUOutput outputParser = new TFNLUOutput(metadata);
+            outputParser.setConstrainedDecoding(this.constrainedSlots);
+            outputParser.registerSlotParsers(getSlotParsers());
+            return new LoadedModel(interpreters, encoder, outputParser,
+                  metadata, maxTokens);
+        } catch (ExecutionException e) {
+            this.context.traceError("Error loading NLU resources: %s",
+                  e.getCause().getLocalizedMessage());
+            close(interpreters);
+            throw e;
+        } catch (Exception e) {
             this.context.traceError("Error loading NLU model: %s",
                   e.getLocalizedMessage());
+            close(interpreters);
+            throw e;
+        }
+    }
+
+    private static void close(List<TensorflowModel> interpreters) {
+        for (TensorflowModel interpreter : interpreters) {
+            interpreter.close();
+        }
+    }
+
+    private synchronized void publish(LoadedModel model) {
+        LoadedModel previous = this.current;
+        model.version = ++this.modelVersion;
+        this.textEncoder = model.encoder;
+        this.resultCache.clear();
+        this.current = model;
+        if (previous != null) {
+            previous.release();
+        }
+    }
+
+    private LoadedModel acquire() {
+        // a model is only retired after it has been replaced, so this
+        // succeeds on the next attempt if the model it saw was just retired
+        while (true) {
+            LoadedModel model = this.current;
+            if (model.acquire()) {
+                return model;
+            }
+        }
+    }
+
+    private ByteBuffer mapModel(String modelPath) throws IOException {
+        try (FileInputStream inputStream = new FileInputStream(modelPath);
+             FileChannel channel = inputStream.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                  channel.size());
         }
     }
 
-    private void warmup() {
-        this.nluModel.inputs(0).rewind();
-        for (int i = 0; i < maxTokens; i++) {
-            this.nluModel.inputs(0).putInt(0);
+    private void warmup(TensorflowModel model, int maxTokens) {
+        // run each input length once so that its buffers are allocated before
+        // the first classification
+        for (int bucket : this.inputBuckets) {
+            if (bucket < maxTokens) {
+                warmupLength(model, bucket);
+            }
         }
-        this.nluModel.run();
+        warmupLength(model, maxTokens);
+    }
+
+    private void warmupLength(TensorflowModel model, int inputLength) {
+        resizeInput(model, 1, inputLength);
+        model.inputs(0).rewind();
+        for (int i = 0; i < inputLength; i++) {
+            model.inputs(0).putInt(0);
+        }
+        model.run();
+    }
+
+    private void resizeInput(TensorflowModel model,
+                             int batchSize,
+                             int inputLength) {
+        // the model ignores requests for its current shape, so this is
+        // a no-op unless bucketing or batching has changed the input length
+        model.resizeInput(0, new int[]{batchSize, inputLength});
+    }
+
+    /**
+     * Get a handle that completes when the model, its metadata, and the
+     * wordpiece vocabulary have been loaded. If loading fails, the handle
+     * completes with the error. Callbacks registered with the handle are
+     * called on a loading thread.
+     *
+     * @return The readiness handle.
+     */
+    public AsyncResult<Void> getReadiness() {
+        return this.loaded;
+    }
+
+    /**
+     * @return {@code true} if the model has been loaded and is ready to
+     * classify utterances.
+     */
+    public boolean isReady() {
+        return this.current != null;
     }
 
     /**
@@ -146,7 +461,40 @@ public final class TensorflowNLU implements NLUService {
      * testing.
      */
     int getMaxTokens() {
-        return this.maxTokens;
+        LoadedModel model = this.current;
+        return (model == null) ? 0 : model.maxTokens;
+    }
+
+    /**
+     * @return The number of classification requests waiting for an
+     * interpreter.
+     */
+    public int getQueueDepth() {
+        return this.executor.getQueue().size();
+    }
+
+    /**
+     * @return The number of classification requests currently being
+     * processed.
+     */
+    public int getActiveCount() {
+        return this.executor.getActiveCount();
+    }
+
+    /**
+     * @return The number of classification requests answered from the result
+     * cache.
+     */
+    public int getCacheHits() {
+        return this.resultCache.getHits();
+    }
+
+    /**
+     * @return The number of classification requests that could not be
+     * answered from the result cache. Always 0 if the cache is disabled.
+     */
+    public int getCacheMisses() {
+        return this.resultCache.getMisses();
     }
 
     /**
@@ -165,12 +513,60 @@ public final class TensorflowNLU implements NLUService {
     @Override
     public AsyncResult<NLUResult> classify(String utterance,
                                            NLUContext nluContext) {
-        ensureReady();
-        AsyncResult<NLUResult> asyncResult = new AsyncResult<>(
+        return classify(utterance, nluContext, Priority.INTERACTIVE);
+    }
+
+    /**
+     * Classify a user utterance at the specified priority, returning a wrapper
+     * that can either block until the classification is complete or call a
+     * registered callback when the result is ready. Cancelling the result
+     * before classification starts removes the request from the queue.
+     *
+     * @param utterance  The utterance to classify.
+     * @param nluContext The NLU context used for tracing.
+     * @param priority   The scheduling priority of the request.
+     * @return An object representing the result of the asynchronous
+     * classification.
+     */
+    public AsyncResult<NLUResult> classify(String utterance,
+                                           NLUContext nluContext,
+                                           Priority priority) {
+        Exception notReady = checkReady();
+        if (notReady != null) {
+            return failed(utterance, notReady);
+        }
+        if (this.resultCache.isEnabled()) {
+            // no results are cached before the first model is loaded
+            LoadedModel currentModel = this.current;
+            int version = (currentModel == null) ? 0 : currentModel.version;
+            NLUResult cached = this.resultCache.get(utterance, version);
+            if (cached != null) {
+                nluContext.traceDebug("Cached result: %s", utterance);
+                nluContext.reset();
+                AsyncResult<NLUResult> cachedResult =
+                      new AsyncResult<>(() -> cached);
+                cachedResult.run();
+                return cachedResult;
+            }
+        }
+        long submitted = SystemClock.elapsedRealtime();
+        PriorityTask<NLUResult> asyncResult = new PriorityTask<>(
               () -> {
+                  LoadedModel model = null;
+                  TensorflowModel interpreter = null;
                   try {
                       long start = SystemClock.elapsedRealtime();
-                      NLUResult result = tfClassify(utterance, nluContext);
+                      if (nluContext.canTrace(EventTracer.Level.PERF)) {
+                          nluContext.tracePerf(
+                                "Queue wait: %5dms (depth: %d)",
+                                (start - submitted), getQueueDepth());
+                      }
+                      awaitReady();
+                      model = acquire();
+                      interpreter = model.pool.take();
+                      NLUResult result = tfClassify(model, interpreter,
+                            utterance, nluContext);
+                      this.resultCache.put(result, model.version);
                       if (nluContext.canTrace(EventTracer.Level.PERF)) {
                           nluContext.tracePerf("Classification: %5dms",
                                 (SystemClock.elapsedRealtime() - start));
@@ -181,50 +577,338 @@ public final class TensorflowNLU implements NLUService {
                             .withError(e)
                             .build();
                   } finally {
+                      if (model != null) {
+                          if (interpreter != null) {
+                              model.pool.add(interpreter);
+                          }
+                          model.release();
+                      }
                       nluContext.reset();
                   }
-              });
-        this.executor.submit(asyncResult);
+              }, priority);
+        try {
+            submit(asyncResult, nluContext);
+        } catch (RejectedExecutionException e) {
+            return failed(utterance, e);
+        }
         return asyncResult;
     }
 
-    private void ensureReady() {
-        if (!this.ready) {
+    private AsyncResult<NLUResult> failed(String utterance, Exception error) {
+        AsyncResult<NLUResult> result = new AsyncResult<>(
+              () -> new NLUResult.Builder(utterance)
+                    .withError(error)
+                    .build());
+        result.run();
+        return result;
+    }
+
+    /**
+     * Classify a batch of user utterances using a single model invocation
+     * per {@code nlu-batch-size} utterances, returning a wrapper that can
+     * either block until all classifications are complete or call a
+     * registered callback when the results are ready.
+     *
+     * @param utterances The utterances to classify.
+     * @return An object representing the results of the asynchronous
+     * classification, in the same order as {@code utterances}.
+     */
+    public AsyncResult<List<NLUResult>> classifyBatch(
+          List<String> utterances) {
+        return classifyBatch(utterances, this.context);
+    }
+
+    @Override
+    public AsyncResult<List<NLUResult>> classifyBatch(
+          List<String> utterances,
+          NLUContext nluContext) {
+        return classifyBatch(utterances, nluContext, Priority.BACKGROUND);
+    }
+
+    /**
+     * Classify a batch of user utterances at the specified priority using a
+     * single model invocation per {@code nlu-batch-size} utterances. Each
+     * chunk of the batch is queued separately, so higher-priority requests
+     * may be processed between chunks. Cancelling the result cancels any
+     * chunks that have not yet started.
+     *
+     * @param utterances The utterances to classify.
+     * @param nluContext The NLU context used for tracing.
+     * @param priority   The scheduling priority of the batch.
+     * @return An object representing the results of the asynchronous
+     * classification, in the same order as {@code utterances}.
+     */
+    public AsyncResult<List<NLUResult>> classifyBatch(
+          List<String> utterances,
+          NLUContext nluContext,
+          Priority priority) {
+        NLUResult[] results = new NLUResult[utterances.size()];
+        List<PriorityTask<Void>> chunks = new ArrayList<>();
+        AsyncResult<List<NLUResult>> batchResult =
+              new AsyncResult<List<NLUResult>>(
+                    () -> Arrays.asList(results)) {
+                  @Override
+                  public boolean cancel(boolean mayInterruptIfRunning) {
+                      for (PriorityTask<Void> chunk : chunks) {
+                          chunk.cancel(mayInterruptIfRunning);
+                      }
+                      return super.cancel(mayInterruptIfRunning);
+                  }
+              };
+        Exception notReady = checkReady();
+        if (utterances.isEmpty() || notReady != null) {
+            fillErrors(utterances, 0, results, notReady);
+            batchResult.run();
+            return batchResult;
+        }
+
+        // the batch completes on the thread that finishes its last chunk
+        long start = SystemClock.elapsedRealtime();
+        int numChunks = (utterances.size() + this.batchSize - 1)
+              / this.batchSize;
+        AtomicInteger remaining = new AtomicInteger(numChunks);
+        Runnable countDown = () -> {
+            if (remaining.decrementAndGet() == 0) {
+                if (nluContext.canTrace(EventTracer.Level.PERF)) {
+                    nluContext.tracePerf(
+                          "Batch classification (%d utterances): %5dms",
+                          utterances.size(),
+                          (SystemClock.elapsedRealtime() - start));
+                }
+                nluContext.reset();
+                batchResult.run();
+            }
+        };
+        for (int i = 0; i < utterances.size(); i += this.batchSize) {
+            int offset = i;
+            List<String> chunk = utterances.subList(offset,
+                  Math.min(offset + this.batchSize, utterances.size()));
+            chunks.add(new PriorityTask<>(
+                  () -> {
+                      try {
+                          classifyChunk(chunk, offset, results, nluContext);
+                      } finally {
+                          countDown.run();
+                      }
+                      return null;
+                  }, priority));
+        }
+        for (int i = 0; i < chunks.size(); i++) {
             try {
-                this.loadThread.join();
-            } catch (InterruptedException e) {
-                this.context.traceError("Interrupted during loading");
+                submit(chunks.get(i), nluContext);
+            } catch (RejectedExecutionException e) {
+                int offset = i * this.batchSize;
+                fillErrors(utterances.subList(offset,
+                      Math.min(offset + this.batchSize, results.length)),
+                      offset, results, e);
+                countDown.run();
             }
         }
+        return batchResult;
     }
 
-    private NLUResult tfClassify(String utterance, NLUContext nluContext) {
-        EncodedTokens encoded = this.textEncoder.encode(utterance);
+    private void classifyChunk(List<String> utterances,
+                               int offset,
+                               NLUResult[] results,
+                               NLUContext nluContext) {
+        LoadedModel model = null;
+        TensorflowModel interpreter = null;
+        try {
+            awaitReady();
+            model = acquire();
+            interpreter = model.pool.take();
+            List<NLUResult> chunkResults = tfClassifyBatch(model, interpreter,
+                  utterances, nluContext);
+            for (int i = 0; i < chunkResults.size(); i++) {
+                results[offset + i] = chunkResults.get(i);
+            }
+        } catch (Exception e) {
+            fillErrors(utterances, offset, results, e);
+        } finally {
+            if (model != null) {
+                if (interpreter != null) {
+                    model.pool.add(interpreter);
+                }
+                model.release();
+            }
+        }
+    }
+
+    private void fillErrors(List<String> utterances,
+                            int offset,
+                            NLUResult[] results,
+                            Exception error) {
+        for (int i = 0; i < utterances.size(); i++) {
+            results[offset + i] = new NLUResult.Builder(utterances.get(i))
+                  .withError(error)
+                  .build();
+        }
+    }
+
+    private void submit(PriorityTask<?> task, NLUContext nluContext) {
+        // the executor's priority queue is unbounded, so its capacity is
+        // checked here, under a lock so concurrent submissions can't exceed it
+        synchronized (this.executor) {
+            if (getQueueDepth() >= this.queueCapacity) {
+                nluContext.traceWarn("NLU queue full (depth: %d)",
+                      getQueueDepth());
+                throw new RejectedExecutionException("NLU queue full");
+            }
+            this.executor.execute(task);
+        }
+    }
+
+    private Exception checkReady() {
+        if (this.current != null) {
+            return null;
+        }
+        if (this.loaded.isDone()) {
+            return new IllegalStateException("NLU model failed to load");
+        }
+        if (this.readyTimeout == 0) {
+            return new IllegalStateException("NLU model is not ready");
+        }
+        return null;
+    }
+
+    private void awaitReady() throws Exception {
+        if (this.current != null) {
+            return;
+        }
+        try {
+            this.loaded.get(this.readyTimeout, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("NLU model failed to load",
+                  e.getCause());
+        } catch (TimeoutException e) {
+            throw new TimeoutException("NLU model not ready after "
+                  + this.readyTimeout + "ms");
+        }
+    }
+
+    private NLUResult tfClassify(LoadedModel model,
+                                 TensorflowModel nluModel,
+                                 String utterance,
+                                 NLUContext nluContext) {
+        EncodedTokens encoded = model.encoder.encode(utterance);
         nluContext.traceDebug("Token IDs: %s", encoded.getIds());
 
-        int[] tokenIds = pad(encoded.getIds());
-        this.nluModel.inputs(0).rewind();
+        int[] tokenIds =
+              pad(model, encoded, inputLength(model, encoded.size()));
+        resizeInput(nluModel, 1, tokenIds.length);
+        nluModel.inputs(0).rewind();
         for (int tokenId : tokenIds) {
-            this.nluModel.inputs(0).putInt(tokenId);
+            nluModel.inputs(0).putInt(tokenId);
         }
 
         long start = SystemClock.elapsedRealtime();
-        this.nluModel.run();
+        nluModel.run();
         if (nluContext.canTrace(EventTracer.Level.PERF)) {
             nluContext.tracePerf("Inference: %5dms",
                   (SystemClock.elapsedRealtime() - start));
         }
 
-        // interpret model outputs
-        Tuple<Metadata.Intent, Float> prediction = outputParser.getIntent(
-              this.nluModel.outputs(0));
+        return decode(model, utterance, encoded, nluModel.outputs(0),
+              nluModel.outputs(1), nluContext);
+    }
+
+    private List<NLUResult> tfClassifyBatch(LoadedModel model,
+                                            TensorflowModel nluModel,
+                                            List<String> utterances,
+                                            NLUContext nluContext) {
+        NLUResult[] results = new NLUResult[utterances.size()];
+        EncodedTokens[] encoded = new EncodedTokens[utterances.size()];
+        int numRows = 0;
+        int longest = 0;
+        for (int i = 0; i < utterances.size(); i++) {
+            try {
+                encoded[i] = model.encoder.encode(utterances.get(i));
+                int numTokens = encoded[i].size();
+                checkLength(model, numTokens);
+                longest = Math.max(longest, numTokens);
+                numRows++;
+            } catch (Exception e) {
+                encoded[i] = null;
+                results[i] = new NLUResult.Builder(utterances.get(i))
+                      .withError(e)
+                      .build();
+            }
+        }
+        if (numRows == 0) {
+            return Arrays.asList(results);
+        }
+
+        // every row is padded to the length required by the longest one
+        int inputLength = inputLength(model, longest);
+        resizeInput(nluModel, numRows, inputLength);
+        nluModel.inputs(0).rewind();
+        for (EncodedTokens tokens : encoded) {
+            if (tokens != null) {
+                for (int tokenId : pad(model, tokens, inputLength)) {
+                    nluModel.inputs(0).putInt(tokenId);
+                }
+            }
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        nluModel.run();
+        if (nluContext.canTrace(EventTracer.Level.PERF)) {
+            nluContext.tracePerf("Batch inference (%d utterances): %5dms",
+                  numRows, (SystemClock.elapsedRealtime() - start));
+        }
+
+        ByteBuffer intentOutput = nluModel.outputs(0);
+        ByteBuffer tagOutput = nluModel.outputs(1);
+        int row = 0;
+        for (int i = 0; i < results.length; i++) {
+            if (encoded[i] == null) {
+                continue;
+            }
+            intentOutput.position(row * model.numIntents * FLOAT_BYTES);
+            tagOutput.position(
+                  row * inputLength * model.numTags * FLOAT_BYTES);
+            try {
+                results[i] = decode(model, utterances.get(i), encoded[i],
+                      intentOutput, tagOutput, nluContext);
+            } catch (Exception e) {
+                results[i] = new NLUResult.Builder(utterances.get(i))
+                      .withError(e)
+                      .build();
+            }
+            row++;
+        }
+        return Arrays.asList(results);
+    }
+
+    private NLUResult decode(LoadedModel model,
+                             String utterance,
+                             EncodedTokens encoded,
+                             ByteBuffer intentOutput,
+                             ByteBuffer tagOutput,
+                             NLUContext nluContext) {
+        TFNLUOutput outputParser = model.outputParser;
+        Tuple<Metadata.Intent, Float> prediction;
+        Map<String, Object> resultContext = new HashMap<>();
+        if (this.intentCandidates > 1) {
+            List<Tuple<Metadata.Intent, Float>> candidates =
+                  outputParser.getTopIntents(intentOutput,
+                        this.intentCandidates);
+            prediction = candidates.get(0);
+            Map<String, Float> scores = new LinkedHashMap<>();
+            for (Tuple<Metadata.Intent, Float> candidate : candidates) {
+                scores.put(candidate.first().getName(), candidate.second());
+            }
+            resultContext.put("intents", scores);
+        } else {
+            prediction = outputParser.getIntent(intentOutput);
+        }
         Metadata.Intent intent = prediction.first();
         nluContext.traceDebug("Intent: %s", intent.getName());
 
         Map<String, String> slots = outputParser.getSlots(
               nluContext,
               encoded,
-              this.nluModel.outputs(1));
+              tagOutput);
         Map<String, Slot> parsedSlots = outputParser.parseSlots(intent, slots);
         nluContext.traceDebug("Slots: %s", parsedSlots.toString());
 
@@ -232,33 +916,165 @@ public final class TensorflowNLU implements NLUService {
               .withIntent(intent.getName())
               .withConfidence(prediction.second())
               .withSlots(parsedSlots)
+              .withContext(resultContext)
               .build();
     }
 
-    private int[] pad(List<Integer> ids) {
-        if (ids.size() > this.maxTokens) {
+    private void checkLength(LoadedModel model, int numTokens) {
+        if (numTokens > model.maxTokens) {
             throw new IllegalArgumentException(
-                  "input: " + ids.size() + " tokens; max input length is: "
-                        + this.maxTokens);
+                  "input: " + numTokens + " tokens; max input length is: "
+                        + model.maxTokens);
         }
-        int[] padded = new int[this.maxTokens];
-        for (int i = 0; i < ids.size(); i++) {
-            padded[i] = ids.get(i);
+    }
+
+    private int[] pad(LoadedModel model,
+                      EncodedTokens encoded,
+                      int inputLength) {
+        int numTokens = encoded.size();
+        checkLength(model, numTokens);
+        int[] padded = new int[inputLength];
+        for (int i = 0; i < numTokens; i++) {
+            padded[i] = encoded.getId(i);
         }
-        if (ids.size() < this.maxTokens) {
-            padded[ids.size()] = sepTokenId;
+        if (numTokens < padded.length) {
+            padded[numTokens] = model.sepTokenId;
             // if padTokenId is 0, we can rely on the fact that that's the
             // default value for primitive ints and not bother re-filling the
             // array in a loop
-            if (padTokenId != 0) {
-                for (int i = ids.size() + 2; i < padded.length; i++) {
-                    padded[i] = padTokenId;
+            if (model.padTokenId != 0) {
+                for (int i = numTokens + 2; i < padded.length; i++) {
+                    padded[i] = model.padTokenId;
                 }
             }
         }
         return padded;
     }
 
+    private int inputLength(LoadedModel model, int numTokens) {
+        // leave room for the separator token
+        for (int bucket : this.inputBuckets) {
+            if (bucket > numTokens && bucket < model.maxTokens) {
+                return bucket;
+            }
+        }
+        return model.maxTokens;
+    }
+
+    /**
+     * A loaded model's interpreters along with everything else needed to
+     * classify utterances with it. A loaded model is never modified after it
+     * is put into use, so requests can use it without locking while another
+     * model loads.
+     *
+     * <p>
+     * Each request holds a reference to the model it uses, as does the NLU
+     * itself while the model is current. The interpreters are closed when the
+     * last reference is released.
+     * </p>
+     */
+    private static final class LoadedModel {
+        private final BlockingQueue<TensorflowModel> pool;
+        private final TextEncoder encoder;
+        private final TFNLUOutput outputParser;
+        private final int maxTokens;
+        private final int numIntents;
+        private final int numTags;
+        private final int padTokenId;
+        private final int sepTokenId;
+        private final AtomicInteger references = new AtomicInteger(1);
+        private int version;
+
+        LoadedModel(List<TensorflowModel> interpreters,
+                    TextEncoder textEncoder,
+                    TFNLUOutput parser,
+                    Metadata metadata,
+                    int maxInputLength) {
+            this.pool = new ArrayBlockingQueue<>(interpreters.size());
+            this.pool.addAll(interpreters);
+            this.encoder = textEncoder;
+            this.outputParser = parser;
+            this.maxTokens = maxInputLength;
+            this.numIntents = metadata.getIntents().length;
+            this.numTags = metadata.getTags().length;
+            this.padTokenId = textEncoder.encodeSingle("[PAD]");
+            this.sepTokenId = textEncoder.encodeSingle("[SEP]");
+        }
+
+        boolean acquire() {
+            while (true) {
+                int count = this.references.get();
+                if (count == 0) {
+                    return false;
+                }
+                if (this.references.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            if (this.references.decrementAndGet() == 0) {
+                // every request has returned its interpreter by now
+                close(new ArrayList<>(this.pool));
+            }
+        }
+    }
+
+    /**
+     * Scheduling priorities for classification requests.
+     */
+    public enum Priority {
+        /**
+         * Requests on behalf of a user who is waiting for the result, such as
+         * the classification of a live utterance.
+         */
+        INTERACTIVE,
+
+        /**
+         * Speculative or bulk requests that should only use interpreters not
+         * needed for interactive requests.
+         */
+        BACKGROUND
+    }
+
+    /**
+     * A classification task ordered by priority and then by submission order.
+     * Cancelling a queued task removes it from the queue so that it no longer
+     * counts against the queue's capacity.
+     *
+     * @param <T> The type of result produced by the task.
+     */
+    private final class PriorityTask<T> extends AsyncResult<T>
+          implements Comparable<PriorityTask<?>> {
+        private final Priority priority;
+        private final long sequence;
+
+        PriorityTask(Callable<T> callable, Priority priority) {
+            super(callable);
+            this.priority = priority;
+            this.sequence = taskSequence.getAndIncrement();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                executor.remove(this);
+            }
+            return cancelled;
+        }
+
+        @Override
+        public int compareTo(PriorityTask<?> other) {
+            int order = this.priority.compareTo(other.priority);
+            if (order == 0) {
+                order = Long.compare(this.sequence, other.sequence);
+            }
+            return order;
+        }
+    }
+
     /**
      * Fluent builder interface for initializing a TensorFlow NLU model.
      */
@@ -269,6 +1085,7 @@ public final class TensorflowNLU implements NLUService {
         private SpeechConfig config = new SpeechConfig();
         private TensorflowModel.Loader modelLoader;
         private ThreadFactory threadFactory;
+        private Executor loadExecutor;
         private TextEncoder textEncoder;
 
         /**
@@ -294,6 +1111,20 @@ public final class TensorflowNLU implements NLUService {
             return this;
         }
 
+        /**
+         * Set the executor used to load the NLU model, its metadata, and the
+         * wordpiece vocabulary. Loading is split into several tasks that run
+         * concurrently if the executor allows it. By default, each task runs
+         * on its own thread.
+         *
+         * @param executor The executor to use for loading.
+         * @return this
+         */
+        public Builder setLoadExecutor(Executor executor) {
+            this.loadExecutor = executor;
+            return this;
+        }
+
         /**
          * Attaches a configuration object, overwriting any existing
          * configuration.
@@ -341,7 +1172,9 @@ public final class TensorflowNLU implements NLUService {
         }
 
         /**
-         * Register a custom parser for a slot of a specified type.
+         * Register a custom parser for a slot of a specified type. A single
+         * instance of each parser class is shared by all NLU instances, so
+         * parsers must not keep state between calls.
          *
          * @param slotType    The type of slot that should be parsed by {@code
          *                    parserClass}.
@@ -381,13 +1214,17 @@ public final class TensorflowNLU implements NLUService {
             if (modelLoader == null) {
                 modelLoader = new TensorflowModel.Loader();
             }
-            if (textEncoder == null) {
-                textEncoder =
-                      new WordpieceTextEncoder(this.config, this.context);
-            }
             if (threadFactory == null) {
                 threadFactory = Thread::new;
             }
+            if (loadExecutor == null) {
+                ThreadFactory factory = threadFactory;
+                loadExecutor = r -> factory.newThread(r).start();
+            }
+            if (textEncoder == null) {
+                textEncoder = new WordpieceTextEncoder(
+                      this.config, this.context, loadExecutor);
+            }
             return new TensorflowNLU(this);
         }
 
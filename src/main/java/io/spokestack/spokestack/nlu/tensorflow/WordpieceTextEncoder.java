@@ -2,15 +2,14 @@ package io.spokestack.spokestack.nlu.tensorflow;
 
 import io.spokestack.spokestack.SpeechConfig;
 import io.spokestack.spokestack.nlu.NLUContext;
+import io.spokestack.spokestack.util.AsyncResult;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.text.Normalizer;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadFactory;
 
 /**
@@ -23,16 +22,37 @@ import java.util.concurrent.ThreadFactory;
  * handling for CJK (Chinese/Japanese/Korean) characters, so do not expect it to
  * produce the same results on CJK input as other Wordpiece tokenizers.
  * </p>
+ *
+ * <p>
+ * Each word is encoded independently of its neighbors, so the encoder keeps
+ * the per-word encoding of the most recent input and reuses it for any
+ * leading words that the next input shares. This makes encoding a growing
+ * partial transcript proportional to the words that have changed rather than
+ * to the length of the whole transcript.
+ * </p>
+ *
+ * <p>
+ * The vocabulary may be supplied either as a text file with one entry per
+ * line or in the compiled form produced by {@link NLUResourceCompiler}, which
+ * is memory-mapped and used without further processing.
+ * </p>
  */
 final class WordpieceTextEncoder implements TextEncoder {
     private static final String UNKNOWN = "[UNK]";
     private static final String SUFFIX_MARKER = "##";
 
     private NLUContext context;
-    private HashMap<String, Integer> vocabulary;
+    private WordpieceTrie trie;
+    private int unknownId;
 
-    private volatile boolean ready = false;
-    private Thread loadThread;
+    private final AsyncResult<Void> loaded;
+    private volatile EncodedTokens lastEncoded;
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
 
     /**
      * Creates a new Wordpiece token encoder.
@@ -42,7 +62,7 @@ final class WordpieceTextEncoder implements TextEncoder {
      * @param nluContext Context used to surface loading errors.
      */
     WordpieceTextEncoder(SpeechConfig config, NLUContext nluContext) {
-        this(config, nluContext, Thread::new);
+        this(config, nluContext, (ThreadFactory) Thread::new);
     }
 
     /**
@@ -57,102 +77,215 @@ final class WordpieceTextEncoder implements TextEncoder {
      */
     WordpieceTextEncoder(SpeechConfig config, NLUContext nluContext,
                                 ThreadFactory threadFactory) {
+        this(config, nluContext,
+              (Executor) r -> threadFactory.newThread(r).start());
+    }
+
+    /**
+     * Creates a new Wordpiece token encoder that loads its vocabulary on the
+     * supplied executor.
+     *
+     * @param config       Configuration object containing the name of
+     *                     wordpiece resource file.
+     * @param nluContext   Context used to surface loading errors.
+     * @param loadExecutor Executor used to load the vocabulary.
+     */
+    WordpieceTextEncoder(SpeechConfig config, NLUContext nluContext,
+                         Executor loadExecutor) {
         String vocabFile = config.getString("wordpiece-vocab-path");
         this.context = nluContext;
-        this.loadThread = threadFactory.newThread(() -> loadVocab(vocabFile));
-        this.loadThread.start();
-    }
-
-    private void loadVocab(String fileName) {
-        try (
-              FileInputStream inputStream = new FileInputStream(fileName);
-              BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(inputStream))) {
-            HashMap<String, Integer> words = new HashMap<>();
-            int index = 0;
-            String line = reader.readLine();
-            while (line != null) {
-                words.put(line, index);
-                line = reader.readLine();
-                index++;
-            }
-            this.vocabulary = words;
-            this.ready = true;
+        this.loaded = new AsyncResult<>(() -> {
+            loadVocab(vocabFile);
+            return null;
+        });
+        loadExecutor.execute(this.loaded);
+    }
+
+    private void loadVocab(String fileName) throws IOException {
+        try {
+            this.trie = WordpieceTrie.load(fileName, SUFFIX_MARKER);
+            this.unknownId = this.trie.lookup(UNKNOWN);
         } catch (IOException e) {
             this.context.traceError("Error loading Wordpiece vocabulary: %s",
                   e.getLocalizedMessage());
-            this.vocabulary = new HashMap<>();
+            // the encoder remains usable, but the failure is still reported
+            // to anyone waiting on the load
+            this.trie = new WordpieceTrie(new HashMap<>(), SUFFIX_MARKER);
+            throw e;
         }
     }
 
+    /**
+     * @return A handle that completes when the vocabulary has been loaded, or
+     * with the error that prevented it from loading.
+     */
+    AsyncResult<Void> getReadiness() {
+        return this.loaded;
+    }
+
     @Override
     public int encodeSingle(String token) {
         ensureReady();
-        return this.vocabulary.getOrDefault(token,
-              this.vocabulary.get(UNKNOWN));
+        int id = this.trie.lookup(token);
+        if (id < 0) {
+            return this.unknownId;
+        }
+        return id;
     }
 
     @Override
     public EncodedTokens encode(String text) {
         ensureReady();
-        String[] spaceSeparated = text.split("[\\s\\p{Space}]+");
-        EncodedTokens encoded = new EncodedTokens(spaceSeparated);
-
-        String token;
-        String[] punctSeparated;
-        List<Integer> pieceToOriginal = new ArrayList<>();
-        for (int i = 0; i < spaceSeparated.length; i++) {
-            token = spaceSeparated[i];
-            punctSeparated = normalizeAndStripPunct(token);
-            for (String subToken : punctSeparated) {
-                List<Integer> ids = encodeWordpieces(subToken);
-                encoded.addTokenIds(ids);
-                for (int j = 0; j < ids.size(); j++) {
-                    // add the same original token index once for each wordpiece
-                    // we've found
-                    pieceToOriginal.add(i);
-                }
+        Scratch buffers = this.scratch.get();
+        // the cached encoding is never modified, so a local reference is
+        // safe to read even if another thread is encoding concurrently
+        EncodedTokens cached = this.lastEncoded;
+        boolean reusing = cached != null;
+        int numWords = 0;
+        int numIds = 0;
+        int pos = 0;
+        int length = text.length();
+        while (pos < length) {
+            if (isWhitespace(text.charAt(pos))) {
+                pos++;
+                continue;
+            }
+            int start = pos;
+            while (pos < length && !isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+            buffers.addWord(numWords, start, pos);
+            if (reusing && !sameWord(cached, numWords, text, start, pos)) {
+                numIds = copyPrefix(cached, numWords, buffers);
+                reusing = false;
+            }
+            if (!reusing) {
+                numIds = encodeWord(text, start, pos, numWords, buffers,
+                      numIds);
             }
+            numWords++;
         }
-        encoded.setOriginalIndices(pieceToOriginal);
+        if (reusing) {
+            numIds = copyPrefix(cached, numWords, buffers);
+        }
+
+        EncodedTokens encoded = new EncodedTokens(text,
+              Arrays.copyOf(buffers.wordStarts, numWords),
+              Arrays.copyOf(buffers.wordEnds, numWords),
+              numWords,
+              Arrays.copyOf(buffers.ids, numIds),
+              Arrays.copyOf(buffers.originalIndices, numIds),
+              numIds);
+        this.lastEncoded = encoded;
         return encoded;
     }
 
-    private void ensureReady() {
-        if (!this.ready) {
-            try {
-                this.loadThread.join();
-            } catch (InterruptedException e) {
-                this.context.traceError("Interrupted during loading: %s",
-                      e.getLocalizedMessage());
-            }
+    private boolean isWhitespace(char ch) {
+        // equivalent to the regex class [\s\p{Space}]
+        return ch == ' ' || (ch >= '\t' && ch <= '\r');
+    }
+
+    private boolean sameWord(EncodedTokens cached, int word, String text,
+                             int start, int end) {
+        if (word >= cached.getNumWords()) {
+            return false;
+        }
+        int cachedStart = cached.getWordStart(word);
+        int wordLength = end - start;
+        return cached.getWordEnd(word) - cachedStart == wordLength
+              && text.regionMatches(start, cached.getText(), cachedStart,
+              wordLength);
+    }
+
+    private int copyPrefix(EncodedTokens cached, int numWords,
+                           Scratch buffers) {
+        int numIds = 0;
+        while (numIds < cached.size()
+              && cached.getOriginalIndex(numIds) < numWords) {
+            numIds++;
+        }
+        buffers.ensureIdCapacity(numIds);
+        for (int i = 0; i < numIds; i++) {
+            buffers.ids[i] = cached.getId(i);
+            buffers.originalIndices[i] = cached.getOriginalIndex(i);
         }
+        return numIds;
     }
 
-    private String[] normalizeAndStripPunct(String word) {
+    private int encodeWord(String text, int start, int end, int wordIndex,
+                           Scratch buffers, int numIds) {
         // drop diacritics and split punctuation characters off the main word
-        // we do this via iteration in order to do both tasks in a single pass
-        // input to this method is expected to have been split on whitespace
-        List<String> subTokens = new ArrayList<>();
-        StringBuilder builder = new StringBuilder();
-        String decomposed = Normalizer.normalize(word, Normalizer.Form.NFD);
-        for (int i = 0; i < decomposed.length(); i++) {
-            char ch = decomposed.charAt(i);
+        // as we iterate, building each piece in a reusable buffer
+        CharSequence word = text;
+        int from = start;
+        int to = end;
+        if (needsNormalization(text, start, end)) {
+            word = Normalizer.normalize(text.substring(start, end),
+                  Normalizer.Form.NFD);
+            from = 0;
+            to = word.length();
+        }
+
+        // each wordpiece covers at least one character
+        buffers.ensureIdCapacity(numIds + to - from);
+        StringBuilder piece = buffers.piece;
+        piece.setLength(0);
+        int position = numIds;
+        for (int i = from; i < to; i++) {
+            char ch = word.charAt(i);
             if (isPunctuation(ch)) {
-                if (builder.length() > 0) {
-                    subTokens.add(builder.toString().toLowerCase());
-                    builder = new StringBuilder();
-                }
-                subTokens.add(String.valueOf(ch));
+                position = encodePiece(piece, wordIndex, buffers, position);
+                piece.append(ch);
+                position = encodePiece(piece, wordIndex, buffers, position);
             } else if (!isInvalid(ch)) {
-                builder.append(ch);
+                piece.append(Character.toLowerCase(ch));
             }
         }
-        if (builder.length() > 0) {
-            subTokens.add(builder.toString().toLowerCase());
+        return encodePiece(piece, wordIndex, buffers, position);
+    }
+
+    private boolean needsNormalization(String text, int start, int end) {
+        // no character below U+00C0 has a canonical decomposition
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) >= '\u00C0') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int encodePiece(StringBuilder piece, int wordIndex,
+                            Scratch buffers, int numIds) {
+        if (piece.length() == 0) {
+            return numIds;
+        }
+        int end = this.trie.encode(piece, buffers.ids, numIds);
+        if (end < 0) {
+            // if we can't encode part of the piece, we can't encode any of
+            // it; there is no ##[UNK], for good reason
+            buffers.ids[numIds] = this.unknownId;
+            end = numIds + 1;
         }
+        for (int i = numIds; i < end; i++) {
+            buffers.originalIndices[i] = wordIndex;
+        }
+        piece.setLength(0);
+        return end;
+    }
 
-        return subTokens.toArray(new String[0]);
+    private void ensureReady() {
+        // loading completes the handle whether or not it succeeds, and the
+        // fields it sets are visible after get() returns
+        try {
+            this.loaded.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.context.traceError("Interrupted during loading: %s",
+                  e.getLocalizedMessage());
+        } catch (ExecutionException e) {
+            // already reported by the loader; encode with the empty
+            // vocabulary it left in place
+        }
     }
 
     private boolean isInvalid(char ch) {
@@ -174,39 +307,36 @@ final class WordpieceTextEncoder implements TextEncoder {
               || type == Character.FINAL_QUOTE_PUNCTUATION;
     }
 
-    private List<Integer> encodeWordpieces(String word) {
-        List<Integer> ids = new ArrayList<>();
-        String unencoded = encodeLongestWordpieces(word, "", ids);
-        if (unencoded != null) {
-            // if we can't encode part of the word, we can't encode any of it;
-            // there is no ##[UNK], for good reason
-            ids.clear();
-            ids.add(this.vocabulary.get(UNKNOWN));
-        }
-        return ids;
-    }
+    /**
+     * Per-thread buffers reused across calls to {@link #encode(String)}.
+     * Their contents are copied into exactly-sized arrays for each result.
+     */
+    private static final class Scratch {
+        private static final int INITIAL_SIZE = 64;
 
-    private String encodeLongestWordpieces(String text,
-                                           String prefix,
-                                           List<Integer> soFar) {
-        String combined = prefix + text;
-        if (this.vocabulary.containsKey(combined)) {
-            soFar.add(this.vocabulary.get(combined));
-            return null;
+        private final StringBuilder piece = new StringBuilder();
+        private int[] wordStarts = new int[INITIAL_SIZE];
+        private int[] wordEnds = new int[INITIAL_SIZE];
+        private int[] ids = new int[INITIAL_SIZE];
+        private int[] originalIndices = new int[INITIAL_SIZE];
+
+        void addWord(int word, int start, int end) {
+            if (word >= this.wordStarts.length) {
+                int size = 2 * this.wordStarts.length;
+                this.wordStarts = Arrays.copyOf(this.wordStarts, size);
+                this.wordEnds = Arrays.copyOf(this.wordEnds, size);
+            }
+            this.wordStarts[word] = start;
+            this.wordEnds[word] = end;
         }
 
-        String unencoded = combined;
-        int minIndex = prefix.isEmpty() ? 0 : prefix.length();
-        for (int i = combined.length() - 1; i > minIndex; i--) {
-            String subToken = combined.substring(0, i);
-            Integer id = this.vocabulary.get(subToken);
-            if (id != null) {
-                soFar.add(id);
-                unencoded = encodeLongestWordpieces(
-                      combined.substring(i), SUFFIX_MARKER, soFar);
-                break;
+        void ensureIdCapacity(int capacity) {
+            if (capacity > this.ids.length) {
+                int size = Math.max(capacity, 2 * this.ids.length);
+                this.ids = Arrays.copyOf(this.ids, size);
+                this.originalIndices =
+                      Arrays.copyOf(this.originalIndices, size);
             }
         }
-        return unencoded;
     }
 }
@@ -0,0 +1,297 @@
+package io.spokestack.spokestack.nlu.tensorflow;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A compact character trie over a wordpiece vocabulary, used to find the
+ * longest vocabulary entry at any position in a word with a single scan and
+ * no intermediate strings.
+ *
+ * <p>
+ * Word-initial entries and suffix entries (those beginning with the suffix
+ * marker) are stored under separate roots, with the marker itself removed.
+ * Once built, the trie is stored in flat buffers with its nodes in
+ * breadth-first order, so each node's children occupy a contiguous range
+ * sorted by character, and the child for a given character is found by
+ * binary search.
+ * </p>
+ *
+ * <p>
+ * Because the trie needs no other structure, it can be written to a file by
+ * {@link NLUResourceCompiler} and later memory-mapped and used in place,
+ * avoiding the cost of reading and indexing a text vocabulary at startup.
+ * </p>
+ */
+final class WordpieceTrie {
+    private static final int NONE = -1;
+    private static final int WORD_ROOT = 0;
+    private static final int SUFFIX_ROOT = 1;
+
+    private final int numNodes;
+    private final CharBuffer labels;
+    // firstChild has an extra entry so that the children of node i are
+    // always firstChild[i] until firstChild[i + 1]
+    private final IntBuffer firstChild;
+    private final IntBuffer values;
+
+    /**
+     * Build a trie from a vocabulary.
+     *
+     * @param vocabulary   Map of vocabulary entries to their identifiers.
+     * @param suffixMarker The prefix that identifies suffix entries.
+     */
+    WordpieceTrie(Map<String, Integer> vocabulary, String suffixMarker) {
+        BuildNode wordRoot = new BuildNode();
+        BuildNode suffixRoot = new BuildNode();
+        int nodeCount = 2;
+        for (Map.Entry<String, Integer> entry : vocabulary.entrySet()) {
+            String piece = entry.getKey();
+            BuildNode node = wordRoot;
+            int start = 0;
+            if (piece.startsWith(suffixMarker)) {
+                node = suffixRoot;
+                start = suffixMarker.length();
+            }
+            for (int i = start; i < piece.length(); i++) {
+                char ch = piece.charAt(i);
+                BuildNode child = node.children.get(ch);
+                if (child == null) {
+                    child = new BuildNode();
+                    node.children.put(ch, child);
+                    nodeCount++;
+                }
+                node = child;
+            }
+            node.value = entry.getValue();
+        }
+
+        char[] labelArr = new char[nodeCount];
+        int[] childArr = new int[nodeCount + 1];
+        int[] valueArr = new int[nodeCount];
+
+        // lay the nodes out breadth-first so each node's children are
+        // adjacent
+        List<BuildNode> queue = new ArrayList<>(nodeCount);
+        queue.add(wordRoot);
+        queue.add(suffixRoot);
+        for (int i = 0; i < queue.size(); i++) {
+            BuildNode node = queue.get(i);
+            valueArr[i] = node.value;
+            childArr[i] = queue.size();
+            for (Map.Entry<Character, BuildNode> child
+                  : node.children.entrySet()) {
+                labelArr[queue.size()] = child.getKey();
+                queue.add(child.getValue());
+            }
+        }
+        childArr[nodeCount] = nodeCount;
+
+        this.numNodes = nodeCount;
+        this.labels = CharBuffer.wrap(labelArr);
+        this.firstChild = IntBuffer.wrap(childArr);
+        this.values = IntBuffer.wrap(valueArr);
+    }
+
+    private WordpieceTrie(int nodeCount,
+                          CharBuffer labelBuffer,
+                          IntBuffer childBuffer,
+                          IntBuffer valueBuffer) {
+        this.numNodes = nodeCount;
+        this.labels = labelBuffer;
+        this.firstChild = childBuffer;
+        this.values = valueBuffer;
+    }
+
+    /**
+     * Load a trie from a vocabulary file, which may be either a compiled
+     * binary vocabulary or a text file containing one entry per line, the
+     * entry's identifier being its line number, starting at 0.
+     *
+     * @param path         The path to the vocabulary file.
+     * @param suffixMarker The prefix that identifies suffix entries.
+     * @return The loaded trie.
+     * @throws IOException if the file cannot be read.
+     */
+    static WordpieceTrie load(String path, String suffixMarker)
+          throws IOException {
+        ByteBuffer compiled = BinaryFormat.map(path, BinaryFormat.VOCAB_MAGIC);
+        if (compiled != null) {
+            return read(compiled);
+        }
+
+        try (
+              FileInputStream inputStream = new FileInputStream(path);
+              BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(inputStream,
+                          StandardCharsets.UTF_8))) {
+            Map<String, Integer> words = new TreeMap<>();
+            int index = 0;
+            String line = reader.readLine();
+            while (line != null) {
+                words.put(line, index);
+                line = reader.readLine();
+                index++;
+            }
+            return new WordpieceTrie(words, suffixMarker);
+        }
+    }
+
+    /**
+     * Create a trie backed by a compiled vocabulary. The buffer's contents
+     * are used in place rather than copied.
+     *
+     * @param buffer A buffer positioned just after the compiled vocabulary's
+     *               header.
+     * @return A trie backed by {@code buffer}.
+     */
+    static WordpieceTrie read(ByteBuffer buffer) {
+        int nodeCount = buffer.getInt();
+        int position = buffer.position();
+        CharBuffer labelBuffer = slice(buffer, position, 2 * nodeCount)
+              .asCharBuffer();
+        // labels are padded to keep the integer sections aligned
+        position += 2 * (nodeCount + nodeCount % 2);
+        IntBuffer childBuffer = slice(buffer, position, 4 * (nodeCount + 1))
+              .asIntBuffer();
+        position += 4 * (nodeCount + 1);
+        IntBuffer valueBuffer = slice(buffer, position, 4 * nodeCount)
+              .asIntBuffer();
+        return new WordpieceTrie(nodeCount, labelBuffer, childBuffer,
+              valueBuffer);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int start, int size) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(start);
+        view.limit(start + size);
+        return view.slice();
+    }
+
+    /**
+     * Write this trie in compiled form, including the header.
+     *
+     * @param out The output stream.
+     * @throws IOException if the trie cannot be written.
+     */
+    void write(DataOutputStream out) throws IOException {
+        BinaryFormat.writeHeader(out, BinaryFormat.VOCAB_MAGIC);
+        out.writeInt(this.numNodes);
+        for (int i = 0; i < this.numNodes; i++) {
+            out.writeChar(this.labels.get(i));
+        }
+        if (this.numNodes % 2 != 0) {
+            out.writeChar(0);
+        }
+        for (int i = 0; i <= this.numNodes; i++) {
+            out.writeInt(this.firstChild.get(i));
+        }
+        for (int i = 0; i < this.numNodes; i++) {
+            out.writeInt(this.values.get(i));
+        }
+    }
+
+    /**
+     * Look up a single vocabulary entry without tokenizing it.
+     *
+     * @param entry The entry to look up. Entries beginning with the suffix
+     *              marker are not supported.
+     * @return The entry's identifier, or -1 if it is not in the vocabulary.
+     */
+    int lookup(String entry) {
+        if (entry.isEmpty()) {
+            return NONE;
+        }
+        int node = WORD_ROOT;
+        for (int i = 0; i < entry.length() && node != NONE; i++) {
+            node = findChild(node, entry.charAt(i));
+        }
+        if (node == NONE) {
+            return NONE;
+        }
+        return this.values.get(node);
+    }
+
+    /**
+     * Encode a single normalized word into wordpiece identifiers by
+     * repeatedly taking the longest vocabulary entry that matches the
+     * remainder of the word.
+     *
+     * @param word   The word to encode.
+     * @param out    The array to which identifiers should be written. It must
+     *               have room for at least {@code word.length()} identifiers
+     *               after {@code offset}.
+     * @param offset The position in {@code out} of the first identifier.
+     * @return The position in {@code out} following the last identifier
+     * written, or -1 if some part of the word matches no vocabulary entry.
+     */
+    int encode(CharSequence word, int[] out, int offset) {
+        int start = 0;
+        int root = WORD_ROOT;
+        int position = offset;
+        while (start < word.length()) {
+            int node = root;
+            int matchEnd = NONE;
+            int matchId = NONE;
+            for (int i = start; i < word.length(); i++) {
+                node = findChild(node, word.charAt(i));
+                if (node == NONE) {
+                    break;
+                }
+                int value = this.values.get(node);
+                if (value != NONE) {
+                    matchEnd = i + 1;
+                    matchId = value;
+                }
+            }
+            if (matchEnd == NONE) {
+                return NONE;
+            }
+            out[position++] = matchId;
+            start = matchEnd;
+            root = SUFFIX_ROOT;
+        }
+        return position;
+    }
+
+    private int findChild(int node, char ch) {
+        int low = this.firstChild.get(node);
+        int high = this.firstChild.get(node + 1) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char label = this.labels.get(mid);
+            if (label < ch) {
+                low = mid + 1;
+            } else if (label > ch) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * @return The number of nodes in the trie, including both roots. Used
+     * for testing.
+     */
+    int size() {
+        return this.numNodes;
+    }
+
+    private static final class BuildNode {
+        private final TreeMap<Character, BuildNode> children = new TreeMap<>();
+        private int value = NONE;
+    }
+}
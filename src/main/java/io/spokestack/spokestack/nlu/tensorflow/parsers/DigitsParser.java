@@ -2,6 +2,7 @@ package io.spokestack.spokestack.nlu.tensorflow.parsers;
 
 import io.spokestack.spokestack.nlu.tensorflow.SlotParser;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -31,66 +32,86 @@ import java.util.regex.Pattern;
  * </p>
  */
 public final class DigitsParser implements SlotParser {
-    private static final Map<String, Integer> ENG_ZERO = new HashMap<>();
-    private static final Map<String, Integer> ENG_MOD10 = new HashMap<>();
-    private static final Map<String, Integer> ENG_MOD20 = new HashMap<>();
-    private static final Map<String, Integer> ENG_DIV10 = new HashMap<>();
-    private static final Map<String, Integer> ENG_EXP10 = new HashMap<>();
+    private static final Map<String, String> ENG_ZERO;
+    private static final Map<String, String> ENG_MOD10;
+    private static final Map<String, String> ENG_MOD20;
+    private static final Map<String, Integer> ENG_DIV10;
+    private static final Map<String, String> ENG_EXP10;
     private static final Pattern DIGIT_SPLIT_RE = Pattern.compile("[-,()\\s]+");
 
+    static {
+        // the tables are built once and never modified, so they can be
+        // shared by every instance and thread; values that are emitted
+        // directly are stored as strings
+        Map<String, String> zero = new HashMap<>();
+        Map<String, String> mod10 = new HashMap<>();
+        Map<String, String> mod20 = new HashMap<>();
+        Map<String, Integer> div10 = new HashMap<>();
+        Map<String, String> exp10 = new HashMap<>();
+        initMaps(zero, mod10, mod20, div10, exp10);
+        ENG_ZERO = Collections.unmodifiableMap(zero);
+        ENG_MOD10 = Collections.unmodifiableMap(mod10);
+        ENG_MOD20 = Collections.unmodifiableMap(mod20);
+        ENG_DIV10 = Collections.unmodifiableMap(div10);
+        ENG_EXP10 = Collections.unmodifiableMap(exp10);
+    }
+
     /**
      * Create a new digit parser.
      */
     public DigitsParser() {
-        initMaps();
     }
 
-    private void initMaps() {
-        ENG_ZERO.put("zero", 0);
-        ENG_ZERO.put("oh", 0);
-        ENG_ZERO.put("owe", 0);
+    private static void initMaps(Map<String, String> zero,
+                                 Map<String, String> mod10,
+                                 Map<String, String> mod20,
+                                 Map<String, Integer> div10,
+                                 Map<String, String> exp10) {
+        zero.put("zero", "0");
+        zero.put("oh", "0");
+        zero.put("owe", "0");
 
-        ENG_MOD10.put("one", 1);
-        ENG_MOD10.put("won", 1);
-        ENG_MOD10.put("two", 2);
-        ENG_MOD10.put("to", 2);
-        ENG_MOD10.put("too", 2);
-        ENG_MOD10.put("three", 3);
-        ENG_MOD10.put("four", 4);
-        ENG_MOD10.put("for", 4);
-        ENG_MOD10.put("fore", 4);
-        ENG_MOD10.put("five", 5);
-        ENG_MOD10.put("six", 6);
-        ENG_MOD10.put("sicks", 6);
-        ENG_MOD10.put("sics", 6);
-        ENG_MOD10.put("seven", 7);
-        ENG_MOD10.put("eight", 8);
-        ENG_MOD10.put("ate", 8);
-        ENG_MOD10.put("nine", 9);
+        mod10.put("one", "1");
+        mod10.put("won", "1");
+        mod10.put("two", "2");
+        mod10.put("to", "2");
+        mod10.put("too", "2");
+        mod10.put("three", "3");
+        mod10.put("four", "4");
+        mod10.put("for", "4");
+        mod10.put("fore", "4");
+        mod10.put("five", "5");
+        mod10.put("six", "6");
+        mod10.put("sicks", "6");
+        mod10.put("sics", "6");
+        mod10.put("seven", "7");
+        mod10.put("eight", "8");
+        mod10.put("ate", "8");
+        mod10.put("nine", "9");
 
-        ENG_MOD20.put("ten", 10);
-        ENG_MOD20.put("tin", 10);
-        ENG_MOD20.put("eleven", 11);
-        ENG_MOD20.put("twelve", 12);
-        ENG_MOD20.put("thirteen", 13);
-        ENG_MOD20.put("fourteen", 14);
-        ENG_MOD20.put("fifteen", 15);
-        ENG_MOD20.put("sixteen", 16);
-        ENG_MOD20.put("seventeen", 17);
-        ENG_MOD20.put("eighteen", 18);
-        ENG_MOD20.put("nineteen", 19);
+        mod20.put("ten", "10");
+        mod20.put("tin", "10");
+        mod20.put("eleven", "11");
+        mod20.put("twelve", "12");
+        mod20.put("thirteen", "13");
+        mod20.put("fourteen", "14");
+        mod20.put("fifteen", "15");
+        mod20.put("sixteen", "16");
+        mod20.put("seventeen", "17");
+        mod20.put("eighteen", "18");
+        mod20.put("nineteen", "19");
 
-        ENG_DIV10.put("twenty", 2);
-        ENG_DIV10.put("thirty", 3);
-        ENG_DIV10.put("forty", 4);
-        ENG_DIV10.put("fifty", 5);
-        ENG_DIV10.put("sixty", 6);
-        ENG_DIV10.put("seventy", 7);
-        ENG_DIV10.put("eighty", 8);
-        ENG_DIV10.put("ninety", 9);
+        div10.put("twenty", 2);
+        div10.put("thirty", 3);
+        div10.put("forty", 4);
+        div10.put("fifty", 5);
+        div10.put("sixty", 6);
+        div10.put("seventy", 7);
+        div10.put("eighty", 8);
+        div10.put("ninety", 9);
 
-        ENG_EXP10.put("hundred", 2);
-        ENG_EXP10.put("thousand", 3);
+        exp10.put("hundred", "00");
+        exp10.put("thousand", "000");
     }
 
     @Override
@@ -113,26 +134,31 @@ public final class DigitsParser implements SlotParser {
     }
 
     private String parseSingle(String numStr, String next) {
-        if (ENG_ZERO.containsKey(numStr)) {
-            return String.valueOf(ENG_ZERO.get(numStr));
-        } else if (ENG_MOD10.containsKey(numStr)) {
-            return String.valueOf(ENG_MOD10.get(numStr));
-        } else if (ENG_MOD20.containsKey(numStr)) {
-            return String.valueOf(ENG_MOD20.get(numStr));
-        } else if (ENG_DIV10.containsKey(numStr)
-              && ENG_MOD10.containsKey(next)) {
-            return String.valueOf(ENG_DIV10.get(numStr));
-        } else if (ENG_DIV10.containsKey(numStr)) {
-            return String.valueOf(ENG_DIV10.get(numStr) * 10);
-        } else if (ENG_EXP10.containsKey(numStr)) {
-            int exp = ENG_EXP10.get(numStr);
-            return String.format("%0" + exp + "d", 0);
-        } else {
-            try {
-                return String.valueOf(Long.parseLong(numStr));
-            } catch (NumberFormatException nfe) {
-                return "";
+        String digits = ENG_ZERO.get(numStr);
+        if (digits == null) {
+            digits = ENG_MOD10.get(numStr);
+        }
+        if (digits == null) {
+            digits = ENG_MOD20.get(numStr);
+        }
+        if (digits != null) {
+            return digits;
+        }
+        Integer tens = ENG_DIV10.get(numStr);
+        if (tens != null) {
+            if (ENG_MOD10.containsKey(next)) {
+                return String.valueOf(tens);
             }
+            return String.valueOf(tens * 10);
+        }
+        digits = ENG_EXP10.get(numStr);
+        if (digits != null) {
+            return digits;
+        }
+        try {
+            return String.valueOf(Long.parseLong(numStr));
+        } catch (NumberFormatException nfe) {
+            return "";
         }
     }
 }
@@ -3,6 +3,7 @@ package io.spokestack.spokestack.nlu.tensorflow.parsers;
 import io.spokestack.spokestack.nlu.tensorflow.SlotParser;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,78 +27,88 @@ import java.util.regex.Pattern;
  * </p>
  */
 public final class IntegerParser implements SlotParser {
-    private static final Map<String, Integer> WORD_TO_NUM = new HashMap<>();
-    private static final Map<String, Integer> MULTIPLIERS = new HashMap<>();
+    private static final Map<String, Integer> WORD_TO_NUM;
+    private static final Map<String, Integer> MULTIPLIERS;
     private static final Pattern DIGIT_SPLIT_RE = Pattern.compile("[-,()\\s]");
 
+    static {
+        // the tables are built once and never modified, so they can be
+        // shared by every instance and thread
+        Map<String, Integer> wordToNum = new HashMap<>();
+        Map<String, Integer> multipliers = new HashMap<>();
+        initMaps(wordToNum, multipliers);
+        WORD_TO_NUM = Collections.unmodifiableMap(wordToNum);
+        MULTIPLIERS = Collections.unmodifiableMap(multipliers);
+    }
+
     /**
      * Create a new integer parser.
      */
     public IntegerParser() {
-        initMaps();
     }
 
-    private void initMaps() {
-        WORD_TO_NUM.put("oh", 0);
-        WORD_TO_NUM.put("owe", 0);
-        WORD_TO_NUM.put("zero", 0);
-        WORD_TO_NUM.put("won", 1);
-        WORD_TO_NUM.put("one", 1);
-        WORD_TO_NUM.put("first", 1);
-        WORD_TO_NUM.put("to", 2);
-        WORD_TO_NUM.put("too", 2);
-        WORD_TO_NUM.put("two", 2);
-        WORD_TO_NUM.put("second", 2);
-        WORD_TO_NUM.put("three", 3);
-        WORD_TO_NUM.put("third", 3);
-        WORD_TO_NUM.put("for", 4);
-        WORD_TO_NUM.put("fore", 4);
-        WORD_TO_NUM.put("four", 4);
-        WORD_TO_NUM.put("five", 5);
-        WORD_TO_NUM.put("fif", 5);
-        WORD_TO_NUM.put("sicks", 6);
-        WORD_TO_NUM.put("sics", 6);
-        WORD_TO_NUM.put("six", 6);
-        WORD_TO_NUM.put("seven", 7);
-        WORD_TO_NUM.put("ate", 8);
-        WORD_TO_NUM.put("eight", 8);
-        WORD_TO_NUM.put("eighth", 8);
-        WORD_TO_NUM.put("nine", 9);
-        WORD_TO_NUM.put("ninth", 9);
-        WORD_TO_NUM.put("tin", 10);
-        WORD_TO_NUM.put("ten", 10);
-        WORD_TO_NUM.put("eleven", 11);
-        WORD_TO_NUM.put("twelve", 12);
-        WORD_TO_NUM.put("twelf", 12);
-        WORD_TO_NUM.put("thirteen", 13);
-        WORD_TO_NUM.put("fourteen", 14);
-        WORD_TO_NUM.put("fifteen", 15);
-        WORD_TO_NUM.put("sixteen", 16);
-        WORD_TO_NUM.put("seventeen", 17);
-        WORD_TO_NUM.put("eighteen", 18);
-        WORD_TO_NUM.put("nineteen", 19);
-        WORD_TO_NUM.put("twenty", 20);
-        WORD_TO_NUM.put("twentie", 20);
-        WORD_TO_NUM.put("thirty", 30);
-        WORD_TO_NUM.put("thirtie", 30);
-        WORD_TO_NUM.put("forty", 40);
-        WORD_TO_NUM.put("fortie", 40);
-        WORD_TO_NUM.put("fifty", 50);
-        WORD_TO_NUM.put("fiftie", 50);
-        WORD_TO_NUM.put("sixty", 60);
-        WORD_TO_NUM.put("sixtie", 60);
-        WORD_TO_NUM.put("seventy", 70);
-        WORD_TO_NUM.put("seventie", 70);
-        WORD_TO_NUM.put("eighty", 80);
-        WORD_TO_NUM.put("eightie", 80);
-        WORD_TO_NUM.put("ninety", 90);
-        WORD_TO_NUM.put("ninetie", 90);
+    private static void initMaps(Map<String, Integer> wordToNum,
+                                 Map<String, Integer> multipliers) {
+        wordToNum.put("oh", 0);
+        wordToNum.put("owe", 0);
+        wordToNum.put("zero", 0);
+        wordToNum.put("won", 1);
+        wordToNum.put("one", 1);
+        wordToNum.put("first", 1);
+        wordToNum.put("to", 2);
+        wordToNum.put("too", 2);
+        wordToNum.put("two", 2);
+        wordToNum.put("second", 2);
+        wordToNum.put("three", 3);
+        wordToNum.put("third", 3);
+        wordToNum.put("for", 4);
+        wordToNum.put("fore", 4);
+        wordToNum.put("four", 4);
+        wordToNum.put("five", 5);
+        wordToNum.put("fif", 5);
+        wordToNum.put("sicks", 6);
+        wordToNum.put("sics", 6);
+        wordToNum.put("six", 6);
+        wordToNum.put("seven", 7);
+        wordToNum.put("ate", 8);
+        wordToNum.put("eight", 8);
+        wordToNum.put("eighth", 8);
+        wordToNum.put("nine", 9);
+        wordToNum.put("ninth", 9);
+        wordToNum.put("tin", 10);
+        wordToNum.put("ten", 10);
+        wordToNum.put("eleven", 11);
+        wordToNum.put("twelve", 12);
+        wordToNum.put("twelf", 12);
+        wordToNum.put("thirteen", 13);
+        wordToNum.put("fourteen", 14);
+        wordToNum.put("fifteen", 15);
+        wordToNum.put("sixteen", 16);
+        wordToNum.put("seventeen", 17);
+        wordToNum.put("eighteen", 18);
+        wordToNum.put("nineteen", 19);
+        wordToNum.put("twenty", 20);
+        wordToNum.put("twentie", 20);
+        wordToNum.put("thirty", 30);
+        wordToNum.put("thirtie", 30);
+        wordToNum.put("forty", 40);
+        wordToNum.put("fortie", 40);
+        wordToNum.put("fifty", 50);
+        wordToNum.put("fiftie", 50);
+        wordToNum.put("sixty", 60);
+        wordToNum.put("sixtie", 60);
+        wordToNum.put("seventy", 70);
+        wordToNum.put("seventie", 70);
+        wordToNum.put("eighty", 80);
+        wordToNum.put("eightie", 80);
+        wordToNum.put("ninety", 90);
+        wordToNum.put("ninetie", 90);
 
-        MULTIPLIERS.put("hundred", 100);
-        MULTIPLIERS.put("thousand", 1000);
-        MULTIPLIERS.put("million", 1000000);
-        MULTIPLIERS.put("billion", 1000000000);
-        WORD_TO_NUM.putAll(MULTIPLIERS);
+        multipliers.put("hundred", 100);
+        multipliers.put("thousand", 1000);
+        multipliers.put("million", 1000000);
+        multipliers.put("billion", 1000000000);
+        wordToNum.putAll(multipliers);
     }
 
     @SuppressWarnings("unchecked")
@@ -135,17 +146,19 @@ public final class IntegerParser implements SlotParser {
         if (toParse.endsWith("th")) {
             toParse = toParse.substring(0, toParse.length() - 2);
         }
-        if (!WORD_TO_NUM.containsKey(toParse)) {
+        Integer value = WORD_TO_NUM.get(toParse);
+        if (value == null) {
             // invalid number, but don't throw an error
             return null;
         }
 
-        if (MULTIPLIERS.containsKey(toParse)) {
-            List<Integer> sum = collapse(MULTIPLIERS.get(toParse), soFar);
+        Integer multiplier = MULTIPLIERS.get(toParse);
+        if (multiplier != null) {
+            List<Integer> sum = collapse(multiplier, soFar);
             soFar.clear();
             soFar.addAll(sum);
         } else {
-            soFar.add(WORD_TO_NUM.get(toParse));
+            soFar.add(value);
         }
         return soFar;
     }
@@ -31,16 +31,15 @@ public final class SelsetParser implements SlotParser {
             return null;
         }
 
-        String normalized = rawValue.toLowerCase();
         for (Object selection : selections) {
             Map<String, Object> selMap = (Map<String, Object>) selection;
             String name = String.valueOf(selMap.get("name"));
-            if (name.toLowerCase().equals(normalized)) {
+            if (name.equalsIgnoreCase(rawValue)) {
                 return name;
             }
             List<String> aliases = (List<String>) selMap.get("aliases");
             for (String alias : aliases) {
-                if (alias.toLowerCase().equals(normalized)) {
+                if (alias.equalsIgnoreCase(rawValue)) {
                     return name;
                 }
             }
@@ -6,7 +6,10 @@ import java.io.File;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -21,9 +24,20 @@ import java.util.Map;
  * </p>
  */
 public class TensorflowModel implements AutoCloseable {
-    private final Interpreter interpreter;
+    private final String modelPath;
+    private final ByteBuffer modelBuffer;
+    private final int maxInterpreters;
+    // access order makes iteration order least- to most-recently used
+    private final Map<String, Interpreter> interpreters =
+          new LinkedHashMap<>(16, 0.75f, true);
+    private Interpreter interpreter;
     private final List<ByteBuffer> inputBuffers = new ArrayList<>();
     private final List<ByteBuffer> outputBuffers = new ArrayList<>();
+    private final List<int[]> inputShapes = new ArrayList<>();
+    private final List<Integer> outputCapacities = new ArrayList<>();
+    private final int batchSize;
+    private final List<Map<Integer, ByteBuffer>> resizedInputs =
+          new ArrayList<>();
     private final int inputSize;
 
     private final Object[] inputArray;
@@ -37,13 +51,18 @@ public class TensorflowModel implements AutoCloseable {
      * @param loader the loader (builder) for the model
      */
     public TensorflowModel(Loader loader) {
-        this.interpreter = new Interpreter(new File(loader.path));
+        this.modelPath = loader.path;
+        this.modelBuffer = loader.modelBuffer;
+        this.maxInterpreters = loader.maxShapes;
+        this.interpreter = createInterpreter();
         for (int i = 0; i < this.interpreter.getInputTensorCount(); i++) {
             int[] shape = this.interpreter.getInputTensor(i).shape();
             int combinedShape = combineShape(shape);
             this.inputBuffers.add(
                   ByteBuffer.allocateDirect(combinedShape * loader.inputSize)
                         .order(ByteOrder.nativeOrder()));
+            this.inputShapes.add(shape);
+            this.resizedInputs.add(new HashMap<>());
         }
         for (int i = 0; i < this.interpreter.getOutputTensorCount(); i++) {
             int[] shape = this.interpreter.getOutputTensor(i).shape();
@@ -51,12 +70,31 @@ public class TensorflowModel implements AutoCloseable {
             this.outputBuffers.add(
                   ByteBuffer.allocateDirect(combinedShape * loader.outputSize)
                         .order(ByteOrder.nativeOrder()));
+            this.outputCapacities.add(combinedShape * loader.outputSize);
         }
+        this.batchSize = this.inputShapes.isEmpty()
+              ? 1 : Math.max(1, this.inputShapes.get(0)[0]);
 
         this.inputSize = loader.inputSize;
         this.statePosition = loader.statePosition;
         this.inputArray = new Object[this.inputBuffers.size()];
         this.outputMap = new HashMap<>();
+        this.interpreters.put(shapeKey(), this.interpreter);
+    }
+
+    private Interpreter createInterpreter() {
+        if (this.modelBuffer != null) {
+            return new Interpreter(this.modelBuffer);
+        }
+        return new Interpreter(new File(this.modelPath));
+    }
+
+    private String shapeKey() {
+        StringBuilder key = new StringBuilder();
+        for (int[] shape : this.inputShapes) {
+            key.append(Arrays.toString(shape));
+        }
+        return key.toString();
     }
 
     private int combineShape(int[] dims) {
@@ -75,10 +113,13 @@ public class TensorflowModel implements AutoCloseable {
     }
 
     /**
-     * releases the tensorflow interpreter.
+     * releases the tensorflow interpreters.
      */
     public void close() {
-        this.interpreter.close();
+        for (Interpreter cached : this.interpreters.values()) {
+            cached.close();
+        }
+        this.interpreters.clear();
     }
 
     /**
@@ -91,6 +132,95 @@ public class TensorflowModel implements AutoCloseable {
         return this.inputBuffers.get(index);
     }
 
+    /**
+     * Resizes the input tensor at the specified index, replacing its input
+     * buffer with one of the appropriate size. Models that accept variable
+     * length input can use this to avoid running inference on padding.
+     *
+     * <p>
+     * Input buffers are cached by size, so alternating between a small number
+     * of shapes only allocates memory the first time each shape is used.
+     * Resizing an interpreter makes it reallocate its tensors before its next
+     * run, so the model also keeps a separate interpreter, with its tensors
+     * allocated, for each of the most recently used combinations of input
+     * shapes, up to the number set by {@link Loader#setMaxShapes(int)}. Once
+     * that many are kept, the least recently used interpreter is resized to
+     * the new shape instead.
+     * </p>
+     *
+     * <p>
+     * The first dimension of each input is assumed to be the batch dimension.
+     * Output buffers are grown to hold a batch of the requested size; other
+     * dimensions of resized inputs should not exceed the model's original
+     * input shape, since output buffers are sized according to the model's
+     * original output shapes.
+     * </p>
+     *
+     * @param index The index of the input to resize.
+     * @param shape The new shape of the input tensor.
+     * @throws IllegalArgumentException if {@code index} refers to the model's
+     *                                  state tensor.
+     */
+    public void resizeInput(int index, int[] shape) {
+        if (this.statePosition != null && this.statePosition == index) {
+            throw new IllegalArgumentException(
+                  "state tensors cannot be resized");
+        }
+        if (Arrays.equals(shape, this.inputShapes.get(index))) {
+            return;
+        }
+
+        this.inputShapes.set(index, shape.clone());
+        this.interpreter = interpreterForShapes();
+        int combinedShape = combineShape(shape);
+        Map<Integer, ByteBuffer> cache = this.resizedInputs.get(index);
+        ByteBuffer current = this.inputBuffers.get(index);
+        cache.put(current.capacity(), current);
+        ByteBuffer resized = cache.get(combinedShape * this.inputSize);
+        if (resized == null) {
+            resized = ByteBuffer.allocateDirect(combinedShape * this.inputSize)
+                  .order(ByteOrder.nativeOrder());
+        }
+        this.inputBuffers.set(index, resized);
+        reserveOutputs(shape.length > 0 ? shape[0] : 1);
+    }
+
+    private Interpreter interpreterForShapes() {
+        String key = shapeKey();
+        Interpreter cached = this.interpreters.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        if (this.interpreters.size() < this.maxInterpreters) {
+            cached = createInterpreter();
+        } else {
+            Iterator<Interpreter> eldest =
+                  this.interpreters.values().iterator();
+            cached = eldest.next();
+            eldest.remove();
+        }
+        // resizing an input to its current shape does nothing
+        for (int i = 0; i < this.inputShapes.size(); i++) {
+            if (this.statePosition == null || this.statePosition != i) {
+                cached.resizeInput(i, this.inputShapes.get(i));
+            }
+        }
+        this.interpreters.put(key, cached);
+        return cached;
+    }
+
+    private void reserveOutputs(int batch) {
+        int batches = (batch + this.batchSize - 1) / this.batchSize;
+        for (int i = 0; i < this.outputBuffers.size(); i++) {
+            int capacity = this.outputCapacities.get(i) * batches;
+            if (this.outputBuffers.get(i).capacity() < capacity) {
+                this.outputBuffers.set(i,
+                      ByteBuffer.allocateDirect(capacity)
+                            .order(ByteOrder.nativeOrder()));
+            }
+        }
+    }
+
     /**
      * @return the state tensor buffer
      */
@@ -164,9 +294,11 @@ public class TensorflowModel implements AutoCloseable {
         }
 
         private String path;
+        private ByteBuffer modelBuffer;
         private int inputSize;
         private int outputSize;
         private Integer statePosition = null;
+        private int maxShapes;
 
         /**
          * initializes a new loader instance.
@@ -182,9 +314,11 @@ public class TensorflowModel implements AutoCloseable {
          */
         public Loader reset() {
             this.path = null;
+            this.modelBuffer = null;
             this.inputSize = 4;
             this.outputSize = 4;
             this.statePosition = null;
+            this.maxShapes = 1;
             return this;
         }
 
@@ -199,6 +333,19 @@ public class TensorflowModel implements AutoCloseable {
             return this;
         }
 
+        /**
+         * sets a buffer containing the TF-Lite model, which takes precedence
+         * over the model's path. this allows multiple models to share a
+         * single memory-mapped copy of the same model file.
+         *
+         * @param value value to assign
+         * @return this
+         */
+        public Loader setModelBuffer(ByteBuffer value) {
+            this.modelBuffer = value;
+            return this;
+        }
+
         /**
          * sets the position of the model's state tensor in its input array.
          *
@@ -210,6 +357,25 @@ public class TensorflowModel implements AutoCloseable {
             return this;
         }
 
+        /**
+         * sets the number of input shapes for which the model keeps an
+         * interpreter with its tensors allocated; see
+         * {@link TensorflowModel#resizeInput(int, int[])}. each interpreter
+         * holds its own tensors, so this trades memory for the time spent
+         * reallocating them when switching between shapes. defaults to 1,
+         * which resizes a single interpreter.
+         *
+         * @param value value to assign
+         * @return this
+         */
+        public Loader setMaxShapes(int value) {
+            if (value < 1) {
+                throw new IllegalArgumentException("maxShapes");
+            }
+            this.maxShapes = value;
+            return this;
+        }
+
         /**
          * loads the tensorflow model using the attached configuration.
          *
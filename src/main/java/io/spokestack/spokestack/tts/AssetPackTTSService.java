@@ -0,0 +1,134 @@
+package io.spokestack.spokestack.tts;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import io.spokestack.spokestack.SpeechConfig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+/**
+ * <p>
+ * A TTS service component that serves pre-rendered audio from a pack of clips
+ * shipped with the app, for prompts that must be spoken without a network
+ * connection. Each clip is read into memory and delivered as an
+ * {@link AudioResponse} carrying the audio itself, so playback never touches
+ * the network.
+ * </p>
+ *
+ * <p>
+ * Clips are named by the {@link TTSCache#key(SynthesisRequest) cache key} of
+ * the request they answer, which means that a pack can be built by prefetching
+ * its prompts with a {@link SpokestackTTSService} configured with a
+ * {@code tts-cache-path} and bundling the files in the cache directory. A
+ * request with no matching clip is answered with an error.
+ * </p>
+ *
+ * <p>
+ * This component supports the following properties:
+ * </p>
+ * <ul>
+ *     <li>
+ *         <b>tts-asset-path</b> (string, required): The directory containing
+ *         the clips. An absolute path refers to a directory on the device's
+ *         filesystem, such as one holding a downloaded asset pack; any other
+ *         path refers to a directory within the app's assets, which are read
+ *         using the Android context set on the {@link TTSManager}.
+ *     </li>
+ * </ul>
+ *
+ * <p>
+ * Clips are read on the thread that makes the synthesis request. They are
+ * expected to be short, but apps that play long clips should avoid making
+ * requests on the main thread.
+ * </p>
+ */
+public final class AssetPackTTSService extends TTSService {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String assetPath;
+    private AssetManager assets;
+
+    /**
+     * Creates a new asset pack TTS service.
+     *
+     * @param config The component configuration that supplies the location
+     *               of the clips.
+     */
+    public AssetPackTTSService(SpeechConfig config) {
+        this.assetPath = config.getString("tts-asset-path");
+    }
+
+    @Override
+    public void setAndroidContext(Context androidContext) {
+        this.assets =
+              androidContext == null ? null : androidContext.getAssets();
+    }
+
+    @Override
+    public void close() {
+        this.assets = null;
+    }
+
+    @Override
+    public void synthesize(SynthesisRequest request) {
+        synthesize(request, this::dispatch);
+    }
+
+    @Override
+    public boolean supportsDirectDelivery() {
+        return true;
+    }
+
+    @Override
+    public void synthesize(SynthesisRequest request, TTSListener listener) {
+        TTSEvent event;
+        try {
+            ByteBuffer audio = load(TTSCache.key(request));
+            HashMap<String, Object> metadata = new HashMap<>();
+            metadata.put("id", request.metadata.get("id"));
+            event = new TTSEvent(TTSEvent.Type.AUDIO_AVAILABLE);
+            event.setTtsResponse(new AudioResponse(metadata, audio));
+        } catch (FileNotFoundException e) {
+            event = new TTSEvent(TTSEvent.Type.ERROR);
+            event.setError(new IOException(
+                  "No pre-rendered audio for: " + request.text, e));
+        } catch (IOException e) {
+            event = new TTSEvent(TTSEvent.Type.ERROR);
+            event.setError(e);
+        }
+        listener.eventReceived(event);
+    }
+
+    private ByteBuffer load(String name) throws IOException {
+        try (InputStream clip = open(name)) {
+            ByteArrayOutputStream audio = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read = clip.read(buffer);
+            while (read >= 0) {
+                audio.write(buffer, 0, read);
+                read = clip.read(buffer);
+            }
+            return ByteBuffer.wrap(audio.toByteArray());
+        }
+    }
+
+    private InputStream open(String name) throws IOException {
+        File directory = new File(this.assetPath);
+        if (directory.isAbsolute()) {
+            return new FileInputStream(new File(directory, name));
+        }
+        AssetManager assetManager = this.assets;
+        if (assetManager == null) {
+            throw new IOException("An Android context is required to read "
+                  + "assets");
+        }
+        return assetManager.open(this.assetPath + "/" + name);
+    }
+}
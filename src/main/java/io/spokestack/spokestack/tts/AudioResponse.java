@@ -1,17 +1,27 @@
 package io.spokestack.spokestack.tts;
 
 import android.net.Uri;
+import com.google.android.exoplayer2.upstream.DataSink;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * A simple data class that represents an HTTP response from a TTS service, with
  * the URI containing the synthesized audio at the top level.
+ *
+ * <p>
+ * Services that produce audio locally or receive it inline instead of as a
+ * URL can return the audio itself, which the output plays from memory. A
+ * response holds either a URI or in-memory audio, never both.
+ * </p>
  */
 public class AudioResponse {
     private final Map<String, Object> metadata;
     private final Uri uri;
+    private final ByteBuffer audio;
+    private final DataSink.Factory cacheSink;
 
     /**
      * Create a new TTS response containing only the URI containing
@@ -31,8 +41,40 @@ public class AudioResponse {
      * @param audioUri The URI at which synthesized audio can be found.
      */
     public AudioResponse(Map<String, Object> responseData, Uri audioUri) {
+        this(responseData, audioUri, null);
+    }
+
+    /**
+     * Create a new TTS response whose audio should be stored in a cache as
+     * it is streamed from its URI.
+     *
+     * @param responseData Additional response data.
+     * @param audioUri     The URI at which synthesized audio can be found.
+     * @param audioSink    A factory for sinks that store the audio as it is
+     *                     read, or {@code null} if it shouldn't be stored.
+     */
+    AudioResponse(Map<String, Object> responseData, Uri audioUri,
+                  DataSink.Factory audioSink) {
         this.metadata = responseData;
         this.uri = audioUri;
+        this.audio = null;
+        this.cacheSink = audioSink;
+    }
+
+    /**
+     * Create a new TTS response containing synthesized audio in memory.
+     *
+     * @param responseData Additional response data.
+     * @param audioData    The synthesized audio, in any format supported by
+     *                     the output. The remaining bytes of the buffer are
+     *                     used; its position is not changed.
+     */
+    public AudioResponse(Map<String, Object> responseData,
+                         ByteBuffer audioData) {
+        this.metadata = responseData;
+        this.uri = null;
+        this.audio = audioData.slice().asReadOnlyBuffer();
+        this.cacheSink = null;
     }
 
     /**
@@ -47,9 +89,34 @@ public class AudioResponse {
     /**
      * Get the URI containing synthesized audio.
      *
-     * @return The audio URI.
+     * @return The audio URI, or {@code null} if the audio is held in memory.
      */
     public Uri getAudioUri() {
         return uri;
     }
+
+    /**
+     * Get the synthesized audio held in memory. Each call returns a new
+     * read-only view of the audio, so readers do not affect each other.
+     *
+     * @return The audio, or {@code null} if it is available only at the
+     * response's URI.
+     */
+    public ByteBuffer getAudioData() {
+        if (audio == null) {
+            return null;
+        }
+        return audio.duplicate();
+    }
+
+    /**
+     * Get the factory for sinks that store the audio in a cache as an output
+     * streams it from the response's URI.
+     *
+     * @return The sink factory, or {@code null} if the audio shouldn't be
+     * stored.
+     */
+    DataSink.Factory getCacheSink() {
+        return cacheSink;
+    }
 }
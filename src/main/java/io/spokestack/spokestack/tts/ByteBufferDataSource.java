@@ -0,0 +1,109 @@
+package io.spokestack.spokestack.tts;
+
+import android.net.Uri;
+import androidx.annotation.NonNull;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.BaseDataSource;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An ExoPlayer data source that reads audio held in memory, used to play
+ * {@link AudioResponse}s that carry their audio instead of a URL. The audio
+ * is read directly from its buffer, without being copied, written to disk, or
+ * fetched over the network.
+ *
+ * <p>
+ * The URI of the data spec a source is opened with is reported by
+ * {@link #getUri()} but otherwise ignored; the source always reads from the
+ * buffer it was created with.
+ * </p>
+ */
+public final class ByteBufferDataSource extends BaseDataSource {
+    private final ByteBuffer data;
+    private ByteBuffer remaining;
+    private Uri uri;
+    private boolean opened;
+
+    /**
+     * Create a new data source for audio held in memory.
+     *
+     * @param audio The audio to read. The remaining bytes of the buffer are
+     *              read; its position is not changed.
+     */
+    public ByteBufferDataSource(ByteBuffer audio) {
+        super(false);
+        this.data = audio.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Create a factory that produces sources reading the same audio. Each
+     * source reads independently of the others.
+     *
+     * @param audio The audio to read.
+     * @return A factory for sources that read {@code audio}.
+     */
+    public static DataSource.Factory factory(ByteBuffer audio) {
+        ByteBuffer shared = audio.slice().asReadOnlyBuffer();
+        return () -> new ByteBufferDataSource(shared);
+    }
+
+    @Override
+    public long open(@NonNull DataSpec dataSpec) throws IOException {
+        this.uri = dataSpec.uri;
+        transferInitializing(dataSpec);
+        int size = this.data.remaining();
+        if (dataSpec.position > size) {
+            throw new IOException("Unsatisfiable range: "
+                  + dataSpec.position + " of " + size);
+        }
+        long length = size - dataSpec.position;
+        if (dataSpec.length != C.LENGTH_UNSET) {
+            if (dataSpec.length > length) {
+                throw new IOException("Unsatisfiable range: "
+                      + dataSpec.position + "+" + dataSpec.length
+                      + " of " + size);
+            }
+            length = dataSpec.length;
+        }
+        ByteBuffer view = this.data.duplicate();
+        view.position((int) dataSpec.position);
+        view.limit((int) (dataSpec.position + length));
+        this.remaining = view;
+        this.opened = true;
+        transferStarted(dataSpec);
+        return length;
+    }
+
+    @Override
+    public int read(@NonNull byte[] buffer, int offset, int readLength) {
+        if (readLength == 0) {
+            return 0;
+        }
+        if (!this.remaining.hasRemaining()) {
+            return C.RESULT_END_OF_INPUT;
+        }
+        int read = Math.min(readLength, this.remaining.remaining());
+        this.remaining.get(buffer, offset, read);
+        bytesTransferred(read);
+        return read;
+    }
+
+    @Override
+    public Uri getUri() {
+        return this.uri;
+    }
+
+    @Override
+    public void close() {
+        if (this.opened) {
+            this.opened = false;
+            transferEnded();
+        }
+        this.remaining = null;
+        this.uri = null;
+    }
+}
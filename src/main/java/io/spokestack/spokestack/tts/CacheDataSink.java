@@ -0,0 +1,119 @@
+package io.spokestack.spokestack.tts;
+
+import androidx.annotation.NonNull;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSink;
+import com.google.android.exoplayer2.upstream.DataSpec;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An ExoPlayer data sink that stores the audio a player streams in a
+ * {@link TTSCache}, so that audio missing from the cache is downloaded only
+ * once, by the player, instead of a second time to fill the cache.
+ *
+ * <p>
+ * The sink is meant to be paired with the player's data source in a
+ * {@code TeeDataSource}. Audio is written to a temporary file and stored in
+ * the cache only if the whole stream was read, from the start to the length
+ * reported by the server; streams that are read in part, that start at an
+ * offset, or whose length is unknown are discarded. Errors writing the cache
+ * are never reported to the player, whose playback is more important than
+ * the cache; the audio will simply miss the cache next time.
+ * </p>
+ */
+final class CacheDataSink implements DataSink {
+    private final TTSCache cache;
+    private final String key;
+    private File temp;
+    private OutputStream out;
+    private long expected;
+    private long written;
+
+    /**
+     * Create a new sink.
+     *
+     * @param audioCache The cache in which to store the audio.
+     * @param cacheKey   The cache key of the request that produced the audio.
+     */
+    CacheDataSink(TTSCache audioCache, String cacheKey) {
+        this.cache = audioCache;
+        this.key = cacheKey;
+    }
+
+    /**
+     * Create a factory that produces sinks storing audio under the same key.
+     *
+     * @param audioCache The cache in which to store the audio.
+     * @param cacheKey   The cache key of the request that produced the audio.
+     * @return A factory for sinks that store audio under {@code cacheKey}.
+     */
+    static DataSink.Factory factory(TTSCache audioCache, String cacheKey) {
+        return () -> new CacheDataSink(audioCache, cacheKey);
+    }
+
+    @Override
+    public void open(@NonNull DataSpec dataSpec) {
+        discard();
+        if (dataSpec.position != 0 || dataSpec.length == C.LENGTH_UNSET) {
+            return;
+        }
+        this.expected = dataSpec.length;
+        this.written = 0;
+        try {
+            this.temp = this.cache.createTempFile();
+            this.out = new FileOutputStream(this.temp);
+        } catch (IOException e) {
+            discard();
+        }
+    }
+
+    @Override
+    public void write(@NonNull byte[] buffer, int offset, int length) {
+        if (this.out == null) {
+            return;
+        }
+        try {
+            this.out.write(buffer, offset, length);
+            this.written += length;
+        } catch (IOException e) {
+            discard();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (this.out == null) {
+            return;
+        }
+        try {
+            this.out.close();
+            this.out = null;
+            if (this.written == this.expected) {
+                this.cache.commit(this.key, this.temp);
+            }
+        } catch (IOException e) {
+            // the audio just won't be cached
+        } finally {
+            discard();
+        }
+    }
+
+    private void discard() {
+        if (this.out != null) {
+            try {
+                this.out.close();
+            } catch (IOException e) {
+                // the file is being deleted anyway
+            }
+            this.out = null;
+        }
+        if (this.temp != null) {
+            this.temp.delete();
+            this.temp = null;
+        }
+    }
+}
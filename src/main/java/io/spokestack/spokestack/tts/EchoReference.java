@@ -0,0 +1,119 @@
+package io.spokestack.spokestack.tts;
+
+import io.spokestack.spokestack.util.SampleRing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Converts the audio being played into the far-end reference used by an
+ * echo canceller in the speech pipeline.
+ *
+ * <p>
+ * Decoded 16-bit PCM audio is mixed down to mono and resampled, by linear
+ * interpolation, to the sample rate of the reference ring. Interpolation
+ * state is kept across buffers, so a stream of buffers produces a continuous
+ * reference. This is called on the player's playback thread and allocates
+ * only when it sees a larger buffer than before.
+ * </p>
+ *
+ * <p>
+ * The audio reaches the reference as it is handed to the audio device, well
+ * before it is heard; see {@link #sinkLatency(int, int, int)}.
+ * </p>
+ */
+final class EchoReference {
+    // the bounds ExoPlayer's audio sink puts on its buffer, in ms
+    private static final int MIN_SINK_BUFFER = 250;
+    private static final int MAX_SINK_BUFFER = 750;
+    // the sink's buffer is this many times the device's minimum
+    private static final int SINK_BUFFER_MULTIPLIER = 4;
+
+    private int inputRate;
+    private int channels;
+    private short[] output = new short[0];
+    // the last input sample, and the position of the next output sample
+    // between it and the following input sample, in input samples
+    private int previous;
+    private double phase;
+
+    /**
+     * Set the format of the audio to be converted, resetting the
+     * interpolation state.
+     *
+     * @param sampleRate   The sample rate of the audio, in Hz.
+     * @param channelCount The number of interleaved channels in the audio.
+     */
+    void configure(int sampleRate, int channelCount) {
+        this.inputRate = sampleRate;
+        this.channels = channelCount;
+        this.previous = 0;
+        this.phase = 0;
+    }
+
+    /**
+     * Convert a buffer of audio and write it to a reference ring. The
+     * buffer's position is not changed.
+     *
+     * @param pcm  A buffer of 16-bit PCM audio in native byte order.
+     * @param ring The ring that receives the converted audio.
+     */
+    void write(ByteBuffer pcm, SampleRing ring) {
+        if (this.inputRate <= 0 || this.channels <= 0) {
+            return;
+        }
+        ByteBuffer samples = pcm.duplicate().order(ByteOrder.nativeOrder());
+        int frames = samples.remaining() / (2 * this.channels);
+        double step = (double) this.inputRate / ring.getSampleRate();
+        int capacity = (int) Math.ceil(frames / step) + 1;
+        if (this.output.length < capacity) {
+            this.output = new short[capacity];
+        }
+
+        int count = 0;
+        for (int i = 0; i < frames; i++) {
+            int sum = 0;
+            for (int c = 0; c < this.channels; c++) {
+                sum += samples.getShort();
+            }
+            int current = sum / this.channels;
+            while (this.phase < 1 && count < this.output.length) {
+                this.output[count++] = (short) Math.round(
+                      this.previous + this.phase * (current - this.previous));
+                this.phase += step;
+            }
+            this.phase -= 1;
+            this.previous = current;
+        }
+        ring.write(this.output, 0, count);
+    }
+
+    /**
+     * Compute the latency of ExoPlayer's audio sink, which holds the audio
+     * written to the reference in its buffer before the device plays it. The
+     * buffer is sized the way the sink sizes it for 16-bit PCM audio.
+     *
+     * @param minBufferSize The device's minimum buffer size for the audio's
+     *                      format, in bytes, as reported by {@code
+     *                      AudioTrack.getMinBufferSize}; non-positive values
+     *                      (errors) are treated as 0.
+     * @param sampleRate    The sample rate of the audio, in Hz.
+     * @param channelCount  The number of interleaved channels in the audio.
+     * @return The time, in ms, that audio spends in the sink's buffer.
+     */
+    static int sinkLatency(int minBufferSize, int sampleRate,
+                           int channelCount) {
+        int frameSize = 2 * channelCount;
+        long bytesPerSecond = (long) sampleRate * frameSize;
+        if (bytesPerSecond <= 0) {
+            return 0;
+        }
+        long minBuffer = Math.max(minBufferSize, 0);
+        long lower = bytesPerSecond * MIN_SINK_BUFFER / 1000;
+        long upper = Math.max(
+              minBuffer, bytesPerSecond * MAX_SINK_BUFFER / 1000);
+        long buffer = Math.min(Math.max(
+              minBuffer * SINK_BUFFER_MULTIPLIER, lower), upper);
+        return (int) (buffer * 1000 / bytesPerSecond);
+    }
+}
@@ -0,0 +1,202 @@
+package io.spokestack.spokestack.tts;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits synthesis requests at sentence boundaries so that each sentence can
+ * be synthesized, and played, on its own.
+ *
+ * <p>
+ * A sentence ends with one or more of {@code .}, {@code !}, and {@code ?},
+ * optionally followed by closing quotes or brackets, and then whitespace. In
+ * SSML, only text directly inside the root {@code <speak>} element is split,
+ * along with the ends of top-level {@code <s>} and {@code <p>} elements, so
+ * that every chunk remains well-formed; each chunk is wrapped in its own
+ * {@code <speak>} element carrying the original's attributes.
+ * </p>
+ *
+ * <p>
+ * Each chunk keeps the voice, mode, and metadata of the original request. If
+ * the original has an {@code id}, each chunk's {@code id} has the chunk's
+ * index appended to it so that the chunks can be told apart.
+ * </p>
+ */
+final class SentenceChunker {
+    private static final String SPEAK_OPEN = "<speak";
+    private static final String SPEAK_CLOSE = "</speak>";
+
+    private SentenceChunker() {
+    }
+
+    /**
+     * Split a request into sentences.
+     *
+     * @param request The request to split.
+     * @return The requests for each sentence, in order. A request containing
+     * a single sentence is returned as the only element of the list.
+     */
+    static List<SynthesisRequest> split(SynthesisRequest request) {
+        String text = request.text.toString();
+        List<String> sentences;
+        if (request.mode == SynthesisRequest.Mode.SSML) {
+            sentences = splitSsml(text);
+        } else {
+            sentences = splitText(text);
+        }
+        List<SynthesisRequest> chunks = new ArrayList<>();
+        if (sentences.size() < 2) {
+            chunks.add(request);
+            return chunks;
+        }
+        String id = request.metadata.get("id");
+        for (int i = 0; i < sentences.size(); i++) {
+            Map<String, String> metadata = new HashMap<>(request.metadata);
+            if (id != null) {
+                metadata.put("id", id + "-" + i);
+            }
+            chunks.add(new SynthesisRequest(sentences.get(i), request.mode,
+                  request.voice, metadata));
+        }
+        return chunks;
+    }
+
+    private static List<String> splitText(String text) {
+        List<String> sentences = new ArrayList<>();
+        int end = text.length();
+        int sentenceStart = 0;
+        int pos = 0;
+        while (pos < end) {
+            int boundary = sentenceEnd(text, pos, end);
+            if (boundary > pos) {
+                addSentence(sentences,
+                      text.substring(sentenceStart, boundary));
+                sentenceStart = boundary;
+                pos = boundary;
+            } else {
+                pos++;
+            }
+        }
+        addSentence(sentences, text.substring(sentenceStart, end));
+        return sentences;
+    }
+
+    private static List<String> splitSsml(String text) {
+        List<String> sentences = new ArrayList<>();
+        int open = text.indexOf(SPEAK_OPEN);
+        int bodyStart = open < 0 ? -1 : text.indexOf('>', open);
+        int bodyEnd = text.lastIndexOf(SPEAK_CLOSE);
+        if (bodyStart < 0 || bodyEnd < bodyStart
+              || text.charAt(bodyStart - 1) == '/') {
+            // not something we can safely split
+            sentences.add(text);
+            return sentences;
+        }
+        String speakTag = text.substring(open, bodyStart + 1);
+
+        int depth = 0;
+        int sentenceStart = bodyStart + 1;
+        int pos = sentenceStart;
+        while (pos < bodyEnd) {
+            char ch = text.charAt(pos);
+            if (ch == '<') {
+                int tagEnd = text.indexOf('>', pos);
+                if (tagEnd < 0 || tagEnd > bodyEnd) {
+                    break;
+                }
+                boolean closing = text.charAt(pos + 1) == '/';
+                boolean selfClosing = text.charAt(tagEnd - 1) == '/'
+                      || text.charAt(pos + 1) == '!'
+                      || text.charAt(pos + 1) == '?';
+                if (closing) {
+                    depth--;
+                } else if (!selfClosing) {
+                    depth++;
+                }
+                pos = tagEnd + 1;
+                if (closing && depth == 0 && isBlockEnd(text, pos)) {
+                    addSentence(sentences,
+                          text.substring(sentenceStart, pos));
+                    sentenceStart = pos;
+                }
+            } else if (depth == 0) {
+                int boundary = sentenceEnd(text, pos, bodyEnd);
+                if (boundary > pos) {
+                    addSentence(sentences,
+                          text.substring(sentenceStart, boundary));
+                    sentenceStart = boundary;
+                    pos = boundary;
+                } else {
+                    pos++;
+                }
+            } else {
+                pos++;
+            }
+        }
+        if (pos < bodyEnd || depth != 0) {
+            // malformed; leave it for the synthesis service to reject
+            sentences.clear();
+            sentences.add(text);
+            return sentences;
+        }
+        addSentence(sentences, text.substring(sentenceStart, bodyEnd));
+
+        for (int i = 0; i < sentences.size(); i++) {
+            sentences.set(i, speakTag + sentences.get(i) + SPEAK_CLOSE);
+        }
+        return sentences;
+    }
+
+    private static boolean isBlockEnd(String text, int afterTag) {
+        return text.startsWith("</s>", afterTag - 4)
+              || text.startsWith("</p>", afterTag - 4);
+    }
+
+    /**
+     * Find the end of a sentence whose terminal punctuation starts at
+     * {@code pos}.
+     *
+     * @param text The text being split.
+     * @param pos  The position of a possible sentence terminator.
+     * @param end  The end of the text that may be examined.
+     * @return The index following the sentence, including any trailing
+     * whitespace, or {@code pos} if no sentence ends there.
+     */
+    private static int sentenceEnd(String text, int pos, int end) {
+        int cur = pos;
+        while (cur < end && isTerminal(text.charAt(cur))) {
+            cur++;
+        }
+        if (cur == pos) {
+            return pos;
+        }
+        while (cur < end && isClosing(text.charAt(cur))) {
+            cur++;
+        }
+        if (cur == end || !Character.isWhitespace(text.charAt(cur))) {
+            return pos;
+        }
+        while (cur < end && Character.isWhitespace(text.charAt(cur))) {
+            cur++;
+        }
+        return cur;
+    }
+
+    private static boolean isTerminal(char ch) {
+        return ch == '.' || ch == '!' || ch == '?';
+    }
+
+    private static boolean isClosing(char ch) {
+        return ch == '"' || ch == '\'' || ch == ')' || ch == ']'
+              || ch == '\u201D' || ch == '\u2019';
+    }
+
+    private static void addSentence(List<String> sentences, String sentence) {
+        String trimmed = sentence.trim();
+        if (!trimmed.isEmpty()) {
+            sentences.add(trimmed);
+        }
+    }
+}
@@ -1,73 +1,165 @@
 package io.spokestack.spokestack.tts;
 
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
 /**
  * A simple wrapper class used for parsing GraphQL responses from the Spokestack
  * TTS service.
+ *
+ * <p>
+ * Responses are parsed by a streaming {@link Adapter} that keeps only the
+ * audio URL and any error messages, skipping everything else without
+ * building an object tree for it. Gson uses the adapter automatically, and
+ * {@link #ADAPTER} can be used directly to parse a response as it is read
+ * from the network.
+ * </p>
  */
+@JsonAdapter(SpokestackSynthesisResponse.Adapter.class)
 public class SpokestackSynthesisResponse {
 
-    private ResponseData data;
-    private ResponseError[] errors;
-
     /**
-     * @return The URL where synthesized audio can be streamed.
+     * A shared instance of the adapter used to parse responses.
      */
-    public String getUrl() {
-        if (data == null) {
-            return null;
-        }
+    public static final TypeAdapter<SpokestackSynthesisResponse> ADAPTER =
+          new Adapter();
 
-        ResponseMethod method = data.synthesizeMarkdown;
-        if (method == null) {
-            method = data.synthesizeSsml;
-        }
-        if (method == null) {
-            method = data.synthesizeText;
-        }
+    // the synthesis methods whose results are recognized, in order of
+    // preference if a response somehow contains more than one
+    private static final String[] METHODS = {
+          "synthesizeMarkdown", "synthesizeSsml", "synthesizeText"
+    };
 
-        if (method == null) {
-            return null;
-        }
-        return method.url;
-    }
+    private final String url;
+    private final String error;
 
-    /**
-     * @return A concatenation of all error messages from the response.
-     */
-    public String getError() {
-        if (errors == null || errors.length == 0) {
-            return null;
-        }
-        StringBuilder errorBuilder = new StringBuilder();
-        for (int i = 0; i < errors.length; i++) {
-            if (i > 0) {
-                errorBuilder.append("; ");
-            }
-            errorBuilder.append(errors[i].message);
-        }
-        return errorBuilder.toString();
+    private SpokestackSynthesisResponse(String audioUrl, String errors) {
+        this.url = audioUrl;
+        this.error = errors;
     }
 
     /**
-     * Wrapper class used for deserializing synthesis responses.
+     * @return The URL where synthesized audio can be streamed.
      */
-    private static class ResponseData {
-        private ResponseMethod synthesizeMarkdown;
-        private ResponseMethod synthesizeSsml;
-        private ResponseMethod synthesizeText;
+    public String getUrl() {
+        return this.url;
     }
 
     /**
-     * Wrapper class used for deserializing synthesis responses.
+     * @return A concatenation of all error messages from the response.
      */
-    private static class ResponseMethod {
-        private String url;
+    public String getError() {
+        return this.error;
     }
 
     /**
-     * Wrapper class used for deserializing GraphQL errors.
+     * A streaming parser for synthesis responses. Responses are read-only,
+     * so writing is not supported.
      */
-    private static class ResponseError {
-        private String message;
+    static final class Adapter
+          extends TypeAdapter<SpokestackSynthesisResponse> {
+
+        @Override
+        public void write(JsonWriter out, SpokestackSynthesisResponse value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SpokestackSynthesisResponse read(JsonReader in)
+              throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String[] urls = new String[METHODS.length];
+            String errors = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (name.equals("data")
+                      && in.peek() == JsonToken.BEGIN_OBJECT) {
+                    readData(in, urls);
+                } else if (name.equals("errors")
+                      && in.peek() == JsonToken.BEGIN_ARRAY) {
+                    errors = readErrors(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+
+            String url = null;
+            for (int i = 0; i < urls.length && url == null; i++) {
+                url = urls[i];
+            }
+            return new SpokestackSynthesisResponse(url, errors);
+        }
+
+        private void readData(JsonReader in, String[] urls)
+              throws IOException {
+            in.beginObject();
+            while (in.hasNext()) {
+                int method = methodIndex(in.nextName());
+                if (method >= 0 && in.peek() == JsonToken.BEGIN_OBJECT) {
+                    urls[method] = readString(in, "url");
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+        }
+
+        private int methodIndex(String name) {
+            for (int i = 0; i < METHODS.length; i++) {
+                if (METHODS[i].equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private String readErrors(JsonReader in) throws IOException {
+            StringBuilder errors = null;
+            in.beginArray();
+            while (in.hasNext()) {
+                String message = null;
+                if (in.peek() == JsonToken.BEGIN_OBJECT) {
+                    message = readString(in, "message");
+                } else {
+                    in.skipValue();
+                }
+                if (errors == null) {
+                    errors = new StringBuilder();
+                } else {
+                    errors.append("; ");
+                }
+                errors.append(message);
+            }
+            in.endArray();
+            return errors == null ? null : errors.toString();
+        }
+
+        // reads a single string property from an object, skipping the
+        // object's other properties
+        private String readString(JsonReader in, String property)
+              throws IOException {
+            String value = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                if (in.nextName().equals(property)
+                      && in.peek() == JsonToken.STRING) {
+                    value = in.nextString();
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return value;
+        }
     }
 }
@@ -1,14 +1,24 @@
 package io.spokestack.spokestack.tts;
 
+import androidx.annotation.NonNull;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import io.spokestack.spokestack.util.Crypto;
+import io.spokestack.spokestack.util.HttpClients;
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -20,11 +30,20 @@ import java.util.concurrent.TimeUnit;
  * requests, receiving audio URLs that can be played with the Android media
  * player.
  * </p>
+ *
+ * <p>
+ * Requests are sent over the connections shared by all Spokestack components
+ * (see {@link HttpClients}), and {@link #warmUp()} can be used to open a
+ * connection to the TTS service before the first request is made. Requests
+ * for the same speech made while one is already in flight are not sent
+ * again, even if their ids differ; they receive the result of the request in
+ * flight under their own ids.
+ * </p>
  */
 public final class SpokestackTTSClient {
     private String ttsUrl = "https://api.spokestack.io/v1";
     private static final MediaType APPLICATION_JSON =
-          MediaType.parse("application/json");
+          MediaType.parse("application/json; charset=utf-8");
     private static final String GRAPHQL_QUERY =
           "query AndroidSynthesize($voice: String!, $%1$s: String!) {"
                 + "%2$s(voice: $voice, %1$s: $%1$s) {"
@@ -32,22 +51,22 @@ public final class SpokestackTTSClient {
                 + "}}";
 
     private final OkHttpClient httpClient;
+    private final Map<String, InFlightRequest> inFlight = new HashMap<>();
     private TTSCallback ttsCallback;
     private final Gson gson;
     private String ttsApiId;
     private String ttsApiSecret;
 
     /**
-     * Create a new Spokestack TTS client. This client should be created once
-     * and reused, as it contains an HTTP client with internal connection and
-     * thread pools.
+     * Create a new Spokestack TTS client. The client's HTTP connections and
+     * threads are shared with other Spokestack components.
      *
      * @param callback The callback object used to deliver an audio URL when it
      *                 becomes available.
      */
     public SpokestackTTSClient(TTSCallback callback) {
         this(callback,
-              new OkHttpClient.Builder()
+              HttpClients.shared().newBuilder()
                     .connectTimeout(5, TimeUnit.SECONDS)
                     .readTimeout(5, TimeUnit.SECONDS)
                     .build()
@@ -98,6 +117,15 @@ public final class SpokestackTTSClient {
         this.ttsApiSecret = apiSecret;
     }
 
+    /**
+     * Open a connection to the TTS service in the background, so that the
+     * first synthesis request doesn't have to wait for one to be
+     * established.
+     */
+    public void warmUp() {
+        HttpClients.preconnect(this.httpClient, this.ttsUrl);
+    }
+
     /**
      * Synthesize speech via the Spokestack TTS API. The synthesis request is
      * asynchronous; the resulting audio URL for playing back the synthesized
@@ -107,6 +135,18 @@ public final class SpokestackTTSClient {
      *                and any additional metadata.
      */
     public void synthesize(SynthesisRequest request) {
+        synthesize(request, this.ttsCallback);
+    }
+
+    /**
+     * Synthesize speech via the Spokestack TTS API, delivering the result to
+     * a callback specific to this request instead of this object's callback.
+     *
+     * @param request  The request object representing the text to be
+     *                 synthesized and any additional metadata.
+     * @param callback The callback that should receive the result.
+     */
+    public void synthesize(SynthesisRequest request, TTSCallback callback) {
         HashMap<String, String> headers = new HashMap<>();
         String requestId = request.metadata.get("id");
         if (requestId != null) {
@@ -135,22 +175,23 @@ public final class SpokestackTTSClient {
         }
         variables.put("voice", request.voice);
         String queryString = String.format(GRAPHQL_QUERY, param, method);
-        postSpeech(headers, queryString, variables);
+        postSpeech(headers, queryString, variables, callback);
     }
 
     private void postSpeech(Map<String, String> headers,
                             String queryString,
-                            Map<String, String> variables) {
+                            Map<String, String> variables,
+                            TTSCallback callback) {
         if (this.ttsApiId == null) {
-            ttsCallback.onError("API ID not provided");
+            callback.onError("API ID not provided");
             return;
         }
         if (this.ttsApiSecret == null) {
-            ttsCallback.onError("API secret not provided");
+            callback.onError("API secret not provided");
             return;
         }
         if (this.ttsUrl == null) {
-            ttsCallback.onError("TTS URL not provided");
+            callback.onError("TTS URL not provided");
             return;
         }
 
@@ -158,8 +199,24 @@ public final class SpokestackTTSClient {
         fullBody.put("query", queryString);
         fullBody.put("variables", variables);
         String fullBodyJson = gson.toJson(fullBody);
-        RequestBody postBody =
-              RequestBody.create(fullBodyJson, APPLICATION_JSON);
+        // the same bytes are signed and sent
+        byte[] bodyBytes = fullBodyJson.getBytes(StandardCharsets.UTF_8);
+        RequestBody postBody = RequestBody.create(bodyBytes, APPLICATION_JSON);
+
+        // identical requests share the response to the first, whatever
+        // their ids
+        String requestId = headers.get("x-request-id");
+        InFlightRequest pending;
+        synchronized (this.inFlight) {
+            pending = this.inFlight.get(fullBodyJson);
+            if (pending != null) {
+                pending.add(callback, requestId);
+                return;
+            }
+            pending = new InFlightRequest(fullBodyJson);
+            pending.add(callback, requestId);
+            this.inFlight.put(fullBodyJson, pending);
+        }
 
         Request.Builder builder = new Request.Builder();
 
@@ -167,9 +224,11 @@ public final class SpokestackTTSClient {
             builder = builder.addHeader(header.getKey(), header.getValue());
         }
 
-        String authHeader = signRequest(fullBodyJson);
-        if (authHeader == null) {
-            // the error is dispatched to the callback by signRequest
+        String authHeader;
+        try {
+            authHeader = Crypto.signer(this.ttsApiSecret).sign(bodyBytes);
+        } catch (IllegalArgumentException e) {
+            pending.onError("Invalid API secret");
             return;
         }
 
@@ -181,17 +240,110 @@ public final class SpokestackTTSClient {
               .post(postBody)
               .build();
 
-        httpClient.newCall(request).enqueue(this.ttsCallback);
+        httpClient.newCall(request).enqueue(pending);
     }
 
-    String signRequest(String body) {
-        String base64Signature = null;
-        try {
-            base64Signature = Crypto.signBody(body, this.ttsApiSecret);
-        } catch (IllegalArgumentException e) {
-            this.ttsCallback.onError("Invalid API secret");
+    /**
+     * Download synthesized audio using this client's HTTP connections.
+     *
+     * @param url      The URL of the audio.
+     * @param callback The callback that should receive the HTTP response.
+     */
+    public void download(String url, Callback callback) {
+        Request request = new Request.Builder()
+              .url(url)
+              .build();
+        httpClient.newCall(request).enqueue(callback);
+    }
+
+    /**
+     * A synthesis request in flight and the callbacks waiting for its
+     * result. The callbacks are removed from the set of requests in flight
+     * before they are called, so a request made by a callback is sent
+     * normally. Each callback receives the response under the id of its own
+     * request.
+     */
+    private final class InFlightRequest implements Callback {
+        private final String key;
+        private final List<Waiter> waiters = new ArrayList<>();
+
+        InFlightRequest(String requestKey) {
+            this.key = requestKey;
+        }
+
+        void add(TTSCallback callback, String requestId) {
+            this.waiters.add(new Waiter(callback, requestId));
+        }
+
+        private List<Waiter> finish() {
+            synchronized (inFlight) {
+                inFlight.remove(this.key);
+                return new ArrayList<>(this.waiters);
+            }
+        }
+
+        void onError(String message) {
+            for (Waiter waiter : finish()) {
+                waiter.callback.onError(message);
+            }
         }
 
-        return base64Signature;
+        @Override
+        public void onFailure(@NonNull Call call, @NonNull IOException e) {
+            for (Waiter waiter : finish()) {
+                waiter.callback.onFailure(call, e);
+            }
+        }
+
+        @Override
+        public void onResponse(@NonNull Call call,
+                               @NonNull Response response)
+              throws IOException {
+            List<Waiter> waiting = finish();
+            if (waiting.size() == 1) {
+                Waiter waiter = waiting.get(0);
+                waiter.callback.onResponse(call,
+                      waiter.stamp(response.newBuilder()));
+                return;
+            }
+            // the body can only be read once, so each callback gets a copy
+            ResponseBody body = response.body();
+            String content;
+            try {
+                content = body == null ? "" : body.string();
+            } catch (IOException e) {
+                for (Waiter waiter : waiting) {
+                    waiter.callback.onFailure(call, e);
+                }
+                return;
+            }
+            for (Waiter waiter : waiting) {
+                ResponseBody copy = ResponseBody.create(content,
+                      body == null ? null : body.contentType());
+                waiter.callback.onResponse(call,
+                      waiter.stamp(response.newBuilder().body(copy)));
+            }
+        }
+    }
+
+    /**
+     * A callback waiting for a synthesis result, along with the id of the
+     * request it made.
+     */
+    private static final class Waiter {
+        private final TTSCallback callback;
+        private final String requestId;
+
+        Waiter(TTSCallback ttsCallback, String id) {
+            this.callback = ttsCallback;
+            this.requestId = id;
+        }
+
+        Response stamp(Response.Builder response) {
+            if (this.requestId == null) {
+                return response.removeHeader("x-request-id").build();
+            }
+            return response.header("x-request-id", this.requestId).build();
+        }
     }
 }
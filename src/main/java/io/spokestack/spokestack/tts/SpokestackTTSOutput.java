@@ -1,7 +1,9 @@
 package io.spokestack.spokestack.tts;
 
 import android.content.Context;
+import android.media.AudioFormat;
 import android.media.AudioManager;
+import android.media.AudioTrack;
 import android.net.Uri;
 import android.os.Build;
 import androidx.annotation.NonNull;
@@ -12,6 +14,7 @@ import androidx.media.AudioAttributesCompat;
 import androidx.media.AudioFocusRequestCompat;
 import androidx.media.AudioManagerCompat;
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultRenderersFactory;
 import com.google.android.exoplayer2.ExoPlaybackException;
 import com.google.android.exoplayer2.ExoPlayer;
 import com.google.android.exoplayer2.PlaybackParameters;
@@ -19,19 +22,32 @@ import com.google.android.exoplayer2.Player;
 import com.google.android.exoplayer2.SimpleExoPlayer;
 import com.google.android.exoplayer2.Timeline;
 import com.google.android.exoplayer2.audio.AudioAttributes;
+import com.google.android.exoplayer2.audio.AudioProcessor;
+import com.google.android.exoplayer2.audio.TeeAudioProcessor;
+import com.google.android.exoplayer2.ext.okhttp.OkHttpDataSourceFactory;
 import com.google.android.exoplayer2.source.ConcatenatingMediaSource;
 import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.source.ProgressiveMediaSource;
 import com.google.android.exoplayer2.source.TrackGroupArray;
 import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
+import com.google.android.exoplayer2.upstream.DataSink;
 import com.google.android.exoplayer2.upstream.DataSource;
-import com.google.android.exoplayer2.upstream.DefaultHttpDataSourceFactory;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
+import com.google.android.exoplayer2.upstream.TeeDataSource;
+import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.Util;
 import io.spokestack.spokestack.SpeechConfig;
+import io.spokestack.spokestack.SpeechContext;
 import io.spokestack.spokestack.SpeechOutput;
+import io.spokestack.spokestack.util.HttpClients;
+import io.spokestack.spokestack.util.SampleRing;
 import io.spokestack.spokestack.util.TaskHandler;
 import org.jetbrains.annotations.NotNull;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 /**
  * Audio player component for the TTS subsystem.
  *
@@ -44,6 +60,17 @@ import org.jetbrains.annotations.NotNull;
  * </p>
  *
  * <p>
+ * Audio is streamed from the URL in each {@link AudioResponse}, or, for
+ * responses that carry their audio, played directly from memory.
+ * </p>
+ *
+ * <p>
+ * When latency is being measured (see {@link TTSMetrics}), the player records
+ * when it reads the first byte of each response's audio, when it is ready to
+ * play it, and when it starts playing it.
+ * </p>
+ *
+ * <p>
  * Note that this audio player does not provide a UI. It is designed to be used
  * within a TTS subsystem controlled by a {@link TTSManager} in an app that
  * wants to delegate all media management to Spokestack; if fine control over
@@ -52,6 +79,18 @@ import org.jetbrains.annotations.NotNull;
  * </p>
  *
  * <p>
+ * When a speech context is set with
+ * {@link #setSpeechContext(SpeechContext)}, the player publishes whether it is
+ * playing, along with the level of the audio it plays, to the context, so
+ * that a speech pipeline can keep listening during playback and let the user
+ * interrupt it. If the pipeline includes an echo canceller, the player also
+ * copies the audio it plays into the canceller's reference, and publishes
+ * how long that audio waits in the audio device's buffer before it is
+ * heard, so that the canceller can line it up with its echo. See
+ * {@link TTSManager} for details of this barge-in mode.
+ * </p>
+ *
+ * <p>
  * Additionally, this component requires an Android {@code Context} to be
  * attached to the manager that has created it. If the manager is meant to
  * persist across different {@code Activity}s, the {@code Context} used must
@@ -63,14 +102,18 @@ public class SpokestackTTSOutput extends SpeechOutput
       implements Player.EventListener,
       AudioManager.OnAudioFocusChangeListener, DefaultLifecycleObserver {
 
+    private static final String IN_MEMORY_URI = "spokestack:audio";
+
     private final int contentType;
     private final int usage;
     private TaskHandler taskHandler;
     private PlayerFactory playerFactory;
     private ExoPlayer mediaPlayer;
     private final ConcatenatingMediaSource mediaSource;
+    private DataSource.Factory dataSourceFactory;
     private Context appContext;
     private PlayerState playerState;
+    private volatile SpeechContext speechContext;
 
     /**
      * Creates a new audio output component.
@@ -117,6 +160,16 @@ public class SpokestackTTSOutput extends SpeechOutput
     @Override
     public void setAndroidContext(@NonNull Context androidContext) {
         this.appContext = androidContext;
+        this.dataSourceFactory = null;
+    }
+
+    @Override
+    public void setSpeechContext(SpeechContext context) {
+        SpeechContext previous = this.speechContext;
+        if (previous != null && previous != context) {
+            previous.setPlaying(false);
+        }
+        this.speechContext = context;
     }
 
     /**
@@ -146,7 +199,8 @@ public class SpokestackTTSOutput extends SpeechOutput
             ExoPlayer player = this.playerFactory.createPlayer(
                   this.usage,
                   this.contentType,
-                  this.appContext);
+                  this.appContext,
+                  new PlaybackMonitor());
             player.addListener(this);
             this.mediaPlayer = player;
             this.mediaPlayer.prepare(mediaSource);
@@ -160,6 +214,7 @@ public class SpokestackTTSOutput extends SpeechOutput
             this.mediaPlayer.release();
             this.mediaPlayer = null;
         });
+        publishPlaying(false);
     }
 
     @Override
@@ -169,10 +224,18 @@ public class SpokestackTTSOutput extends SpeechOutput
         }
 
         this.taskHandler.run(() -> {
-            Uri audioUri = response.getAudioUri();
-            MediaSource newTrack = createMediaSource(audioUri);
-
-            if (mediaPlayer.isPlaying()) {
+            ByteBuffer audioData = response.getAudioData();
+            String requestId = getRequestId(response);
+            MediaSource newTrack = audioData != null
+                  ? createInMemoryMediaSource(audioData, requestId)
+                  : createMediaSource(response.getAudioUri(), requestId,
+                        response.getCacheSink());
+
+            // a track that's still buffering counts as playing, so audio
+            // that arrives in quick succession is queued behind it rather
+            // than replacing it
+            if (mediaPlayer.isPlaying()
+                  || mediaPlayer.getPlaybackState() == Player.STATE_BUFFERING) {
                 mediaSource.addMediaSource(newTrack);
             } else {
                 mediaSource.clear();
@@ -197,21 +260,93 @@ public class SpokestackTTSOutput extends SpeechOutput
                 mediaPlayer.stop(true);
             }
         });
+        publishPlaying(false);
         resetPlayerState();
     }
 
+    private void publishPlaying(boolean playing) {
+        SpeechContext context = this.speechContext;
+        if (context != null) {
+            context.setPlaying(playing);
+        }
+    }
+
     @NotNull
-    MediaSource createMediaSource(Uri audioUri) {
-        String userAgent = Util.getUserAgent(this.appContext, "spokestack");
-        DataSource.Factory dataSourceFactory =
-              new DefaultHttpDataSourceFactory(userAgent);
-        return new ProgressiveMediaSource.Factory(dataSourceFactory)
+    MediaSource createMediaSource(Uri audioUri, String requestId,
+                                  DataSink.Factory cacheSink) {
+        if (this.dataSourceFactory == null) {
+            String userAgent =
+                  Util.getUserAgent(this.appContext, "spokestack");
+            // the default factory plays local files, such as cached audio,
+            // and hands remote URLs to the shared HTTP client so that audio
+            // is downloaded over already open connections
+            this.dataSourceFactory =
+                  new DefaultDataSourceFactory(this.appContext,
+                        new OkHttpDataSourceFactory(HttpClients.shared(),
+                              userAgent));
+        }
+        DataSource.Factory factory = this.dataSourceFactory;
+        if (cacheSink != null) {
+            // store the audio as it's streamed instead of downloading it
+            // again to fill the cache
+            DataSource.Factory upstream = factory;
+            factory = () -> new TeeDataSource(upstream.createDataSource(),
+                  cacheSink.createDataSink());
+        }
+        return new ProgressiveMediaSource.Factory(timed(factory, requestId))
+              .setTag(requestId)
               .createMediaSource(audioUri);
     }
 
+    @NotNull
+    MediaSource createInMemoryMediaSource(ByteBuffer audio,
+                                          String requestId) {
+        // the URI only identifies the track; the data source ignores it
+        return new ProgressiveMediaSource.Factory(
+              timed(ByteBufferDataSource.factory(audio), requestId))
+              .setTag(requestId)
+              .createMediaSource(Uri.parse(IN_MEMORY_URI));
+    }
+
+    private String getRequestId(AudioResponse response) {
+        Object id = response.getMetadata() == null
+              ? null
+              : response.getMetadata().get("id");
+        return id == null ? null : id.toString();
+    }
+
+    /**
+     * Wrap a data source factory so that its sources record when they read
+     * the first byte of a request's audio.
+     *
+     * @param factory   The data source factory.
+     * @param requestId The id of the request whose audio is being read.
+     * @return The wrapped factory, or {@code factory} itself if latency is
+     * not being recorded.
+     */
+    DataSource.Factory timed(DataSource.Factory factory, String requestId) {
+        if (requestId == null || getMetrics() == null) {
+            return factory;
+        }
+        FirstByteListener listener = new FirstByteListener(requestId);
+        return () -> {
+            DataSource source = factory.createDataSource();
+            source.addTransferListener(listener);
+            return source;
+        };
+    }
+
+    private String currentRequestId() {
+        ExoPlayer player = this.mediaPlayer;
+        Object tag = player == null ? null : player.getCurrentTag();
+        return tag == null ? null : tag.toString();
+    }
+
     @Override
     public void onPlayerStateChanged(boolean playWhenReady, int playbackState) {
-        if (playbackState == Player.STATE_ENDED) {
+        if (playbackState == Player.STATE_READY) {
+            recordTiming(currentRequestId(), TTSMetrics.Phase.READY);
+        } else if (playbackState == Player.STATE_ENDED) {
             resetPlayerState();
             dispatch(new TTSEvent(TTSEvent.Type.PLAYBACK_COMPLETE));
         }
@@ -352,20 +487,125 @@ public class SpokestackTTSOutput extends SpeechOutput
         }
     }
 
+    /**
+     * Measures the level of the audio being played and publishes it to the
+     * speech context, along with a copy of the audio for any echo canceller
+     * in the pipeline. ExoPlayer calls it on its playback thread with each
+     * buffer of decoded audio just before it is written to the audio sink,
+     * whose buffer delays it further; the delay is published when the
+     * format of the audio is known.
+     */
+    final class PlaybackMonitor
+          implements TeeAudioProcessor.AudioBufferSink {
+        private final EchoReference echoReference = new EchoReference();
+        private int encoding;
+
+        @Override
+        public void flush(int sampleRateHz, int channelCount, int pcmEncoding) {
+            this.encoding = pcmEncoding;
+            this.echoReference.configure(sampleRateHz, channelCount);
+            SpeechContext context = speechContext;
+            if (context != null && pcmEncoding == C.ENCODING_PCM_16BIT) {
+                int minBufferSize = AudioTrack.getMinBufferSize(
+                      sampleRateHz,
+                      Util.getAudioTrackChannelConfig(channelCount),
+                      AudioFormat.ENCODING_PCM_16BIT);
+                context.setPlaybackLatency(EchoReference.sinkLatency(
+                      minBufferSize, sampleRateHz, channelCount));
+            }
+        }
+
+        @Override
+        public void handleBuffer(@NonNull ByteBuffer buffer) {
+            SpeechContext context = speechContext;
+            if (context == null || this.encoding != C.ENCODING_PCM_16BIT) {
+                return;
+            }
+            SampleRing reference = context.getPlaybackReference();
+            if (reference != null) {
+                this.echoReference.write(buffer, reference);
+            }
+            // decoded audio is in native byte order, which views of the
+            // buffer don't preserve
+            ByteBuffer samples = buffer.duplicate()
+                  .order(ByteOrder.nativeOrder());
+            int count = samples.remaining() / 2;
+            if (count == 0) {
+                return;
+            }
+            double sum = 0;
+            while (samples.remaining() >= 2) {
+                double sample = (double) samples.getShort() / Short.MAX_VALUE;
+                sum += sample * sample;
+            }
+            context.setPlaybackLevel(Math.sqrt(sum / count));
+        }
+    }
+
+    /**
+     * Records when the first byte of a request's audio is read.
+     */
+    private final class FirstByteListener implements TransferListener {
+        private final String requestId;
+        private volatile boolean received;
+
+        FirstByteListener(String id) {
+            this.requestId = id;
+        }
+
+        @Override
+        public void onTransferInitializing(@NonNull DataSource source,
+                                           @NonNull DataSpec dataSpec,
+                                           boolean isNetwork) { }
+
+        @Override
+        public void onTransferStart(@NonNull DataSource source,
+                                    @NonNull DataSpec dataSpec,
+                                    boolean isNetwork) { }
+
+        @Override
+        public void onBytesTransferred(@NonNull DataSource source,
+                                       @NonNull DataSpec dataSpec,
+                                       boolean isNetwork,
+                                       int bytesTransferred) {
+            if (!this.received && bytesTransferred > 0) {
+                this.received = true;
+                recordTiming(this.requestId, TTSMetrics.Phase.FIRST_BYTE);
+            }
+        }
+
+        @Override
+        public void onTransferEnd(@NonNull DataSource source,
+                                  @NonNull DataSpec dataSpec,
+                                  boolean isNetwork) { }
+    }
+
     /**
      * Simple class for producing media players configured with Spokestack's
      * preferred audio attributes and current context.
      */
     static class PlayerFactory {
         ExoPlayer createPlayer(int usage, int contentType,
-                               Context context) {
+                               Context context,
+                               TeeAudioProcessor.AudioBufferSink playbackSink) {
             AudioAttributes attributes = new AudioAttributes.Builder()
                   .setUsage(usage)
                   .setContentType(contentType)
                   .build();
 
+            // the tee passes decoded audio through unchanged, letting the
+            // sink measure its level and copy it for echo cancellation
+            DefaultRenderersFactory renderers =
+                  new DefaultRenderersFactory(context) {
+                      @Override
+                      protected AudioProcessor[] buildAudioProcessors() {
+                          return new AudioProcessor[]{
+                                new TeeAudioProcessor(playbackSink)
+                          };
+                      }
+                  };
             SimpleExoPlayer player =
-                  new SimpleExoPlayer.Builder(context).build();
+                  new SimpleExoPlayer.Builder(context, renderers).build();
             player.setAudioAttributes(attributes, false);
             return player;
         }
@@ -408,14 +648,29 @@ public class SpokestackTTSOutput extends SpeechOutput
     public void onPlaybackSuppressionReasonChanged(
           int playbackSuppressionReason) { }
 
-    @Override public void onIsPlayingChanged(boolean isPlaying) { }
+    @Override
+    public void onIsPlayingChanged(boolean isPlaying) {
+        publishPlaying(isPlaying);
+        if (isPlaying) {
+            recordTiming(currentRequestId(), TTSMetrics.Phase.PLAYBACK);
+        }
+    }
 
     @Override public void onRepeatModeChanged(int repeatMode) { }
 
     @Override public void onShuffleModeEnabledChanged(
           boolean shuffleModeEnabled) { }
 
-    @Override public void onPositionDiscontinuity(int reason) { }
+    @Override
+    public void onPositionDiscontinuity(int reason) {
+        // queued audio starts without any change in the player's state
+        if (reason == Player.DISCONTINUITY_REASON_PERIOD_TRANSITION
+              && this.mediaPlayer != null && this.mediaPlayer.isPlaying()) {
+            String requestId = currentRequestId();
+            recordTiming(requestId, TTSMetrics.Phase.READY);
+            recordTiming(requestId, TTSMetrics.Phase.PLAYBACK);
+        }
+    }
 
     @Override
     public void onPlaybackParametersChanged(
@@ -1,10 +1,19 @@
 package io.spokestack.spokestack.tts;
 
+import android.net.Uri;
 import androidx.annotation.NonNull;
 import io.spokestack.spokestack.SpeechConfig;
 import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * <p>
@@ -29,19 +38,50 @@ import java.io.IOException;
  *         requests. Defaults to the synthesis URL active at the time this
  *         version of the library was published.
  *     </li>
+ *     <li>
+ *         <b>tts-cache-path</b> (string): A directory in which synthesized
+ *         audio should be cached. Requests for audio already in the cache are
+ *         answered immediately with the URI of the cached file, without
+ *         contacting the synthesis service. The directory should not be used
+ *         for anything else. If this property is not set, audio is not
+ *         cached.
+ *     </li>
+ *     <li>
+ *         <b>tts-cache-size</b> (integer): The maximum total size, in bytes,
+ *         of the cached audio. The least recently used audio is removed to
+ *         stay within this limit. Defaults to 10 MB.
+ *     </li>
  * </ul>
+ *
+ * <p>
+ * Cached audio is identified by the request's voice, mode, and text. When a
+ * request is not in the cache, its audio URL is delivered as soon as it is
+ * available, and a {@link SpokestackTTSOutput} playing it stores the audio in
+ * the cache as it streams it, so the audio is only downloaded once. Audio
+ * that isn't played to the end by that output isn't cached. Audio can also
+ * be placed in the cache before it is needed with
+ * {@link #prefetch(SynthesisRequest)}.
+ * </p>
  */
 public final class SpokestackTTSService extends TTSService {
+    private static final int DEFAULT_CACHE_SIZE = 10 * 1024 * 1024;
+    // how long a prefetch waits for its audio, in ms
+    private static final long PREFETCH_TIMEOUT = 60000;
+
     private SpokestackTTSClient client;
+    private TTSCache cache;
 
     /**
      * The callback used to process asynchronous responses from the underlying
      * HTTP client.
      */
-    protected final TTSCallback callback = new SpokestackCallback();
+    protected final TTSCallback callback =
+          new SpokestackCallback(this::dispatch);
 
     /**
-     * Creates a new TTS service component.
+     * Creates a new TTS service component and begins connecting to the TTS
+     * endpoint in the background, so that the connection is ready for the
+     * first synthesis request.
      *
      * @param config The component configuration that supplies authentication
      *               information and the location of the TTS endpoint.
@@ -49,6 +89,7 @@ public final class SpokestackTTSService extends TTSService {
     public SpokestackTTSService(SpeechConfig config) {
         this.client = new SpokestackTTSClient(callback);
         configure(config);
+        this.client.warmUp();
     }
 
     /**
@@ -72,6 +113,21 @@ public final class SpokestackTTSService extends TTSService {
         if (ttsUrl != null) {
             this.client.setTtsUrl(ttsUrl);
         }
+        String cachePath = config.getString("tts-cache-path", null);
+        if (cachePath != null) {
+            int cacheSize =
+                  config.getInteger("tts-cache-size", DEFAULT_CACHE_SIZE);
+            this.cache = TTSCache.open(new File(cachePath), cacheSize);
+        }
+    }
+
+    /**
+     * Get the cache of synthesized audio.
+     *
+     * @return The audio cache, or {@code null} if caching is disabled.
+     */
+    public TTSCache getCache() {
+        return this.cache;
     }
 
     @Override
@@ -81,14 +137,221 @@ public final class SpokestackTTSService extends TTSService {
 
     @Override
     public void synthesize(SynthesisRequest request) {
-        this.client.synthesize(request);
+        synthesize(request, this.callback);
+    }
+
+    @Override
+    public boolean supportsDirectDelivery() {
+        return true;
+    }
+
+    @Override
+    public void synthesize(SynthesisRequest request, TTSListener listener) {
+        synthesize(request, new SpokestackCallback(listener));
+    }
+
+    private void synthesize(SynthesisRequest request, TTSCallback delivery) {
+        if (this.cache == null) {
+            this.client.synthesize(request, timed(request, delivery));
+            return;
+        }
+        String key = TTSCache.key(request);
+        File cached = this.cache.get(key);
+        if (cached != null) {
+            HashMap<String, Object> metadata = new HashMap<>();
+            metadata.put("id", request.metadata.get("id"));
+            delivery.onSynthesisResponse(
+                  new AudioResponse(metadata, Uri.fromFile(cached)));
+        } else {
+            this.client.synthesize(request,
+                  timed(request, new CachingCallback(key, delivery)));
+        }
+    }
+
+    private TTSCallback timed(SynthesisRequest request, TTSCallback callback) {
+        if (getMetrics() == null) {
+            return callback;
+        }
+        return new TimingCallback(request.metadata.get("id"), callback);
+    }
+
+    /**
+     * Synthesizes a request and downloads its audio into the cache, blocking
+     * until the download is complete. Does nothing if caching is disabled or
+     * the audio is already cached.
+     *
+     * @param request The synthesis request data.
+     * @throws Exception if the audio cannot be synthesized or downloaded.
+     */
+    @Override
+    public void prefetch(SynthesisRequest request) throws Exception {
+        TTSCache audioCache = this.cache;
+        if (audioCache == null) {
+            return;
+        }
+        String key = TTSCache.key(request);
+        if (audioCache.get(key) != null) {
+            return;
+        }
+        SpokestackTTSClient ttsClient = this.client;
+        if (ttsClient == null) {
+            throw new IllegalStateException("TTS service closed");
+        }
+        CacheWriter writer = new CacheWriter(key);
+        ttsClient.synthesize(request, new TTSCallback() {
+            @Override
+            public void onFailure(@NonNull Call call, IOException e) {
+                writer.fail(e);
+            }
+
+            @Override
+            public void onError(String message) {
+                writer.fail(new IOException(message));
+            }
+
+            @Override
+            public void onSynthesisResponse(AudioResponse response) {
+                // the HTTP client swallows exceptions thrown by callbacks,
+                // so they have to be passed to the waiting caller
+                try {
+                    ttsClient.download(response.getAudioUri().toString(),
+                          writer);
+                } catch (Exception e) {
+                    writer.fail(e);
+                }
+            }
+        });
+        writer.await(PREFETCH_TIMEOUT);
+    }
+
+    /**
+     * A callback that records when the service begins responding to a
+     * request and forwards the result.
+     */
+    private class TimingCallback extends TTSCallback {
+        private final String requestId;
+        private final TTSCallback delivery;
+
+        TimingCallback(String id, TTSCallback target) {
+            this.requestId = id;
+            this.delivery = target;
+        }
+
+        @Override
+        public void onFailure(@NonNull Call call, IOException e) {
+            this.delivery.onFailure(call, e);
+        }
+
+        @Override
+        public void onResponse(@NonNull Call call, Response httpResponse)
+              throws IOException {
+            recordTiming(this.requestId, TTSMetrics.Phase.RESPONSE);
+            super.onResponse(call, httpResponse);
+        }
+
+        @Override
+        public void onError(String message) {
+            this.delivery.onError(message);
+        }
+
+        @Override
+        public void onSynthesisResponse(AudioResponse response) {
+            this.delivery.onSynthesisResponse(response);
+        }
+    }
+
+    /**
+     * A callback that forwards a single synthesis result, asking the output
+     * that plays it to store its audio in the cache.
+     */
+    private class CachingCallback extends TTSCallback {
+        private final String key;
+        private final TTSCallback delivery;
+
+        CachingCallback(String cacheKey, TTSCallback target) {
+            this.key = cacheKey;
+            this.delivery = target;
+        }
+
+        @Override
+        public void onFailure(@NonNull Call call, IOException e) {
+            this.delivery.onFailure(call, e);
+        }
+
+        @Override
+        public void onError(String message) {
+            this.delivery.onError(message);
+        }
+
+        @Override
+        public void onSynthesisResponse(AudioResponse response) {
+            this.delivery.onSynthesisResponse(new AudioResponse(
+                  response.getMetadata(),
+                  response.getAudioUri(),
+                  CacheDataSink.factory(cache, this.key)));
+        }
+    }
+
+    /**
+     * Writes audio downloaded by a prefetch request into the cache. The
+     * request waits for the write with {@link #await(long)}, which reports
+     * any error.
+     */
+    private class CacheWriter implements Callback {
+        private final String key;
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private volatile Exception error;
+
+        CacheWriter(String cacheKey) {
+            this.key = cacheKey;
+        }
+
+        void fail(Exception e) {
+            this.error = e;
+            this.finished.countDown();
+        }
+
+        void await(long timeout) throws Exception {
+            if (!this.finished.await(timeout, TimeUnit.MILLISECONDS)) {
+                throw new TimeoutException("audio download timed out");
+            }
+            if (this.error != null) {
+                throw this.error;
+            }
+        }
+
+        @Override
+        public void onFailure(@NonNull Call call, @NonNull IOException e) {
+            fail(e);
+        }
+
+        @Override
+        public void onResponse(@NonNull Call call,
+                               @NonNull Response response) {
+            try (ResponseBody body = response.body()) {
+                if (!response.isSuccessful() || body == null) {
+                    throw new IOException(
+                          "audio download failed: " + response.code());
+                }
+                cache.put(this.key, body.byteStream());
+                this.finished.countDown();
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
     }
 
     /**
      * An internal callback class used to handle responses from the synthesis
-     * service.
+     * service, converting them to events for a listener.
      */
-    private class SpokestackCallback extends TTSCallback {
+    private static class SpokestackCallback extends TTSCallback {
+        private final TTSListener listener;
+
+        SpokestackCallback(TTSListener target) {
+            this.listener = target;
+        }
+
         @Override
         public void onFailure(@NonNull Call call, IOException e) {
             raiseError(e);
@@ -102,14 +365,14 @@ public final class SpokestackTTSService extends TTSService {
         private void raiseError(Exception error) {
             TTSEvent event = new TTSEvent(TTSEvent.Type.ERROR);
             event.setError(error);
-            dispatch(event);
+            this.listener.eventReceived(event);
         }
 
         @Override
         public void onSynthesisResponse(AudioResponse response) {
             TTSEvent event = new TTSEvent(TTSEvent.Type.AUDIO_AVAILABLE);
             event.setTtsResponse(response);
-            dispatch(event);
+            this.listener.eventReceived(event);
         }
     }
 }
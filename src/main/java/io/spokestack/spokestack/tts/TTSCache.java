@@ -0,0 +1,249 @@
+package io.spokestack.spokestack.tts;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A disk cache of synthesized audio, keyed by the voice, mode, and text of the
+ * request that produced it.
+ *
+ * <p>
+ * Each entry is stored as a single file in the cache directory, named for its
+ * key. An index of the entries is kept in memory in least-recently-used order
+ * and rebuilt from the files' modification times when the cache is opened,
+ * so the order survives restarts. When the total size of the entries exceeds
+ * the cache's limit, the least recently used entries are deleted.
+ * </p>
+ *
+ * <p>
+ * Entries are written to a temporary file and renamed into place when they
+ * are complete, so a partially written entry is never returned. A single
+ * instance is shared by all users of a given directory; see
+ * {@link #open(File, long)}.
+ * </p>
+ */
+public final class TTSCache {
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int BUFFER_SIZE = 8192;
+    private static final Map<String, TTSCache> INSTANCES = new HashMap<>();
+
+    private final File directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, File> entries =
+          new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    /**
+     * Create a cache stored in a directory. Used for testing; other callers
+     * should use {@link #open(File, long)}, which shares a single instance
+     * among all users of the same directory.
+     *
+     * @param cacheDir The directory in which audio is cached.
+     * @param maxSize  The maximum total size of the cached audio, in bytes.
+     */
+    TTSCache(File cacheDir, long maxSize) {
+        this.directory = cacheDir;
+        this.maxBytes = maxSize;
+        this.directory.mkdirs();
+        File[] files = this.directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File first, File second) {
+                return Long.compare(first.lastModified(),
+                      second.lastModified());
+            }
+        });
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                // left over from an interrupted write
+                file.delete();
+            } else if (file.isFile()) {
+                this.entries.put(file.getName(), file);
+                this.totalBytes += file.length();
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Open the cache stored in a directory, creating the directory if
+     * necessary.
+     *
+     * @param cacheDir The directory in which audio is cached. It should not be
+     *                 used for any other purpose.
+     * @param maxSize  The maximum total size of the cached audio, in bytes.
+     *                 If the directory is already open, the size limit it was
+     *                 opened with remains in effect.
+     * @return The cache stored in {@code cacheDir}.
+     */
+    public static TTSCache open(File cacheDir, long maxSize) {
+        String path = cacheDir.getAbsolutePath();
+        synchronized (INSTANCES) {
+            TTSCache cache = INSTANCES.get(path);
+            if (cache == null) {
+                cache = new TTSCache(cacheDir, maxSize);
+                INSTANCES.put(path, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Compute the cache key for a synthesis request. Requests with the same
+     * voice, mode, and text have the same key; any other metadata attached to
+     * the request is ignored.
+     *
+     * @param request The synthesis request.
+     * @return The request's cache key.
+     */
+    public static String key(SynthesisRequest request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String identity = request.voice + "\n" + request.mode + "\n"
+                  + request.text;
+            byte[] hash =
+                  digest.digest(identity.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder(2 * hash.length);
+            for (byte b : hash) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16));
+                key.append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Look up cached audio, marking it as recently used.
+     *
+     * @param key The cache key of the request that produced the audio.
+     * @return The file containing the audio, or {@code null} if none is
+     * cached.
+     */
+    public synchronized File get(String key) {
+        File file = this.entries.get(key);
+        if (file == null) {
+            return null;
+        }
+        if (!file.isFile()) {
+            // removed by something other than this cache
+            this.entries.remove(key);
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * Store audio in the cache, replacing any audio already stored under the
+     * same key and evicting old entries as necessary to stay within the size
+     * limit. The audio is read to the end of {@code audio}, which is not
+     * closed.
+     *
+     * @param key   The cache key of the request that produced the audio.
+     * @param audio The audio to store.
+     * @return The file containing the stored audio, or {@code null} if the
+     * audio was too large to store.
+     * @throws IOException if the audio cannot be read or written.
+     */
+    public File put(String key, InputStream audio) throws IOException {
+        File temp = createTempFile();
+        try {
+            try (OutputStream out = new FileOutputStream(temp)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read = audio.read(buffer);
+                while (read >= 0) {
+                    out.write(buffer, 0, read);
+                    read = audio.read(buffer);
+                }
+            }
+            return commit(key, temp);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Create a temporary file in the cache directory, into which an entry can
+     * be written before it is committed with {@link #commit(String, File)}.
+     * Temporary files are never returned by {@link #get(String)}, and any
+     * left behind are deleted when the cache is next opened.
+     *
+     * @return The new temporary file.
+     * @throws IOException if the file cannot be created.
+     */
+    File createTempFile() throws IOException {
+        return File.createTempFile("tts-", TEMP_SUFFIX, this.directory);
+    }
+
+    /**
+     * Move a completely written temporary file into the cache, replacing any
+     * audio already stored under the same key and evicting old entries as
+     * necessary to stay within the size limit.
+     *
+     * @param key  The cache key of the request that produced the audio.
+     * @param temp A file created by {@link #createTempFile()}.
+     * @return The file containing the stored audio, or {@code null} if the
+     * audio was too large to store.
+     * @throws IOException if the file cannot be moved into place.
+     */
+    synchronized File commit(String key, File temp) throws IOException {
+        File file = new File(this.directory, key);
+        File previous = this.entries.remove(key);
+        if (previous != null) {
+            this.totalBytes -= previous.length();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Unable to store " + file);
+        }
+        this.entries.put(key, file);
+        this.totalBytes += file.length();
+        evict();
+        return this.entries.containsKey(key) ? file : null;
+    }
+
+    /**
+     * @return The total size of the cached audio, in bytes.
+     */
+    public synchronized long size() {
+        return this.totalBytes;
+    }
+
+    /**
+     * Remove all cached audio.
+     */
+    public synchronized void clear() {
+        for (File file : this.entries.values()) {
+            file.delete();
+        }
+        this.entries.clear();
+        this.totalBytes = 0;
+    }
+
+    private void evict() {
+        Iterator<File> oldest = this.entries.values().iterator();
+        while (this.totalBytes > this.maxBytes && oldest.hasNext()) {
+            File file = oldest.next();
+            this.totalBytes -= file.length();
+            file.delete();
+            oldest.remove();
+        }
+    }
+}
@@ -3,10 +3,12 @@ package io.spokestack.spokestack.tts;
 import android.net.Uri;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
 import okhttp3.Call;
 import okhttp3.Callback;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
 
 import java.io.IOException;
 import java.util.HashMap;
@@ -16,7 +18,6 @@ import java.util.HashMap;
  * TTS service.
  */
 public abstract class TTSCallback implements Callback {
-    private final Gson gson = new Gson();
 
     @Override
     public void onFailure(@NonNull Call call, IOException e) {
@@ -33,12 +34,23 @@ public abstract class TTSCallback implements Callback {
                 onError("Synthesis error: HTTP " + httpResponse.code());
             }
         } else {
-            String responseJson = httpResponse.body().string();
             String requestId = httpResponse.header("x-request-id");
 
-            SpokestackSynthesisResponse response =
-                  gson.fromJson(responseJson,
-                        SpokestackSynthesisResponse.class);
+            // only the URL is needed, so the response is parsed as it's
+            // read, skipping everything else
+            SpokestackSynthesisResponse response;
+            try (ResponseBody body = httpResponse.body();
+                 JsonReader reader = new JsonReader(body.charStream())) {
+                response = SpokestackSynthesisResponse.ADAPTER.read(reader);
+            } catch (IOException | JsonParseException
+                  | IllegalStateException e) {
+                onError("Synthesis error: invalid response");
+                return;
+            }
+            if (response == null) {
+                onError("Synthesis error: empty response");
+                return;
+            }
 
             // GraphQL errors are wrapped in an HTTP 200 response, so they have
             // to be handled in the "success" path
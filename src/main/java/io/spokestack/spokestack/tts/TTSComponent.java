@@ -15,6 +15,11 @@ public abstract class TTSComponent {
      */
     private List<TTSListener> listeners = new ArrayList<>();
 
+    /**
+     * Latency measurements for this component's requests.
+     */
+    private volatile TTSMetrics metrics;
+
     /**
      * Add a TTS listener to receive events from this component.
      *
@@ -30,8 +35,62 @@ public abstract class TTSComponent {
      * @param event The event that has occurred.
      */
     public void dispatch(TTSEvent event) {
+        if (event.type == TTSEvent.Type.AUDIO_AVAILABLE) {
+            recordTiming(event.getTtsResponse(),
+                  TTSMetrics.Phase.AUDIO_AVAILABLE);
+        }
         for (TTSListener listener : listeners) {
             listener.eventReceived(event);
         }
     }
+
+    /**
+     * Set the metrics in which this component records the latency of the
+     * requests it handles.
+     *
+     * @param ttsMetrics The metrics, or {@code null} to stop recording.
+     */
+    public void setMetrics(TTSMetrics ttsMetrics) {
+        this.metrics = ttsMetrics;
+    }
+
+    /**
+     * Get the metrics in which this component records the latency of the
+     * requests it handles.
+     *
+     * @return The metrics, or {@code null} if latency is not being recorded.
+     */
+    public TTSMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Record that a request has reached a phase, if latency is being
+     * recorded.
+     *
+     * @param requestId The request's id. May be {@code null}.
+     * @param phase     The phase reached.
+     */
+    protected void recordTiming(String requestId, TTSMetrics.Phase phase) {
+        TTSMetrics ttsMetrics = this.metrics;
+        if (ttsMetrics != null) {
+            ttsMetrics.record(requestId, phase);
+        }
+    }
+
+    /**
+     * Record that the request that produced a response has reached a phase,
+     * if latency is being recorded.
+     *
+     * @param response The response, identified by its {@code id} metadata.
+     *                 May be {@code null}.
+     * @param phase    The phase reached.
+     */
+    protected void recordTiming(AudioResponse response,
+                                TTSMetrics.Phase phase) {
+        TTSMetrics ttsMetrics = this.metrics;
+        if (ttsMetrics != null) {
+            ttsMetrics.record(response, phase);
+        }
+    }
 }
@@ -12,7 +12,8 @@ public final class TTSEvent {
     public enum Type {
         /**
          * A synthesis request has completed, and an audio URL has been received
-         * from the external service.
+         * from the external service, or, for local services, the audio itself
+         * is available.
          *
          * Note that audio synthesized by Spokestack must be played or
          * downloaded within 30 seconds of URL generation, or it will become
@@ -3,11 +3,21 @@ package io.spokestack.spokestack.tts;
 import android.content.Context;
 import androidx.annotation.NonNull;
 import androidx.lifecycle.Lifecycle;
+import io.spokestack.spokestack.OnSpeechEventListener;
 import io.spokestack.spokestack.SpeechConfig;
+import io.spokestack.spokestack.SpeechContext;
 import io.spokestack.spokestack.SpeechOutput;
+import io.spokestack.spokestack.util.AsyncResult;
+import io.spokestack.spokestack.util.Callback;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Manager for text-to-speech output in Spokestack.
@@ -54,16 +64,58 @@ import java.util.List;
  * Once released, an explicit call to {@link #prepare()} is required to
  * reallocate a manager's resources.
  * </p>
+ *
+ * <p>
+ * Prompts that are known in advance can be synthesized before they are needed
+ * with {@link #prefetch(List)}, so that later calls to
+ * {@link #synthesize(SynthesisRequest)} are answered from the TTS service's
+ * local storage. Prefetching runs on a small pool of low-priority background
+ * threads whose size is set by the {@code tts-prefetch-threads} configuration
+ * property (default 2). Pending prefetches are cancelled when the manager is
+ * released.
+ * </p>
+ *
+ * <p>
+ * Normally an app stops its speech pipeline while TTS audio plays, so that the
+ * pipeline doesn't hear the audio and activate itself. To let the user
+ * interrupt a prompt instead, give the manager the pipeline's context with
+ * {@link Builder#setSpeechContext(SpeechContext)} and leave the pipeline
+ * running. In this barge-in mode, the output publishes its playback state to
+ * the context, where the VAD and wakeword components use it to avoid
+ * mistaking the audio for the user's speech, and the manager stops playback
+ * as soon as the pipeline activates.
+ * </p>
+ *
+ * <p>
+ * The manager measures how long each request takes to reach each phase of
+ * synthesis and playback, from the request itself to the start of its audio,
+ * and keeps the latencies of recent requests so that their percentiles can be
+ * inspected with {@link #getMetrics()}. Only requests with an {@code id} are
+ * measured; the sentences of a request split by {@code tts-chunk-requests}
+ * are measured separately, under their own ids. The number of latencies kept
+ * for each phase is set by the {@code tts-metrics-window} configuration
+ * property (default 100).
+ * </p>
  */
 public final class TTSManager implements AutoCloseable {
+    private static final int DEFAULT_PREFETCH_THREADS = 2;
+    private static final long PREFETCH_KEEP_ALIVE_SECONDS = 30;
+    private static final int DEFAULT_CHUNK_REQUESTS = 0;
+
     private final String ttsServiceClass;
     private final String outputClass;
     private final SpeechConfig config;
     private final List<TTSListener> listeners = new ArrayList<>();
+    private final List<ChunkedSynthesis> chunkedSyntheses = new ArrayList<>();
+    private final int maxChunkRequests;
+    private final TTSMetrics metrics;
     private TTSService ttsService;
     private SpeechOutput output;
     private Lifecycle lifecycle;
     private Context appContext;
+    private ThreadPoolExecutor prefetchExecutor;
+    private SpeechContext speechContext;
+    private final OnSpeechEventListener bargeInListener = this::bargeIn;
 
     /**
      * Get the current TTS service.
@@ -83,6 +135,15 @@ public final class TTSManager implements AutoCloseable {
         return output;
     }
 
+    /**
+     * Get the latency measurements for this manager's requests.
+     *
+     * @return The manager's TTS metrics.
+     */
+    public TTSMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * Construction only allowed via use of the builder.
      *
@@ -96,6 +157,11 @@ public final class TTSManager implements AutoCloseable {
         this.lifecycle = builder.lifecycle;
         this.listeners.addAll(builder.listeners);
         this.appContext = builder.appContext;
+        setSpeechContext(builder.speechContext);
+        this.maxChunkRequests = this.config.getInteger("tts-chunk-requests",
+              DEFAULT_CHUNK_REQUESTS);
+        this.metrics = new TTSMetrics(this.config.getInteger(
+              "tts-metrics-window", TTSMetrics.DEFAULT_WINDOW));
         prepare();
     }
 
@@ -106,13 +172,126 @@ public final class TTSManager implements AutoCloseable {
      * @param request The synthesis request data.
      */
     public void synthesize(SynthesisRequest request) {
+        if (this.maxChunkRequests > 0
+              && this.ttsService.supportsDirectDelivery()) {
+            List<SynthesisRequest> chunks = SentenceChunker.split(request);
+            if (chunks.size() > 1) {
+                ChunkedSynthesis synthesis =
+                      new ChunkedSynthesis(this.ttsService, chunks);
+                synchronized (this.chunkedSyntheses) {
+                    this.chunkedSyntheses.add(synthesis);
+                }
+                synthesis.start();
+                return;
+            }
+        }
+        this.metrics.record(request.metadata.get("id"),
+              TTSMetrics.Phase.REQUEST);
         this.ttsService.synthesize(request);
     }
 
+    /**
+     * Synthesizes a list of requests in the background without playing or
+     * dispatching the results, so that later calls to
+     * {@link #synthesize(SynthesisRequest)} with the same requests can be
+     * answered immediately. Whether and how the audio is stored is up to the
+     * TTS service; see {@link TTSService#prefetch(SynthesisRequest)}.
+     *
+     * @param requests The requests to synthesize ahead of time.
+     * @return A result that completes when all the requests have been
+     * prefetched, or with the first error encountered. Requests that fail do
+     * not prevent the others from being prefetched.
+     */
+    public AsyncResult<Void> prefetch(List<SynthesisRequest> requests) {
+        TTSService service = this.ttsService;
+        List<AsyncResult<Void>> pending = new ArrayList<>();
+        AsyncResult<Void> batchResult = new AsyncResult<>(() -> {
+            for (AsyncResult<Void> result : pending) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : e;
+                }
+            }
+            return null;
+        });
+        if (requests.isEmpty()) {
+            batchResult.run();
+            return batchResult;
+        }
+
+        // the batch completes on the thread that finishes the last request
+        AtomicInteger remaining = new AtomicInteger(requests.size());
+        Callback<Void> completion = new Callback<Void>() {
+            @Override
+            public void call(@NonNull Void arg) {
+                countDown();
+            }
+
+            @Override
+            public void onError(@NonNull Throwable err) {
+                countDown();
+            }
+
+            private void countDown() {
+                if (remaining.decrementAndGet() == 0) {
+                    batchResult.run();
+                }
+            }
+        };
+        for (SynthesisRequest request : requests) {
+            AsyncResult<Void> result = new AsyncResult<>(() -> {
+                service.prefetch(request);
+                return null;
+            });
+            result.registerCallback(completion);
+            pending.add(result);
+        }
+        ThreadPoolExecutor executor = getPrefetchExecutor();
+        for (AsyncResult<Void> result : pending) {
+            executor.execute(result);
+        }
+        return batchResult;
+    }
+
+    private synchronized ThreadPoolExecutor getPrefetchExecutor() {
+        if (this.prefetchExecutor == null) {
+            int threads = this.config.getInteger("tts-prefetch-threads",
+                  DEFAULT_PREFETCH_THREADS);
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                  threads, threads,
+                  PREFETCH_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                  new LinkedBlockingQueue<>(),
+                  runnable -> {
+                      Thread thread = new Thread(runnable, "tts-prefetch");
+                      thread.setDaemon(true);
+                      thread.setPriority(Thread.MIN_PRIORITY);
+                      return thread;
+                  });
+            executor.allowCoreThreadTimeOut(true);
+            this.prefetchExecutor = executor;
+        }
+        return this.prefetchExecutor;
+    }
+
+    private synchronized void cancelPrefetch() {
+        if (this.prefetchExecutor == null) {
+            return;
+        }
+        // queued requests are cancelled rather than dropped so that their
+        // batches still complete
+        for (Runnable queued : this.prefetchExecutor.shutdownNow()) {
+            ((Future<?>) queued).cancel(false);
+        }
+        this.prefetchExecutor = null;
+    }
+
     /**
      * Stops playback of any playing or queued synthesis results.
      */
     public void stopPlayback() {
+        cancelChunkedSyntheses();
         if (this.output != null) {
             this.output.stopPlayback();
         }
@@ -147,14 +326,47 @@ public final class TTSManager implements AutoCloseable {
      */
     public void setAndroidContext(Context androidContext) {
         this.appContext = androidContext;
+        if (this.ttsService != null) {
+            this.ttsService.setAndroidContext(androidContext);
+        }
         if (this.output != null) {
             this.output.setAndroidContext(androidContext);
         }
     }
 
+    /**
+     * Sets the context of a speech pipeline that keeps running while TTS
+     * audio plays, enabling barge-in. Playback is stopped whenever the
+     * pipeline activates while audio is playing.
+     *
+     * @param context The speech context, or {@code null} to disable
+     *                barge-in.
+     */
+    public void setSpeechContext(SpeechContext context) {
+        if (this.speechContext != null) {
+            this.speechContext.removeOnSpeechEventListener(
+                  this.bargeInListener);
+        }
+        this.speechContext = context;
+        if (context != null) {
+            context.addOnSpeechEventListener(this.bargeInListener);
+        }
+        if (this.output != null) {
+            this.output.setSpeechContext(context);
+        }
+    }
+
+    private void bargeIn(SpeechContext.Event event, SpeechContext context) {
+        if (event == SpeechContext.Event.ACTIVATE && context.isPlaying()) {
+            context.traceInfo("tts: barge-in");
+            stopPlayback();
+        }
+    }
+
     @Override
     public void close() {
         release();
+        setSpeechContext(null);
         this.ttsService = null;
         this.output = null;
         this.listeners.clear();
@@ -173,9 +385,13 @@ public final class TTSManager implements AutoCloseable {
 
         this.ttsService =
               createComponent(this.ttsServiceClass, TTSService.class);
+        this.ttsService.setAndroidContext(appContext);
+        this.ttsService.setMetrics(this.metrics);
         if (this.outputClass != null && this.output == null) {
             this.output = createComponent(this.outputClass, SpeechOutput.class);
             this.output.setAndroidContext(appContext);
+            this.output.setSpeechContext(this.speechContext);
+            this.output.setMetrics(this.metrics);
             this.ttsService.addListener(this.output);
             if (this.lifecycle != null) {
                 this.registerLifecycle(this.lifecycle);
@@ -204,6 +420,8 @@ public final class TTSManager implements AutoCloseable {
      * method is called, and the queue will be cleared.
      */
     public void release() {
+        cancelPrefetch();
+        cancelChunkedSyntheses();
         if (this.output != null) {
             try {
                 if (this.lifecycle != null) {
@@ -223,6 +441,25 @@ public final class TTSManager implements AutoCloseable {
         }
     }
 
+    private void cancelChunkedSyntheses() {
+        List<ChunkedSynthesis> active;
+        synchronized (this.chunkedSyntheses) {
+            active = new ArrayList<>(this.chunkedSyntheses);
+        }
+        for (ChunkedSynthesis synthesis : active) {
+            synthesis.cancel();
+        }
+    }
+
+    private void deliver(TTSEvent event) {
+        if (this.output != null) {
+            this.output.eventReceived(event);
+        }
+        for (TTSListener listener : this.listeners) {
+            listener.eventReceived(event);
+        }
+    }
+
     private void raiseError(Throwable e) {
         TTSEvent event = new TTSEvent(TTSEvent.Type.ERROR);
         event.setError(e);
@@ -231,6 +468,95 @@ public final class TTSManager implements AutoCloseable {
         }
     }
 
+    /**
+     * A request split into sentences, each of which is synthesized separately.
+     * At most {@code maxChunkRequests} sentences are synthesized at once, and
+     * their audio is delivered to the output and listeners in order, each
+     * sentence as soon as it and all the sentences before it are available.
+     * An error in any sentence is delivered in place of the remaining audio.
+     */
+    private final class ChunkedSynthesis {
+        private final TTSService service;
+        private final List<SynthesisRequest> chunks;
+        private final TTSEvent[] results;
+        private int nextRequest;
+        private int requestLimit;
+        private int nextDelivery;
+        private boolean finished;
+
+        ChunkedSynthesis(TTSService ttsService,
+                         List<SynthesisRequest> sentences) {
+            this.service = ttsService;
+            this.chunks = sentences;
+            this.results = new TTSEvent[sentences.size()];
+            this.requestLimit = sentences.size();
+        }
+
+        void start() {
+            int initial = Math.min(maxChunkRequests, this.chunks.size());
+            for (int i = 0; i < initial; i++) {
+                requestNext();
+            }
+        }
+
+        void cancel() {
+            synchronized (this) {
+                this.finished = true;
+            }
+            synchronized (chunkedSyntheses) {
+                chunkedSyntheses.remove(this);
+            }
+        }
+
+        private void requestNext() {
+            int index;
+            synchronized (this) {
+                if (this.finished || this.nextRequest >= this.requestLimit) {
+                    return;
+                }
+                index = this.nextRequest++;
+            }
+            SynthesisRequest chunk = this.chunks.get(index);
+            metrics.record(chunk.metadata.get("id"), TTSMetrics.Phase.REQUEST);
+            this.service.synthesize(chunk, event -> received(index, event));
+        }
+
+        private void received(int index, TTSEvent event) {
+            if (event.type == TTSEvent.Type.AUDIO_AVAILABLE) {
+                metrics.record(event.getTtsResponse(),
+                      TTSMetrics.Phase.AUDIO_AVAILABLE);
+            }
+            boolean complete;
+            synchronized (this) {
+                if (this.finished) {
+                    return;
+                }
+                this.results[index] = event;
+                if (event.type == TTSEvent.Type.ERROR) {
+                    // nothing after an error will be played
+                    this.requestLimit = Math.min(this.requestLimit, index);
+                }
+                // delivering while holding the lock keeps sentences in order
+                // when they complete on different threads
+                while (this.nextDelivery < this.results.length
+                      && this.results[this.nextDelivery] != null) {
+                    TTSEvent next = this.results[this.nextDelivery];
+                    this.results[this.nextDelivery++] = null;
+                    deliver(next);
+                    if (next.type == TTSEvent.Type.ERROR) {
+                        this.nextDelivery = this.results.length;
+                    }
+                }
+                complete = this.nextDelivery == this.results.length;
+            }
+            if (complete) {
+                cancel();
+            } else {
+                requestNext();
+            }
+        }
+    }
+
     /**
      * TTS manager builder.
      */
@@ -239,6 +565,7 @@ public final class TTSManager implements AutoCloseable {
         private String outputClass;
         private Context appContext;
         private Lifecycle lifecycle;
+        private SpeechContext speechContext;
         private SpeechConfig config = new SpeechConfig();
         private List<TTSListener> listeners = new ArrayList<>();
 
@@ -318,6 +645,19 @@ public final class TTSManager implements AutoCloseable {
             return this;
         }
 
+        /**
+         * Sets the context of a speech pipeline that keeps running while TTS
+         * audio plays, enabling barge-in.
+         *
+         * @param context The speech pipeline's context.
+         * @return this
+         * @see TTSManager#setSpeechContext(SpeechContext)
+         */
+        public Builder setSpeechContext(SpeechContext context) {
+            this.speechContext = context;
+            return this;
+        }
+
         /**
          * Adds a TTS listener.
          *
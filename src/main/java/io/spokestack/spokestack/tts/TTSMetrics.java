@@ -0,0 +1,245 @@
+package io.spokestack.spokestack.tts;
+
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency measurements for the TTS subsystem.
+ *
+ * <p>
+ * TTS components record the time at which each request reaches each
+ * {@link Phase} of synthesis and playback, identified by the request's
+ * {@code id} (see {@link SynthesisRequest.Builder#withData(java.util.Map)}).
+ * Requests without an id are not measured. The latency of each phase is
+ * measured from the time the request was made, and the latencies of the most
+ * recent requests are kept so that their percentiles can be compared; see
+ * {@link #getPercentile(Phase, double)}. The timings of individual requests
+ * are also available for a short while after they are made; see
+ * {@link #getTimings(String)}.
+ * </p>
+ *
+ * <p>
+ * A {@link TTSManager} measures its requests with an instance of this class,
+ * available from {@link TTSManager#getMetrics()}. All methods are
+ * thread-safe.
+ * </p>
+ */
+public final class TTSMetrics {
+    /** default number of latencies kept for each phase. */
+    public static final int DEFAULT_WINDOW = 100;
+
+    // the number of requests whose timings are kept
+    private static final int MAX_REQUESTS = 64;
+
+    /**
+     * The phases of a TTS request, in the order in which they normally occur.
+     * Not every request passes through every phase; for example, audio that
+     * is synthesized locally has no service response.
+     */
+    public enum Phase {
+        /**
+         * The request was made. The latencies of other phases are measured
+         * from this one.
+         */
+        REQUEST,
+
+        /**
+         * The synthesis service began responding.
+         */
+        RESPONSE,
+
+        /**
+         * The audio, or a URL from which it can be streamed, was available
+         * for playback.
+         */
+        AUDIO_AVAILABLE,
+
+        /**
+         * The media player received the first byte of audio.
+         */
+        FIRST_BYTE,
+
+        /**
+         * The media player was ready to play the audio. Audio queued behind
+         * other audio is considered ready when it starts playing.
+         */
+        READY,
+
+        /**
+         * The audio began playing.
+         */
+        PLAYBACK
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final Map<String, long[]> requests =
+          new LinkedHashMap<String, long[]>() {
+              @Override
+              protected boolean removeEldestEntry(
+                    Map.Entry<String, long[]> eldest) {
+                  return size() > MAX_REQUESTS;
+              }
+          };
+    private final long[][] latencies;
+    private final long[] counts;
+
+    /**
+     * Create a new metrics instance that keeps the default number of
+     * latencies for each phase.
+     */
+    public TTSMetrics() {
+        this(DEFAULT_WINDOW);
+    }
+
+    /**
+     * Create a new metrics instance.
+     *
+     * @param window The number of most recent latencies to keep for each
+     *               phase.
+     */
+    public TTSMetrics(int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("window");
+        }
+        this.latencies = new long[PHASES.length][window];
+        this.counts = new long[PHASES.length];
+    }
+
+    /**
+     * Record that a request has reached a phase now. Only the first time a
+     * request reaches each phase is recorded, and phases reached by requests
+     * that were never made, or whose timings have been discarded, are
+     * ignored. Recording {@link Phase#REQUEST} starts the request's timings
+     * over.
+     *
+     * @param requestId The request's id. If {@code null}, nothing is
+     *                  recorded.
+     * @param phase     The phase reached.
+     */
+    public void record(@Nullable String requestId, Phase phase) {
+        record(requestId, phase, System.nanoTime());
+    }
+
+    /**
+     * Record that the request that produced a response has reached a phase
+     * now.
+     *
+     * @param response The response, identified by its {@code id} metadata.
+     *                 If {@code null}, nothing is recorded.
+     * @param phase    The phase reached.
+     */
+    void record(@Nullable AudioResponse response, Phase phase) {
+        if (response != null && response.getMetadata() != null) {
+            Object id = response.getMetadata().get("id");
+            record(id == null ? null : id.toString(), phase);
+        }
+    }
+
+    synchronized void record(String requestId, Phase phase, long nanos) {
+        if (requestId == null) {
+            return;
+        }
+        if (phase == Phase.REQUEST) {
+            long[] times = new long[PHASES.length];
+            Arrays.fill(times, -1);
+            times[phase.ordinal()] = nanos;
+            this.requests.remove(requestId);
+            this.requests.put(requestId, times);
+            // requests have no latency of their own, so only their count is
+            // meaningful
+            this.counts[phase.ordinal()]++;
+            return;
+        }
+        long[] times = this.requests.get(requestId);
+        if (times == null || times[phase.ordinal()] >= 0) {
+            return;
+        }
+        times[phase.ordinal()] = nanos;
+        long latency = nanos - times[Phase.REQUEST.ordinal()];
+        long[] window = this.latencies[phase.ordinal()];
+        long count = this.counts[phase.ordinal()]++;
+        window[(int) (count % window.length)] = latency;
+    }
+
+    /**
+     * Get the timings of a recent request.
+     *
+     * @param requestId The request's id.
+     * @return The latency of each phase the request has reached, in
+     * milliseconds since it was made, or an empty map if the request is
+     * unknown or its timings have been discarded.
+     */
+    public synchronized Map<Phase, Double> getTimings(String requestId) {
+        Map<Phase, Double> timings = new EnumMap<>(Phase.class);
+        long[] times = this.requests.get(requestId);
+        if (times != null) {
+            long start = times[Phase.REQUEST.ordinal()];
+            for (Phase phase : PHASES) {
+                long time = times[phase.ordinal()];
+                if (time >= 0) {
+                    timings.put(phase, toMillis(time - start));
+                }
+            }
+        }
+        return timings;
+    }
+
+    /**
+     * Get the number of requests that have reached a phase.
+     *
+     * @param phase The phase.
+     * @return The number of requests that have reached {@code phase}, which
+     * may be more than the number of latencies kept for it.
+     */
+    public synchronized long getCount(Phase phase) {
+        return this.counts[phase.ordinal()];
+    }
+
+    /**
+     * Get a percentile of a phase's most recent latencies.
+     *
+     * @param phase      The phase.
+     * @param percentile The percentile, between 0 and 100; for example, 50
+     *                   for the median or 95 for the latency within which
+     *                   95% of requests reach the phase.
+     * @return The latency, in milliseconds, or {@code NaN} if no requests
+     * have reached the phase.
+     */
+    public double getPercentile(Phase phase, double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile");
+        }
+        long[] sorted;
+        synchronized (this) {
+            long[] window = this.latencies[phase.ordinal()];
+            long count = this.counts[phase.ordinal()];
+            sorted = Arrays.copyOf(window,
+                  (int) Math.min(count, window.length));
+        }
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        Arrays.sort(sorted);
+        // nearest rank
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return toMillis(sorted[Math.max(rank, 1) - 1]);
+    }
+
+    /**
+     * Discard all timings and latencies.
+     */
+    public synchronized void reset() {
+        this.requests.clear();
+        Arrays.fill(this.counts, 0);
+    }
+
+    private static double toMillis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -1,5 +1,7 @@
 package io.spokestack.spokestack.tts;
 
+import android.content.Context;
+
 /**
  * Text-to-speech service interface.
  *
@@ -27,4 +29,69 @@ public abstract class TTSService extends TTSComponent
      * @param request The synthesis request data.
      */
     public abstract void synthesize(SynthesisRequest request);
+
+    /**
+     * Indicates whether the service can deliver a result directly to a
+     * caller's listener with
+     * {@link #synthesize(SynthesisRequest, TTSListener)}. The default
+     * implementation returns {@code false}; services that override that
+     * method should override this one to return {@code true}.
+     *
+     * @return {@code true} if results can be delivered directly.
+     */
+    public boolean supportsDirectDelivery() {
+        return false;
+    }
+
+    /**
+     * Synthesizes a piece of text or SSML, delivering the result only to the
+     * supplied listener instead of to the registered listeners. This allows a
+     * caller to collect the results of several concurrent requests and
+     * control the order in which they are played; {@link TTSManager} uses it
+     * to synthesize long text one sentence at a time.
+     *
+     * <p>
+     * The listener receives exactly one event for the request: either
+     * {@link TTSEvent.Type#AUDIO_AVAILABLE AUDIO_AVAILABLE} or
+     * {@link TTSEvent.Type#ERROR ERROR}. It is only called on services
+     * whose {@link #supportsDirectDelivery()} returns {@code true}; the
+     * default implementation throws {@link UnsupportedOperationException}.
+     * </p>
+     *
+     * @param request  The synthesis request data.
+     * @param listener The listener that receives the result.
+     */
+    public void synthesize(SynthesisRequest request, TTSListener listener) {
+        throw new UnsupportedOperationException(
+              getClass().getName() + " does not deliver results directly");
+    }
+
+    /**
+     * Synthesizes a piece of text or SSML ahead of time so that a later call
+     * to {@link #synthesize(SynthesisRequest)} with the same request can be
+     * answered without waiting for the service. The result is not dispatched
+     * to listeners.
+     *
+     * <p>
+     * This method blocks until the audio has been stored, so it should not be
+     * called on the main thread. The default implementation does nothing,
+     * which is appropriate for services that keep no local copy of the audio
+     * they synthesize.
+     * </p>
+     *
+     * @param request The synthesis request data.
+     * @throws Exception if the audio cannot be synthesized or stored.
+     */
+    public void prefetch(SynthesisRequest request) throws Exception {
+    }
+
+    /**
+     * Sets the service's Android context, for services that synthesize audio
+     * from resources packaged with the app. The default implementation does
+     * nothing.
+     *
+     * @param androidContext The Android context.
+     */
+    public void setAndroidContext(Context androidContext) {
+    }
 }
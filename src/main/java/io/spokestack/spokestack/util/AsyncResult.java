@@ -2,6 +2,8 @@ package io.spokestack.spokestack.util;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
@@ -16,7 +18,9 @@ import java.util.concurrent.FutureTask;
  */
 public class AsyncResult<T> extends FutureTask<T> {
 
+    private final List<Runnable> completionListeners = new ArrayList<>();
     private Callback<T> completionCallback;
+    private boolean completed;
 
     /**
      * Create a new task.
@@ -46,6 +50,26 @@ public class AsyncResult<T> extends FutureTask<T> {
         }
     }
 
+    /**
+     * Add a listener to be run once when the task completes, whether
+     * successfully, with an error, or by cancellation. Unlike a callback, a
+     * listener does not replace any callback or listener already attached to
+     * the task, so it can be used to track the task's completion without
+     * interfering with its result delivery. If the task has already been
+     * completed, the listener will be run immediately.
+     *
+     * @param listener The function to be run when the task completes.
+     */
+    public void addCompletionListener(Runnable listener) {
+        synchronized (this.completionListeners) {
+            if (!this.completed) {
+                this.completionListeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
     @Override
     protected void done() {
         if (this.completionCallback != null) {
@@ -56,6 +80,15 @@ public class AsyncResult<T> extends FutureTask<T> {
                 completionCallback.onError(e);
             }
         }
+        List<Runnable> listeners;
+        synchronized (this.completionListeners) {
+            this.completed = true;
+            listeners = new ArrayList<>(this.completionListeners);
+            this.completionListeners.clear();
+        }
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
         super.done();
     }
 }
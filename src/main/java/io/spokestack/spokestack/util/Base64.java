@@ -1,7 +1,5 @@
 package io.spokestack.spokestack.util;
 
-import java.io.UnsupportedEncodingException;
-
 /**
  * <p>
  * A simple Base64 encoding class that only supports the operations needed by
@@ -45,7 +43,9 @@ public final class Base64 {
         int srcPos = 0;
         int destPos = 0;
         int destLength = 4 * ((bytes.length + 2) / 3);
-        byte[] encoded = new byte[destLength];
+        // characters are built directly so that no charset decoding is
+        // needed to produce the string
+        char[] encoded = new char[destLength];
 
         while (srcPos + 3 <= bytes.length) {
             int bits = chunkBytes(bytes, srcPos);
@@ -58,12 +58,7 @@ public final class Base64 {
         } else if (srcPos == bytes.length - 2) {
             padTwoBytes(bytes, encoded);
         }
-        try {
-            return new String(encoded, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            // if UTF-8 isn't supported, we have bigger problems
-            throw new IllegalArgumentException("UTF-8 encoding not supported");
-        }
+        return new String(encoded);
     }
 
     private static int chunkBytes(byte[] bytes, int pos) {
@@ -72,30 +67,30 @@ public final class Base64 {
               | (bytes[pos + 2] & 0xff);
     }
 
-    private static void appendEncoded(byte[] encoded, int bits, int cursor) {
-        encoded[cursor] = (byte) ENCODING_TABLE[(bits >>> 18) & 0x3f];
-        encoded[cursor + 1] = (byte) ENCODING_TABLE[(bits >>> 12) & 0x3f];
-        encoded[cursor + 2] = (byte) ENCODING_TABLE[(bits >>> 6) & 0x3f];
-        encoded[cursor + 3] = (byte) ENCODING_TABLE[bits & 0x3f];
+    private static void appendEncoded(char[] encoded, int bits, int cursor) {
+        encoded[cursor] = ENCODING_TABLE[(bits >>> 18) & 0x3f];
+        encoded[cursor + 1] = ENCODING_TABLE[(bits >>> 12) & 0x3f];
+        encoded[cursor + 2] = ENCODING_TABLE[(bits >>> 6) & 0x3f];
+        encoded[cursor + 3] = ENCODING_TABLE[bits & 0x3f];
     }
 
-    private static void padSingleByte(byte[] source, byte[] encoded) {
+    private static void padSingleByte(byte[] source, char[] encoded) {
         int bits = source[source.length - 1] & 0xff;
         int cursor = encoded.length - 4;
-        encoded[cursor] = (byte) ENCODING_TABLE[bits >> 2];
-        encoded[cursor + 1] = (byte) ENCODING_TABLE[(bits << 4) & 0x3f];
+        encoded[cursor] = ENCODING_TABLE[bits >> 2];
+        encoded[cursor + 1] = ENCODING_TABLE[(bits << 4) & 0x3f];
         encoded[cursor + 2] = '=';
         encoded[cursor + 3] = '=';
     }
 
-    private static void padTwoBytes(byte[] source, byte[] encoded) {
+    private static void padTwoBytes(byte[] source, char[] encoded) {
         int bits = source[source.length - 2] & 0xff;
         int cursor = encoded.length - 4;
-        encoded[cursor] = (byte) ENCODING_TABLE[bits >> 2];
+        encoded[cursor] = ENCODING_TABLE[bits >> 2];
         int nextBits = source[source.length - 1] & 0xff;
         encoded[cursor + 1] =
-              (byte) ENCODING_TABLE[(bits << 4) & 0x3f | (nextBits >> 4)];
-        encoded[cursor + 2] = (byte) ENCODING_TABLE[(nextBits << 2) & 0x3f];
+              ENCODING_TABLE[(bits << 4) & 0x3f | (nextBits >> 4)];
+        encoded[cursor + 2] = ENCODING_TABLE[(nextBits << 2) & 0x3f];
         encoded[cursor + 3] = '=';
     }
 }
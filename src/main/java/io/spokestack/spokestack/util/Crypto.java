@@ -2,16 +2,37 @@ package io.spokestack.spokestack.util;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Utilities for working with Spokestack-specific cryptography such as request
  * signing.
+ *
+ * <p>
+ * Creating and keying an HMAC is much more expensive than using one, so
+ * signing is done by a {@link Signer} for each secret key, which keeps a
+ * ready-to-use HMAC for each thread that signs with it. Signers for recently
+ * used keys are cached; see {@link #signer(String)}.
+ * </p>
  */
 public final class Crypto {
     private static final String HMAC_TYPE = "HmacSHA256";
+    private static final int MAX_SIGNERS = 4;
+
+    private static final Map<String, Signer> SIGNERS =
+          new LinkedHashMap<String, Signer>(MAX_SIGNERS, 0.75f, true) {
+              @Override
+              protected boolean removeEldestEntry(
+                    Map.Entry<String, Signer> eldest) {
+                  return size() > MAX_SIGNERS;
+              }
+          };
 
     /**
      * private constructor for utility class.
@@ -29,22 +50,169 @@ public final class Crypto {
      */
     public static String signBody(String body, String secret)
           throws IllegalArgumentException {
-        String signed;
-        try {
-            Mac hmacAlgo = Mac.getInstance(HMAC_TYPE);
+        return signer(secret).sign(body);
+    }
+
+    /**
+     * Get a signer for a secret key. The signers for the few most recently
+     * used keys are cached, so this is inexpensive to call for each request.
+     *
+     * @param secret The signing key
+     * @return A signer using {@code secret}
+     * @throws IllegalArgumentException if the secret key is invalid
+     */
+    public static Signer signer(String secret)
+          throws IllegalArgumentException {
+        synchronized (SIGNERS) {
+            Signer signer = SIGNERS.get(secret);
+            if (signer == null) {
+                signer = new Signer(secret);
+                SIGNERS.put(secret, signer);
+            }
+            return signer;
+        }
+    }
+
+    /**
+     * Signs data with a single secret key, producing base-64 encoded
+     * HMAC-SHA256 signatures. A signer may be shared among threads.
+     */
+    public static final class Signer {
+        private final SecretKeySpec keySpec;
+        private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>() {
+            @Override
+            protected Mac initialValue() {
+                return createMac();
+            }
+        };
+
+        private Signer(String secret) {
+            if (secret == null) {
+                throw new IllegalArgumentException("Invalid secret key");
+            }
             byte[] keyBytes = secret.getBytes(StandardCharsets.UTF_8);
-            SecretKeySpec keySpec = new SecretKeySpec(keyBytes, HMAC_TYPE);
-            hmacAlgo.init(keySpec);
-            byte[] macData = hmacAlgo.doFinal(
-                  body.getBytes(StandardCharsets.UTF_8));
-            signed = Base64.encode(macData);
-        } catch (NoSuchAlgorithmException e) {
-            // not documented above because this should never happen
-            throw new IllegalArgumentException("Invalid HMAC algorithm");
-        } catch (InvalidKeyException e) {
-            throw new IllegalArgumentException("Invalid secret key");
-        }
-
-        return signed;
+            try {
+                this.keySpec = new SecretKeySpec(keyBytes, HMAC_TYPE);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid secret key");
+            }
+            // fail now rather than on first use if the key is unusable
+            this.macs.get();
+        }
+
+        private Mac createMac() {
+            try {
+                Mac mac = Mac.getInstance(HMAC_TYPE);
+                mac.init(this.keySpec);
+                return mac;
+            } catch (NoSuchAlgorithmException e) {
+                // not documented because this should never happen
+                throw new IllegalArgumentException("Invalid HMAC algorithm");
+            } catch (InvalidKeyException e) {
+                throw new IllegalArgumentException("Invalid secret key");
+            }
+        }
+
+        /**
+         * Sign the UTF-8 encoding of a string.
+         *
+         * @param body The string to sign
+         * @return The base-64 encoded signature
+         */
+        public String sign(String body) {
+            return sign(body.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Sign an array of bytes.
+         *
+         * @param body The bytes to sign
+         * @return The base-64 encoded signature
+         */
+        public String sign(byte[] body) {
+            return sign(body, 0, body.length);
+        }
+
+        /**
+         * Sign part of an array of bytes.
+         *
+         * @param body   The array containing the bytes to sign
+         * @param offset The index of the first byte to sign
+         * @param length The number of bytes to sign
+         * @return The base-64 encoded signature
+         */
+        public String sign(byte[] body, int offset, int length) {
+            Mac mac = this.macs.get();
+            mac.update(body, offset, length);
+            return Base64.encode(mac.doFinal());
+        }
+
+        /**
+         * Sign the remaining bytes in a buffer, leaving the buffer's
+         * position at its limit.
+         *
+         * @param body The buffer to sign
+         * @return The base-64 encoded signature
+         */
+        public String sign(ByteBuffer body) {
+            Mac mac = this.macs.get();
+            mac.update(body);
+            return Base64.encode(mac.doFinal());
+        }
+
+        /**
+         * Begin signing data that is produced incrementally, such as a
+         * request body being written to the network. Bytes written to the
+         * returned stream are added to the signature; nothing else is done
+         * with them.
+         *
+         * @return A stream that signs the bytes written to it
+         */
+        public SigningStream stream() {
+            return new SigningStream(createMac());
+        }
+    }
+
+    /**
+     * An output stream that computes the signature of the bytes written to
+     * it. Each stream has its own HMAC and should be used by only one thread
+     * at a time.
+     */
+    public static final class SigningStream extends OutputStream {
+        private final Mac mac;
+
+        private SigningStream(Mac hmac) {
+            this.mac = hmac;
+        }
+
+        @Override
+        public void write(int b) {
+            this.mac.update((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            this.mac.update(b, off, len);
+        }
+
+        /**
+         * Add the remaining bytes in a buffer to the signature, leaving the
+         * buffer's position at its limit.
+         *
+         * @param buffer The bytes to add
+         */
+        public void write(ByteBuffer buffer) {
+            this.mac.update(buffer);
+        }
+
+        /**
+         * Finish the signature of the bytes written so far and reset the
+         * stream so it can be used to sign something else.
+         *
+         * @return The base-64 encoded signature
+         */
+        public String signature() {
+            return Base64.encode(this.mac.doFinal());
+        }
     }
 }
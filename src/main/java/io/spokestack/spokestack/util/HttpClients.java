@@ -0,0 +1,98 @@
+package io.spokestack.spokestack.util;
+
+import androidx.annotation.NonNull;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The HTTP client shared by Spokestack's network components.
+ *
+ * <p>
+ * Speech recognition, speech synthesis, and audio playback all talk to the
+ * same few hosts, so they share a single OkHttp client and, with it, a single
+ * pool of connections. A connection opened by one component, including the
+ * TLS handshake that is a large part of the cost of opening it, can then be
+ * reused by the others, and requests to a host that supports HTTP/2 are
+ * multiplexed over one connection. Idle connections are kept alive for five
+ * minutes.
+ * </p>
+ *
+ * <p>
+ * Components that need different timeouts should derive a client from the
+ * shared one with {@link OkHttpClient#newBuilder()}, which keeps the
+ * connection pool and dispatcher.
+ * </p>
+ */
+public final class HttpClients {
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    private static OkHttpClient sharedClient;
+
+    /**
+     * private constructor for utility class.
+     */
+    private HttpClients() {
+    }
+
+    /**
+     * Get the shared HTTP client, creating it if necessary.
+     *
+     * @return The shared HTTP client.
+     */
+    public static synchronized OkHttpClient shared() {
+        if (sharedClient == null) {
+            sharedClient = new OkHttpClient.Builder()
+                  .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS,
+                        KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                  .protocols(Arrays.asList(Protocol.HTTP_2,
+                        Protocol.HTTP_1_1))
+                  .build();
+        }
+        return sharedClient;
+    }
+
+    /**
+     * Open a connection to a server in the background so that it is ready
+     * for the first real request, which is then spared the DNS lookup and
+     * TLS handshake. This is done with a {@code HEAD} request to the
+     * server's root; its response, and any error, are ignored.
+     *
+     * @param client The client whose connection pool should hold the
+     *               connection.
+     * @param url    A URL on the server. Only its scheme, host, and port are
+     *               used.
+     */
+    public static void preconnect(OkHttpClient client, String url) {
+        HttpUrl parsed = url == null ? null : HttpUrl.parse(url);
+        if (parsed == null) {
+            return;
+        }
+        Request request = new Request.Builder()
+              .url(parsed.newBuilder().encodedPath("/").query(null).build())
+              .head()
+              .build();
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                // the real request will report any problem
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call,
+                                   @NonNull Response response) {
+                response.close();
+            }
+        });
+    }
+}
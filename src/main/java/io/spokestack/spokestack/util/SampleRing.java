@@ -0,0 +1,116 @@
+package io.spokestack.spokestack.util;
+
+/**
+ * A fixed-size ring of 16-bit audio samples passed from one thread to
+ * another.
+ *
+ * <p>
+ * The ring is lock-free: it may be written by one thread and read by another
+ * at the same time without blocking either, which makes it suitable for
+ * passing audio between real-time threads such as a media player and the
+ * speech pipeline. It is not safe for more than one writer or more than one
+ * reader. When the ring is full, samples that do not fit are dropped rather
+ * than overwriting samples that have not yet been read.
+ * </p>
+ */
+public final class SampleRing {
+    private final short[] samples;
+    private final int sampleRate;
+    // total samples ever written and read; each is updated by only one
+    // thread, and their difference is the number of samples in the ring
+    private volatile long written;
+    private volatile long read;
+
+    /**
+     * Create a new ring.
+     *
+     * @param rate     The sample rate of the audio passed through the ring,
+     *                 in Hz.
+     * @param capacity The maximum number of samples the ring holds.
+     */
+    public SampleRing(int rate, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity");
+        }
+        this.sampleRate = rate;
+        this.samples = new short[capacity];
+    }
+
+    /**
+     * @return The sample rate of the audio passed through the ring, in Hz.
+     */
+    public int getSampleRate() {
+        return this.sampleRate;
+    }
+
+    /**
+     * @return The maximum number of samples the ring holds.
+     */
+    public int capacity() {
+        return this.samples.length;
+    }
+
+    /**
+     * @return The number of samples available to be read.
+     */
+    public int available() {
+        return (int) (this.written - this.read);
+    }
+
+    /**
+     * Write samples to the ring. May only be called by the writing thread.
+     *
+     * @param source The array containing the samples to write.
+     * @param offset The index of the first sample to write.
+     * @param length The number of samples to write.
+     * @return The number of samples written, which is less than
+     * {@code length} if the ring did not have room for all of them.
+     */
+    public int write(short[] source, int offset, int length) {
+        long head = this.written;
+        int count = Math.min(length,
+              this.samples.length - (int) (head - this.read));
+        int start = (int) (head % this.samples.length);
+        int first = Math.min(count, this.samples.length - start);
+        System.arraycopy(source, offset, this.samples, start, first);
+        System.arraycopy(source, offset + first, this.samples, 0,
+              count - first);
+        this.written = head + count;
+        return count;
+    }
+
+    /**
+     * Read samples from the ring. May only be called by the reading thread.
+     *
+     * @param target The array into which samples are read.
+     * @param offset The index in {@code target} of the first sample read.
+     * @param length The maximum number of samples to read.
+     * @return The number of samples read, which is less than {@code length}
+     * if fewer were available.
+     */
+    public int read(short[] target, int offset, int length) {
+        long tail = this.read;
+        int count = Math.min(length, (int) (this.written - tail));
+        int start = (int) (tail % this.samples.length);
+        int first = Math.min(count, this.samples.length - start);
+        System.arraycopy(this.samples, start, target, offset, first);
+        System.arraycopy(this.samples, 0, target, offset + first,
+              count - first);
+        this.read = tail + count;
+        return count;
+    }
+
+    /**
+     * Discard samples without reading them. May only be called by the
+     * reading thread.
+     *
+     * @param length The maximum number of samples to discard.
+     * @return The number of samples discarded.
+     */
+    public int skip(int length) {
+        long tail = this.read;
+        int count = Math.min(length, (int) (this.written - tail));
+        this.read = tail + count;
+        return count;
+    }
+}
@@ -152,6 +152,12 @@ import java.nio.ByteBuffer;
  *      posterior output, above which the trigger activates the pipeline,
  *      in the range [0, 1]
  *   </li>
+ *   <li>
+ *      <b>wake-playback-threshold</b> (double): the threshold used instead
+ *      of wake-threshold while text-to-speech audio is playing, which guards
+ *      against activations by the audio being played; defaults to halfway
+ *      between wake-threshold and 1
+ *   </li>
  * </ul>
  */
 public final class WakewordTrigger implements SpeechProcessor {
@@ -213,6 +219,7 @@ public final class WakewordTrigger implements SpeechProcessor {
 
     // wakeword activation management
     private final float posteriorThreshold;
+    private final float playbackThreshold;
     private float posteriorMax;
 
     /**
@@ -303,6 +310,9 @@ public final class WakewordTrigger implements SpeechProcessor {
         // configure the wakeword activation lengths
         this.posteriorThreshold = (float) config
             .getDouble("wake-threshold", (double) DEFAULT_WAKE_THRESHOLD);
+        this.playbackThreshold = (float) config
+            .getDouble("wake-playback-threshold",
+                (double) (1 + this.posteriorThreshold) / 2);
     }
 
     /**
@@ -448,8 +458,12 @@ public final class WakewordTrigger implements SpeechProcessor {
         this.detectModel.run();
 
         // check the classifier's output and activate
+        // require more certainty while tts audio is playing
         float posterior = this.detectModel.outputs(0).getFloat();
-        if (posterior > this.posteriorThreshold)
+        float threshold = context.isPlaying()
+            ? this.playbackThreshold
+            : this.posteriorThreshold;
+        if (posterior > threshold)
             activate(context);
         if (posterior > this.posteriorMax)
             this.posteriorMax = posterior;
@@ -0,0 +1,241 @@
+package io.spokestack.spokestack.webrtc;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import io.spokestack.spokestack.SpeechConfig;
+import io.spokestack.spokestack.SpeechProcessor;
+import io.spokestack.spokestack.SpeechContext;
+import io.spokestack.spokestack.util.SampleRing;
+
+/**
+ * Acoustic Echo Canceller (AEC) pipeline component
+ *
+ * <p>
+ * AcousticEchoCanceller is a speech pipeline component that removes the
+ * echo of the device's own text-to-speech output from the microphone signal,
+ * so that the pipeline can keep listening while a prompt plays (see
+ * {@link io.spokestack.spokestack.tts.TTSManager TTSManager}). The cancelled
+ * frames are written back to the frame buffer in-place. The AEC
+ * implementation is based on the webrtc echo canceller in the Chromium
+ * browser. It supports 16-bit PCM samples with a frame rate multiple of 10ms.
+ * </p>
+ *
+ * <p>
+ * The canceller needs a copy of the audio being played, called the far-end
+ * reference. It attaches a {@link SampleRing} to the speech context, into
+ * which the speech output writes the audio it plays, converted to the
+ * pipeline's sample rate; see
+ * {@link SpeechContext#getPlaybackReference()}. Audio reaches the reference
+ * as the output hands it to the audio device, and is heard only after it
+ * has passed through the device's buffer, so the canceller holds the
+ * reference back by the output's published latency (see
+ * {@link SpeechContext#getPlaybackLatency()}); the webrtc canceller accounts
+ * for the configured delay. Frames are passed through unchanged when nothing
+ * has been played recently. The canceller should be placed early in the
+ * pipeline, before the noise suppressor and any detectors.
+ * </p>
+ *
+ * <p>
+ * This pipeline component supports the following configuration properties:
+ * </p>
+ * <ul>
+ *   <li>
+ *      <b>sample-rate</b> (int): audio sample rate, in Hz
+ *      (supports 8000/16000Hz)
+ *   </li>
+ *   <li>
+ *      <b>frame-width</b> (int): audio frame width, in ms
+ *      (supports multiples of 10ms)
+ *   </li>
+ *   <li>
+ *     <b>aec-mode</b> (string): suppression mode, one of the following, in
+ *     order of increasing suppression of the echo that remains after
+ *     cancellation, at the cost of suppressing more of the user's speech:
+ *     <ul>
+ *       <li><b>conservative</b></li>
+ *       <li><b>moderate</b></li>
+ *       <li><b>aggressive</b></li>
+ *     </ul>
+ *   </li>
+ *   <li>
+ *     <b>aec-delay</b> (int): additional delay, in ms, between audio leaving
+ *     the output's buffer and its echo reaching the pipeline, such as the
+ *     latency of the audio hardware (default 0ms)
+ *   </li>
+ * </ul>
+ */
+public class AcousticEchoCanceller implements SpeechProcessor {
+    /** default suppression mode. */
+    public static final String DEFAULT_MODE = "moderate";
+    /** default aec-delay configuration value. */
+    public static final int DEFAULT_DELAY = 0;
+
+    private static final int MODE_CONSERVATIVE = 0;
+    private static final int MODE_MODERATE = 1;
+    private static final int MODE_AGGRESSIVE = 2;
+
+    // the maximum delay, in ms, that the canceller accepts
+    private static final int MAX_DELAY = 500;
+    // how long after the reference runs dry to keep cancelling, in ms,
+    // beyond the configured delay, to remove the echo's tail
+    private static final int TAIL_LENGTH = 200;
+    // the length of the reference ring, in ms, which must hold the output's
+    // buffer (up to 750ms) with room to spare
+    private static final int REFERENCE_LENGTH = 2000;
+    // how far, in ms beyond a frame, the reference may run ahead of the
+    // expected latency before it's considered stale; the output writes in
+    // bursts of up to one decoded buffer
+    private static final int REFERENCE_SLACK = 100;
+
+    // native aec structure handle
+    private final long aecHandle;
+    private final int blockWidth;
+    private final int delay;
+    private final int slack;
+    private final int tailBlocks;
+    private final SampleRing reference;
+    private final short[] farSamples;
+    private final ByteBuffer farBlock;
+    private boolean aligned;
+    private int idleBlocks;
+
+    /**
+     * constructs a new canceller instance.
+     * @param config the pipeline configuration instance
+     */
+    public AcousticEchoCanceller(SpeechConfig config) {
+        // decode and validate the sample rate
+        int rate = config.getInteger("sample-rate");
+        switch (rate) {
+            case 8000: break;
+            case 16000: break;
+            default: throw new IllegalArgumentException("sample-rate");
+        }
+
+        // decode and validate the frame width
+        // this must be a multiple 10ms of audio,
+        // which is the only block size supported by the canceller
+        this.blockWidth = rate * 10 / 1000;
+        int frameWidth = config.getInteger("frame-width");
+        if (frameWidth % 10 != 0)
+            throw new IllegalArgumentException("frame-width");
+
+        // decode the suppression mode
+        String modeString = config.getString("aec-mode", DEFAULT_MODE);
+        int mode = MODE_MODERATE;
+        if (modeString.equals("conservative"))
+            mode = MODE_CONSERVATIVE;
+        else if (modeString.equals("moderate"))
+            mode = MODE_MODERATE;
+        else if (modeString.equals("aggressive"))
+            mode = MODE_AGGRESSIVE;
+        else
+            throw new IllegalArgumentException("aec-mode");
+
+        this.delay = config.getInteger("aec-delay", DEFAULT_DELAY);
+        if (this.delay < 0 || this.delay >= MAX_DELAY)
+            throw new IllegalArgumentException("aec-delay");
+
+        this.slack = (frameWidth + REFERENCE_SLACK) * rate / 1000;
+        // after the reference runs dry, keep cancelling until the echo of
+        // its last samples has died out
+        this.tailBlocks = (this.delay + TAIL_LENGTH + 9) / 10;
+        this.idleBlocks = this.tailBlocks;
+        this.reference = new SampleRing(rate, REFERENCE_LENGTH * rate / 1000);
+        this.farSamples = new short[this.blockWidth];
+        this.farBlock = ByteBuffer
+            .allocateDirect(this.blockWidth * 2)
+            .order(ByteOrder.nativeOrder());
+
+        // create the native canceller context
+        this.aecHandle = create(rate, mode);
+        if (this.aecHandle == 0)
+            throw new OutOfMemoryError();
+    }
+
+    /**
+     * destroys the unmanaged aec instance.
+     */
+    public void close() {
+        destroy(this.aecHandle);
+    }
+
+    /**
+     * processes a frame of audio.
+     * @param context the current speech context
+     * @param frame   the audio frame to process
+     */
+    public void process(SpeechContext context, ByteBuffer frame) {
+        // compute the block size, in bytes
+        int blockSize = this.blockWidth * 2;
+        if (frame.capacity() % blockSize != 0)
+            throw new IllegalStateException();
+
+        // make the reference available to the speech output
+        if (context.getPlaybackReference() != this.reference)
+            context.setPlaybackReference(this.reference);
+
+        // the reference holds the audio that hasn't yet been heard; the
+        // oldest sample is the one reaching the microphone now once the
+        // reference has filled to the latency, so wait for that before
+        // reading it, and skip ahead if it has run too far ahead since
+        int latency = context.getPlaybackLatency()
+            * this.reference.getSampleRate() / 1000;
+        int available = this.reference.available();
+        if (available > 0 && available >= latency)
+            this.aligned = true;
+        if (this.aligned && available > latency + this.slack)
+            this.reference.skip(available - latency);
+
+        // run the native canceller for each 10ms block, which will update
+        // the frame buffer, padding the reference with silence if it has
+        // run short, until the echo of the last reference has died out
+        for (int offset = 0; offset < frame.capacity(); offset += blockSize) {
+            int read = 0;
+            if (this.aligned)
+                read = this.reference.read(
+                    this.farSamples, 0, this.blockWidth);
+            if (read > 0)
+                this.idleBlocks = 0;
+            else if (this.idleBlocks >= this.tailBlocks)
+                continue;
+            else
+                this.idleBlocks++;
+            Arrays.fill(this.farSamples, read, this.blockWidth, (short) 0);
+
+            this.farBlock.clear();
+            this.farBlock.asShortBuffer().put(this.farSamples);
+            int result = process(
+                this.aecHandle,
+                this.farBlock,
+                frame,
+                offset,
+                this.blockWidth,
+                this.delay);
+            if (result < 0)
+                throw new IllegalStateException();
+        }
+
+        // once the reference runs dry, realign with the next playback
+        if (this.reference.available() == 0)
+            this.aligned = false;
+    }
+
+    //-----------------------------------------------------------------------
+    // native interface
+    //-----------------------------------------------------------------------
+    static {
+        System.loadLibrary("spokestack-android");
+    }
+
+    native long create(int rate, int mode);
+    native void destroy(long aec);
+    native int process(long aec,
+                       ByteBuffer farend,
+                       ByteBuffer nearend,
+                       int offset,
+                       int length,
+                       int delay);
+}
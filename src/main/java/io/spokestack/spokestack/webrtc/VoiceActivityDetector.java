@@ -48,18 +48,41 @@ import io.spokestack.spokestack.SpeechContext;
  *     this value determines how many negative samples must be received to
  *     flip the detector to negative
  *   </li>
+ *   <li>
+ *     <b>vad-playback-margin</b> (double): while text-to-speech audio is
+ *     playing, the factor by which a frame's RMS energy must exceed the
+ *     estimated energy of the playback echo for the frame to be counted as
+ *     speech (default 2.0)
+ *   </li>
  * </ul>
  *
  * <p>
  * The detector uses a simple consecutive value filter to eliminate noisy
  * transitions.
  * </p>
+ *
+ * <p>
+ * When the pipeline keeps listening while text-to-speech audio plays (see
+ * {@link SpeechContext#isPlaying()}), the microphone picks up the audio being
+ * played, which the VAD would otherwise report as speech. During playback,
+ * the detector therefore keeps a running estimate of the echo's energy and
+ * only counts frames that are sufficiently louder than the echo, such as the
+ * user talking over the playback, as speech. The playback only reaches the
+ * microphone after the output's latency (see
+ * {@link SpeechContext#getPlaybackLatency()}), so frames heard during that
+ * time are treated as echo, and the estimate starts from the level of the
+ * audio being played (see {@link SpeechContext#getPlaybackLevel()}) rather
+ * than from the background noise that precedes the echo.
+ * </p>
  */
 public class VoiceActivityDetector implements SpeechProcessor {
     /** default voice detection mode (high precision). */
     public static final String DEFAULT_MODE = "very-aggressive";
 
     private static final int DEFAULT_FALL = 500;
+    private static final double DEFAULT_PLAYBACK_MARGIN = 2.0;
+    private static final double ECHO_ATTACK = 0.5;
+    private static final double ECHO_ADAPT = 0.02;
 
     private static final int MODE_QUALITY = 0;
     private static final int MODE_LOW_BITRATE = 1;
@@ -67,11 +90,16 @@ public class VoiceActivityDetector implements SpeechProcessor {
     private static final int MODE_VERY_AGGRESSIVE = 3;
 
     private final int rate;
+    private final int frameWidth;
     private final long vadHandle;
     private final int riseLength;
     private final int fallLength;
+    private final double playbackMargin;
     private boolean runValue;
     private int runLength;
+    private boolean echoTracking;
+    private double echoLevel;
+    private int echoOnset;
 
     /**
      * constructs a new trigger instance.
@@ -89,8 +117,8 @@ public class VoiceActivityDetector implements SpeechProcessor {
         }
 
         // validate the frame width
-        int frameWidth = config.getInteger("frame-width");
-        switch (frameWidth) {
+        this.frameWidth = config.getInteger("frame-width");
+        switch (this.frameWidth) {
             case 10: break;
             case 20: break;
             case 30: break;
@@ -112,9 +140,13 @@ public class VoiceActivityDetector implements SpeechProcessor {
             throw new IllegalArgumentException("mode");
 
         // decode the rising/falling edge delay, in ms
-        this.riseLength = config.getInteger("vad-rise-delay", 0) / frameWidth;
+        this.riseLength = config.getInteger("vad-rise-delay", 0)
+              / this.frameWidth;
         this.fallLength = config.getInteger("vad-fall-delay", DEFAULT_FALL)
-              / frameWidth;
+              / this.frameWidth;
+
+        this.playbackMargin = config.getDouble("vad-playback-margin",
+              DEFAULT_PLAYBACK_MARGIN);
 
         // initialize the vad
         this.vadHandle = create(mode);
@@ -144,8 +176,15 @@ public class VoiceActivityDetector implements SpeechProcessor {
         if (result < 0)
             throw new IllegalStateException();
 
-        // edge filtering
+        // echo gating
         boolean rawValue = result > 0;
+        if (context.isPlaying()) {
+            rawValue = !isEcho(context, frame) && rawValue;
+        } else {
+            this.echoTracking = false;
+        }
+
+        // edge filtering
         if (rawValue == this.runValue)
             this.runLength++;
         else {
@@ -166,6 +205,44 @@ public class VoiceActivityDetector implements SpeechProcessor {
         }
     }
 
+    private boolean isEcho(SpeechContext context, ByteBuffer frame) {
+        double level = rms(frame);
+        if (!this.echoTracking) {
+            this.echoTracking = true;
+            this.echoLevel = 0;
+            this.echoOnset = context.getPlaybackLatency() / this.frameWidth + 1;
+        }
+        if (this.echoOnset > 0) {
+            // assume playback starts with echo rather than speech; until the
+            // echo has had time to arrive, the microphone may hear only
+            // background noise, so the estimate also follows the level being
+            // played, which the echo is unlikely to exceed
+            this.echoOnset--;
+            this.echoLevel = Math.max(this.echoLevel,
+                  Math.max(level, context.getPlaybackLevel()));
+            return true;
+        }
+        // follow the echo as it gets louder, but adapt only slowly to
+        // anything else, so that speech isn't mistaken for echo as soon as
+        // it starts
+        boolean echo = level <= this.echoLevel * this.playbackMargin;
+        double rate = echo && level > this.echoLevel
+              ? ECHO_ATTACK
+              : ECHO_ADAPT;
+        this.echoLevel += rate * (level - this.echoLevel);
+        return echo;
+    }
+
+    private double rms(ByteBuffer frame) {
+        int count = frame.capacity() / 2;
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            double sample = (double) frame.getShort(i * 2) / Short.MAX_VALUE;
+            sum += sample * sample;
+        }
+        return count == 0 ? 0 : Math.sqrt(sum / count);
+    }
+
     //-----------------------------------------------------------------------
     // native interface
     //-----------------------------------------------------------------------
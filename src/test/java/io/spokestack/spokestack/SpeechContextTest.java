@@ -51,6 +51,27 @@ public class SpeechContextTest implements OnSpeechEventListener {
         assertFalse(context.isActive());
     }
 
+    @Test
+    public void testPlayback() {
+        SpeechContext context = new SpeechContext(new SpeechConfig());
+        assertFalse(context.isPlaying());
+        assertEquals(0.0, context.getPlaybackLevel());
+
+        context.setPlaying(true);
+        context.setPlaybackLevel(0.5);
+        assertTrue(context.isPlaying());
+        assertEquals(0.5, context.getPlaybackLevel());
+
+        // the level is cleared when playback stops
+        context.setPlaying(false);
+        assertFalse(context.isPlaying());
+        assertEquals(0.0, context.getPlaybackLevel());
+
+        assertEquals(0, context.getPlaybackLatency());
+        context.setPlaybackLatency(250);
+        assertEquals(250, context.getPlaybackLatency());
+    }
+
     @Test
     public void testTranscript() {
         SpeechContext context = new SpeechContext(new SpeechConfig());
@@ -134,6 +155,29 @@ public class SpeechContextTest implements OnSpeechEventListener {
         assertEquals(Event.TRACE, this.event);
     }
 
+    @Test
+    public void testListenerChangesDuringDispatch() {
+        SpeechContext context = new SpeechContext(new SpeechConfig());
+
+        // listeners attached or detached mid-dispatch take effect for the
+        // next event
+        OnSpeechEventListener swapper = new OnSpeechEventListener() {
+            public void onEvent(@NonNull Event event,
+                                @NonNull SpeechContext context) {
+                context.removeOnSpeechEventListener(this);
+                context.addOnSpeechEventListener(SpeechContextTest.this);
+            }
+        };
+        List<Event> received = new ArrayList<>();
+        context.addOnSpeechEventListener(swapper);
+        context.addOnSpeechEventListener((event, ctx) -> received.add(event));
+        context.dispatch(Event.ACTIVATE);
+        assertNull(this.event);
+        assertEquals(Collections.singletonList(Event.ACTIVATE), received);
+        context.dispatch(Event.DEACTIVATE);
+        assertEquals(Event.DEACTIVATE, this.event);
+    }
+
     @Test
     public void testTrace() {
         SpeechConfig config = new SpeechConfig();
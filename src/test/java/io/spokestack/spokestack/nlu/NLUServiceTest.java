@@ -0,0 +1,112 @@
+package io.spokestack.spokestack.nlu;
+
+import androidx.annotation.NonNull;
+import io.spokestack.spokestack.SpeechConfig;
+import io.spokestack.spokestack.util.AsyncResult;
+import io.spokestack.spokestack.util.Callback;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NLUServiceTest {
+
+    @Test
+    public void defaultClassifyBatch() throws Exception {
+        NLUContext context = new NLUContext(new SpeechConfig());
+        EchoService service = new EchoService();
+
+        // empty batches complete immediately
+        AsyncResult<List<NLUResult>> batch =
+              service.classifyBatch(new ArrayList<>(), context);
+        assertTrue(batch.isDone());
+        assertTrue(batch.get().isEmpty());
+
+        // results are returned in order
+        List<String> utterances = Arrays.asList("one", "two", "three");
+        List<NLUResult> results =
+              service.classifyBatch(utterances, context).get();
+        assertEquals(3, results.size());
+        for (int i = 0; i < utterances.size(); i++) {
+            assertEquals(utterances.get(i), results.get(i).getUtterance());
+            assertEquals(utterances.get(i), results.get(i).getIntent());
+        }
+    }
+
+    @Test
+    public void batchKeepsServiceCallbacks() throws Exception {
+        NLUContext context = new NLUContext(new SpeechConfig());
+        CallbackService service = new CallbackService();
+
+        // the service's own callbacks still fire for every result
+        List<String> utterances = Arrays.asList("one", "two", "three");
+        AsyncResult<List<NLUResult>> batch =
+              service.classifyBatch(utterances, context);
+        service.release.countDown();
+        List<NLUResult> results = batch.get(1, TimeUnit.SECONDS);
+        assertEquals(3, results.size());
+        assertEquals("three", results.get(2).getIntent());
+        assertTrue(service.delivered.await(1, TimeUnit.SECONDS));
+    }
+
+    static class EchoService implements NLUService {
+        private final ExecutorService executor =
+              Executors.newFixedThreadPool(2);
+
+        @Override
+        public AsyncResult<NLUResult> classify(String utterance,
+                                               NLUContext context) {
+            AsyncResult<NLUResult> result = new AsyncResult<>(
+                  () -> new NLUResult.Builder(utterance)
+                        .withIntent(utterance)
+                        .build());
+            this.executor.submit(result);
+            return result;
+        }
+    }
+
+    static class CallbackService implements NLUService {
+        private final ExecutorService executor =
+              Executors.newSingleThreadExecutor();
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final CountDownLatch delivered = new CountDownLatch(3);
+
+        @Override
+        public AsyncResult<NLUResult> classify(String utterance,
+                                               NLUContext context) {
+            AsyncResult<NLUResult> result = new AsyncResult<>(
+                  () -> new NLUResult.Builder(utterance)
+                        .withIntent(utterance)
+                        .build());
+            result.registerCallback(new Callback<NLUResult>() {
+                @Override
+                public void call(@NonNull NLUResult arg) {
+                    delivered.countDown();
+                }
+
+                @Override
+                public void onError(@NonNull Throwable err) {
+                }
+            });
+            if (utterance.equals("one")) {
+                // completes before the batch starts tracking it
+                result.run();
+            } else {
+                this.executor.submit(() -> {
+                    this.release.await();
+                    result.run();
+                    return null;
+                });
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package io.spokestack.spokestack.nlu;
+
+import androidx.annotation.NonNull;
+import io.spokestack.spokestack.SpeechConfig;
+import io.spokestack.spokestack.SpeechContext;
+import io.spokestack.spokestack.util.AsyncResult;
+import io.spokestack.spokestack.util.Callback;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamingNLUTest {
+
+    @Test
+    public void build() {
+        assertThrows(IllegalArgumentException.class,
+              () -> new StreamingNLU.Builder().build());
+    }
+
+    @Test
+    public void reusesMatchingPartial() throws Exception {
+        RecordingService service = new RecordingService();
+        StreamingNLU nlu = new StreamingNLU.Builder()
+              .setService(service)
+              .setProperty("nlu-partial-debounce", 0)
+              .build();
+        NLUContext context = new NLUContext(new SpeechConfig());
+
+        nlu.partial("turn on");
+        service.awaitCalls(1);
+        AsyncResult<NLUResult> speculative = service.results.get(0);
+
+        AsyncResult<NLUResult> result = nlu.classify("turn on", context);
+        assertSame(speculative, result);
+        assertEquals(1, service.utterances.size());
+        assertEquals(1, nlu.getHits());
+        assertEquals(0, nlu.getMisses());
+
+        // the speculative result is only used once
+        result = nlu.classify("turn on", context);
+        assertNotSame(speculative, result);
+        assertEquals(1, nlu.getMisses());
+        nlu.close();
+    }
+
+    @Test
+    public void cancelsStalePartials() throws Exception {
+        RecordingService service = new RecordingService();
+        StreamingNLU nlu = new StreamingNLU.Builder()
+              .setService(service)
+              .setProperty("nlu-partial-debounce", 0)
+              .build();
+        NLUContext context = new NLUContext(new SpeechConfig());
+
+        // a speculative classification is cancelled when its text changes
+        nlu.partial("turn on");
+        service.awaitCalls(1);
+        nlu.partial("turn on the");
+        assertTrue(service.results.get(0).isCancelled());
+        service.awaitCalls(2);
+
+        // or when the final transcript doesn't match it
+        AsyncResult<NLUResult> result =
+              nlu.classify("turn on the lights", context);
+        assertTrue(service.results.get(1).isCancelled());
+        assertFalse(result.isCancelled());
+        assertEquals("turn on the lights", service.utterances.get(2));
+        assertEquals(0, nlu.getHits());
+        assertEquals(1, nlu.getMisses());
+        nlu.close();
+    }
+
+    @Test
+    public void debounce() {
+        RecordingService service = new RecordingService();
+        StreamingNLU nlu = new StreamingNLU.Builder()
+              .setService(service)
+              .setProperty("nlu-partial-debounce", 60000)
+              .build();
+        NLUContext context = new NLUContext(new SpeechConfig());
+
+        // partials that change before the debounce interval are never
+        // classified
+        nlu.partial("turn");
+        nlu.partial("turn on");
+        nlu.classify("turn on", context);
+        assertEquals(1, service.utterances.size());
+        assertEquals("turn on", service.utterances.get(0));
+        assertEquals(1, nlu.getMisses());
+        nlu.close();
+    }
+
+    @Test
+    public void speechEvents() throws Exception {
+        RecordingService service = new RecordingService();
+        AtomicReference<NLUResult> delivered = new AtomicReference<>();
+        StreamingNLU nlu = new StreamingNLU.Builder()
+              .setService(service)
+              .setProperty("nlu-partial-debounce", 0)
+              .setCallback(new Callback<NLUResult>() {
+                  @Override
+                  public void call(@NonNull NLUResult arg) {
+                      delivered.set(arg);
+                  }
+
+                  @Override
+                  public void onError(@NonNull Throwable err) {
+                  }
+              })
+              .build();
+        SpeechContext speechContext = new SpeechContext(new SpeechConfig());
+
+        speechContext.setTranscript("what time");
+        nlu.onEvent(SpeechContext.Event.PARTIAL_RECOGNIZE, speechContext);
+        service.awaitCalls(1);
+
+        // a new activation abandons the previous speculation
+        nlu.onEvent(SpeechContext.Event.ACTIVATE, speechContext);
+        assertTrue(service.results.get(0).isCancelled());
+
+        nlu.onEvent(SpeechContext.Event.PARTIAL_RECOGNIZE, speechContext);
+        service.awaitCalls(2);
+        nlu.onEvent(SpeechContext.Event.RECOGNIZE, speechContext);
+        assertEquals(2, service.utterances.size());
+        assertEquals(1, nlu.getHits());
+
+        service.results.get(1).run();
+        assertEquals("what time", delivered.get().getUtterance());
+        nlu.close();
+    }
+
+    /**
+     * An NLU service that records its requests but leaves the caller in
+     * control of when results are produced.
+     */
+    static class RecordingService implements NLUService {
+        final List<String> utterances = new ArrayList<>();
+        final List<AsyncResult<NLUResult>> results = new ArrayList<>();
+
+        @Override
+        public synchronized AsyncResult<NLUResult> classify(
+              String utterance, NLUContext context) {
+            AsyncResult<NLUResult> result = new AsyncResult<>(
+                  () -> new NLUResult.Builder(utterance)
+                        .withIntent("test")
+                        .build());
+            this.utterances.add(utterance);
+            this.results.add(result);
+            notifyAll();
+            return result;
+        }
+
+        synchronized void awaitCalls(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (this.utterances.size() < count
+                  && System.currentTimeMillis() < deadline) {
+                wait(100);
+            }
+            assertEquals(count, this.utterances.size());
+        }
+    }
+}
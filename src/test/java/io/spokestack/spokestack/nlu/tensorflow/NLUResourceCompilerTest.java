@@ -0,0 +1,100 @@
+package io.spokestack.spokestack.nlu.tensorflow;
+
+import io.spokestack.spokestack.SpeechConfig;
+import io.spokestack.spokestack.nlu.NLUContext;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NLUResourceCompilerTest {
+    private static final String VOCAB_PATH = "src/test/resources/vocab.txt";
+    private static final String METADATA_PATH = "src/test/resources/nlu.json";
+
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    @Test
+    public void compiledVocabulary() throws Exception {
+        File compiled = testFolder.newFile("vocab.bin");
+        NLUResourceCompiler.main(new String[]{
+              "vocab", VOCAB_PATH, compiled.getPath()});
+
+        WordpieceTrie text = WordpieceTrie.load(VOCAB_PATH, "##");
+        WordpieceTrie binary = WordpieceTrie.load(compiled.getPath(), "##");
+        assertEquals(text.size(), binary.size());
+
+        // the encoder produces the same output from either format
+        SpeechConfig config = new SpeechConfig();
+        NLUContext context = new NLUContext(config);
+        config.put("wordpiece-vocab-path", VOCAB_PATH);
+        WordpieceTextEncoder textEncoder =
+              new WordpieceTextEncoder(config, context);
+        config.put("wordpiece-vocab-path", compiled.getPath());
+        WordpieceTextEncoder binaryEncoder =
+              new WordpieceTextEncoder(config, context);
+
+        assertEquals(textEncoder.encodeSingle("[UNK]"),
+              binaryEncoder.encodeSingle("[UNK]"));
+        assertEquals(textEncoder.encodeSingle("the"),
+              binaryEncoder.encodeSingle("the"));
+        String[] texts = {
+              "I made the WORST decision.",
+              "I made the WORST decisions.",
+              "the decisioner"
+        };
+        for (String input : texts) {
+            assertEquals(textEncoder.encode(input).getIds(),
+                  binaryEncoder.encode(input).getIds());
+        }
+    }
+
+    @Test
+    public void compiledMetadata() throws Exception {
+        File compiled = testFolder.newFile("nlu.bin");
+        NLUResourceCompiler.main(new String[]{
+              "metadata", METADATA_PATH, compiled.getPath()});
+
+        Metadata json = Metadata.load(METADATA_PATH);
+        Metadata binary = Metadata.load(compiled.getPath());
+
+        assertArrayEquals(json.getTags(), binary.getTags());
+        assertEquals(json.getIntents().length, binary.getIntents().length);
+        for (int i = 0; i < json.getIntents().length; i++) {
+            Metadata.Intent expected = json.getIntents()[i];
+            Metadata.Intent actual = binary.getIntents()[i];
+            assertEquals(expected.getName(), actual.getName());
+            assertSlotsEqual(expected.getSlots(), actual.getSlots());
+            assertSlotsEqual(expected.getImplicitSlots(),
+                  actual.getImplicitSlots());
+        }
+    }
+
+    @Test
+    public void unsupportedVersion() throws Exception {
+        File compiled = testFolder.newFile("future.bin");
+        try (FileOutputStream out = new FileOutputStream(compiled)) {
+            out.write(new byte[]{'S', 'P', 'K', 'V', 0, 0, 0, 99});
+        }
+        assertThrows(IOException.class,
+              () -> WordpieceTrie.load(compiled.getPath(), "##"));
+    }
+
+    private void assertSlotsEqual(Metadata.Slot[] expected,
+                                  Metadata.Slot[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].getName(), actual[i].getName());
+            assertEquals(expected[i].getCaptureName(),
+                  actual[i].getCaptureName());
+            assertEquals(expected[i].getType(), actual[i].getType());
+            assertEquals(expected[i].getValue(), actual[i].getValue());
+            assertEquals(expected[i].getFacets(), actual[i].getFacets());
+        }
+    }
+}
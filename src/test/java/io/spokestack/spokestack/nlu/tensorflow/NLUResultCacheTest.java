@@ -0,0 +1,160 @@
+package io.spokestack.spokestack.nlu.tensorflow;
+
+import android.os.SystemClock;
+import io.spokestack.spokestack.nlu.NLUResult;
+import io.spokestack.spokestack.nlu.Slot;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(SystemClock.class)
+public class NLUResultCacheTest {
+
+    @Before
+    public void before() {
+        mockStatic(SystemClock.class);
+    }
+
+    @Test
+    public void disabled() {
+        NLUResultCache cache = new NLUResultCache(0, 0);
+        assertFalse(cache.isEnabled());
+        cache.put(result("next"), 1);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void normalizedLookup() {
+        NLUResultCache cache = new NLUResultCache(10, 0);
+        assertTrue(cache.isEnabled());
+        assertNull(cache.get("call mom", 1));
+
+        cache.put(result("call mom"), 1);
+        NLUResult cached = cache.get("  Call   Mom ", 1);
+        assertNotNull(cached);
+        assertEquals("  Call   Mom ", cached.getUtterance());
+        assertEquals("intent", cached.getIntent());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // errors aren't cached
+        cache.put(new NLUResult.Builder("error")
+              .withError(new IllegalStateException())
+              .build(), 1);
+        assertNull(cache.get("error", 1));
+    }
+
+    @Test
+    public void eviction() {
+        NLUResultCache cache = new NLUResultCache(2, 0);
+        cache.put(result("next"), 1);
+        cache.put(result("pause"), 1);
+
+        // refreshing an entry protects it from eviction
+        assertNotNull(cache.get("next", 1));
+        cache.put(result("play"), 1);
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("next", 1));
+        assertNotNull(cache.get("play", 1));
+        assertNull(cache.get("pause", 1));
+    }
+
+    @Test
+    public void expiration() {
+        NLUResultCache cache = new NLUResultCache(10, 1000);
+        when(SystemClock.elapsedRealtime()).thenReturn(0L);
+        cache.put(result("next"), 1);
+
+        when(SystemClock.elapsedRealtime()).thenReturn(999L);
+        assertNotNull(cache.get("next", 1));
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L);
+        assertNull(cache.get("next", 1));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void modelVersion() {
+        NLUResultCache cache = new NLUResultCache(10, 0);
+        cache.put(result("next"), 1);
+        assertNull(cache.get("next", 2));
+        assertEquals(0, cache.size());
+
+        cache.put(result("next"), 2);
+        cache.clear();
+        assertNull(cache.get("next", 2));
+    }
+
+    @Test
+    public void isolatedMaps() {
+        NLUResultCache cache = new NLUResultCache(10, 0);
+        NLUResult original = result("play jazz");
+        original.getSlots().put("genre",
+              new Slot("genre", "jazz", "jazz"));
+        cache.put(original, 1);
+
+        // changes to the stored result don't reach the cache
+        original.getSlots().clear();
+        original.getContext().put("stored", true);
+        NLUResult cached = cache.get("play jazz", 1);
+        assertEquals(1, cached.getSlots().size());
+        assertTrue(cached.getContext().isEmpty());
+
+        // nor do changes to a result it returned
+        cached.getSlots().clear();
+        cached.getContext().put("returned", true);
+        NLUResult again = cache.get("play jazz", 1);
+        assertEquals(1, again.getSlots().size());
+        assertTrue(again.getContext().isEmpty());
+    }
+
+    @Test
+    public void isolatedNestedMaps() {
+        NLUResultCache cache = new NLUResultCache(10, 0);
+        Map<String, Float> scores = new LinkedHashMap<>();
+        scores.put("play", 0.9f);
+        scores.put("pause", 0.1f);
+        Map<String, Object> context = new HashMap<>();
+        context.put("intents", scores);
+        cache.put(new NLUResult.Builder("play jazz")
+              .withIntent("play")
+              .withConfidence(0.9f)
+              .withContext(context)
+              .build(), 1);
+
+        // changes to the stored result's intent scores don't reach the cache
+        scores.clear();
+        NLUResult cached = cache.get("play jazz", 1);
+        Map<String, Float> cachedScores = intents(cached);
+        assertEquals(Arrays.asList("play", "pause"),
+              new ArrayList<>(cachedScores.keySet()));
+
+        // nor do changes to a returned result's intent scores
+        cachedScores.put("stop", 0.0f);
+        assertEquals(2, intents(cache.get("play jazz", 1)).size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Float> intents(NLUResult result) {
+        return (Map<String, Float>) result.getContext().get("intents");
+    }
+
+    private NLUResult result(String utterance) {
+        return new NLUResult.Builder(utterance)
+              .withIntent("intent")
+              .withConfidence(1.0f)
+              .build();
+    }
+}
@@ -0,0 +1,161 @@
+package io.spokestack.spokestack.nlu.tensorflow;
+
+import io.spokestack.spokestack.SpeechConfig;
+import io.spokestack.spokestack.nlu.NLUContext;
+import io.spokestack.spokestack.nlu.NLUResult;
+import io.spokestack.spokestack.nlu.NLUService;
+import io.spokestack.spokestack.nlu.Slot;
+import io.spokestack.spokestack.util.AsyncResult;
+import io.spokestack.spokestack.util.EventTracer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RuleNLUTest {
+
+    @Test
+    public void build() {
+        assertThrows(IllegalArgumentException.class,
+              () -> new RuleNLU.Builder().build());
+    }
+
+    @Test
+    public void exactMatches() throws Exception {
+        FallbackService fallback = new FallbackService();
+        RuleNLU nlu = builder(fallback).build();
+        NLUContext context = new NLUContext(new SpeechConfig());
+
+        AsyncResult<NLUResult> asyncResult = nlu.classify("Yes!", context);
+        assertTrue(asyncResult.isDone());
+        NLUResult result = asyncResult.get();
+        assertNull(result.getError());
+        assertEquals("Yes!", result.getUtterance());
+        assertEquals("accept", result.getIntent());
+        assertEquals(1.0f, result.getConfidence());
+        assertTrue(result.getSlots().isEmpty());
+
+        result = nlu.classify("  sounds   GOOD. ", context).get();
+        assertEquals("accept", result.getIntent());
+        result = nlu.classify("no thanks", context).get();
+        assertEquals("reject", result.getIntent());
+
+        // partial and extended matches go to the fallback
+        result = nlu.classify("sounds", context).get();
+        assertEquals("fallback", result.getIntent());
+        result = nlu.classify("no thanks at all", context).get();
+        assertEquals("fallback", result.getIntent());
+        result = nlu.classify("", context).get();
+        assertEquals("fallback", result.getIntent());
+
+        assertEquals(3, nlu.getHits());
+        assertEquals(3, nlu.getMisses());
+        assertEquals(3, fallback.utterances.size());
+        assertEquals("sounds", fallback.utterances.get(0));
+    }
+
+    @Test
+    public void slotMatches() throws Exception {
+        FallbackService fallback = new FallbackService();
+        RuleNLU nlu = builder(fallback).build();
+        NLUContext context = new NLUContext(new SpeechConfig());
+
+        NLUResult result =
+              nlu.classify("describe the Big test number three", context)
+                    .get();
+        assertEquals("describe_test", result.getIntent());
+        Map<String, Slot> slots = result.getSlots();
+        assertEquals("the Big test", slots.get("noun_phrase").getValue());
+        assertEquals(3, slots.get("test_num").getValue());
+        assertEquals("three", slots.get("test_num").getRawValue());
+
+        // slots are reported under their capture names, and implicit slots
+        // are included, as they are for model results
+        result = nlu.classify("use 2 features", context).get();
+        assertEquals("slot_features", result.getIntent());
+        slots = result.getSlots();
+        assertEquals(2, slots.get("test_num").getValue());
+        assertEquals("default", slots.get("feature_1").getValue());
+
+        // values the slot's parser rejects don't match
+        result = nlu.classify("describe it number eleven", context).get();
+        assertEquals("fallback", result.getIntent());
+        result = nlu.classify("use many features", context).get();
+        assertEquals("fallback", result.getIntent());
+        assertEquals(2, fallback.utterances.size());
+    }
+
+    @Test
+    public void loading() throws Exception {
+        // patterns are unavailable until they're loaded
+        List<Runnable> loadTasks = new ArrayList<>();
+        FallbackService fallback = new FallbackService();
+        List<String> errors = new ArrayList<>();
+        RuleNLU nlu = builder(fallback)
+              .setLoadExecutor(loadTasks::add)
+              .addTraceListener((level, message) -> {
+                  if (level == EventTracer.Level.ERROR) {
+                      errors.add(message);
+                  }
+              })
+              .build();
+        NLUContext context = new NLUContext(new SpeechConfig());
+        assertEquals("fallback", nlu.classify("yes", context).get()
+              .getIntent());
+
+        for (Runnable task : loadTasks) {
+            task.run();
+        }
+        nlu.getReadiness().get();
+        assertEquals("accept", nlu.classify("yes", context).get()
+              .getIntent());
+
+        // invalid rules are skipped
+        assertEquals(2, errors.size());
+        assertTrue(errors.get(0).contains("unknown"));
+        assertTrue(errors.get(1).contains("missing"));
+        assertEquals("fallback", nlu.classify("unknown", context).get()
+              .getIntent());
+
+        // everything falls through if the rules can't be loaded
+        errors.clear();
+        RuleNLU failed = builder(fallback)
+              .setProperty("nlu-rules-path", "invalid/path")
+              .addTraceListener((level, message) -> errors.add(message))
+              .build();
+        assertThrows(ExecutionException.class,
+              () -> failed.getReadiness().get());
+        assertEquals(1, errors.size());
+        assertEquals("fallback", failed.classify("yes", context).get()
+              .getIntent());
+    }
+
+    private RuleNLU.Builder builder(NLUService fallback) {
+        return new RuleNLU.Builder()
+              .setProperty("nlu-rules-path",
+                    "src/test/resources/nlu-rules.json")
+              .setProperty("nlu-metadata-path", "src/test/resources/nlu.json")
+              .setLoadExecutor(Runnable::run)
+              .setFallback(fallback);
+    }
+
+    static class FallbackService implements NLUService {
+        final List<String> utterances = new ArrayList<>();
+
+        @Override
+        public synchronized AsyncResult<NLUResult> classify(
+              String utterance, NLUContext context) {
+            AsyncResult<NLUResult> result = new AsyncResult<>(
+                  () -> new NLUResult.Builder(utterance)
+                        .withIntent("fallback")
+                        .build());
+            this.utterances.add(utterance);
+            result.run();
+            return result;
+        }
+    }
+}
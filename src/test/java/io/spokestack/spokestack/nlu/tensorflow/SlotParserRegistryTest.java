@@ -0,0 +1,42 @@
+package io.spokestack.spokestack.nlu.tensorflow;
+
+import io.spokestack.spokestack.nlu.tensorflow.parsers.DigitsParser;
+import io.spokestack.spokestack.nlu.tensorflow.parsers.IntegerParser;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SlotParserRegistryTest {
+
+    @Test
+    public void sharedInstances() throws Exception {
+        SlotParser digits =
+              SlotParserRegistry.get(DigitsParser.class.getName());
+        assertTrue(digits instanceof DigitsParser);
+        assertSame(digits,
+              SlotParserRegistry.get(DigitsParser.class.getName()));
+
+        SlotParser integers =
+              SlotParserRegistry.get(IntegerParser.class.getName());
+        assertTrue(integers instanceof IntegerParser);
+        assertNotSame(digits, integers);
+
+        assertThrows(ClassNotFoundException.class,
+              () -> SlotParserRegistry.get("io.spokestack.NoSuchParser"));
+        assertThrows(NoSuchMethodException.class,
+              () -> SlotParserRegistry.get(NoDefaultParser.class.getName()));
+    }
+
+    public static class NoDefaultParser implements SlotParser {
+        public NoDefaultParser(String unused) {
+        }
+
+        @Override
+        public Object parse(Map<String, Object> metadata,
+                            String rawValue) {
+            return rawValue;
+        }
+    }
+}
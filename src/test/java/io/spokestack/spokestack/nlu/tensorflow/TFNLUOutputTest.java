@@ -24,6 +24,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -60,6 +61,43 @@ public class TFNLUOutputTest {
         assertEquals((Float) 10.0f, result.second());
     }
 
+    @Test
+    public void getTopIntents() {
+        int numIntents = metadata.getIntents().length;
+        ByteBuffer output = ByteBuffer
+              .allocateDirect(numIntents * 4)
+              .order(ByteOrder.nativeOrder());
+        float[] posteriors = {2.0f, 7.0f, 2.0f, 10.0f};
+        for (float val : posteriors) {
+            output.putFloat(val);
+        }
+
+        output.rewind();
+        List<Tuple<Metadata.Intent, Float>> result =
+              outputParser.getTopIntents(output, 3);
+        assertEquals(3, result.size());
+        assertEquals(metadata.getIntents()[3], result.get(0).first());
+        assertEquals((Float) 10.0f, result.get(0).second());
+        assertEquals(metadata.getIntents()[1], result.get(1).first());
+        assertEquals((Float) 7.0f, result.get(1).second());
+        // ties go to the earlier intent
+        assertEquals(metadata.getIntents()[0], result.get(2).first());
+        assertEquals((Float) 2.0f, result.get(2).second());
+        // the buffer is consumed just like a single prediction
+        assertEquals(numIntents * 4, output.position());
+
+        // requests for more intents than exist return all of them
+        output.rewind();
+        result = outputParser.getTopIntents(output, 10);
+        assertEquals(numIntents, result.size());
+        assertEquals(metadata.getIntents()[2], result.get(3).first());
+
+        output.rewind();
+        Tuple<Metadata.Intent, Float> best = outputParser.getIntent(output);
+        assertEquals(result.get(0).first(), best.first());
+        assertEquals(result.get(0).second(), best.second());
+    }
+
     @Test
     public void getSlots() {
         ByteBuffer output = ByteBuffer
@@ -120,6 +158,96 @@ public class TFNLUOutputTest {
 
         result = outputParser.getSlots(context, encoded, output);
         assertEquals(expected, result);
+
+        // adjacent slots with different names, and a slot that appears twice
+        tagPosteriors = setTagPosteriors(Arrays.asList(
+              "b_feature_1", "b_feature_2", "o", "b_feature_1"));
+        output.rewind();
+        for (Float val : tagPosteriors) {
+            output.putFloat(val);
+        }
+        output.rewind();
+
+        expected = new HashMap<>();
+        expected.put("feature_1", "one three");
+        expected.put("feature_2", "two");
+
+        split = "one two and three".split(" ");
+        encoded = new EncodedTokens(split);
+        indices = new ArrayList<>();
+        for (int i = 0; i < split.length; i++) {
+            indices.add(i);
+        }
+        encoded.addTokenIds(indices);
+        encoded.setOriginalIndices(indices);
+
+        result = outputParser.getSlots(context, encoded, output);
+        assertEquals(expected, result);
+    }
+
+    @Test
+    public void constrainedSlots() {
+        String[] split = "a longer utterance for".split(" ");
+        EncodedTokens encoded = new EncodedTokens(split);
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < split.length; i++) {
+            indices.add(i);
+        }
+        encoded.addTokenIds(indices);
+        encoded.setOriginalIndices(indices);
+
+        List<Map<String, Float>> probabilities = Arrays.asList(
+              tagProbabilities("o", 0.9f),
+              // a slot can't begin with an inside tag...
+              tagProbabilities("i_feature_1", 0.5f, "b_feature_1", 0.4f),
+              tagProbabilities("i_feature_1", 0.9f),
+              // ...or continue a different slot
+              tagProbabilities("i_feature_2", 0.5f, "o", 0.45f)
+        );
+        ByteBuffer output = ByteBuffer
+              .allocateDirect(4 * metadata.getTags().length * 4)
+              .order(ByteOrder.nativeOrder());
+        for (Map<String, Float> token : probabilities) {
+            for (String tag : metadata.getTags()) {
+                output.putFloat(token.getOrDefault(tag, 0.0f));
+            }
+        }
+        NLUContext context = new NLUContext(new SpeechConfig());
+
+        output.rewind();
+        assertArrayEquals(
+              new String[] {"o", "i_feature_1", "i_feature_1", "i_feature_2"},
+              outputParser.getLabels(output, 4));
+        output.rewind();
+        Map<String, String> expected = new HashMap<>();
+        expected.put("feature_1", "longer utterance");
+        expected.put("feature_2", "for");
+        assertEquals(expected, outputParser.getSlots(context, encoded, output));
+
+        outputParser.setConstrainedDecoding(true);
+        output.rewind();
+        assertArrayEquals(
+              new String[] {"o", "b_feature_1", "i_feature_1", "o"},
+              outputParser.getLabels(output, 4));
+        assertEquals(4 * metadata.getTags().length * 4, output.position());
+        output.rewind();
+        expected = new HashMap<>();
+        expected.put("feature_1", "longer utterance");
+        assertEquals(expected, outputParser.getSlots(context, encoded, output));
+
+        // an empty utterance has no slots
+        output.rewind();
+        encoded = new EncodedTokens(new String[0]);
+        assertTrue(outputParser.getSlots(context, encoded, output).isEmpty());
+    }
+
+    private Map<String, Float> tagProbabilities(Object... tagsAndValues) {
+        Map<String, Float> probabilities = new HashMap<>();
+        for (int i = 0; i < tagsAndValues.length; i += 2) {
+            probabilities.put((String) tagsAndValues[i],
+                  (Float) tagsAndValues[i + 1]);
+        }
+        return probabilities;
     }
 
     private List<Float> setTagPosteriors(List<String> tags) {
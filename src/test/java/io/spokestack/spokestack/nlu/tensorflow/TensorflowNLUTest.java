@@ -4,9 +4,11 @@ import android.os.SystemClock;
 import com.google.gson.Gson;
 import com.google.gson.stream.JsonReader;
 import io.spokestack.spokestack.SpeechConfig;
+import io.spokestack.spokestack.nlu.NLUContext;
 import io.spokestack.spokestack.nlu.NLUResult;
 import io.spokestack.spokestack.nlu.Slot;
 import io.spokestack.spokestack.tensorflow.TensorflowModel;
+import io.spokestack.spokestack.util.AsyncResult;
 import io.spokestack.spokestack.util.EventTracer;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Before;
@@ -20,14 +22,22 @@ import java.io.FileReader;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.AdditionalMatchers.not;
 import static org.mockito.Mockito.*;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 
@@ -67,6 +77,63 @@ public class TensorflowNLUTest {
         assertTrue(loadError.get());
     }
 
+    @Test
+    public void readiness() throws Exception {
+        // loading tasks are held until they're run explicitly
+        List<Runnable> loadTasks = new ArrayList<>();
+        SpeechConfig config = testConfig()
+              .put("nlu-ready-timeout", 0);
+        TestEnv env = new TestEnv(config);
+        env.nluBuilder.setLoadExecutor(loadTasks::add);
+        env.nlu = env.nluBuilder.build();
+        assertEquals(2, loadTasks.size());
+        assertFalse(env.nlu.isReady());
+        assertFalse(env.nlu.getReadiness().isDone());
+
+        // requests fail fast while loading
+        NLUResult result = env.classify("next").get();
+        assertEquals(IllegalStateException.class,
+              result.getError().getClass());
+        List<NLUResult> results =
+              env.nlu.classifyBatch(Collections.singletonList("next")).get();
+        assertNotNull(results.get(0).getError());
+
+        for (Runnable task : loadTasks) {
+            task.run();
+        }
+        assertTrue(env.nlu.getReadiness().isDone());
+        assertTrue(env.nlu.isReady());
+        result = env.classify("next").get();
+        assertNull(result.getError());
+
+        // queued requests time out if the model doesn't load
+        loadTasks.clear();
+        config.put("nlu-ready-timeout", 50);
+        env = new TestEnv(config);
+        env.nluBuilder.setLoadExecutor(loadTasks::add);
+        env.nlu = env.nluBuilder.build();
+        result = env.classify("next").get();
+        assertEquals(TimeoutException.class, result.getError().getClass());
+
+        // requests fail fast once loading has failed
+        loadTasks.clear();
+        config.put("nlu-metadata-path", "invalid/path");
+        TestEnv failedEnv = new TestEnv(testConfig());
+        failedEnv.nluBuilder
+              .setConfig(config)
+              .setLoadExecutor(loadTasks::add);
+        failedEnv.nlu = failedEnv.nluBuilder.build();
+        for (Runnable task : loadTasks) {
+            task.run();
+        }
+        assertThrows(ExecutionException.class,
+              () -> failedEnv.nlu.getReadiness().get());
+        assertFalse(failedEnv.nlu.isReady());
+        result = failedEnv.classify("next").get();
+        assertEquals(IllegalStateException.class,
+              result.getError().getClass());
+    }
+
     @Test
     public void classify() throws Exception {
         TestEnv env = new TestEnv(testConfig());
@@ -151,6 +218,318 @@ public class TensorflowNLUTest {
         assertTrue(result.getContext().isEmpty());
     }
 
+    @Test
+    public void inputBuckets() throws Exception {
+        SpeechConfig config = testConfig()
+              .put("nlu-input-buckets", "16, 8");
+        TestEnv env = new TestEnv(config);
+
+        NLUResult result = env.classify("warm up").get();
+        assertNull(result.getError());
+        clearInvocations(env.testModel);
+
+        // each bucket and the full length keep their tensors, as does the
+        // latest batch
+        verify(env.loader).setMaxShapes(4);
+
+        // utterances are padded to the smallest bucket with room for [SEP]
+        result = env.classify("a short one").get();
+        assertNull(result.getError());
+        verify(env.testModel).resizeInput(eq(0), aryEq(new int[]{1, 8}));
+
+        result = env.classify("one two three four five six seven eight")
+              .get();
+        assertNull(result.getError());
+        verify(env.testModel).resizeInput(eq(0), aryEq(new int[]{1, 16}));
+
+        // anything longer than the largest bucket uses the full input length
+        StringBuilder longUtterance = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            longUtterance.append("a ");
+        }
+        result = env.classify(longUtterance.toString()).get();
+        assertNull(result.getError());
+        verify(env.testModel).resizeInput(eq(0),
+              aryEq(new int[]{1, env.nlu.getMaxTokens()}));
+
+        // without buckets, the input always uses the full length
+        env = new TestEnv(testConfig());
+        result = env.classify("a short one").get();
+        assertNull(result.getError());
+        verify(env.testModel, never()).resizeInput(eq(0),
+              not(aryEq(new int[]{1, env.nlu.getMaxTokens()})));
+    }
+
+    @Test
+    public void classifyBatch() throws Exception {
+        SpeechConfig config = testConfig()
+              .put("nlu-input-buckets", "8");
+        TestEnv env = new TestEnv(config);
+        env.classify("warm up").get();
+        clearInvocations(env.testModel);
+
+        List<String> utterances = new ArrayList<>();
+        utterances.add("this code is for test 1");
+        utterances.add("error");
+        utterances.add("yes");
+
+        // the utterance that fails to encode doesn't get a row
+        int numIntents = env.metadata.getIntents().length;
+        int numTags = env.metadata.getTags().length;
+        float[] intentResult = new float[2 * numIntents];
+        intentResult[2] = 10;
+        intentResult[numIntents] = 5;
+        float[] tagResult = new float[2 * 8 * numTags];
+        setTag(tagResult, numTags, 0, 1);
+        setTag(tagResult, numTags, 1, 2);
+        setTag(tagResult, numTags, 5, 3);
+        env.testModel.setOutputs(intentResult, tagResult);
+
+        List<NLUResult> results = env.nlu.classifyBatch(utterances).get();
+        verify(env.testModel).resizeInput(eq(0), aryEq(new int[]{2, 8}));
+        verify(env.testModel, times(1)).run();
+        assertEquals(3, results.size());
+
+        NLUResult result = results.get(0);
+        assertNull(result.getError());
+        assertEquals("describe_test", result.getIntent());
+        assertEquals(10.0, result.getConfidence());
+        Map<String, Slot> slots = new HashMap<>();
+        slots.put("noun_phrase",
+              new Slot("noun_phrase", "entity", "this code", "this code"));
+        slots.put("test_num", new Slot("test_num", "integer", "1", 1));
+        assertEquals(slots, result.getSlots());
+
+        result = results.get(1);
+        assertEquals("error", result.getUtterance());
+        assertEquals(IllegalStateException.class, result.getError().getClass());
+
+        result = results.get(2);
+        assertNull(result.getError());
+        assertEquals("yes", result.getUtterance());
+        assertEquals("accept", result.getIntent());
+        assertEquals(5.0, result.getConfidence());
+        assertTrue(result.getSlots().isEmpty());
+
+        // large batches are split according to the configured batch size
+        config.put("nlu-batch-size", 2);
+        env = new TestEnv(config);
+        env.classify("warm up").get();
+        clearInvocations(env.testModel);
+        utterances.set(1, "no");
+        results = env.nlu.classifyBatch(utterances).get();
+        assertEquals(3, results.size());
+        verify(env.testModel).resizeInput(eq(0), aryEq(new int[]{2, 8}));
+        verify(env.testModel).resizeInput(eq(0), aryEq(new int[]{1, 8}));
+        verify(env.testModel, times(2)).run();
+    }
+
+    @Test
+    public void resultCache() throws Exception {
+        SpeechConfig config = testConfig()
+              .put("nlu-cache-size", 10);
+        TestEnv env = new TestEnv(config);
+
+        NLUResult result = env.classify("next").get();
+        assertNull(result.getError());
+        assertEquals(0, env.nlu.getCacheHits());
+        assertEquals(1, env.nlu.getCacheMisses());
+        clearInvocations(env.testModel);
+
+        // repeated utterances skip encoding and inference
+        result = env.classify("Next ").get();
+        assertNull(result.getError());
+        assertEquals("Next ", result.getUtterance());
+        assertEquals(1, env.nlu.getCacheHits());
+        verify(env.testModel, never()).run();
+        assertEquals(1, env.encoded.size());
+
+        // cached results clear the request's metadata like classified ones
+        NLUContext context = new NLUContext(config);
+        context.getRequestMetadata().put("id", "cached");
+        result = env.nlu.classify("next", context).get();
+        assertNull(result.getError());
+        assertEquals(2, env.nlu.getCacheHits());
+        assertTrue(context.getRequestMetadata().isEmpty());
+
+        // errors are classified again
+        env.classify("error").get();
+        env.classify("error").get();
+        assertEquals(2, env.nlu.getCacheHits());
+        assertEquals(3, env.nlu.getCacheMisses());
+    }
+
+    @Test
+    public void reload() throws Exception {
+        // use two workers so requests can run on both models at once
+        SpeechConfig config = testConfig()
+              .put("nlu-model-path", "src/test/resources/nlu.json")
+              .put("nlu-pool-size", 2)
+              .put("nlu-cache-size", 10);
+        TestEnv env = new TestEnv(config);
+        NLUResult result = env.classify("next").get();
+        assertNull(result.getError());
+
+        // a request in progress when the reload finishes keeps its model
+        Future<NLUResult> inFlight = env.classify("block");
+        env.blocked.await();
+        TestModel reloaded = env.mockModel();
+        doReturn(reloaded).when(env.loader).load();
+        env.nlu.reload("src/test/resources/nlu.json",
+              "src/test/resources/nlu.json", null).get();
+        verify(env.testModel, never()).close();
+
+        // new requests use the new model, and cached results are discarded
+        result = env.classify("next").get();
+        assertNull(result.getError());
+        assertEquals(0, env.nlu.getCacheHits());
+        verify(reloaded, atLeastOnce()).run();
+
+        // the old interpreters are closed once they're no longer in use
+        env.unblock.countDown();
+        assertNull(inFlight.get().getError());
+        verify(env.testModel, times(2)).close();
+        verify(reloaded, never()).close();
+
+        // a failed reload leaves the current model in place and closes the
+        // interpreters it loaded
+        TestModel discarded = env.mockModel();
+        doReturn(discarded).when(env.loader).load();
+        AsyncResult<Void> failed = env.nlu.reload(
+              "src/test/resources/nlu.json", "invalid/path", null);
+        assertThrows(ExecutionException.class, failed::get);
+        verify(discarded, times(2)).close();
+        assertTrue(env.nlu.isReady());
+        result = env.classify("next").get();
+        assertNull(result.getError());
+        assertEquals(1, env.nlu.getCacheHits());
+        verify(reloaded, never()).close();
+
+        // so does one that fails with an unchecked exception
+        TestModel partial = env.mockModel();
+        doReturn(partial)
+              .doThrow(new IllegalStateException("invalid model"))
+              .when(env.loader).load();
+        failed = env.nlu.reload("src/test/resources/nlu.json",
+              "src/test/resources/nlu.json", null);
+        assertThrows(ExecutionException.class, failed::get);
+        verify(partial).close();
+        assertNull(env.classify("next").get().getError());
+        verify(reloaded, never()).close();
+    }
+
+    @Test
+    public void interpreterPool() throws Exception {
+        // the model loader is mocked, but pooled models are loaded from a
+        // shared mapping of the model file, so it needs to exist
+        SpeechConfig config = testConfig()
+              .put("nlu-model-path", "src/test/resources/nlu.json")
+              .put("nlu-pool-size", 2);
+        TestEnv env = new TestEnv(config);
+
+        NLUResult result = env.classify("pooled classification").get();
+        assertNull(result.getError());
+        verify(env.loader, times(2)).setModelBuffer(any());
+        verify(env.loader, times(2)).load();
+    }
+
+    @Test
+    public void queueCapacity() throws Exception {
+        SpeechConfig config = testConfig()
+              .put("nlu-queue-capacity", 1);
+        TestEnv env = new TestEnv(config);
+
+        // occupy the only interpreter
+        Future<NLUResult> blocked = env.classify("block");
+        env.blocked.await();
+
+        // the next request waits in the queue
+        Future<NLUResult> queued = env.classify("queued");
+        assertEquals(1, env.nlu.getQueueDepth());
+        assertEquals(1, env.nlu.getActiveCount());
+
+        // and the one after that is rejected
+        NLUResult result = env.classify("rejected").get();
+        assertEquals(RejectedExecutionException.class,
+              result.getError().getClass());
+        assertEquals("rejected", result.getUtterance());
+
+        env.unblock.countDown();
+        assertNull(blocked.get().getError());
+        assertNull(queued.get().getError());
+        assertEquals(0, env.nlu.getQueueDepth());
+    }
+
+    @Test
+    public void priorityScheduling() throws Exception {
+        SpeechConfig config = testConfig()
+              .put("nlu-batch-size", 1);
+        TestEnv env = new TestEnv(config);
+
+        // occupy the only interpreter
+        Future<NLUResult> blocked = env.classify("block");
+        env.blocked.await();
+
+        // background work queued first is still processed last
+        List<String> utterances = new ArrayList<>();
+        utterances.add("background one");
+        utterances.add("background two");
+        Future<List<NLUResult>> batch = env.nlu.classifyBatch(utterances);
+        Future<NLUResult> interactive = env.classify("interactive");
+        assertEquals(3, env.nlu.getQueueDepth());
+
+        env.unblock.countDown();
+        assertNull(blocked.get().getError());
+        assertNull(interactive.get().getError());
+        List<NLUResult> results = batch.get();
+        assertEquals("background one", results.get(0).getUtterance());
+        assertEquals("background two", results.get(1).getUtterance());
+
+        List<String> expected = new ArrayList<>();
+        expected.add("block");
+        expected.add("interactive");
+        expected.addAll(utterances);
+        assertEquals(expected, env.encoded);
+    }
+
+    @Test
+    public void cancellation() throws Exception {
+        SpeechConfig config = testConfig()
+              .put("nlu-batch-size", 1);
+        TestEnv env = new TestEnv(config);
+
+        Future<NLUResult> blocked = env.classify("block");
+        env.blocked.await();
+
+        // a superseded request is removed from the queue as soon as it's
+        // cancelled
+        Future<NLUResult> superseded = env.classify("superseded");
+        assertEquals(1, env.nlu.getQueueDepth());
+        assertTrue(superseded.cancel(false));
+        assertEquals(0, env.nlu.getQueueDepth());
+
+        // cancelling a batch cancels all its queued chunks
+        List<String> utterances = new ArrayList<>();
+        utterances.add("cancelled one");
+        utterances.add("cancelled two");
+        Future<List<NLUResult>> batch = env.nlu.classifyBatch(utterances);
+        assertEquals(2, env.nlu.getQueueDepth());
+        assertTrue(batch.cancel(false));
+        assertEquals(0, env.nlu.getQueueDepth());
+
+        Future<NLUResult> current = env.classify("current");
+        env.unblock.countDown();
+        assertNull(blocked.get().getError());
+        assertNull(current.get().getError());
+        assertThrows(CancellationException.class, superseded::get);
+        assertThrows(CancellationException.class, batch::get);
+
+        List<String> expected = new ArrayList<>();
+        expected.add("block");
+        expected.add("current");
+        assertEquals(expected, env.encoded);
+    }
+
     private float[] buildIntentResult(int index, int numIntents) {
         float[] result = new float[numIntents];
         result[index] = 10;
@@ -197,6 +576,10 @@ public class TensorflowNLUTest {
         public final TensorflowNLUTest.TestModel testModel;
         public final TensorflowNLU.Builder nluBuilder;
         public final Metadata metadata;
+        public final CountDownLatch blocked = new CountDownLatch(1);
+        public final CountDownLatch unblock = new CountDownLatch(1);
+        public final List<String> encoded =
+              Collections.synchronizedList(new ArrayList<>());
 
         public TensorflowNLU nlu;
 
@@ -206,32 +589,36 @@ public class TensorflowNLUTest {
             this.metadata = loadMetadata(metadataPath);
 
             // create/mock tensorflow-lite models
-            int maxTokens = 100;
             this.loader = spy(TensorflowModel.Loader.class);
-            this.testModel = mock(TensorflowNLUTest.TestModel.class);
+            this.testModel = mockModel();
+            doReturn(this.testModel)
+                  .when(this.loader).load();
 
+            this.nluBuilder =
+                  new TensorflowNLU.Builder()
+                        .setConfig(config)
+                        .setModelLoader(this.loader)
+                        .setTextEncoder(this);
+        }
+
+        public TestModel mockModel() {
+            int maxTokens = 100;
+            TestModel model = mock(TensorflowNLUTest.TestModel.class);
             doReturn(ByteBuffer
                   .allocateDirect(maxTokens * metadata.getIntents().length * 4)
                   .order(ByteOrder.nativeOrder()))
-                  .when(this.testModel).inputs(0);
+                  .when(model).inputs(0);
             doReturn(ByteBuffer
-                  .allocateDirect(metadata.getIntents().length * 4)
+                  .allocateDirect(maxTokens * metadata.getIntents().length * 4)
                   .order(ByteOrder.nativeOrder()))
-                  .when(this.testModel).outputs(0);
+                  .when(model).outputs(0);
             doReturn(ByteBuffer
                   .allocateDirect(maxTokens * metadata.getTags().length * 4)
                   .order(ByteOrder.nativeOrder()))
-                  .when(this.testModel).outputs(1);
-            doReturn(4).when(this.testModel).getInputSize();
-            doCallRealMethod().when(this.testModel).run();
-            doReturn(this.testModel)
-                  .when(this.loader).load();
-
-            this.nluBuilder =
-                  new TensorflowNLU.Builder()
-                        .setConfig(config)
-                        .setModelLoader(this.loader)
-                        .setTextEncoder(this);
+                  .when(model).outputs(1);
+            doReturn(4).when(model).getInputSize();
+            doCallRealMethod().when(model).run();
+            return model;
         }
 
         private Metadata loadMetadata(String metadataPath)
@@ -259,6 +646,15 @@ public class TensorflowNLUTest {
             if (text.equals("error")) {
                 throw new IllegalStateException("forced test error");
             }
+            this.encoded.add(text);
+            if (text.equals("block")) {
+                blocked.countDown();
+                try {
+                    unblock.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
             String[] split = text.split(" ");
             EncodedTokens encoded = new EncodedTokens(split);
             List<Integer> ids = new ArrayList<>();
@@ -49,6 +49,35 @@ public class WordpieceTextEncoderTest {
         assertEquals(0, encoder.encodeSingle("[UNK]"));
     }
 
+    @Test
+    public void encodePrefix() {
+        SpeechConfig config = new SpeechConfig();
+        config.put("wordpiece-vocab-path", VOCAB_PATH);
+        NLUContext context = new NLUContext(config);
+        WordpieceTextEncoder encoder =
+              new WordpieceTextEncoder(config, context);
+
+        // reusing the encoding of shared leading words doesn't change the
+        // results, even when the last word is still being recognized
+        String[] partials = {
+              "I made",
+              "I made the wor",
+              "I made the WORST decision.",
+              "I made the WORST decisions.",
+              "the decisioner"
+        };
+        for (String partial : partials) {
+            WordpieceTextEncoder fresh =
+                  new WordpieceTextEncoder(config, context);
+            EncodedTokens expected = fresh.encode(partial);
+            EncodedTokens encoded = encoder.encode(partial);
+            assertEquals(expected.getIds(), encoded.getIds());
+            assertEquals(
+                  expected.decodeRange(0, expected.getIds().size(), false),
+                  encoded.decodeRange(0, encoded.getIds().size(), false));
+        }
+    }
+
     @Test
     public void encode() {
         SpeechConfig config = new SpeechConfig();
@@ -98,6 +127,17 @@ public class WordpieceTextEncoderTest {
         assertEquals("these", encoded.decodeRange(0, 2, true));
         assertEquals("\"(these)\" decisions", encoded.decodeRange(0, 9, false));
         assertEquals("these)\" decisions", encoded.decodeRange(0, 9, true));
+
+        // inputs longer than the encoder's internal buffers
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            longText.append(" decisions");
+        }
+        encoded = encoder.encode(longText.toString());
+        assertEquals(300, encoded.size());
+        assertEquals(5, encoded.getId(299));
+        assertEquals(longText.toString().trim(),
+              encoded.decodeRange(0, 300, false));
     }
 
     static class ControllableFactory implements ThreadFactory {
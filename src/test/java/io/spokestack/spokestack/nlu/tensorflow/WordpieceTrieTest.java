@@ -0,0 +1,130 @@
+package io.spokestack.spokestack.nlu.tensorflow;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WordpieceTrieTest {
+
+    @Test
+    public void encode() {
+        Map<String, Integer> vocab = vocabulary(
+              "[UNK]", "the", "worst", "decis", "##ion", "##s", "##e");
+        WordpieceTrie trie = new WordpieceTrie(vocab, "##");
+        // two roots plus one node per distinct character path
+        assertEquals(2 + 3 + 5 + 5 + 3 + 1 + 1 + 5, trie.size());
+
+        assertEquals(Arrays.asList(1), encode(trie, "the"));
+        assertEquals(Arrays.asList(3, 4, 5), encode(trie, "decisions"));
+
+        // suffixes can't start a word
+        assertNull(encode(trie, "ion"));
+
+        // all of a word has to be encodable
+        assertNull(encode(trie, "decisioner"));
+
+        assertEquals(new ArrayList<>(), encode(trie, ""));
+
+        // identifiers are written at the requested offset
+        int[] out = new int[5];
+        assertEquals(4, trie.encode("decisions", out, 1));
+        assertArrayEquals(new int[] {0, 3, 4, 5, 0}, out);
+    }
+
+    @Test
+    public void longestMatch() {
+        // the longest match is taken even when it leaves a remainder that
+        // can't be encoded, matching the reference wordpiece algorithm
+        Map<String, Integer> vocab = vocabulary(
+              "a", "ab", "abc", "##c", "##cd", "##d");
+        WordpieceTrie trie = new WordpieceTrie(vocab, "##");
+
+        assertEquals(Arrays.asList(2, 5), encode(trie, "abcd"));
+        assertEquals(Arrays.asList(0, 4), encode(trie, "acd"));
+        assertNull(encode(trie, "abce"));
+    }
+
+    @Test
+    public void matchesReference() {
+        // compare against the substring-based greedy search on random words
+        // drawn from a small alphabet so that most of them are encodable
+        Random random = new Random(42);
+        List<String> pieces = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            String piece = randomWord(random, 1 + random.nextInt(4));
+            pieces.add(random.nextBoolean() ? piece : "##" + piece);
+        }
+        Map<String, Integer> vocab = vocabulary(pieces.toArray(new String[0]));
+        WordpieceTrie trie = new WordpieceTrie(vocab, "##");
+
+        for (int i = 0; i < 5000; i++) {
+            String word = randomWord(random, 1 + random.nextInt(12));
+            List<Integer> expected = new ArrayList<>();
+            String unencoded = referenceEncode(vocab, word, "", expected);
+            List<Integer> actual = encode(trie, word);
+            assertEquals(unencoded == null, actual != null, word);
+            if (actual != null) {
+                assertEquals(expected, actual, word);
+            }
+        }
+    }
+
+    private List<Integer> encode(WordpieceTrie trie, String word) {
+        int[] out = new int[word.length()];
+        int end = trie.encode(word, out, 0);
+        if (end < 0) {
+            return null;
+        }
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < end; i++) {
+            ids.add(out[i]);
+        }
+        return ids;
+    }
+
+    private Map<String, Integer> vocabulary(String... entries) {
+        Map<String, Integer> vocab = new HashMap<>();
+        for (String entry : entries) {
+            vocab.putIfAbsent(entry, vocab.size());
+        }
+        return vocab;
+    }
+
+    private String randomWord(Random random, int length) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('a' + random.nextInt(4)));
+        }
+        return builder.toString();
+    }
+
+    private String referenceEncode(Map<String, Integer> vocab,
+                                   String text,
+                                   String prefix,
+                                   List<Integer> soFar) {
+        String combined = prefix + text;
+        if (vocab.containsKey(combined)) {
+            soFar.add(vocab.get(combined));
+            return null;
+        }
+        String unencoded = combined;
+        int minIndex = prefix.isEmpty() ? 0 : prefix.length();
+        for (int i = combined.length() - 1; i > minIndex; i--) {
+            Integer id = vocab.get(combined.substring(0, i));
+            if (id != null) {
+                soFar.add(id);
+                unencoded = referenceEncode(vocab, combined.substring(i),
+                      "##", soFar);
+                break;
+            }
+        }
+        return unencoded;
+    }
+}
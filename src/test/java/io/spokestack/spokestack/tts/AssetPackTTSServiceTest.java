@@ -0,0 +1,116 @@
+package io.spokestack.spokestack.tts;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import androidx.annotation.NonNull;
+import io.spokestack.spokestack.SpeechConfig;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class AssetPackTTSServiceTest {
+
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    @Test
+    public void testFilesystemPack() throws Exception {
+        File dir = testFolder.newFolder("pack");
+        SynthesisRequest hello = request("Hello.", "1");
+        Files.write(new File(dir, TTSCache.key(hello)).toPath(),
+              new byte[]{1, 2, 3});
+
+        SpeechConfig config = new SpeechConfig();
+        config.put("tts-asset-path", dir.getAbsolutePath());
+        AssetPackTTSService service = new AssetPackTTSService(config);
+        Listener listener = new Listener();
+        service.addListener(listener);
+
+        service.synthesize(hello);
+        TTSEvent event = listener.events.remove(0);
+        assertEquals(TTSEvent.Type.AUDIO_AVAILABLE, event.type);
+        AudioResponse response = event.getTtsResponse();
+        assertNull(response.getAudioUri());
+        assertEquals("1", response.getMetadata().get("id"));
+        assertEquals(ByteBuffer.wrap(new byte[]{1, 2, 3}),
+              response.getAudioData());
+
+        // missing clips are reported as errors
+        service.synthesize(request("Goodbye.", "2"));
+        event = listener.events.remove(0);
+        assertEquals(TTSEvent.Type.ERROR, event.type);
+        assertTrue(event.getError().getMessage().contains("Goodbye."));
+
+        // results can also be delivered directly
+        Listener direct = new Listener();
+        service.synthesize(hello, direct);
+        assertEquals(1, direct.events.size());
+        assertEquals(TTSEvent.Type.AUDIO_AVAILABLE, direct.events.get(0).type);
+        assertTrue(listener.events.isEmpty());
+        service.close();
+    }
+
+    @Test
+    public void testAppAssets() throws Exception {
+        SynthesisRequest hello = request("Hello.", "1");
+        AssetManager assets = mock(AssetManager.class);
+        when(assets.open("prompts/" + TTSCache.key(hello)))
+              .thenReturn(new ByteArrayInputStream(new byte[]{4, 5}));
+        when(assets.open("prompts/" + TTSCache.key(request("Bye.", "2"))))
+              .thenThrow(new FileNotFoundException());
+        Context context = mock(Context.class);
+        when(context.getAssets()).thenReturn(assets);
+
+        SpeechConfig config = new SpeechConfig();
+        config.put("tts-asset-path", "prompts");
+        AssetPackTTSService service = new AssetPackTTSService(config);
+        Listener listener = new Listener();
+        service.addListener(listener);
+
+        // assets can't be read without a context
+        service.synthesize(hello);
+        TTSEvent event = listener.events.remove(0);
+        assertEquals(TTSEvent.Type.ERROR, event.type);
+        assertTrue(event.getError() instanceof IOException);
+
+        service.setAndroidContext(context);
+        service.synthesize(hello);
+        event = listener.events.remove(0);
+        assertEquals(TTSEvent.Type.AUDIO_AVAILABLE, event.type);
+        assertEquals(ByteBuffer.wrap(new byte[]{4, 5}),
+              event.getTtsResponse().getAudioData());
+
+        service.synthesize(request("Bye.", "2"));
+        event = listener.events.remove(0);
+        assertEquals(TTSEvent.Type.ERROR, event.type);
+    }
+
+    private SynthesisRequest request(String text, String id) {
+        Map<String, String> data = new HashMap<>();
+        data.put("id", id);
+        return new SynthesisRequest.Builder(text).withData(data).build();
+    }
+
+    private static class Listener implements TTSListener {
+        List<TTSEvent> events = new ArrayList<>();
+
+        @Override
+        public void eventReceived(@NonNull TTSEvent event) {
+            events.add(event);
+        }
+    }
+}
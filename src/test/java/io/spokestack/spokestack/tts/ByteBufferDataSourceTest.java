@@ -0,0 +1,68 @@
+package io.spokestack.spokestack.tts;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ByteBufferDataSourceTest {
+
+    @Test
+    public void testRead() throws Exception {
+        ByteBuffer audio = ByteBuffer.wrap(new byte[]{0, 1, 2, 3, 4, 5});
+        audio.position(1);
+        DataSource source = new ByteBufferDataSource(audio);
+
+        assertEquals(5, source.open(spec(0, C.LENGTH_UNSET)));
+        byte[] buffer = new byte[8];
+        assertEquals(0, source.read(buffer, 0, 0));
+        assertEquals(3, source.read(buffer, 0, 3));
+        assertEquals(2, source.read(buffer, 3, 5));
+        assertEquals(C.RESULT_END_OF_INPUT, source.read(buffer, 5, 3));
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 0, 0, 0}, buffer);
+        source.close();
+
+        // ranges
+        assertEquals(2, source.open(spec(2, 2)));
+        buffer = new byte[4];
+        assertEquals(2, source.read(buffer, 0, 4));
+        assertArrayEquals(new byte[]{3, 4, 0, 0}, buffer);
+        assertEquals(C.RESULT_END_OF_INPUT, source.read(buffer, 0, 4));
+        source.close();
+
+        assertEquals(0, source.open(spec(5, C.LENGTH_UNSET)));
+        source.close();
+        assertThrows(IOException.class,
+              () -> source.open(spec(6, C.LENGTH_UNSET)));
+        assertThrows(IOException.class, () -> source.open(spec(4, 2)));
+
+        // the original buffer is untouched
+        assertEquals(1, audio.position());
+    }
+
+    @Test
+    public void testFactory() throws Exception {
+        ByteBuffer audio = ByteBuffer.wrap(new byte[]{7, 8});
+        DataSource.Factory factory = ByteBufferDataSource.factory(audio);
+        DataSource first = factory.createDataSource();
+        DataSource second = factory.createDataSource();
+        first.open(spec(0, C.LENGTH_UNSET));
+        second.open(spec(0, C.LENGTH_UNSET));
+
+        byte[] buffer = new byte[2];
+        assertEquals(2, first.read(buffer, 0, 2));
+        assertArrayEquals(new byte[]{7, 8}, buffer);
+        buffer = new byte[2];
+        assertEquals(2, second.read(buffer, 0, 2));
+        assertArrayEquals(new byte[]{7, 8}, buffer);
+    }
+
+    private DataSpec spec(long position, long length) {
+        return new DataSpec(null, position, length, null);
+    }
+}
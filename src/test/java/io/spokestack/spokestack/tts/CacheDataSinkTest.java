@@ -0,0 +1,77 @@
+package io.spokestack.spokestack.tts;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSink;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CacheDataSinkTest {
+
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    @Test
+    public void completeStream() throws IOException {
+        File dir = testFolder.newFolder("tts");
+        TTSCache cache = new TTSCache(dir, 1024);
+        DataSink sink = CacheDataSink.factory(cache, "a").createDataSink();
+
+        sink.open(new DataSpec(null, 0, 6, null));
+        sink.write(new byte[]{9, 1, 2, 3}, 1, 3);
+        sink.write(new byte[]{4, 5, 6}, 0, 3);
+        sink.close();
+        File stored = cache.get("a");
+        assertNotNull(stored);
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6},
+              Files.readAllBytes(stored.toPath()));
+        assertEquals(1, dir.listFiles().length);
+
+        // closing again does nothing
+        sink.close();
+        assertNotNull(cache.get("a"));
+    }
+
+    @Test
+    public void incompleteStreams() throws IOException {
+        File dir = testFolder.newFolder("tts");
+        TTSCache cache = new TTSCache(dir, 1024);
+        DataSink sink = new CacheDataSink(cache, "a");
+
+        // stopped early
+        sink.open(new DataSpec(null, 0, 6, null));
+        sink.write(new byte[3], 0, 3);
+        sink.close();
+        assertNull(cache.get("a"));
+
+        // started at an offset
+        sink.open(new DataSpec(null, 3, 3, null));
+        sink.write(new byte[3], 0, 3);
+        sink.close();
+        assertNull(cache.get("a"));
+
+        // unknown length
+        sink.open(new DataSpec(null, 0, C.LENGTH_UNSET, null));
+        sink.write(new byte[3], 0, 3);
+        sink.close();
+        assertNull(cache.get("a"));
+
+        // reopened before it was closed
+        sink.open(new DataSpec(null, 0, 6, null));
+        sink.write(new byte[3], 0, 3);
+        sink.open(new DataSpec(null, 0, 3, null));
+        sink.write(new byte[3], 0, 3);
+        sink.close();
+        assertNotNull(cache.get("a"));
+
+        // temporary files are cleaned up
+        assertEquals(1, dir.listFiles().length);
+    }
+}
@@ -0,0 +1,97 @@
+package io.spokestack.spokestack.tts;
+
+import io.spokestack.spokestack.util.SampleRing;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EchoReferenceTest {
+
+    @Test
+    public void testUnconfigured() {
+        EchoReference reference = new EchoReference();
+        SampleRing ring = new SampleRing(16000, 16);
+        reference.write(pcm(1, 2, 3), ring);
+        assertEquals(0, ring.available());
+    }
+
+    @Test
+    public void testDownmix() {
+        EchoReference reference = new EchoReference();
+        SampleRing ring = new SampleRing(16000, 16);
+        reference.configure(16000, 2);
+
+        ByteBuffer audio = pcm(100, 300, -50, -150, 10, 20);
+        reference.write(audio, ring);
+        // the buffer is untouched
+        assertEquals(0, audio.position());
+        // interpolation runs one sample behind the input
+        assertArrayEquals(new short[]{0, 200, -100}, read(ring));
+
+        reference.write(pcm(40, 40), ring);
+        assertArrayEquals(new short[]{15}, read(ring));
+    }
+
+    @Test
+    public void testResample() {
+        EchoReference reference = new EchoReference();
+        SampleRing ring = new SampleRing(16000, 64);
+
+        // downsampling, continuous across buffers
+        reference.configure(32000, 1);
+        reference.write(pcm(0, 10, 20, 30, 40), ring);
+        reference.write(pcm(50, 60, 70), ring);
+        assertArrayEquals(new short[]{0, 10, 30, 50}, read(ring));
+
+        // upsampling
+        reference.configure(8000, 1);
+        reference.write(pcm(100, 200), ring);
+        assertArrayEquals(new short[]{0, 50, 100, 150}, read(ring));
+
+        // 22.05kHz is a common rate for synthesized speech
+        reference.configure(22050, 1);
+        SampleRing second = new SampleRing(16000, 16001);
+        reference.write(pcm(new short[22050]), second);
+        assertEquals(16000, second.available(), 1);
+    }
+
+    @Test
+    public void testSinkLatency() {
+        // four times the device's minimum buffer
+        assertEquals(400, EchoReference.sinkLatency(3200, 16000, 1));
+        // at least 250ms
+        assertEquals(250, EchoReference.sinkLatency(1000, 16000, 2));
+        assertEquals(250, EchoReference.sinkLatency(-2, 22050, 1));
+        // at most 750ms, unless the device's minimum is larger
+        assertEquals(750, EchoReference.sinkLatency(16000, 16000, 1));
+        assertEquals(1000, EchoReference.sinkLatency(32000, 16000, 1));
+        assertEquals(0, EchoReference.sinkLatency(4096, 0, 1));
+    }
+
+    private ByteBuffer pcm(int... samples) {
+        short[] values = new short[samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            values[i] = (short) samples[i];
+        }
+        return pcm(values);
+    }
+
+    private ByteBuffer pcm(short[] samples) {
+        ByteBuffer buffer = ByteBuffer.allocate(samples.length * 2)
+              .order(ByteOrder.nativeOrder());
+        for (short sample : samples) {
+            buffer.putShort(sample);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private short[] read(SampleRing ring) {
+        short[] samples = new short[ring.available()];
+        ring.read(samples, 0, samples.length);
+        return samples;
+    }
+}
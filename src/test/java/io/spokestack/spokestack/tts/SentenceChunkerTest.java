@@ -0,0 +1,97 @@
+package io.spokestack.spokestack.tts;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SentenceChunkerTest {
+
+    @Test
+    public void text() {
+        assertEquals(Arrays.asList("Hello there.", "How are you?",
+              "I'm \"fine!\"", "Pi is 3.14..."),
+              texts(SentenceChunker.split(request(
+                    "  Hello there. How are you?\nI'm \"fine!\"  "
+                          + "Pi is 3.14...",
+                    SynthesisRequest.Mode.TEXT))));
+        assertEquals(Arrays.asList("Take a [break:\"1.5s\"] break.", "Done."),
+              texts(SentenceChunker.split(request(
+                    "Take a [break:\"1.5s\"] break. Done.",
+                    SynthesisRequest.Mode.MARKDOWN))));
+
+        // a single sentence is left alone
+        SynthesisRequest single =
+              request("Just one. ", SynthesisRequest.Mode.TEXT);
+        List<SynthesisRequest> chunks = SentenceChunker.split(single);
+        assertEquals(1, chunks.size());
+        assertSame(single, chunks.get(0));
+    }
+
+    @Test
+    public void ssml() {
+        assertEquals(Arrays.asList(
+              "<speak version=\"1.0\">Hi.</speak>",
+              "<speak version=\"1.0\"><s>A <break time=\"1s\"/>sentence. "
+                    + "Still.</s></speak>",
+              "<speak version=\"1.0\">Say "
+                    + "<say-as interpret-as=\"characters\">a.b.</say-as> "
+                    + "now!</speak>",
+              "<speak version=\"1.0\">Bye</speak>"),
+              texts(SentenceChunker.split(request(
+                    "<speak version=\"1.0\">Hi. <s>A <break time=\"1s\"/>"
+                          + "sentence. Still.</s> Say <say-as "
+                          + "interpret-as=\"characters\">a.b.</say-as> now! "
+                          + "Bye</speak>",
+                    SynthesisRequest.Mode.SSML))));
+
+        // malformed SSML isn't split
+        for (String invalid : Arrays.asList(
+              "Not SSML. At all.",
+              "<speak>Unclosed. <s>Element.</speak>",
+              "<speak/>")) {
+            List<SynthesisRequest> chunks = SentenceChunker.split(
+                  request(invalid, SynthesisRequest.Mode.SSML));
+            assertEquals(1, chunks.size(), invalid);
+            assertEquals(invalid, chunks.get(0).text);
+        }
+    }
+
+    @Test
+    public void requestData() {
+        Map<String, String> data = new HashMap<>();
+        data.put("id", "abc");
+        data.put("other", "value");
+        SynthesisRequest request = new SynthesisRequest.Builder("One. Two.")
+              .withVoice("voice-2")
+              .withData(data)
+              .build();
+        List<SynthesisRequest> chunks = SentenceChunker.split(request);
+        assertEquals(2, chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            SynthesisRequest chunk = chunks.get(i);
+            assertEquals("voice-2", chunk.voice);
+            assertEquals(SynthesisRequest.Mode.TEXT, chunk.mode);
+            assertEquals("abc-" + i, chunk.metadata.get("id"));
+            assertEquals("value", chunk.metadata.get("other"));
+        }
+        assertEquals("abc", data.get("id"));
+    }
+
+    private SynthesisRequest request(String text, SynthesisRequest.Mode mode) {
+        return new SynthesisRequest.Builder(text).withMode(mode).build();
+    }
+
+    private List<String> texts(List<SynthesisRequest> requests) {
+        List<String> texts = new ArrayList<>();
+        for (SynthesisRequest request : requests) {
+            texts.add(request.text.toString());
+        }
+        return texts;
+    }
+}
@@ -40,4 +40,33 @@ public class SpokestackSynthesisResponseTest {
 
         }
     }
+
+    @Test
+    public void testStreamingParser() throws Exception {
+        String url = "https://spokestack.io/speech.mp3";
+
+        // unneeded fields are skipped, however they're nested
+        String responseJson = "{\"extensions\": "
+              + "{\"trace\": [1, {\"a\": null}]}, "
+              + "\"data\": {\"other\": [\"x\"], \"synthesizeText\": "
+              + "{\"id\": 5, \"url\": \"" + url + "\"}}}";
+        SpokestackSynthesisResponse result =
+              SpokestackSynthesisResponse.ADAPTER.fromJson(responseJson);
+        assertEquals(url, result.getUrl());
+        assertNull(result.getError());
+
+        // GraphQL errors
+        responseJson = "{\"data\": {\"synthesizeSsml\": null}, "
+              + "\"errors\": [{\"message\": \"invalid_ssml\", "
+              + "\"path\": [\"synthesizeSsml\"]}, "
+              + "{\"message\": \"other\"}]}";
+        result = SpokestackSynthesisResponse.ADAPTER.fromJson(responseJson);
+        assertNull(result.getUrl());
+        assertEquals("invalid_ssml; other", result.getError());
+
+        result = SpokestackSynthesisResponse.ADAPTER.fromJson(
+              "{\"errors\": []}");
+        assertNull(result.getError());
+        assertNull(SpokestackSynthesisResponse.ADAPTER.fromJson("null"));
+    }
 }
\ No newline at end of file
@@ -4,29 +4,32 @@ import android.net.Uri;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import com.google.gson.Gson;
+import io.spokestack.spokestack.util.Crypto;
 import okhttp3.Interceptor;
+import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
 import okio.Buffer;
-import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
-import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
 
 public class SpokestackTTSClientTest {
     private Response invalidResponse;
@@ -108,22 +111,32 @@ public class SpokestackTTSClientTest {
     }
 
     @Test
-    public void testRequestSigning() {
+    public void testRequestSigning() throws Exception {
+        AtomicReference<Request> sent = new AtomicReference<>();
+        FakeResponder responder = new FakeResponder();
+        OkHttpClient recordingClient = new OkHttpClient.Builder()
+              .addInterceptor(chain -> {
+                  sent.set(chain.request());
+                  return responder.intercept(chain);
+              })
+              .build();
         CountDownLatch latch = new CountDownLatch(1);
         TestCallback callback = new TestCallback(null, latch);
-        SpokestackTTSClient client = new SpokestackTTSClient(callback, httpClient);
+        SpokestackTTSClient client =
+              new SpokestackTTSClient(callback, recordingClient);
         String id = "f0bc990c-e9db-4a0c-a2b1-6a6395a3d97e";
         String secret =
               "5BD5483F573D691A15CFA493C1782F451D4BD666E39A9E7B2EBE287E6A72C6B6";
         client.setCredentials(id, secret);
 
-        String body = "{\"query\": "
-              + "\"query AndroidSynthesize($voice:String!, $text:String!) {"
-              + "synthesizeText(voice: $voice, text: $text) {url}}\", "
-              + "\"variables\": {\"voice\": \"demo-male\", \"text\": \"test\""
-              + "}}";
-        String sig = client.signRequest(body);
-        assertEquals("ZqrTG+aiIYJKgHB63HCmXCLj0acUEi92d/b2au2WdEM=", sig);
+        // the bytes sent are the bytes signed
+        client.synthesize(new SynthesisRequest.Builder("test").build());
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        Buffer body = new Buffer();
+        sent.get().body().writeTo(body);
+        String signature = Crypto.signBody(body.readUtf8(), secret);
+        assertEquals("Spokestack " + id + ":" + signature,
+              sent.get().header("Authorization"));
     }
 
     @Test
@@ -174,6 +187,155 @@ public class SpokestackTTSClientTest {
         assertEquals(requestId, response.getMetadata().get("id"));
     }
 
+    @Test
+    public void testCoalescing() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger requests = new AtomicInteger();
+        FakeResponder responder = new FakeResponder();
+        OkHttpClient gatedClient = new OkHttpClient.Builder()
+              .addInterceptor(chain -> {
+                  requests.incrementAndGet();
+                  try {
+                      gate.await(1, TimeUnit.SECONDS);
+                  } catch (InterruptedException e) {
+                      Thread.currentThread().interrupt();
+                  }
+                  return responder.intercept(chain);
+              })
+              .build();
+        SpokestackTTSClient client =
+              new SpokestackTTSClient(null, gatedClient);
+        client.setCredentials("id", "secret");
+
+        // identical requests made while one is in flight share its response
+        CountDownLatch latch = new CountDownLatch(3);
+        TestCallback first = new TestCallback(null, latch);
+        TestCallback second = new TestCallback(null, latch);
+        TestCallback other = new TestCallback(null, latch);
+        SynthesisRequest request = new SynthesisRequest.Builder("text").build();
+        client.synthesize(request, first);
+        client.synthesize(new SynthesisRequest.Builder("text").build(),
+              second);
+        client.synthesize(new SynthesisRequest.Builder("other").build(),
+              other);
+        gate.countDown();
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertEquals(2, requests.get());
+        assertNotNull(first.audioResponse);
+        assertNotNull(second.audioResponse);
+        assertNotNull(other.audioResponse);
+
+        // once the response arrives, the request is sent again
+        latch = new CountDownLatch(1);
+        TestCallback third = new TestCallback(null, latch);
+        client.synthesize(request, third);
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void testCoalescingAcrossIds() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger requests = new AtomicInteger();
+        FakeResponder responder = new FakeResponder();
+        OkHttpClient gatedClient = new OkHttpClient.Builder()
+              .addInterceptor(chain -> {
+                  requests.incrementAndGet();
+                  try {
+                      gate.await(1, TimeUnit.SECONDS);
+                  } catch (InterruptedException e) {
+                      Thread.currentThread().interrupt();
+                  }
+                  return responder.intercept(chain);
+              })
+              .build();
+        SpokestackTTSClient client =
+              new SpokestackTTSClient(null, gatedClient);
+        client.setCredentials("id", "secret");
+
+        // requests for the same speech share a response but each receives
+        // it under its own id
+        CountDownLatch latch = new CountDownLatch(3);
+        TestCallback first = new TestCallback(null, latch);
+        TestCallback second = new TestCallback(null, latch);
+        TestCallback anonymous = new TestCallback(null, latch);
+        client.synthesize(requestWithId("text", "first"), first);
+        client.synthesize(requestWithId("text", "second"), second);
+        client.synthesize(new SynthesisRequest.Builder("text").build(),
+              anonymous);
+        gate.countDown();
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertEquals(1, requests.get());
+        assertEquals("first", first.audioResponse.getMetadata().get("id"));
+        assertEquals("second", second.audioResponse.getMetadata().get("id"));
+        assertNull(anonymous.audioResponse.getMetadata().get("id"));
+
+        // a lone request keeps its own id
+        latch = new CountDownLatch(1);
+        TestCallback third = new TestCallback(null, latch);
+        client.synthesize(requestWithId("text", "third"), third);
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertEquals("third", third.audioResponse.getMetadata().get("id"));
+    }
+
+    private SynthesisRequest requestWithId(String text, String id) {
+        HashMap<String, String> metadata = new HashMap<>();
+        metadata.put("id", id);
+        return new SynthesisRequest.Builder(text).withData(metadata).build();
+    }
+
+    @Test
+    public void testCoalescedReadFailure() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        OkHttpClient gatedClient = new OkHttpClient.Builder()
+              .addInterceptor(chain -> {
+                  try {
+                      gate.await(1, TimeUnit.SECONDS);
+                  } catch (InterruptedException e) {
+                      Thread.currentThread().interrupt();
+                  }
+                  // a body that fails partway through
+                  Buffer partial = new Buffer().writeUtf8("{\"data\"");
+                  Source failing = new ForwardingSource(partial) {
+                      @Override
+                      public long read(@NotNull Buffer sink, long count)
+                            throws IOException {
+                          long read = super.read(sink, count);
+                          if (read < 0) {
+                              throw new IOException("connection reset");
+                          }
+                          return read;
+                      }
+                  };
+                  return new Response.Builder()
+                        .request(chain.request())
+                        .protocol(okhttp3.Protocol.HTTP_1_1)
+                        .code(200)
+                        .message("OK")
+                        .body(ResponseBody.create(Okio.buffer(failing),
+                              MediaType.get("application/json"), -1))
+                        .build();
+              })
+              .build();
+        SpokestackTTSClient client =
+              new SpokestackTTSClient(null, gatedClient);
+        client.setCredentials("id", "secret");
+
+        // every coalesced callback hears about the failed read
+        String error = "Unknown synthesis error: connection reset";
+        CountDownLatch latch = new CountDownLatch(2);
+        TestCallback first = new TestCallback(error, latch);
+        TestCallback second = new TestCallback(error, latch);
+        client.synthesize(new SynthesisRequest.Builder("text").build(),
+              first);
+        client.synthesize(new SynthesisRequest.Builder("text").build(),
+              second);
+        gate.countDown();
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertTrue(first.errorReceived);
+        assertTrue(second.errorReceived);
+    }
+
     static class TestCallback extends TTSCallback {
         private final String errorMessage;
         private final CountDownLatch countDownLatch;
@@ -248,10 +410,8 @@ public class SpokestackTTSClientTest {
 
         private Response createResponse(Request request, String body)
               throws IOException {
-            ResponseBody responseBody = mock(ResponseBody.class);
-            BufferedSource source = mock(BufferedSource.class);
-            when(source.readString(any(Charset.class))).thenReturn(body);
-            when(responseBody.source()).thenReturn(source);
+            ResponseBody responseBody = ResponseBody.create(body,
+                  MediaType.get("application/json"));
             Response.Builder builder = new Response.Builder()
                   .request(request)
                   .protocol(okhttp3.Protocol.HTTP_1_1)
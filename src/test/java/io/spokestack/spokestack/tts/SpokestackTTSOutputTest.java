@@ -4,15 +4,24 @@ import android.content.Context;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.media.AudioManager;
+import android.media.AudioTrack;
 import android.net.Uri;
 import androidx.annotation.NonNull;
 import androidx.lifecycle.Lifecycle;
 import androidx.lifecycle.LifecycleOwner;
 import androidx.lifecycle.LifecycleRegistry;
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.ExoPlaybackException;
 import com.google.android.exoplayer2.ExoPlayer;
 import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.audio.TeeAudioProcessor;
 import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.upstream.DataSink;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import io.spokestack.spokestack.SpeechConfig;
+import io.spokestack.spokestack.SpeechContext;
+import io.spokestack.spokestack.util.SampleRing;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -22,16 +31,21 @@ import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.*;
 
 @RunWith(PowerMockRunner.class)
-@PrepareForTest(ExoPlaybackException.class)
+@PrepareForTest({ExoPlaybackException.class, AudioTrack.class})
 public class SpokestackTTSOutputTest {
     @Mock
     @SuppressWarnings("unused")
@@ -119,10 +133,124 @@ public class SpokestackTTSOutputTest {
         mediaPlayer = ttsOutput.getMediaPlayer();
         assertNotNull(mediaPlayer);
         verify(ttsOutput, times(1)).playContent();
-        verify(ttsOutput, times(1)).createMediaSource(Uri.EMPTY);
+        verify(ttsOutput, times(1)).createMediaSource(Uri.EMPTY, null, null);
         verify(ttsOutput, times(1)).requestFocus();
         verify(mediaPlayer, times(2)).prepare(any());
         verify(mediaPlayer, times(1)).setPlayWhenReady(true);
+
+        // audio bound for the cache is stored as it's streamed
+        DataSink.Factory cacheSink = () -> null;
+        ttsOutput.audioReceived(
+              new AudioResponse(new HashMap<>(), Uri.EMPTY, cacheSink));
+        verify(ttsOutput, times(1))
+              .createMediaSource(Uri.EMPTY, null, cacheSink);
+    }
+
+    @Test
+    public void testInMemoryAudio() {
+        SpokestackTTSOutput ttsOutput = spiedOutput();
+        ByteBuffer audio = ByteBuffer.wrap(new byte[]{1, 2, 3});
+
+        ttsOutput.audioReceived(
+              new AudioResponse(new HashMap<>(), audio));
+        verify(ttsOutput, times(1)).createInMemoryMediaSource(any(), any());
+        verify(ttsOutput, never()).createMediaSource(any(), any(), any());
+        assertTrue(ttsOutput.getPlayerState().hasContent);
+        verify(ttsOutput.getMediaPlayer(), times(1)).setPlayWhenReady(true);
+    }
+
+    @Test
+    public void testBargeInState() {
+        SpokestackTTSOutput ttsOutput = spiedOutput();
+        SpeechContext speechContext = new SpeechContext(new SpeechConfig());
+
+        // nothing is published without a speech context
+        ttsOutput.onIsPlayingChanged(true);
+        assertFalse(speechContext.isPlaying());
+
+        ttsOutput.setSpeechContext(speechContext);
+        ttsOutput.onIsPlayingChanged(true);
+        assertTrue(speechContext.isPlaying());
+
+        // the level of 16-bit audio is published as linear RMS, and the
+        // latency of the audio sink when the format is known
+        PowerMockito.mockStatic(AudioTrack.class);
+        when(AudioTrack.getMinBufferSize(anyInt(), anyInt(), anyInt()))
+              .thenReturn(2048);
+        SpokestackTTSOutput.PlaybackMonitor meter =
+              ttsOutput.new PlaybackMonitor();
+        ByteBuffer audio = ByteBuffer.allocate(8)
+              .order(ByteOrder.nativeOrder());
+        audio.putShort(Short.MAX_VALUE).putShort((short) -Short.MAX_VALUE)
+              .putShort(Short.MAX_VALUE).putShort((short) -Short.MAX_VALUE);
+        audio.flip();
+        meter.flush(16000, 1, C.ENCODING_PCM_16BIT);
+        assertEquals(256, speechContext.getPlaybackLatency());
+        meter.handleBuffer(audio);
+        assertEquals(1.0, speechContext.getPlaybackLevel(), 1e-6);
+
+        // the audio is copied to an echo canceller's reference
+        SampleRing reference = new SampleRing(16000, 16);
+        speechContext.setPlaybackReference(reference);
+        meter.handleBuffer(audio);
+        assertEquals(4, reference.available());
+
+        ttsOutput.stopPlayback();
+        assertFalse(speechContext.isPlaying());
+        assertEquals(0.0, speechContext.getPlaybackLevel());
+
+        // other encodings aren't measured
+        meter.flush(16000, 1, 4);
+        meter.handleBuffer(audio);
+        assertEquals(0.0, speechContext.getPlaybackLevel());
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        SpokestackTTSOutput ttsOutput = spiedOutput();
+        TTSMetrics metrics = new TTSMetrics();
+        ttsOutput.setMetrics(metrics);
+
+        metrics.record("1", TTSMetrics.Phase.REQUEST);
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", "1");
+        ttsOutput.audioReceived(new AudioResponse(data, Uri.EMPTY));
+        verify(ttsOutput, times(1)).createMediaSource(Uri.EMPTY, "1", null);
+
+        // the first byte read by any of the track's sources is recorded
+        DataSource.Factory sources = ttsOutput.timed(
+              ByteBufferDataSource.factory(ByteBuffer.wrap(new byte[4])),
+              "1");
+        DataSource source = sources.createDataSource();
+        source.open(new DataSpec(Uri.EMPTY, 0, C.LENGTH_UNSET, null));
+        source.read(new byte[4], 0, 4);
+        assertTrue(metrics.getTimings("1")
+              .containsKey(TTSMetrics.Phase.FIRST_BYTE));
+
+        // the player's state is attributed to the track it's playing
+        ExoPlayer mediaPlayer = ttsOutput.getMediaPlayer();
+        when(mediaPlayer.getCurrentTag()).thenReturn("1");
+        ttsOutput.onPlayerStateChanged(true, Player.STATE_READY);
+        ttsOutput.onIsPlayingChanged(true);
+        Map<TTSMetrics.Phase, Double> timings = metrics.getTimings("1");
+        assertTrue(timings.containsKey(TTSMetrics.Phase.READY));
+        assertTrue(timings.containsKey(TTSMetrics.Phase.PLAYBACK));
+
+        // queued tracks start playing without a change in state
+        metrics.record("2", TTSMetrics.Phase.REQUEST);
+        when(mediaPlayer.getCurrentTag()).thenReturn("2");
+        when(mediaPlayer.isPlaying()).thenReturn(true);
+        ttsOutput.onPositionDiscontinuity(
+              Player.DISCONTINUITY_REASON_PERIOD_TRANSITION);
+        timings = metrics.getTimings("2");
+        assertTrue(timings.containsKey(TTSMetrics.Phase.READY));
+        assertTrue(timings.containsKey(TTSMetrics.Phase.PLAYBACK));
+
+        // without metrics, sources aren't wrapped
+        ttsOutput.setMetrics(null);
+        DataSource.Factory plain =
+              ByteBufferDataSource.factory(ByteBuffer.wrap(new byte[4]));
+        assertSame(plain, ttsOutput.timed(plain, "3"));
     }
 
     @Test
@@ -211,7 +339,9 @@ public class SpokestackTTSOutputTest {
         // mocked because Android system methods called indirectly by the code
         // under test are all stubbed or absent from the android/androidx deps
         doReturn(mock(MediaSource.class))
-              .when(ttsOutput).createMediaSource(any());
+              .when(ttsOutput).createMediaSource(any(), any(), any());
+        doReturn(mock(MediaSource.class))
+              .when(ttsOutput).createInMemoryMediaSource(any(), any());
         doReturn(AudioManager.AUDIOFOCUS_REQUEST_GRANTED)
               .when(ttsOutput).requestFocus();
         return ttsOutput;
@@ -222,7 +352,8 @@ public class SpokestackTTSOutputTest {
 
         @Override
         ExoPlayer createPlayer(int usage, int contentType,
-                               Context context) {
+                               Context context,
+                               TeeAudioProcessor.AudioBufferSink playbackSink) {
             return exoPlayer;
         }
     }
@@ -2,10 +2,13 @@ package io.spokestack.spokestack.tts;
 
 import android.net.Uri;
 import com.google.common.base.Objects;
+import com.google.android.exoplayer2.upstream.DataSink;
+import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.gson.Gson;
 import io.spokestack.spokestack.SpeechConfig;
 import okhttp3.Call;
 import okhttp3.Interceptor;
+import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
@@ -21,14 +24,20 @@ import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.powermock.api.mockito.PowerMockito.*;
 
@@ -42,14 +51,16 @@ public class SpokestackTTSServiceTest {
     private final Gson gson = new Gson();
     private SpokestackTTSClient client;
     private CallbackForwarder callbackForwarder;
+    private FakeResponder responder;
 
     @Before
     public void before() {
         mockStatic(Uri.class);
         when(Uri.parse(any())).thenReturn(mock(Uri.class));
 
+        this.responder = new FakeResponder();
         OkHttpClient httpClient = new OkHttpClient.Builder()
-              .addInterceptor(new FakeResponder())
+              .addInterceptor(this.responder)
               .build();
         this.client = new SpokestackTTSClient(null, httpClient);
         this.callbackForwarder = new CallbackForwarder();
@@ -117,6 +128,172 @@ public class SpokestackTTSServiceTest {
         assertNotNull(error);
     }
 
+    @Test
+    public void testDirectDelivery() throws InterruptedException {
+        SpeechConfig config = new SpeechConfig();
+        config.put("spokestack-id", "test");
+        config.put("spokestack-secret", "test");
+        SpokestackTTSService ttsService =
+              new SpokestackTTSService(config, this.client);
+        this.callbackForwarder.setTtsService(ttsService);
+        LinkedBlockingQueue<TTSEvent> dispatched = new LinkedBlockingQueue<>();
+        ttsService.addListener(dispatched::add);
+
+        // results go only to the listener supplied with the request
+        LinkedBlockingQueue<TTSEvent> delivered = new LinkedBlockingQueue<>();
+        ttsService.synthesize(new SynthesisRequest.Builder("test").build(),
+              delivered::add);
+        TTSEvent event = delivered.poll(1, TimeUnit.SECONDS);
+        assertNotNull(event);
+        assertEquals(TTSEvent.Type.AUDIO_AVAILABLE, event.type);
+
+        ttsService.synthesize(new SynthesisRequest.Builder("error").build(),
+              delivered::add);
+        event = delivered.poll(1, TimeUnit.SECONDS);
+        assertNotNull(event);
+        assertEquals(TTSEvent.Type.ERROR, event.type);
+        assertTrue(dispatched.isEmpty());
+    }
+
+    @Test
+    public void testMetrics() throws InterruptedException {
+        SpeechConfig config = new SpeechConfig();
+        config.put("spokestack-id", "test");
+        config.put("spokestack-secret", "test");
+        SpokestackTTSService ttsService =
+              new SpokestackTTSService(config, this.client);
+        TTSMetrics metrics = new TTSMetrics();
+        ttsService.setMetrics(metrics);
+
+        // the service records when it begins receiving a response
+        metrics.record("1", TTSMetrics.Phase.REQUEST);
+        LinkedBlockingQueue<TTSEvent> delivered = new LinkedBlockingQueue<>();
+        ttsService.synthesize(new SynthesisRequest.Builder("test")
+                    .withData(Collections.singletonMap("id", "1"))
+                    .build(),
+              delivered::add);
+        TTSEvent event = delivered.poll(1, TimeUnit.SECONDS);
+        assertNotNull(event);
+        assertEquals(TTSEvent.Type.AUDIO_AVAILABLE, event.type);
+        assertTrue(metrics.getTimings("1")
+              .containsKey(TTSMetrics.Phase.RESPONSE));
+
+        // failed requests never respond
+        metrics.record("2", TTSMetrics.Phase.REQUEST);
+        ttsService.synthesize(new SynthesisRequest.Builder("error")
+                    .withData(Collections.singletonMap("id", "2"))
+                    .build(),
+              delivered::add);
+        event = delivered.poll(1, TimeUnit.SECONDS);
+        assertNotNull(event);
+        assertEquals(TTSEvent.Type.ERROR, event.type);
+        assertEquals(1, metrics.getCount(TTSMetrics.Phase.RESPONSE));
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        Uri remoteUri = mock(Uri.class);
+        when(remoteUri.toString()).thenReturn(AUDIO_URL);
+        when(Uri.parse(any())).thenReturn(remoteUri);
+        Uri cachedUri = mock(Uri.class);
+        when(Uri.fromFile(any())).thenReturn(cachedUri);
+
+        File cacheDir = Files.createTempDirectory("tts-cache").toFile();
+        SpeechConfig config = new SpeechConfig();
+        config.put("spokestack-id", "test");
+        config.put("spokestack-secret", "test");
+        config.put("tts-cache-path", cacheDir.getPath());
+        SpokestackTTSService ttsService =
+              new SpokestackTTSService(config, this.client);
+        this.callbackForwarder.setTtsService(ttsService);
+        LinkedBlockingQueue<AudioResponse> responses =
+              new LinkedBlockingQueue<>();
+        ttsService.addListener(event -> {
+            if (event.type == TTSEvent.Type.AUDIO_AVAILABLE) {
+                responses.add(event.getTtsResponse());
+            }
+        });
+
+        // the first request is synthesized and delivered from its URL; the
+        // service doesn't download the audio itself, but asks the output to
+        // store it as it's played
+        SynthesisRequest request =
+              new SynthesisRequest.Builder("cached").build();
+        ttsService.synthesize(request);
+        AudioResponse response = responses.poll(1, TimeUnit.SECONDS);
+        assertNotNull(response);
+        assertEquals(remoteUri, response.getAudioUri());
+        assertEquals(1, this.responder.synthesisRequests);
+        assertEquals(0, this.responder.downloads);
+        String key = TTSCache.key(request);
+        assertNull(ttsService.getCache().get(key));
+
+        DataSink sink = response.getCacheSink().createDataSink();
+        sink.open(new DataSpec(remoteUri, 0, 16, null));
+        sink.write(new byte[16], 0, 16);
+        sink.close();
+        assertNotNull(ttsService.getCache().get(key));
+
+        // later requests are answered from the cache without synthesis
+        ttsService.synthesize(request);
+        response = responses.poll(1, TimeUnit.SECONDS);
+        assertNotNull(response);
+        assertEquals(cachedUri, response.getAudioUri());
+        assertNull(response.getCacheSink());
+        assertEquals(1, this.responder.synthesisRequests);
+
+        ttsService.getCache().clear();
+        cacheDir.delete();
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        Uri remoteUri = mock(Uri.class);
+        when(remoteUri.toString()).thenReturn(AUDIO_URL);
+        when(Uri.parse(any())).thenReturn(remoteUri);
+
+        // without a cache, there's nowhere to put the audio
+        SpeechConfig config = new SpeechConfig();
+        config.put("spokestack-id", "test");
+        config.put("spokestack-secret", "test");
+        SynthesisRequest request =
+              new SynthesisRequest.Builder("prefetched").build();
+        new SpokestackTTSService(config, this.client).prefetch(request);
+        assertEquals(0, this.responder.synthesisRequests);
+
+        File cacheDir = Files.createTempDirectory("tts-cache").toFile();
+        config.put("tts-cache-path", cacheDir.getPath());
+        SpokestackTTSService ttsService =
+              new SpokestackTTSService(config, this.client);
+        this.callbackForwarder.setTtsService(ttsService);
+        LinkedBlockingQueue<TTSEvent> events = new LinkedBlockingQueue<>();
+        ttsService.addListener(events::add);
+
+        // prefetched audio is in the cache as soon as the call returns, and
+        // nothing is dispatched to listeners
+        ttsService.prefetch(request);
+        assertNotNull(ttsService.getCache().get(TTSCache.key(request)));
+        assertEquals(1, this.responder.synthesisRequests);
+        assertTrue(events.isEmpty());
+
+        // audio that's already cached isn't synthesized again
+        ttsService.prefetch(request);
+        assertEquals(1, this.responder.synthesisRequests);
+
+        // errors are reported to the caller
+        assertThrows(IOException.class, () -> ttsService.prefetch(
+              new SynthesisRequest.Builder("error").build()));
+        assertTrue(events.isEmpty());
+
+        // including ones the HTTP client would swallow
+        when(remoteUri.toString()).thenReturn("invalid url");
+        assertThrows(IllegalArgumentException.class, () -> ttsService.prefetch(
+              new SynthesisRequest.Builder("invalid").build()));
+
+        ttsService.getCache().clear();
+        cacheDir.delete();
+    }
+
     /**
      * Helper class to forward TTS client "responses" to the service under test
      * just as would happen in the real component. We need to circumvent the
@@ -155,10 +332,18 @@ public class SpokestackTTSServiceTest {
               "{\"data\": {\"synthesizeText\": {\"url\": \""
                     + AUDIO_URL + "\"}}}";
 
+        private volatile int synthesisRequests;
+        private volatile int downloads;
+
         @NotNull
         @Override
         public Response intercept(@NotNull Chain chain) throws IOException {
             Request request = chain.request();
+            if (request.method().equals("GET")) {
+                downloads++;
+                return createAudioResponse();
+            }
+            synthesisRequests++;
             RequestBody body = request.body();
             Buffer buffer = new Buffer();
             body.writeTo(buffer);
@@ -172,16 +357,15 @@ public class SpokestackTTSServiceTest {
             return createResponse(text == null);
         }
 
-        private Response createResponse(boolean isSsml) throws IOException {
+        private Response createAudioResponse() {
             Request request = new okhttp3.Request.Builder()
-                  .url("http://example.com/")
+                  .url(AUDIO_URL)
                   .build();
 
             ResponseBody body = mock(ResponseBody.class);
             BufferedSource responseSource = mock(BufferedSource.class);
-            String responseBody = isSsml ? SSML_JSON : TEXT_JSON;
-            when(responseSource.readString(any(Charset.class)))
-                  .thenReturn(responseBody);
+            when(responseSource.inputStream())
+                  .thenReturn(new ByteArrayInputStream(new byte[16]));
             when(body.source()).thenReturn(responseSource);
             return new Response.Builder()
                   .request(request)
@@ -192,5 +376,22 @@ public class SpokestackTTSServiceTest {
                   .build();
         }
 
+        private Response createResponse(boolean isSsml) throws IOException {
+            Request request = new okhttp3.Request.Builder()
+                  .url("http://example.com/")
+                  .build();
+
+            String responseBody = isSsml ? SSML_JSON : TEXT_JSON;
+            ResponseBody body = ResponseBody.create(responseBody,
+                  MediaType.get("application/json"));
+            return new Response.Builder()
+                  .request(request)
+                  .protocol(okhttp3.Protocol.HTTP_1_1)
+                  .code(200)
+                  .message("OK")
+                  .body(body)
+                  .build();
+        }
+
     }
 }
\ No newline at end of file
@@ -0,0 +1,126 @@
+package io.spokestack.spokestack.tts;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TTSCacheTest {
+
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    @Test
+    public void keys() {
+        String key = TTSCache.key(new SynthesisRequest.Builder("hi").build());
+        assertEquals(64, key.length());
+
+        // only the voice, mode, and text matter
+        Map<String, String> data = new HashMap<>();
+        data.put("id", "1234");
+        assertEquals(key, TTSCache.key(new SynthesisRequest.Builder("hi")
+              .withData(data)
+              .build()));
+        assertNotEquals(key, TTSCache.key(new SynthesisRequest.Builder("hi")
+              .withVoice("other")
+              .build()));
+        assertNotEquals(key, TTSCache.key(new SynthesisRequest.Builder("hi")
+              .withMode(SynthesisRequest.Mode.MARKDOWN)
+              .build()));
+        assertNotEquals(key, TTSCache.key(
+              new SynthesisRequest.Builder("hi!").build()));
+    }
+
+    @Test
+    public void storage() throws IOException {
+        File dir = testFolder.newFolder("tts");
+        TTSCache cache = new TTSCache(dir, 1024);
+        assertNull(cache.get("a"));
+
+        File stored = cache.put("a", audio(100, 1));
+        assertNotNull(stored);
+        assertEquals(stored, cache.get("a"));
+        assertArrayEquals(bytes(100, 1), Files.readAllBytes(stored.toPath()));
+        assertEquals(100, cache.size());
+
+        // replacing an entry replaces its size too
+        cache.put("a", audio(200, 2));
+        assertEquals(200, cache.size());
+        assertArrayEquals(bytes(200, 2),
+              Files.readAllBytes(cache.get("a").toPath()));
+        assertEquals(1, dir.listFiles().length);
+
+        // entries removed from disk are forgotten
+        cache.get("a").delete();
+        assertNull(cache.get("a"));
+
+        // audio larger than the cache isn't kept
+        assertNull(cache.put("b", audio(2048, 3)));
+        assertNull(cache.get("b"));
+        assertEquals(0, dir.listFiles().length);
+
+        cache.put("c", audio(100, 4));
+        cache.clear();
+        assertNull(cache.get("c"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void eviction() throws Exception {
+        File dir = testFolder.newFolder("tts");
+        TTSCache cache = new TTSCache(dir, 1000);
+        cache.put("a", audio(400, 1));
+        cache.put("b", audio(400, 2));
+        // file times only have a resolution of a second on some systems
+        new File(dir, "a").setLastModified(1000);
+        new File(dir, "b").setLastModified(2000);
+        cache.get("a");
+
+        // the least recently used entry is evicted first
+        cache.put("c", audio(400, 3));
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(800, cache.size());
+
+        // the order is restored from disk, and incomplete writes are
+        // discarded
+        new File(dir, "a").setLastModified(3000);
+        new File(dir, "c").setLastModified(4000);
+        assertTrue(new File(dir, "d.tmp").createNewFile());
+        TTSCache reopened = new TTSCache(dir, 500);
+        assertNull(reopened.get("a"));
+        assertNotNull(reopened.get("c"));
+        assertEquals(400, reopened.size());
+        assertFalse(new File(dir, "d.tmp").exists());
+    }
+
+    @Test
+    public void sharedInstances() throws IOException {
+        File dir = testFolder.newFolder("tts");
+        TTSCache cache = TTSCache.open(dir, 1000);
+        assertSame(cache, TTSCache.open(new File(dir.getPath()), 10));
+        assertNotSame(cache, TTSCache.open(testFolder.newFolder("other"), 10));
+    }
+
+    private InputStream audio(int size, int value) {
+        return new ByteArrayInputStream(bytes(size, value));
+    }
+
+    private byte[] bytes(int size, int value) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (value + i);
+        }
+        return data;
+    }
+}
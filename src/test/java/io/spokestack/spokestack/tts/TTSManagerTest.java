@@ -9,7 +9,9 @@ import androidx.lifecycle.Lifecycle;
 import androidx.lifecycle.LifecycleOwner;
 import androidx.lifecycle.LifecycleRegistry;
 import io.spokestack.spokestack.SpeechConfig;
+import io.spokestack.spokestack.SpeechContext;
 import io.spokestack.spokestack.SpeechOutput;
+import io.spokestack.spokestack.util.AsyncResult;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Before;
 import org.junit.Test;
@@ -17,7 +19,15 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -135,12 +145,220 @@ public class TTSManagerTest implements TTSListener {
         assertEquals("stop", events.remove(), "stop not called on output");
     }
 
+    @Test
+    public void testBargeIn() throws Exception {
+        SpeechContext speechContext = new SpeechContext(new SpeechConfig());
+        TTSManager manager = new TTSManager.Builder()
+              .setTTSServiceClass("io.spokestack.spokestack.tts.TTSManagerTest$Input")
+              .setOutputClass("io.spokestack.spokestack.tts.TTSManagerTest$Output")
+              .setConfig(new SpeechConfig())
+              .setAndroidContext(context)
+              .setSpeechContext(speechContext)
+              .addTTSListener(this)
+              .build();
+        assertEquals("speechContext", events.remove());
+
+        // activation without playback leaves the output alone
+        speechContext.setActive(true);
+        assertTrue(events.isEmpty());
+        speechContext.setActive(false);
+
+        // activation during playback stops it
+        speechContext.setPlaying(true);
+        speechContext.setActive(true);
+        assertEquals("stop", events.remove(), "stop not called on output");
+        speechContext.setActive(false);
+
+        // barge-in can be disabled
+        manager.setSpeechContext(null);
+        speechContext.setActive(true);
+        assertTrue(events.isEmpty());
+        speechContext.setActive(false);
+
+        // and the manager stops listening once closed
+        manager.setSpeechContext(speechContext);
+        assertEquals("speechContext", events.remove());
+        manager.close();
+        speechContext.setActive(true);
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        TTSManager manager = new TTSManager.Builder()
+              .setTTSServiceClass("io.spokestack.spokestack.tts.TTSManagerTest$Input")
+              .setProperty("tts-prefetch-threads", 1)
+              .setAndroidContext(context)
+              .addTTSListener(this)
+              .build();
+
+        // an empty batch is already complete
+        assertTrue(manager.prefetch(Collections.emptyList()).isDone());
+
+        manager.prefetch(Arrays.asList(
+              new SynthesisRequest.Builder("one").build(),
+              new SynthesisRequest.Builder("two").build()))
+              .get(1, TimeUnit.SECONDS);
+        assertEquals("prefetch one", events.remove());
+        assertEquals("prefetch two", events.remove());
+        assertNull(lastEvent, "prefetch results should not be dispatched");
+
+        // a failed request doesn't stop the others
+        ExecutionException error = assertThrows(ExecutionException.class,
+              () -> manager.prefetch(Arrays.asList(
+                    new SynthesisRequest.Builder("fail").build(),
+                    new SynthesisRequest.Builder("three").build()))
+                    .get(1, TimeUnit.SECONDS));
+        assertTrue(error.getCause() instanceof IOException);
+        assertEquals("prefetch three", events.poll(1, TimeUnit.SECONDS));
+
+        // releasing the manager cancels pending requests
+        Input.blocker = new CountDownLatch(1);
+        AsyncResult<Void> pending = manager.prefetch(Arrays.asList(
+              new SynthesisRequest.Builder("block").build(),
+              new SynthesisRequest.Builder("four").build()));
+        assertEquals("prefetch block", events.poll(1, TimeUnit.SECONDS));
+        manager.release();
+        assertThrows(ExecutionException.class,
+              () -> pending.get(1, TimeUnit.SECONDS));
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void testChunking() throws Exception {
+        List<TTSEvent> received = new ArrayList<>();
+        TTSManager manager = new TTSManager.Builder()
+              .setTTSServiceClass("io.spokestack.spokestack.tts.TTSManagerTest$Input")
+              .setProperty("tts-chunk-requests", 2)
+              .setAndroidContext(context)
+              .addTTSListener(received::add)
+              .build();
+        Input.pending.clear();
+
+        manager.synthesize(new SynthesisRequest.Builder(
+              "One. Two. Three. Four.").build());
+        // only two sentences are synthesized at a time
+        assertEquals(Arrays.asList("One.", "Two."), pendingTexts());
+
+        // sentences are delivered in order, as soon as everything before
+        // them is available
+        Input.completeRequest(1);
+        assertTrue(received.isEmpty());
+        assertEquals(Arrays.asList("One.", "Two.", "Three."), pendingTexts());
+        Input.completeRequest(0);
+        assertEquals(Arrays.asList("One.", "Two."), deliveredTexts(received));
+        Input.completeRequest(3);
+        Input.completeRequest(2);
+        assertEquals(Arrays.asList("One.", "Two.", "Three.", "Four."),
+              deliveredTexts(received));
+
+        // an error replaces the rest of the response
+        received.clear();
+        Input.pending.clear();
+        manager.synthesize(new SynthesisRequest.Builder(
+              "One. Two. Three.").build());
+        Input.failRequest(1);
+        Input.completeRequest(0);
+        assertEquals(2, received.size());
+        assertEquals(TTSEvent.Type.ERROR, received.get(1).type);
+        assertEquals(2, Input.pending.size());
+
+        // stopping playback discards sentences in progress
+        received.clear();
+        Input.pending.clear();
+        manager.synthesize(new SynthesisRequest.Builder("One. Two.").build());
+        manager.stopPlayback();
+        Input.completeRequest(0);
+        Input.completeRequest(1);
+        assertTrue(received.isEmpty());
+
+        // single sentences are synthesized normally
+        manager.synthesize(new SynthesisRequest.Builder("One.").build());
+        assertEquals(TTSEvent.Type.AUDIO_AVAILABLE, received.get(0).type);
+
+        // as are requests to services that can't deliver results directly
+        received.clear();
+        Input.pending.clear();
+        manager = new TTSManager.Builder()
+              .setTTSServiceClass(
+                    "io.spokestack.spokestack.tts.TTSManagerTest$WholeInput")
+              .setProperty("tts-chunk-requests", 2)
+              .setAndroidContext(context)
+              .addTTSListener(received::add)
+              .build();
+        manager.synthesize(new SynthesisRequest.Builder("One. Two.").build());
+        assertEquals(1, received.size());
+        assertTrue(Input.pending.isEmpty());
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        TTSManager manager = new TTSManager.Builder()
+              .setTTSServiceClass("io.spokestack.spokestack.tts.TTSManagerTest$Input")
+              .setOutputClass("io.spokestack.spokestack.tts.TTSManagerTest$Output")
+              .setProperty("tts-chunk-requests", 2)
+              .setAndroidContext(context)
+              .build();
+        TTSMetrics metrics = manager.getMetrics();
+        assertSame(metrics, manager.getTtsService().getMetrics());
+        assertSame(metrics, manager.getOutput().getMetrics());
+
+        // requests are timed from synthesis to playback
+        manager.synthesize(new SynthesisRequest.Builder("Hi.")
+              .withData(Collections.singletonMap("id", "1"))
+              .build());
+        manager.getOutput().recordTiming("1", TTSMetrics.Phase.PLAYBACK);
+        Map<TTSMetrics.Phase, Double> timings = metrics.getTimings("1");
+        assertEquals(Arrays.asList(TTSMetrics.Phase.REQUEST,
+              TTSMetrics.Phase.AUDIO_AVAILABLE, TTSMetrics.Phase.PLAYBACK),
+              new ArrayList<>(timings.keySet()));
+        assertEquals(0.0, (double) timings.get(TTSMetrics.Phase.REQUEST));
+        assertEquals(1, metrics.getCount(TTSMetrics.Phase.PLAYBACK));
+
+        // requests without ids aren't
+        manager.synthesize(new SynthesisRequest.Builder("Hi.").build());
+        assertEquals(1, metrics.getCount(TTSMetrics.Phase.REQUEST));
+
+        // chunks are timed individually
+        Input.pending.clear();
+        manager.synthesize(new SynthesisRequest.Builder("One. Two.")
+              .withData(Collections.singletonMap("id", "2"))
+              .build());
+        Input.completeRequest(1);
+        assertTrue(metrics.getTimings("2").isEmpty());
+        assertTrue(metrics.getTimings("2-0")
+              .containsKey(TTSMetrics.Phase.REQUEST));
+        assertTrue(metrics.getTimings("2-1")
+              .containsKey(TTSMetrics.Phase.AUDIO_AVAILABLE));
+        assertEquals(2, metrics.getCount(TTSMetrics.Phase.AUDIO_AVAILABLE));
+        manager.close();
+    }
+
+    private List<String> pendingTexts() {
+        List<String> texts = new ArrayList<>();
+        for (Input.Pending request : Input.pending) {
+            texts.add(request.request.text.toString());
+        }
+        return texts;
+    }
+
+    private List<String> deliveredTexts(List<TTSEvent> received) {
+        List<String> texts = new ArrayList<>();
+        for (TTSEvent event : received) {
+            texts.add((String) event.getTtsResponse().getMetadata()
+                  .get("text"));
+        }
+        return texts;
+    }
+
     @Override
     public void eventReceived(@NonNull TTSEvent event) {
         lastEvent = event;
     }
 
     public static class Input extends TTSService {
+        static CountDownLatch blocker;
+        static List<Pending> pending = new ArrayList<>();
 
         public Input(SpeechConfig config) {
             String key = config.getString("spokestack-id", "default");
@@ -153,14 +371,77 @@ public class TTSManagerTest implements TTSListener {
         public void synthesize(SynthesisRequest request) {
             TTSEvent synthesisComplete =
                   new TTSEvent(TTSEvent.Type.AUDIO_AVAILABLE);
-            AudioResponse response = new AudioResponse(Uri.EMPTY);
+            Map<String, Object> metadata = new HashMap<>();
+            metadata.put("id", request.metadata.get("id"));
+            AudioResponse response = new AudioResponse(metadata, Uri.EMPTY);
             synthesisComplete.setTtsResponse(response);
             dispatch(synthesisComplete);
         }
 
+        @Override
+        public boolean supportsDirectDelivery() {
+            return true;
+        }
+
+        @Override
+        public void synthesize(SynthesisRequest request,
+                               TTSListener listener) {
+            pending.add(new Pending(request, listener));
+        }
+
+        static void completeRequest(int index) {
+            Pending request = pending.get(index);
+            Map<String, Object> metadata = new HashMap<>();
+            metadata.put("text", request.request.text.toString());
+            metadata.put("id", request.request.metadata.get("id"));
+            TTSEvent event = new TTSEvent(TTSEvent.Type.AUDIO_AVAILABLE);
+            event.setTtsResponse(new AudioResponse(metadata, Uri.EMPTY));
+            request.listener.eventReceived(event);
+        }
+
+        static void failRequest(int index) {
+            TTSEvent event = new TTSEvent(TTSEvent.Type.ERROR);
+            event.setError(new IOException("synthesis failed"));
+            pending.get(index).listener.eventReceived(event);
+        }
+
+        @Override
+        public void prefetch(SynthesisRequest request) throws Exception {
+            if (request.text.equals("fail")) {
+                throw new IOException("prefetch failed");
+            }
+            events.add("prefetch " + request.text);
+            if (request.text.equals("block")) {
+                blocker.await();
+            }
+        }
+
         @Override
         public void close() {
         }
+
+        static class Pending {
+            final SynthesisRequest request;
+            final TTSListener listener;
+
+            Pending(SynthesisRequest synthesisRequest,
+                    TTSListener ttsListener) {
+                this.request = synthesisRequest;
+                this.listener = ttsListener;
+            }
+        }
+    }
+
+    public static class WholeInput extends Input {
+
+        public WholeInput(SpeechConfig config) {
+            super(config);
+        }
+
+        @Override
+        public boolean supportsDirectDelivery() {
+            return false;
+        }
     }
 
     public static class Output extends SpeechOutput
@@ -190,6 +471,13 @@ public class TTSManagerTest implements TTSListener {
         @Override
         public void setAndroidContext(Context appContext) { }
 
+        @Override
+        public void setSpeechContext(SpeechContext speechContext) {
+            if (speechContext != null) {
+                events.add("speechContext");
+            }
+        }
+
         @Override
         public void close() {
             throw new RuntimeException("can't close won't close");
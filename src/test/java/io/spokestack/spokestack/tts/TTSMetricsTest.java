@@ -0,0 +1,94 @@
+package io.spokestack.spokestack.tts;
+
+import android.net.Uri;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static io.spokestack.spokestack.tts.TTSMetrics.Phase.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TTSMetricsTest {
+    private static final long MS = 1000000;
+
+    @Test
+    public void testTimings() {
+        assertThrows(IllegalArgumentException.class, () -> new TTSMetrics(0));
+        TTSMetrics metrics = new TTSMetrics();
+        assertTrue(metrics.getTimings("1").isEmpty());
+
+        metrics.record("1", REQUEST, 100 * MS);
+        metrics.record("1", RESPONSE, 150 * MS);
+        metrics.record("1", AUDIO_AVAILABLE, 160 * MS);
+        // only the first time a phase is reached counts
+        metrics.record("1", RESPONSE, 170 * MS);
+        Map<TTSMetrics.Phase, Double> timings = metrics.getTimings("1");
+        assertEquals(3, timings.size());
+        assertEquals(0.0, (double) timings.get(REQUEST));
+        assertEquals(50.0, (double) timings.get(RESPONSE));
+        assertEquals(60.0, (double) timings.get(AUDIO_AVAILABLE));
+        assertEquals(1, metrics.getCount(RESPONSE));
+
+        // unknown requests and requests without ids are ignored
+        metrics.record("2", PLAYBACK, 200 * MS);
+        metrics.record((String) null, REQUEST);
+        assertTrue(metrics.getTimings("2").isEmpty());
+        assertEquals(0, metrics.getCount(PLAYBACK));
+        assertEquals(1, metrics.getCount(REQUEST));
+
+        // responses are identified by their metadata
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", "1");
+        metrics.record(new AudioResponse(data, Uri.EMPTY), PLAYBACK);
+        metrics.record(new AudioResponse(Uri.EMPTY), READY);
+        metrics.record((AudioResponse) null, READY);
+        assertTrue(metrics.getTimings("1").containsKey(PLAYBACK));
+        assertEquals(0, metrics.getCount(READY));
+
+        // repeating a request starts its timings over
+        metrics.record("1", REQUEST, 300 * MS);
+        assertEquals(Collections.singleton(REQUEST),
+              metrics.getTimings("1").keySet());
+
+        // old requests are discarded
+        for (int i = 0; i < 100; i++) {
+            metrics.record("extra" + i, REQUEST, 0);
+        }
+        assertTrue(metrics.getTimings("1").isEmpty());
+
+        metrics.reset();
+        assertEquals(0, metrics.getCount(REQUEST));
+        assertTrue(metrics.getTimings("extra99").isEmpty());
+    }
+
+    @Test
+    public void testPercentiles() {
+        TTSMetrics metrics = new TTSMetrics(10);
+        assertTrue(Double.isNaN(metrics.getPercentile(PLAYBACK, 50)));
+        assertThrows(IllegalArgumentException.class,
+              () -> metrics.getPercentile(PLAYBACK, 101));
+
+        for (int i = 1; i <= 10; i++) {
+            String id = String.valueOf(i);
+            metrics.record(id, REQUEST, 0);
+            metrics.record(id, PLAYBACK, i * 10 * MS);
+        }
+        assertEquals(10.0, metrics.getPercentile(PLAYBACK, 0));
+        assertEquals(50.0, metrics.getPercentile(PLAYBACK, 50));
+        assertEquals(90.0, metrics.getPercentile(PLAYBACK, 90));
+        assertEquals(100.0, metrics.getPercentile(PLAYBACK, 100));
+
+        // only the most recent latencies are kept
+        for (int i = 11; i <= 15; i++) {
+            String id = String.valueOf(i);
+            metrics.record(id, REQUEST, 0);
+            metrics.record(id, PLAYBACK, 1000 * MS);
+        }
+        assertEquals(15, metrics.getCount(PLAYBACK));
+        assertEquals(60.0, metrics.getPercentile(PLAYBACK, 0));
+        assertEquals(100.0, metrics.getPercentile(PLAYBACK, 50));
+        assertEquals(1000.0, metrics.getPercentile(PLAYBACK, 60));
+    }
+}
@@ -0,0 +1,90 @@
+package io.spokestack.spokestack.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CryptoTest {
+    private static final String SECRET =
+          "5BD5483F573D691A15CFA493C1782F451D4BD666E39A9E7B2EBE287E6A72C6B6";
+    private static final String BODY = "{\"query\": "
+          + "\"query AndroidSynthesize($voice:String!, $text:String!) {"
+          + "synthesizeText(voice: $voice, text: $text) {url}}\", "
+          + "\"variables\": {\"voice\": \"demo-male\", \"text\": \"test\""
+          + "}}";
+    private static final String SIGNATURE =
+          "ZqrTG+aiIYJKgHB63HCmXCLj0acUEi92d/b2au2WdEM=";
+
+    @Test
+    public void signBody() {
+        assertEquals(SIGNATURE, Crypto.signBody(BODY, SECRET));
+        // repeated signatures aren't affected by earlier ones
+        assertEquals(SIGNATURE, Crypto.signBody(BODY, SECRET));
+        assertNotEquals(SIGNATURE, Crypto.signBody(BODY, "other"));
+
+        assertThrows(IllegalArgumentException.class,
+              () -> Crypto.signBody(BODY, ""));
+        assertThrows(IllegalArgumentException.class,
+              () -> Crypto.signBody(BODY, null));
+    }
+
+    @Test
+    public void signer() {
+        Crypto.Signer signer = Crypto.signer(SECRET);
+        assertSame(signer, Crypto.signer(SECRET));
+        assertNotSame(signer, Crypto.signer("other"));
+
+        byte[] bytes = BODY.getBytes(StandardCharsets.UTF_8);
+        assertEquals(SIGNATURE, signer.sign(BODY));
+        assertEquals(SIGNATURE, signer.sign(bytes));
+
+        byte[] padded = new byte[bytes.length + 4];
+        System.arraycopy(bytes, 0, padded, 2, bytes.length);
+        assertEquals(SIGNATURE, signer.sign(padded, 2, bytes.length));
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        assertEquals(SIGNATURE, signer.sign(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void stream() {
+        byte[] bytes = BODY.getBytes(StandardCharsets.UTF_8);
+        Crypto.SigningStream stream = Crypto.signer(SECRET).stream();
+        stream.write(bytes[0]);
+        stream.write(bytes, 1, 10);
+        stream.write(ByteBuffer.wrap(bytes, 11, bytes.length - 11));
+        assertEquals(SIGNATURE, stream.signature());
+
+        // the stream is reset after each signature
+        stream.write(bytes, 0, bytes.length);
+        assertEquals(SIGNATURE, stream.signature());
+    }
+
+    @Test
+    public void concurrentSigning() throws Exception {
+        Crypto.Signer signer = Crypto.signer(SECRET);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                results.add(executor.submit(() -> signer.sign(BODY)));
+            }
+            for (Future<String> result : results) {
+                assertEquals(SIGNATURE, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
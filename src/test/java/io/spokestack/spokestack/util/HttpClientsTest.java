@@ -0,0 +1,51 @@
+package io.spokestack.spokestack.util;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.Test;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HttpClientsTest {
+
+    @Test
+    public void shared() {
+        OkHttpClient client = HttpClients.shared();
+        assertSame(client, HttpClients.shared());
+        assertTrue(client.protocols().contains(Protocol.HTTP_2));
+    }
+
+    @Test
+    public void preconnect() throws Exception {
+        LinkedBlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+        OkHttpClient client = new OkHttpClient.Builder()
+              .addInterceptor(chain -> {
+                  requests.add(chain.request());
+                  return new Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_2)
+                        .code(200)
+                        .message("OK")
+                        .body(ResponseBody.create("", null))
+                        .build();
+              })
+              .build();
+
+        HttpClients.preconnect(client, "https://api.spokestack.io/v1?q=1");
+        Request request = requests.poll(1, TimeUnit.SECONDS);
+        assertNotNull(request);
+        assertEquals("HEAD", request.method());
+        assertEquals("https://api.spokestack.io/", request.url().toString());
+
+        // invalid URLs are ignored
+        HttpClients.preconnect(client, null);
+        HttpClients.preconnect(client, "not a url");
+        assertNull(requests.poll(100, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,80 @@
+package io.spokestack.spokestack.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SampleRingTest {
+
+    @Test
+    public void testReadWrite() {
+        assertThrows(IllegalArgumentException.class,
+              () -> new SampleRing(16000, 0));
+
+        SampleRing ring = new SampleRing(16000, 4);
+        assertEquals(16000, ring.getSampleRate());
+        assertEquals(4, ring.capacity());
+        assertEquals(0, ring.available());
+
+        short[] buffer = new short[4];
+        assertEquals(0, ring.read(buffer, 0, 4));
+
+        assertEquals(3, ring.write(new short[]{1, 2, 3}, 0, 3));
+        assertEquals(3, ring.available());
+        assertEquals(2, ring.read(buffer, 0, 2));
+        assertArrayEquals(new short[]{1, 2, 0, 0}, buffer);
+
+        // writes wrap around the end of the ring, and samples that don't
+        // fit are dropped
+        assertEquals(3, ring.write(new short[]{9, 4, 5, 6, 7}, 1, 4));
+        assertEquals(4, ring.available());
+        buffer = new short[6];
+        assertEquals(4, ring.read(buffer, 1, 5));
+        assertArrayEquals(new short[]{0, 3, 4, 5, 6, 0}, buffer);
+        assertEquals(0, ring.available());
+
+        // skipping
+        ring.write(new short[]{1, 2, 3}, 0, 3);
+        assertEquals(2, ring.skip(2));
+        assertEquals(1, ring.skip(2));
+        assertEquals(0, ring.available());
+    }
+
+    @Test
+    public void testConcurrentTransfer() throws Exception {
+        int total = 100000;
+        SampleRing ring = new SampleRing(16000, 64);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread writer = new Thread(() -> {
+            short[] block = new short[17];
+            int next = 0;
+            while (next < total) {
+                int count = Math.min(block.length, total - next);
+                for (int i = 0; i < count; i++) {
+                    block[i] = (short) (next + i);
+                }
+                next += ring.write(block, 0, count);
+            }
+        });
+        writer.start();
+
+        short[] block = new short[23];
+        int expected = 0;
+        try {
+            while (expected < total) {
+                int count = ring.read(block, 0, block.length);
+                for (int i = 0; i < count; i++) {
+                    assertEquals((short) expected++, block[i]);
+                }
+            }
+        } catch (Throwable e) {
+            failure.set(e);
+        }
+        writer.join();
+        assertNull(failure.get());
+        assertEquals(0, ring.available());
+    }
+}
@@ -135,6 +135,37 @@ public class WakewordTriggerTest {
         assertTrue(env.context.isActive());
     }
 
+    @Test
+    public void testDetPlayback() throws Exception {
+        // verify that tts playback raises the activation threshold
+        TestEnv env = new TestEnv(testConfig());
+
+        env.context.setPlaying(true);
+        env.context.setSpeech(true);
+        env.detect.setOutputs(0.6f);
+        env.process();
+        assertFalse(env.context.isActive());
+
+        env.detect.setOutputs(0.8f);
+        env.process();
+        assertEquals(SpeechContext.Event.ACTIVATE, env.event);
+        assertTrue(env.context.isActive());
+
+        // the playback threshold is configurable
+        env = new TestEnv(testConfig()
+            .put("wake-playback-threshold", 0.9));
+        env.context.setPlaying(true);
+        env.context.setSpeech(true);
+        env.detect.setOutputs(0.8f);
+        env.process();
+        assertFalse(env.context.isActive());
+
+        // and ignored when nothing is playing
+        env.context.setPlaying(false);
+        env.process();
+        assertTrue(env.context.isActive());
+    }
+
     @Test
     public void testDetActiveMinDelay() throws Exception {
         // verify no deactivation on vad timeout before min activation length
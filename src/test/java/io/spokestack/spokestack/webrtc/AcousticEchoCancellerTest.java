@@ -0,0 +1,207 @@
+import java.util.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+import org.junit.jupiter.api.function.Executable;
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.spokestack.spokestack.SpeechConfig;
+import io.spokestack.spokestack.SpeechContext;
+import io.spokestack.spokestack.util.SampleRing;
+import io.spokestack.spokestack.webrtc.AcousticEchoCanceller;
+
+public class AcousticEchoCancellerTest {
+
+    @Test
+    public void testConstruction() {
+        // default config
+        final SpeechConfig config = new SpeechConfig();
+        config.put("sample-rate", 8000);
+        config.put("frame-width", 10);
+        new AcousticEchoCanceller(config);
+
+        // invalid sample rate
+        config.put("sample-rate", 32000);
+        config.put("frame-width", 20);
+        assertThrows(IllegalArgumentException.class, new Executable() {
+            public void execute() { new AcousticEchoCanceller(config); }
+        });
+
+        // invalid frame width
+        config.put("sample-rate", 8000);
+        config.put("frame-width", 25);
+        assertThrows(IllegalArgumentException.class, new Executable() {
+            public void execute() { new AcousticEchoCanceller(config); }
+        });
+
+        // invalid mode
+        config.put("sample-rate", 8000);
+        config.put("frame-width", 20);
+        config.put("aec-mode", "invalid");
+        assertThrows(IllegalArgumentException.class, new Executable() {
+            public void execute() { new AcousticEchoCanceller(config); }
+        });
+
+        // invalid delay
+        config.put("aec-mode", "moderate");
+        config.put("aec-delay", -1);
+        assertThrows(IllegalArgumentException.class, new Executable() {
+            public void execute() { new AcousticEchoCanceller(config); }
+        });
+        config.put("aec-delay", 500);
+        assertThrows(IllegalArgumentException.class, new Executable() {
+            public void execute() { new AcousticEchoCanceller(config); }
+        });
+
+        // valid config
+        config.put("sample-rate", 16000);
+        config.put("frame-width", 20);
+        config.put("aec-delay", 50);
+        new AcousticEchoCanceller(config);
+
+        // valid rates
+        config.put("sample-rate", 8000);
+        new AcousticEchoCanceller(config);
+        config.put("sample-rate", 16000);
+        new AcousticEchoCanceller(config);
+
+        // valid modes
+        config.put("aec-mode", "conservative");
+        new AcousticEchoCanceller(config);
+        config.put("aec-mode", "moderate");
+        new AcousticEchoCanceller(config);
+        config.put("aec-mode", "aggressive");
+        new AcousticEchoCanceller(config);
+
+        // close coverage
+        new AcousticEchoCanceller(config).close();
+    }
+
+    @Test
+    public void testProcessing() throws IOException {
+        final SpeechConfig config = new SpeechConfig()
+            .put("sample-rate", 8000)
+            .put("frame-width", 20)
+            .put("aec-delay", 20);
+
+        final SpeechContext context = new SpeechContext(config);
+        AcousticEchoCanceller aec;
+        ByteBuffer actual;
+        ByteBuffer expect;
+
+        // invalid frame
+        assertThrows(IllegalStateException.class, new Executable() {
+            public void execute() {
+                new AcousticEchoCanceller(config)
+                    .process(context, ByteBuffer.allocateDirect(1));
+            }
+        });
+
+        // the reference is attached to the context
+        aec = new AcousticEchoCanceller(config);
+        aec.process(context, sinFrame(config));
+        SampleRing reference = context.getPlaybackReference();
+        assertNotNull(reference);
+        assertEquals(8000, reference.getSampleRate());
+
+        // pass-through without a reference
+        expect = sinFrame(config);
+        actual = sinFrame(config);
+        aec.process(context, actual);
+        assertEquals(expect, actual);
+
+        // stale reference audio is discarded
+        reference.write(new short[2000], 0, 2000);
+        aec.process(context, sinFrame(config));
+        assertEquals(0, reference.available());
+
+        // the reference is held back until it has filled to the output's
+        // latency (100ms), then read a frame at a time; the delay (20ms) is
+        // left to the native canceller
+        context.setPlaybackLatency(100);
+        reference.write(new short[640], 0, 640);
+        aec.process(context, sinFrame(config));
+        assertEquals(640, reference.available());
+        reference.write(new short[160], 0, 160);
+        aec.process(context, sinFrame(config));
+        assertEquals(640, reference.available());
+        aec.process(context, sinFrame(config));
+        assertEquals(480, reference.available());
+
+        // valid cancellation, using fixtures of far-end (playback) audio and
+        // of the microphone signal containing its echo in a small room; the
+        // output fills its 100ms buffer, then writes in bursts of 60ms as
+        // the buffer drains
+        config.put("aec-delay", 0);
+        aec = new AcousticEchoCanceller(config);
+        aec.process(context, sampleBuffer(config));
+        reference = context.getPlaybackReference();
+        context.setPlaybackLatency(100);
+        short[] far = load("src/test/resources/aec-far.pcm");
+        short[] near = load("src/test/resources/aec-near.pcm");
+        int width = sampleBuffer(config).capacity() / 2;
+        int buffered = 800;
+        int written = 0;
+        double before = 0;
+        double after = 0;
+        for (int offset = 0; offset + width <= far.length; offset += width) {
+            while (written < offset + buffered && written < far.length) {
+                int burst = Math.min(480, far.length - written);
+                reference.write(far, written, burst);
+                written += burst;
+            }
+            ByteBuffer frame = sampleBuffer(config);
+            frame.asShortBuffer().put(near, offset, width);
+            // measure the echo once the filter has had time to converge
+            boolean measure = offset >= far.length / 2;
+            if (measure)
+                before += energy(frame);
+            aec.process(context, frame);
+            if (measure)
+                after += energy(frame);
+        }
+        assertTrue(10 * Math.log10(before / after) > 15);
+    }
+
+    private ByteBuffer sinFrame(SpeechConfig config) {
+        ByteBuffer frame = sampleBuffer(config);
+        double rate = config.getInteger("sample-rate");
+        double freq = 100;
+        for (int i = 0; i < frame.capacity() / 2; i++) {
+            double sample = Math.sin(i / (rate / freq) * 2 * Math.PI);
+            frame.putShort(i * 2, (short)(sample * Short.MAX_VALUE));
+        }
+        return frame;
+    }
+
+    private ByteBuffer sampleBuffer(SpeechConfig config) {
+        int samples = config.getInteger("sample-rate")
+            / 1000
+            * config.getInteger("frame-width");
+        return ByteBuffer
+            .allocateDirect(samples * 2)
+            .order(ByteOrder.nativeOrder());
+    }
+
+    private short[] load(String path) throws IOException {
+        ByteBuffer pcm = ByteBuffer
+            .wrap(Files.readAllBytes(Paths.get(path)))
+            .order(ByteOrder.LITTLE_ENDIAN);
+        short[] samples = new short[pcm.capacity() / 2];
+        pcm.asShortBuffer().get(samples);
+        return samples;
+    }
+
+    private double energy(ByteBuffer signal) {
+        double sum = 0;
+        for (int i = 0; i < signal.capacity() / 2; i++) {
+            double sample = signal.getShort(i * 2);
+            sum += sample * sample;
+        }
+        return sum;
+    }
+}
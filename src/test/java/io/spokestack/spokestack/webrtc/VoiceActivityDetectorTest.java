@@ -1,4 +1,5 @@
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import org.junit.Test;
 import org.junit.jupiter.api.function.Executable;
@@ -119,6 +120,85 @@ public class VoiceActivityDetectorTest {
         assertFalse(context.isSpeech());
     }
 
+    @Test
+    public void testPlaybackGating() {
+        final SpeechConfig config = new SpeechConfig();
+        config.put("sample-rate", 8000);
+        config.put("frame-width", 10);
+        config.put("vad-mode", "quality");
+        config.put("vad-rise-delay", 30);
+        config.put("vad-playback-margin", 1.5);
+
+        final SpeechContext context = new SpeechContext(config);
+        final VoiceActivityDetector vad = new VoiceActivityDetector(config);
+
+        // echo of the playback isn't speech
+        context.setPlaying(true);
+        for (int i = 0; i < 10; i++) {
+            vad.process(context, voiceFrame(config, 0.5));
+            assertFalse(context.isSpeech());
+        }
+
+        // speech over the playback is
+        for (int i = 0; i < 2; i++) {
+            vad.process(context, voiceFrame(config, 1.0));
+            assertFalse(context.isSpeech());
+        }
+        vad.process(context, voiceFrame(config, 1.0));
+        assertTrue(context.isSpeech());
+
+        // without playback, echo-level audio counts as speech again
+        context.setPlaying(false);
+        context.setSpeech(false);
+        for (int i = 0; i < 3; i++) {
+            vad.process(context, voiceFrame(config, 0.5));
+        }
+        assertTrue(context.isSpeech());
+    }
+
+    @Test
+    public void testPlaybackLatency() {
+        final SpeechConfig config = new SpeechConfig();
+        config.put("sample-rate", 8000);
+        config.put("frame-width", 10);
+        config.put("vad-mode", "quality");
+        config.put("vad-rise-delay", 30);
+        config.put("vad-playback-margin", 1.5);
+
+        final SpeechContext context = new SpeechContext(config);
+        VoiceActivityDetector vad = new VoiceActivityDetector(config);
+
+        // the echo arrives after the output's latency, heard as silence
+        context.setPlaybackLatency(50);
+        context.setPlaying(true);
+        for (int i = 0; i < 3; i++) {
+            vad.process(context, silenceFrame(config));
+        }
+        for (int i = 0; i < 10; i++) {
+            vad.process(context, voiceFrame(config, 0.5));
+            assertFalse(context.isSpeech());
+        }
+
+        // the level being played covers an echo that arrives even later
+        context.setPlaying(false);
+        vad.process(context, silenceFrame(config));
+        context.setPlaying(true);
+        context.setPlaybackLevel(0.4);
+        for (int i = 0; i < 10; i++) {
+            vad.process(context, silenceFrame(config));
+        }
+        for (int i = 0; i < 10; i++) {
+            vad.process(context, voiceFrame(config, 0.5));
+            assertFalse(context.isSpeech());
+        }
+
+        // speech over the playback is still detected
+        for (int i = 0; i < 3; i++) {
+            vad.process(context, voiceFrame(config, 1.0));
+        }
+        assertTrue(context.isSpeech());
+    }
+
     private ByteBuffer silenceFrame(SpeechConfig config) {
         ByteBuffer buffer = sampleBuffer(config);
         for (int i = 0; i < buffer.capacity() / 2; i++)
@@ -137,6 +217,20 @@ public class VoiceActivityDetectorTest {
         return buffer;
     }
 
+    private ByteBuffer voiceFrame(SpeechConfig config, double amplitude) {
+        // unlike the frame above, these samples don't overlap, so that the
+        // frame's level is proportional to the amplitude
+        ByteBuffer buffer = sampleBuffer(config).order(ByteOrder.nativeOrder());
+        double rate = config.getInteger("sample-rate");
+        double freq = 2000;
+        for (int i = 0; i < buffer.capacity() / 2; i++) {
+            double sample = Math.sin(i / (rate / freq) * 2 * Math.PI);
+            buffer.putShort(i * 2,
+                (short)(sample * amplitude * Short.MAX_VALUE));
+        }
+        return buffer;
+    }
+
     private ByteBuffer sampleBuffer(SpeechConfig config) {
         int samples = config.getInteger("sample-rate")
             / 1000